@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.bench;
+
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.ScriptBuilderException;
+import btrplace.btrpsl.cache.SyntaxTreeCache;
+import btrplace.model.DefaultModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the complete building of synthetic scripts.
+ * Each invocation starts from an empty model so
+ * the script cache never hits.
+ *
+ * @author Fabien Hermenier
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BuildBenchmark {
+
+    /**
+     * The number of VMs declared in the synthetic script.
+     */
+    @Param({"100", "1000", "10000"})
+    public int nbVMs;
+
+    private String src;
+
+    private SyntaxTreeCache trees;
+
+    @Setup
+    public void setUp() {
+        src = Scripts.synthetic("bench", nbVMs);
+        trees = new SyntaxTreeCache(1);
+    }
+
+    /**
+     * Lex, parse, then evaluate the script.
+     *
+     * @return the resulting script
+     * @throws ScriptBuilderException if the script is not valid
+     */
+    @Benchmark
+    public Script build() throws ScriptBuilderException {
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        return b.build(src);
+    }
+
+    /**
+     * Only evaluate the script, its syntax tree being shared among the invocations.
+     *
+     * @return the resulting script
+     * @throws ScriptBuilderException if the script is not valid
+     */
+    @Benchmark
+    public Script evaluate() throws ScriptBuilderException {
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        b.setSyntaxTreeCache(trees);
+        return b.build(src);
+    }
+}
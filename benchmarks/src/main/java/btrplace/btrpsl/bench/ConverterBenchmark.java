@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.bench;
+
+import btrplace.btrpsl.InMemoryNamingService;
+import btrplace.btrpsl.InMemoryNamingServiceConverter;
+import btrplace.btrpsl.NamingServiceException;
+import btrplace.json.JSONConverterException;
+import btrplace.model.DefaultModel;
+import btrplace.model.Model;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the JSON serialization of a {@link InMemoryNamingService}.
+ *
+ * @author Fabien Hermenier
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConverterBenchmark {
+
+    /**
+     * The number of registered elements.
+     */
+    @Param({"1000", "10000", "100000"})
+    public int nbElements;
+
+    private InMemoryNamingService ns;
+
+    private InMemoryNamingServiceConverter conv;
+
+    private String json;
+
+    @Setup
+    public void setUp() throws NamingServiceException, JSONConverterException {
+        Model mo = new DefaultModel();
+        ns = new InMemoryNamingService();
+        for (int i = 0; i < nbElements; i++) {
+            if (i % 10 == 0) {
+                ns.register("@N" + i, mo.newNode());
+            } else {
+                ns.register("clients.app" + (i / 100) + ".VM" + i, mo.newVM());
+            }
+        }
+        conv = new InMemoryNamingServiceConverter();
+        conv.setModel(mo);
+        json = conv.toJSONString(ns);
+    }
+
+    @Benchmark
+    public String toJSON() throws JSONConverterException {
+        return conv.toJSONString(ns);
+    }
+
+    @Benchmark
+    public InMemoryNamingService fromJSON() throws JSONConverterException, IOException {
+        return conv.fromJSON(json);
+    }
+
+    /**
+     * Serialize then un-serialize the naming service.
+     *
+     * @return the resulting naming service
+     */
+    @Benchmark
+    public InMemoryNamingService roundTrip() throws JSONConverterException, IOException {
+        return conv.fromJSON(conv.toJSONString(ns));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.bench;
+
+import btrplace.btrpsl.BuildResult;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.generator.DatacenterGenerator;
+import btrplace.btrpsl.includes.PathBasedIncludes;
+import btrplace.model.Model;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the building of all the scripts describing a synthetic datacenter.
+ * Each tenant has 500 VMs split into 5 tiers and imports 3 other tenants.
+ * Each cluster has 50 racks of 200 nodes. There is a cluster per 200 tenants,
+ * so the largest datacenter has 100k nodes and 1M VMs.
+ *
+ * @author Fabien Hermenier
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class DatacenterBenchmark {
+
+    /**
+     * The number of tenants.
+     */
+    @Param({"20", "200", "2000"})
+    public int nbTenants;
+
+    private DatacenterGenerator gen;
+
+    private File root;
+
+    private List<File> files;
+
+    private ScriptBuilder builder;
+
+    @Setup
+    public void setUp() throws IOException {
+        gen = new DatacenterGenerator();
+        gen.setNbClusters(Math.max(1, nbTenants / 200));
+        gen.setNbRacks(50);
+        gen.setNbNodes(200);
+        gen.setNbTenants(nbTenants);
+        gen.setNbVMs(500);
+        gen.setNbTiers(5);
+        gen.setImportFanOut(3);
+        root = Files.createTempDirectory("btrpsl-bench").toFile();
+        files = gen.write(root);
+    }
+
+    /**
+     * Make a fresh model, so nothing is cached.
+     */
+    @Setup(Level.Invocation)
+    public void prepare() {
+        Model mo = gen.makeModel();
+        builder = new ScriptBuilder(mo);
+        builder.setIncludes(new PathBasedIncludes(builder, root));
+    }
+
+    @Benchmark
+    public BuildResult buildAll() {
+        return builder.buildAll(files);
+    }
+
+    @TearDown
+    public void tearDown() {
+        delete(root);
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) {
+                delete(c);
+            }
+        }
+        f.delete();
+    }
+}
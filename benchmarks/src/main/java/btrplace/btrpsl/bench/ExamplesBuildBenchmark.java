@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.bench;
+
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.ScriptBuilderException;
+import btrplace.btrpsl.includes.PathBasedIncludes;
+import btrplace.model.DefaultModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the complete building of the handwritten scripts used by the tests,
+ * including the resolution of their imports.
+ *
+ * @author Fabien Hermenier
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExamplesBuildBenchmark {
+
+    /**
+     * The script to build, formatted as {@code includePath:script}.
+     * The script is relative to the include path that is relative to
+     * the root of the repository.
+     */
+    @Param({"src/test/resources/btrplace/btrpsl/examples:myApp.btrp",
+            "src/test/resources/btrplace/btrpsl:setManip.btrp",
+            "src/test/resources/btrplace/btrpsl:range.btrp"})
+    public String script;
+
+    private File includes;
+
+    private File file;
+
+    @Setup
+    public void setUp() {
+        int idx = script.indexOf(':');
+        includes = Scripts.file(script.substring(0, idx));
+        file = new File(includes, script.substring(idx + 1));
+    }
+
+    @Benchmark
+    public Script build() throws ScriptBuilderException {
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        b.setIncludes(new PathBasedIncludes(b, includes));
+        return b.build(file);
+    }
+}
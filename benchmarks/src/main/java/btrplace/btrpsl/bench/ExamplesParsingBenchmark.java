@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.bench;
+
+import btrplace.btrpsl.tree.SyntaxTree;
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.RecognitionException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the parsing of the handwritten scripts of the repository.
+ *
+ * @author Fabien Hermenier
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExamplesParsingBenchmark {
+
+    /**
+     * The script to parse, relative to the root of the repository.
+     */
+    @Param({"src/main/examples/includes/datacenter.btrp",
+            "src/main/examples/vappHA.btrp",
+            "src/test/resources/btrplace/btrpsl/examples/myApp.btrp",
+            "src/test/resources/btrplace/btrpsl/sophia/helios.btrp"})
+    public String path;
+
+    private String src;
+
+    @Setup
+    public void setUp() throws IOException {
+        src = Scripts.read(path);
+    }
+
+    @Benchmark
+    public SyntaxTree parse() throws RecognitionException {
+        return SyntaxTree.parse(new ANTLRStringStream(src));
+    }
+}
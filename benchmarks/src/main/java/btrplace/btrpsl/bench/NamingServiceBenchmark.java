@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.bench;
+
+import btrplace.btrpsl.*;
+import btrplace.model.DefaultModel;
+import btrplace.model.Element;
+import btrplace.model.Model;
+import btrplace.model.view.ModelView;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the registration and the resolution of elements
+ * for the different implementations of {@link NamingService}.
+ * A tenth of the elements are nodes.
+ *
+ * @author Fabien Hermenier
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NamingServiceBenchmark {
+
+    /**
+     * The number of elements to register.
+     */
+    @Param({"1000", "10000", "100000"})
+    public int nbElements;
+
+    /**
+     * The implementation to evaluate.
+     */
+    @Param({"memory", "compact", "trie", "concurrent"})
+    public String impl;
+
+    private String[] names;
+
+    private Element[] elements;
+
+    private NamingService filled;
+
+    @Setup
+    public void setUp() throws NamingServiceException {
+        Model mo = new DefaultModel();
+        names = new String[nbElements];
+        elements = new Element[nbElements];
+        for (int i = 0; i < nbElements; i++) {
+            if (i % 10 == 0) {
+                names[i] = "@rack" + (i / 400) + ".node" + i;
+                elements[i] = mo.newNode();
+            } else {
+                names[i] = "clients.app" + (i / 100) + ".VM" + i;
+                elements[i] = mo.newVM();
+            }
+        }
+        filled = register();
+    }
+
+    private NamingService make() {
+        switch (impl) {
+            case "memory":
+                return new InMemoryNamingService();
+            case "compact":
+                return new CompactNamingService();
+            case "trie":
+                return new TrieNamingService();
+            case "concurrent":
+                return new ConcurrentInMemoryNamingService();
+            default:
+                throw new IllegalArgumentException("Unsupported naming service '" + impl + "'");
+        }
+    }
+
+    /**
+     * Register all the elements in an empty naming service.
+     *
+     * @return the naming service
+     * @throws NamingServiceException if a registration failed
+     */
+    @Benchmark
+    public NamingService register() throws NamingServiceException {
+        NamingService ns = make();
+        for (int i = 0; i < names.length; i++) {
+            ns.register(names[i], elements[i]);
+        }
+        return ns;
+    }
+
+    /**
+     * Resolve every element from its name.
+     *
+     * @param bh to consume the resolved elements
+     */
+    @Benchmark
+    public void resolveByName(Blackhole bh) {
+        for (String n : names) {
+            bh.consume(filled.resolve(n));
+        }
+    }
+
+    /**
+     * Resolve the name of every element.
+     *
+     * @param bh to consume the resolved names
+     */
+    @Benchmark
+    public void resolveByElement(Blackhole bh) {
+        for (Element e : elements) {
+            bh.consume(filled.resolve(e));
+        }
+    }
+
+    /**
+     * Copy the naming service.
+     *
+     * @return the copy
+     */
+    @Benchmark
+    public ModelView copy() {
+        return filled.clone();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.bench;
+
+import btrplace.btrpsl.ANTLRBtrplaceSL2Lexer;
+import btrplace.btrpsl.tree.SyntaxTree;
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the lexing and the parsing of scripts, without their evaluation.
+ *
+ * @author Fabien Hermenier
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParsingBenchmark {
+
+    /**
+     * The number of VMs declared in the synthetic script.
+     */
+    @Param({"100", "1000", "10000"})
+    public int nbVMs;
+
+    private String src;
+
+    @Setup
+    public void setUp() {
+        src = Scripts.synthetic("bench", nbVMs);
+    }
+
+    /**
+     * Only split the script into tokens.
+     *
+     * @return the number of tokens
+     */
+    @Benchmark
+    public int lex() {
+        CommonTokenStream tokens = new CommonTokenStream(new ANTLRBtrplaceSL2Lexer(new ANTLRStringStream(src)));
+        tokens.fill();
+        return tokens.size();
+    }
+
+    /**
+     * Lex then parse the script.
+     *
+     * @return the resulting tree
+     * @throws RecognitionException if the script cannot be parsed
+     */
+    @Benchmark
+    public SyntaxTree parse() throws RecognitionException {
+        return SyntaxTree.parse(new ANTLRStringStream(src));
+    }
+}
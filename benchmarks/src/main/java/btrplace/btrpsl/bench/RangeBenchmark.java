@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.bench;
+
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.ScriptBuilderException;
+import btrplace.btrpsl.element.BtrpNumber;
+import btrplace.btrpsl.element.BtrpOperand;
+import btrplace.btrpsl.element.BtrpSet;
+import btrplace.btrpsl.element.RangeView;
+import btrplace.model.DefaultModel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the expansion of large ranges, either directly
+ * or through the declaration and the reference of elements in a script.
+ *
+ * @author Fabien Hermenier
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RangeBenchmark {
+
+    /**
+     * The number of elements in the range.
+     */
+    @Param({"1000", "10000", "100000"})
+    public int nbElements;
+
+    private RangeView range;
+
+    private BtrpNumber card;
+
+    private String declare;
+
+    private String reference;
+
+    @Setup
+    public void setUp() {
+        range = new RangeView("VM", 1, nbElements, BtrpNumber.Base.base10, "");
+        card = new BtrpNumber(100, BtrpNumber.Base.base10);
+        declare = "namespace bench;\nVM[1.." + nbElements + "] : tiny;\n";
+        reference = declare + "@N1 : defaultNode;\n$x = VM[1.." + nbElements + "];\nfence($x, @N1);\n";
+    }
+
+    /**
+     * Compute every label of the range.
+     *
+     * @param bh to consume the labels
+     */
+    @Benchmark
+    public void labels(Blackhole bh) {
+        for (int i = 0; i < range.size(); i++) {
+            bh.consume(range.label(i));
+        }
+    }
+
+    /**
+     * Split a set that is a view over the range.
+     *
+     * @return the resulting set of sets
+     */
+    @Benchmark
+    public BtrpSet split() {
+        return new BtrpSet(1, BtrpOperand.Type.string, range).remainder(card);
+    }
+
+    /**
+     * Declare a VM for each element of the range.
+     *
+     * @return the resulting script
+     * @throws ScriptBuilderException if the script is not valid
+     */
+    @Benchmark
+    public Script declare() throws ScriptBuilderException {
+        return new ScriptBuilder(new DefaultModel()).build(declare);
+    }
+
+    /**
+     * Declare a VM for each element of the range, then resolve them all.
+     *
+     * @return the resulting script
+     * @throws ScriptBuilderException if the script is not valid
+     */
+    @Benchmark
+    public Script declareAndResolve() throws ScriptBuilderException {
+        return new ScriptBuilder(new DefaultModel()).build(reference);
+    }
+}
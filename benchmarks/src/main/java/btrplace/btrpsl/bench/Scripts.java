@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Inputs shared by the benchmarks.
+ * <p/>
+ * The scripts of the repository are located from the directory given
+ * by the {@code btrpsl.root} system property. By default, the benchmarks
+ * are supposed to be launched from the {@code benchmarks} directory.
+ *
+ * @author Fabien Hermenier
+ */
+public final class Scripts {
+
+    /**
+     * The system property to locate the root of the repository.
+     */
+    public static final String ROOT_PROPERTY = "btrpsl.root";
+
+    private Scripts() {
+    }
+
+    /**
+     * Get the root of the repository.
+     *
+     * @return a directory
+     */
+    public static File root() {
+        return new File(System.getProperty(ROOT_PROPERTY, ".."));
+    }
+
+    /**
+     * Get a file of the repository.
+     *
+     * @param path the path, relative to the root of the repository
+     * @return the file
+     */
+    public static File file(String path) {
+        return new File(root(), path);
+    }
+
+    /**
+     * Read a script of the repository.
+     *
+     * @param path the path, relative to the root of the repository
+     * @return the content of the script
+     * @throws IOException if an error occurred while reading the file
+     */
+    public static String read(String path) throws IOException {
+        return new String(Files.readAllBytes(file(path).toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generate a script that declares VMs and nodes,
+     * then states constraints on partitions of them.
+     * The number of nodes is a tenth of the number of VMs.
+     *
+     * @param ns    the namespace of the script
+     * @param nbVMs the number of VMs to declare
+     * @return the script
+     */
+    public static String synthetic(String ns, int nbVMs) {
+        int nbNodes = Math.max(1, nbVMs / 10);
+        StringBuilder b = new StringBuilder();
+        b.append("namespace ").append(ns).append(";\n");
+        b.append("VM[1..").append(nbVMs).append("] : tiny;\n");
+        b.append("@N[1..").append(nbNodes).append("] : defaultNode;\n");
+        b.append("$vms = VM[1..").append(nbVMs).append("];\n");
+        b.append("$nodes = @N[1..").append(nbNodes).append("];\n");
+        b.append("$P = $vms % 10;\n");
+        b.append("for $p in $P {\n  spread($p);\n}\n");
+        b.append("$R = $nodes / 4;\n");
+        b.append("among($vms, $R);\n");
+        b.append("ban(VM[1..").append(Math.min(nbVMs, 10)).append("], @N1);\n");
+        b.append("export $vms to *;\n");
+        return b.toString();
+    }
+}
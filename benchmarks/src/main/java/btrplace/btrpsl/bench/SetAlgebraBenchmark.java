@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.bench;
+
+import btrplace.btrpsl.element.BtrpElement;
+import btrplace.btrpsl.element.BtrpNumber;
+import btrplace.btrpsl.element.BtrpOperand;
+import btrplace.btrpsl.element.BtrpSet;
+import btrplace.model.DefaultModel;
+import btrplace.model.Model;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the operators over sets of VMs.
+ * The two operands overlap by half of their elements.
+ *
+ * @author Fabien Hermenier
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SetAlgebraBenchmark {
+
+    /**
+     * The number of VMs in each operand.
+     */
+    @Param({"100", "1000", "10000"})
+    public int nbElements;
+
+    /**
+     * The cardinality of the right operand of the cartesian product.
+     * The product is quadratic so it is kept small.
+     */
+    private static final int PRODUCT_WIDTH = 16;
+
+    private BtrpSet left;
+
+    private BtrpSet right;
+
+    private BtrpSet narrow;
+
+    private BtrpNumber parts;
+
+    private BtrpNumber exponent;
+
+    @Setup
+    public void setUp() {
+        Model mo = new DefaultModel();
+        List<BtrpElement> vms = new ArrayList<>();
+        for (int i = 0; i < nbElements * 3 / 2; i++) {
+            vms.add(new BtrpElement(BtrpOperand.Type.VM, "bench.VM" + i, mo.newVM()));
+        }
+        left = make(vms.subList(0, nbElements));
+        right = make(vms.subList(nbElements / 2, vms.size()));
+        narrow = make(vms.subList(0, Math.min(PRODUCT_WIDTH, nbElements)));
+        parts = new BtrpNumber(10, BtrpNumber.Base.base10);
+        exponent = new BtrpNumber(3, BtrpNumber.Base.base10);
+    }
+
+    private static BtrpSet make(List<BtrpElement> els) {
+        BtrpSet s = new BtrpSet(1, BtrpOperand.Type.VM);
+        s.getValues().addAll(els);
+        return s;
+    }
+
+    @Benchmark
+    public List<BtrpOperand> plus() {
+        return left.plus(right).getValues();
+    }
+
+    @Benchmark
+    public List<BtrpOperand> minus() {
+        return left.minus(right).getValues();
+    }
+
+    /**
+     * The product is lazy, so every pair is made and consumed.
+     *
+     * @param bh to consume the pairs
+     */
+    @Benchmark
+    public void times(Blackhole bh) {
+        for (BtrpOperand o : left.times(narrow).getValues()) {
+            bh.consume(o);
+        }
+    }
+
+    /**
+     * The combinations are lazy, so every combination is made and consumed.
+     * The operand is kept narrow as the number of combinations is cubic.
+     *
+     * @param bh to consume the combinations
+     */
+    @Benchmark
+    public void power(Blackhole bh) {
+        for (BtrpOperand o : narrow.power(exponent).getValues()) {
+            bh.consume(o);
+        }
+    }
+
+    @Benchmark
+    public BtrpSet div() {
+        return left.div(parts);
+    }
+
+    @Benchmark
+    public BtrpSet remainder() {
+        return left.remainder(parts);
+    }
+
+    @Benchmark
+    public boolean equality() {
+        return left.equals(right);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * The result of the build of several scripts.
+ * It contains the successfully built scripts and the errors
+ * that prevented the build of the others.
+ *
+ * @author Fabien Hermenier
+ * @see ScriptBuilder#buildAll(java.util.Collection)
+ */
+public class BuildResult {
+
+    private final Map<File, Script> scripts;
+
+    private final Map<File, ScriptBuilderException> errors;
+
+    /**
+     * Make a new empty result.
+     */
+    public BuildResult() {
+        scripts = new LinkedHashMap<>();
+        errors = new LinkedHashMap<>();
+    }
+
+    /**
+     * Declare a script as built.
+     *
+     * @param f the script file
+     * @param v the built script
+     */
+    public void add(File f, Script v) {
+        scripts.put(f, v);
+    }
+
+    /**
+     * Declare a script as not built.
+     *
+     * @param f the script file
+     * @param e the error that prevented the build
+     */
+    public void addError(File f, ScriptBuilderException e) {
+        errors.put(f, e);
+    }
+
+    /**
+     * Get the built scripts.
+     * A script is always placed after the scripts it imports.
+     *
+     * @return a list of scripts that may be empty
+     */
+    public List<Script> getScripts() {
+        return new ArrayList<>(scripts.values());
+    }
+
+    /**
+     * Get the script built from a given file.
+     *
+     * @param f the script file
+     * @return the script if it was built. {@code null} otherwise
+     */
+    public Script getScript(File f) {
+        return scripts.get(f);
+    }
+
+    /**
+     * Get the errors, per script file.
+     *
+     * @return a map that may be empty
+     */
+    public Map<File, ScriptBuilderException> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Indicates if every script was built.
+     *
+     * @return {@code true} iff there is no error
+     */
+    public boolean isSuccessful() {
+        return errors.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append(scripts.size()).append(" script(s) built, ").append(errors.size()).append(" error(s)");
+        for (Map.Entry<File, ScriptBuilderException> e : errors.entrySet()) {
+            b.append('\n').append(e.getKey().getPath()).append(": ").append(e.getValue().getMessage());
+        }
+        return b.toString();
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import btrplace.btrpsl.element.BtrpElement;
+import btrplace.model.Element;
+
+import java.util.List;
+
+/**
+ * A naming service that can register several elements at once,
+ * such as the elements declared by an enumeration.
+ * The internal tables are sized once for the whole batch and the naming
+ * consistency is checked once, on the common prefix of the names.
+ *
+ * @author Fabien Hermenier
+ */
+public interface BulkNamingService extends NamingService {
+
+    /**
+     * Declare several elements of a same type.
+     * Either every element is registered, or none.
+     *
+     * @param prefix   the prefix of every name. Starts with a {@code \@} to indicate
+     *                 nodes. Otherwise, the elements will be considered as virtual machines
+     * @param suffixes the suffixes of the names. Expected to be distinct
+     * @param els      the elements to register, in the order of the suffixes. Either VMs or nodes
+     * @return the registered elements, in the order of the suffixes
+     * @throws NamingServiceException if a name is already registered or an element does not
+     *                                match the type denoted by the prefix
+     */
+    List<BtrpElement> register(String prefix, List<String> suffixes, List<? extends Element> els) throws NamingServiceException;
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import org.antlr.runtime.CharStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link CharStream} over the UTF-8 bytes of a script.
+ * <p/>
+ * The bytes are not copied: the characters of the leading ASCII part of the content, that is usually
+ * the whole script, are read directly from the buffer. The remaining bytes, if any, are decoded once,
+ * the first time one of their characters is accessed.
+ * <p/>
+ * Large files are memory-mapped using {@link #open(java.nio.file.Path)}, so the content of a script
+ * is never stored in the heap.
+ *
+ * @author Fabien Hermenier
+ */
+public class ByteBufferCharStream implements CharStream, CharSequence {
+
+    /**
+     * The size, in bytes, from which a file is memory-mapped rather than read.
+     */
+    public static final int MAP_THRESHOLD = 64 * 1024;
+
+    private final ByteBuffer bytes;
+
+    private final String name;
+
+    /**
+     * The number of leading ASCII bytes. For them, a byte index is also a character index.
+     */
+    private final int ascii;
+
+    /**
+     * The decoded characters after the ASCII prefix.
+     */
+    private CharBuffer tail;
+
+    /**
+     * The number of characters.
+     */
+    private int n;
+
+    private int p = 0;
+
+    private int line = 1;
+
+    private int charPositionInLine = 0;
+
+    private int markDepth = 0;
+
+    private int lastMarker;
+
+    /**
+     * The states saved by {@link #mark()}, as {@code p, line, charPositionInLine} triplets.
+     * The state of marker {@code m} is at offset {@code 3 * (m - 1)}.
+     */
+    private int[] markers = new int[0];
+
+    /**
+     * Make a new stream.
+     *
+     * @param buf  the UTF-8 bytes to read, from the position to the limit of the buffer.
+     *             The buffer must not be modified while the stream is in use
+     * @param name the name of the source. May be {@code null}
+     */
+    public ByteBufferCharStream(ByteBuffer buf, String name) {
+        this.bytes = buf.slice();
+        this.name = name;
+        int lim = bytes.limit();
+        int i = 0;
+        while (i < lim && bytes.get(i) >= 0) {
+            i++;
+        }
+        ascii = i;
+        n = ascii;
+        //Number of characters in the remaining bytes, without decoding them:
+        //every byte that is not a continuation byte starts a character,
+        //4-bytes sequences make a surrogate pair
+        for (; i < lim; i++) {
+            int b = bytes.get(i) & 0xff;
+            if ((b & 0xc0) != 0x80) {
+                n += b >= 0xf0 ? 2 : 1;
+            }
+        }
+    }
+
+    /**
+     * Open a file. The file is memory-mapped if it is larger than {@link #MAP_THRESHOLD}.
+     *
+     * @param path the file to read
+     * @return the stream
+     * @throws IOException if an error occurred while reading the file
+     */
+    public static ByteBufferCharStream open(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("'" + path + "' is too large");
+            }
+            ByteBuffer buf;
+            if (size >= MAP_THRESHOLD) {
+                buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buf = ByteBuffer.allocate((int) size);
+                while (buf.hasRemaining() && ch.read(buf) >= 0) {
+                    //Read until the end of the file
+                }
+                buf.flip();
+            }
+            return new ByteBufferCharStream(buf, path.toString());
+        }
+    }
+
+    /**
+     * Read a channel until its end. The channel is not closed.
+     *
+     * @param ch   the channel to read
+     * @param name the name of the source. May be {@code null}
+     * @return the stream
+     * @throws IOException if an error occurred while reading the channel
+     */
+    public static ByteBufferCharStream read(ReadableByteChannel ch, String name) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        while (ch.read(buf) >= 0) {
+            if (!buf.hasRemaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(buf.capacity() * 2);
+                buf.flip();
+                bigger.put(buf);
+                buf = bigger;
+            }
+        }
+        buf.flip();
+        return new ByteBufferCharStream(buf, name);
+    }
+
+    /**
+     * Get the bytes of the source.
+     *
+     * @return a read-only view of the bytes
+     */
+    public ByteBuffer getBytes() {
+        return bytes.asReadOnlyBuffer();
+    }
+
+    /**
+     * Go back to the beginning of the stream and forget the markers.
+     */
+    public void reset() {
+        p = 0;
+        line = 1;
+        charPositionInLine = 0;
+        markDepth = 0;
+    }
+
+    private CharBuffer tail() {
+        if (tail == null) {
+            ByteBuffer b = bytes.duplicate();
+            b.position(ascii);
+            try {
+                tail = StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                        .decode(b);
+            } catch (IOException e) {
+                //Not possible with the REPLACE action
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            //Malformed sequences may have been counted wrongly
+            n = ascii + tail.remaining();
+        }
+        return tail;
+    }
+
+    @Override
+    public char charAt(int i) {
+        if (i < ascii) {
+            return (char) bytes.get(i);
+        }
+        return tail().get(i - ascii);
+    }
+
+    @Override
+    public int length() {
+        if (n != ascii) {
+            tail();
+        }
+        return n;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return substring(start, end - 1);
+    }
+
+    @Override
+    public String substring(int start, int stop) {
+        char[] buf = new char[stop - start + 1];
+        for (int i = 0; i < buf.length; i++) {
+            buf[i] = charAt(start + i);
+        }
+        return new String(buf);
+    }
+
+    @Override
+    public String toString() {
+        return n == 0 ? "" : substring(0, length() - 1);
+    }
+
+    @Override
+    public int LT(int i) {
+        return LA(i);
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0) {
+            return 0;
+        }
+        int k = p + i - 1;
+        if (i < 0) {
+            k++;
+            if (k < 0) {
+                return CharStream.EOF;
+            }
+        }
+        if (k >= n && (n == ascii || k >= length())) {
+            return CharStream.EOF;
+        }
+        return charAt(k);
+    }
+
+    @Override
+    public void consume() {
+        if (p < n) {
+            charPositionInLine++;
+            if (charAt(p) == '\n') {
+                line++;
+                charPositionInLine = 0;
+            }
+            p++;
+        }
+    }
+
+    @Override
+    public int mark() {
+        markDepth++;
+        int o = 3 * (markDepth - 1);
+        if (o + 3 > markers.length) {
+            int[] bigger = new int[Math.max(12, markers.length * 2)];
+            System.arraycopy(markers, 0, bigger, 0, markers.length);
+            markers = bigger;
+        }
+        markers[o] = p;
+        markers[o + 1] = line;
+        markers[o + 2] = charPositionInLine;
+        lastMarker = markDepth;
+        return markDepth;
+    }
+
+    @Override
+    public int index() {
+        return p;
+    }
+
+    @Override
+    public void rewind(int m) {
+        int o = 3 * (m - 1);
+        seek(markers[o]);
+        line = markers[o + 1];
+        charPositionInLine = markers[o + 2];
+        release(m);
+    }
+
+    @Override
+    public void rewind() {
+        rewind(lastMarker);
+    }
+
+    @Override
+    public void release(int marker) {
+        markDepth = marker - 1;
+    }
+
+    @Override
+    public void seek(int index) {
+        if (index <= p) {
+            p = index;
+            return;
+        }
+        while (p < index && p < n) {
+            consume();
+        }
+    }
+
+    @Override
+    public int size() {
+        return length();
+    }
+
+    @Override
+    public String getSourceName() {
+        return name;
+    }
+
+    @Override
+    public int getLine() {
+        return line;
+    }
+
+    @Override
+    public void setLine(int l) {
+        line = l;
+    }
+
+    @Override
+    public void setCharPositionInLine(int pos) {
+        charPositionInLine = pos;
+    }
+
+    @Override
+    public int getCharPositionInLine() {
+        return charPositionInLine;
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import btrplace.btrpsl.element.BtrpElement;
+import btrplace.btrpsl.element.BtrpOperand;
+import btrplace.model.Element;
+import btrplace.model.Node;
+import btrplace.model.VM;
+
+import java.util.*;
+
+/**
+ * A non-persistent {@link NamingService} with a small memory footprint,
+ * for models having a large number of elements.
+ * <p/>
+ * The names of the VMs and the nodes are stored into arrays indexed by the element identifiers,
+ * so the identifiers are expected to be dense. The elements are retrieved from their names
+ * using an open-addressing hash table that shares the same strings.
+ * No {@link BtrpElement} is retained: they are made on demand when a name is resolved.
+ * <p/>
+ * A clone shares the tables with its original until one of them is modified.
+ *
+ * @author Fabien Hermenier
+ */
+public class CompactNamingService implements BulkNamingService {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The names, indexed by their hash.
+     */
+    private String[] names;
+
+    /**
+     * The element associated to each name. A positive value
+     * denotes a VM identifier while a negative one denotes the node {@code -(code + 1)}.
+     */
+    private int[] codes;
+
+    /**
+     * The number of names.
+     */
+    private int size;
+
+    /**
+     * The VM names, indexed by the VM identifiers.
+     */
+    private String[] vmNames;
+
+    /**
+     * The node names, indexed by the node identifiers.
+     */
+    private String[] nodeNames;
+
+    /**
+     * The number of VMs and nodes having a name.
+     */
+    private int nbElements;
+
+    /**
+     * {@code true} if the tables are shared with a clone.
+     */
+    private boolean shared;
+
+    /**
+     * Make a new service.
+     */
+    public CompactNamingService() {
+        names = new String[DEFAULT_CAPACITY];
+        codes = new int[DEFAULT_CAPACITY];
+        vmNames = new String[DEFAULT_CAPACITY];
+        nodeNames = new String[DEFAULT_CAPACITY];
+    }
+
+    @Override
+    public String getIdentifier() {
+        return NamingService.ID;
+    }
+
+    @Override
+    public BtrpElement register(String id, Element e) throws NamingServiceException {
+        if (slot(id) >= 0) {
+            throw new NamingServiceException(id, " Name already registered");
+        }
+        BtrpElement be;
+        int code;
+        //Naming consistency
+        if (e instanceof Node) {
+            if (!id.startsWith("@")) {
+                throw new NamingServiceException(id, "Node labels must start with a '@'");
+            }
+            be = new BtrpElement(BtrpOperand.Type.node, id, e);
+            code = -(e.id() + 1);
+        } else if (e instanceof VM) {
+            be = new BtrpElement(BtrpOperand.Type.VM, id, e);
+            code = e.id();
+        } else {
+            throw new NamingServiceException(id, "Unsupported type of element " + e.getClass().getSimpleName());
+        }
+        own();
+        put(id, code);
+        name(code, id);
+        return be;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The tables are resized at most once for the batch.
+     */
+    @Override
+    public List<BtrpElement> register(String prefix, List<String> suffixes, List<? extends Element> els)
+            throws NamingServiceException {
+        int nb = suffixes.size();
+        if (els.size() != nb) {
+            throw new NamingServiceException(prefix, nb + " names for " + els.size() + " elements");
+        }
+        if (nb == 0) {
+            return Collections.emptyList();
+        }
+        //Naming consistency, checked once on the prefix if possible
+        boolean node = els.get(0) instanceof Node;
+        Class<?> cl = node ? Node.class : VM.class;
+        if (node && !prefix.isEmpty() && !prefix.startsWith("@")) {
+            throw new NamingServiceException(prefix + suffixes.get(0), "Node labels must start with a '@'");
+        }
+        String[] ids = new String[nb];
+        int[] cs = new int[nb];
+        int maxId = -1;
+        for (int i = 0; i < nb; i++) {
+            String id = prefix + suffixes.get(i);
+            Element e = els.get(i);
+            if (!cl.isInstance(e)) {
+                throw new NamingServiceException(id, "Unsupported type of element "
+                        + (e == null ? "null" : e.getClass().getSimpleName()) + " in a batch of " + cl.getSimpleName() + "s");
+            }
+            if (node && prefix.isEmpty() && !id.startsWith("@")) {
+                throw new NamingServiceException(id, "Node labels must start with a '@'");
+            }
+            if (slot(id) >= 0) {
+                throw new NamingServiceException(id, " Name already registered");
+            }
+            ids[i] = id;
+            cs[i] = node ? -(e.id() + 1) : e.id();
+            maxId = Math.max(maxId, e.id());
+        }
+        own();
+        int capacity = names.length;
+        while (2 * (size + nb) > capacity) {
+            capacity *= 2;
+        }
+        if (capacity != names.length) {
+            rehash(capacity);
+        }
+        for (int i = 0; i < nb; i++) {
+            if (slot(ids[i]) >= 0) {
+                //Duplicated suffix, rollback
+                for (int j = 0; j < i; j++) {
+                    remove(slot(ids[j]));
+                }
+                throw new NamingServiceException(ids[i], " Name already registered");
+            }
+            put(ids[i], cs[i]);
+        }
+        if (node) {
+            nodeNames = ensure(nodeNames, maxId);
+        } else {
+            vmNames = ensure(vmNames, maxId);
+        }
+        List<BtrpElement> res = new ArrayList<>(nb);
+        BtrpOperand.Type t = node ? BtrpOperand.Type.node : BtrpOperand.Type.VM;
+        for (int i = 0; i < nb; i++) {
+            name(cs[i], ids[i]);
+            res.add(new BtrpElement(t, ids[i], els.get(i)));
+        }
+        return res;
+    }
+
+    @Override
+    public String resolve(Element el) {
+        String[] rev;
+        if (el instanceof VM) {
+            rev = vmNames;
+        } else if (el instanceof Node) {
+            rev = nodeNames;
+        } else {
+            return null;
+        }
+        return el.id() < rev.length ? rev[el.id()] : null;
+    }
+
+    @Override
+    public BtrpElement resolve(String n) {
+        int s = slot(n);
+        if (s < 0) {
+            return null;
+        }
+        int code = codes[s];
+        if (code >= 0) {
+            return new BtrpElement(BtrpOperand.Type.VM, names[s], new VM(code));
+        }
+        return new BtrpElement(BtrpOperand.Type.node, names[s], new Node(-code - 1));
+    }
+
+    @Override
+    public CompactNamingService clone() {
+        CompactNamingService cpy = new CompactNamingService();
+        cpy.names = names;
+        cpy.codes = codes;
+        cpy.size = size;
+        cpy.vmNames = vmNames;
+        cpy.nodeNames = nodeNames;
+        cpy.nbElements = nbElements;
+        cpy.shared = true;
+        shared = true;
+        return cpy;
+    }
+
+    @Override
+    public boolean substituteVM(VM curId, VM nextId) {
+        String fqn = resolve(curId);
+        if (fqn != null) {
+            own();
+            codes[slot(fqn)] = nextId.id();
+            name(nextId.id(), fqn);
+        }
+        return true;
+    }
+
+    /**
+     * Get all the registered elements.
+     * The set is a read-only view over the service.
+     *
+     * @return a set of elements. May be empty
+     */
+    @Override
+    public Set<Element> getRegisteredElements() {
+        return new AbstractSet<Element>() {
+            @Override
+            public Iterator<Element> iterator() {
+                return new ElementIterator(vmNames, nodeNames);
+            }
+
+            @Override
+            public int size() {
+                return nbElements;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Element && resolve((Element) o) != null;
+            }
+        };
+    }
+
+    /**
+     * Get the number of registered names.
+     *
+     * @return a positive integer
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copy the tables if they are shared with a clone.
+     */
+    private void own() {
+        if (shared) {
+            names = names.clone();
+            codes = codes.clone();
+            vmNames = vmNames.clone();
+            nodeNames = nodeNames.clone();
+            shared = false;
+        }
+    }
+
+    private static int hash(String n) {
+        int h = n.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Get the slot of a name.
+     *
+     * @param n the name
+     * @return the slot index if the name is registered. {@code -1} otherwise
+     */
+    private int slot(String n) {
+        int mask = names.length - 1;
+        for (int i = hash(n) & mask; names[i] != null; i = (i + 1) & mask) {
+            if (names[i].equals(n)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void put(String n, int code) {
+        if (2 * (size + 1) > names.length) {
+            rehash(names.length * 2);
+        }
+        int mask = names.length - 1;
+        int i = hash(n) & mask;
+        while (names[i] != null) {
+            i = (i + 1) & mask;
+        }
+        names[i] = n;
+        codes[i] = code;
+        size++;
+    }
+
+    /**
+     * Remove the name of a slot.
+     * The following names of the probe sequence are moved backward to fill the slot.
+     *
+     * @param s the slot
+     */
+    private void remove(int s) {
+        int mask = names.length - 1;
+        int i = s;
+        names[i] = null;
+        size--;
+        for (int j = (i + 1) & mask; names[j] != null; j = (j + 1) & mask) {
+            int h = hash(names[j]) & mask;
+            //Move the name if its home slot is not within ]i, j]
+            boolean stay = i <= j ? (i < h && h <= j) : (i < h || h <= j);
+            if (!stay) {
+                names[i] = names[j];
+                codes[i] = codes[j];
+                names[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        String[] oldNames = names;
+        int[] oldCodes = codes;
+        names = new String[capacity];
+        codes = new int[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldNames.length; j++) {
+            if (oldNames[j] != null) {
+                int i = hash(oldNames[j]) & mask;
+                while (names[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                names[i] = oldNames[j];
+                codes[i] = oldCodes[j];
+            }
+        }
+    }
+
+    /**
+     * Set the name of an element.
+     *
+     * @param code the element code
+     * @param n    the element name
+     */
+    private void name(int code, String n) {
+        if (code >= 0) {
+            vmNames = ensure(vmNames, code);
+            if (vmNames[code] == null) {
+                nbElements++;
+            }
+            vmNames[code] = n;
+        } else {
+            int id = -code - 1;
+            nodeNames = ensure(nodeNames, id);
+            if (nodeNames[id] == null) {
+                nbElements++;
+            }
+            nodeNames[id] = n;
+        }
+    }
+
+    private static String[] ensure(String[] a, int idx) {
+        if (idx < a.length) {
+            return a;
+        }
+        return Arrays.copyOf(a, Math.max(idx + 1, a.length * 2));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NamingService)) {
+            return false;
+        }
+
+        NamingService that = (NamingService) o;
+        if (!getRegisteredElements().equals(that.getRegisteredElements())) {
+            return false;
+        }
+        for (Element e : getRegisteredElements()) {
+            String s = resolve(e);
+            if (!s.equals(that.resolve(e))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (Element e : getRegisteredElements()) {
+            h += e.hashCode() ^ resolve(e).hashCode();
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        for (Element e : getRegisteredElements()) {
+            if (b.length() > 0) {
+                b.append(", ");
+            }
+            b.append('<').append(e).append(" : ").append(resolve(e)).append('>');
+        }
+        return b.toString();
+    }
+
+    /**
+     * Iterate over the named VMs, then over the named nodes.
+     */
+    private static class ElementIterator implements Iterator<Element> {
+
+        private final String[] vms;
+
+        private final String[] nodes;
+
+        private int vm = -1;
+
+        private int node = -1;
+
+        ElementIterator(String[] vs, String[] ns) {
+            this.vms = vs;
+            this.nodes = ns;
+            advance();
+        }
+
+        private void advance() {
+            if (vm < vms.length) {
+                do {
+                    vm++;
+                } while (vm < vms.length && vms[vm] == null);
+                if (vm < vms.length) {
+                    return;
+                }
+            }
+            do {
+                node++;
+            } while (node < nodes.length && nodes[node] == null);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return vm < vms.length || node < nodes.length;
+        }
+
+        @Override
+        public Element next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Element e = vm < vms.length ? new VM(vm) : new Node(node);
+            advance();
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import btrplace.btrpsl.element.BtrpElement;
+import btrplace.btrpsl.element.BtrpOperand;
+import btrplace.model.Element;
+import btrplace.model.Node;
+import btrplace.model.VM;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Non-persistent implementation of a {@link ConcurrentNamingService}.
+ * The resolutions are lock-free. A name being registered is reserved, so only
+ * the registrations of a same name wait for each other.
+ *
+ * @author Fabien Hermenier
+ */
+public class ConcurrentInMemoryNamingService implements ConcurrentNamingService {
+
+    private final ConcurrentMap<String, BtrpElement> resolve;
+
+    private final ConcurrentMap<Element, String> rev;
+
+    /**
+     * The names being registered through {@link #registerIfAbsent(String, ElementFactory)}.
+     * The latch is released once the registration is over.
+     */
+    private final ConcurrentMap<String, CountDownLatch> pending;
+
+    /**
+     * Make a new service.
+     */
+    public ConcurrentInMemoryNamingService() {
+        resolve = new ConcurrentHashMap<>();
+        rev = new ConcurrentHashMap<>();
+        pending = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public String getIdentifier() {
+        return NamingService.ID;
+    }
+
+    @Override
+    public BtrpElement register(String id, Element e) throws NamingServiceException {
+        if (resolve.containsKey(id)) {
+            throw new NamingServiceException(id, " Name already registered");
+        }
+
+        BtrpElement be;
+        //Naming consistency
+        if (e instanceof Node) {
+            if (!id.startsWith("@")) {
+                throw new NamingServiceException(id, "Node labels must start with a '@'");
+            }
+            be = new BtrpElement(BtrpOperand.Type.node, id, e);
+        } else if (e instanceof VM) {
+            be = new BtrpElement(BtrpOperand.Type.VM, id, e);
+        } else {
+            throw new NamingServiceException(id, "Unsupported type of element " + e.getClass().getSimpleName());
+        }
+        //The reverse mapping first, so a resolved name can always be reversed
+        String prev = rev.put(e, id);
+        if (resolve.putIfAbsent(id, be) != null) {
+            //Registered concurrently
+            if (prev != null) {
+                rev.put(e, prev);
+            } else {
+                rev.remove(e, id);
+            }
+            throw new NamingServiceException(id, " Name already registered");
+        }
+        return be;
+    }
+
+    @Override
+    public BtrpElement registerIfAbsent(String id, ElementFactory f) throws NamingServiceException {
+        while (true) {
+            BtrpElement el = resolve.get(id);
+            if (el != null) {
+                return el;
+            }
+            CountDownLatch mine = new CountDownLatch(1);
+            CountDownLatch other = pending.putIfAbsent(id, mine);
+            if (other == null) {
+                //The name is reserved
+                try {
+                    el = resolve.get(id);
+                    if (el == null) {
+                        Element e = f.make();
+                        if (e != null) {
+                            el = register(id, e);
+                        }
+                    }
+                    return el;
+                } finally {
+                    pending.remove(id);
+                    mine.countDown();
+                }
+            }
+            //Wait for the concurrent registration, then check its outcome
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    other.await();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public String resolve(Element el) {
+        return rev.get(el);
+    }
+
+    @Override
+    public BtrpElement resolve(String n) {
+        return resolve.get(n);
+    }
+
+    @Override
+    public ConcurrentInMemoryNamingService clone() {
+        ConcurrentInMemoryNamingService cpy = new ConcurrentInMemoryNamingService();
+        cpy.resolve.putAll(resolve);
+        cpy.rev.putAll(rev);
+        return cpy;
+    }
+
+    @Override
+    public boolean substituteVM(VM curId, VM nextId) {
+        String fqn = rev.get(curId);
+        if (fqn != null) {
+            rev.put(nextId, fqn);
+            resolve.put(fqn, new BtrpElement(BtrpOperand.Type.VM, fqn, nextId));
+        }
+        return true;
+    }
+
+    /**
+     * Get all the registered elements.
+     * The set is a read-only view that reflects the concurrent registrations.
+     *
+     * @return a set of elements. May be empty
+     */
+    @Override
+    public Set<Element> getRegisteredElements() {
+        return Collections.unmodifiableSet(rev.keySet());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NamingService)) {
+            return false;
+        }
+
+        NamingService that = (NamingService) o;
+        if (!getRegisteredElements().equals(that.getRegisteredElements())) {
+            return false;
+        }
+        for (Element e : getRegisteredElements()) {
+            String s = resolve(e);
+            if (!s.equals(that.resolve(e))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (Map.Entry<Element, String> e : rev.entrySet()) {
+            h += e.getKey().hashCode() ^ e.getValue().hashCode();
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        for (Map.Entry<Element, String> e : rev.entrySet()) {
+            if (b.length() > 0) {
+                b.append(", ");
+            }
+            b.append('<').append(e.getKey()).append(" : ").append(e.getValue()).append('>');
+        }
+        return b.toString();
+    }
+}
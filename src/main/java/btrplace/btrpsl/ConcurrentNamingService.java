@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import btrplace.btrpsl.element.BtrpElement;
+import btrplace.model.Element;
+
+/**
+ * A naming service that can be shared by several scripts built concurrently.
+ * The resolutions do not block while the registrations are atomic.
+ *
+ * @author Fabien Hermenier
+ */
+public interface ConcurrentNamingService extends NamingService {
+
+    /**
+     * Make the element to register under a name that is not registered yet.
+     */
+    interface ElementFactory {
+
+        /**
+         * Make the element.
+         *
+         * @return the new element. {@code null} if no element can be made
+         */
+        Element make();
+    }
+
+    /**
+     * Get the element associated to an identifier, or register a new one atomically.
+     * The factory is called at most once, only if the identifier is not registered.
+     * The factories of distinct identifiers may be called concurrently, so they must
+     * synchronize their modifications of a shared model.
+     *
+     * @param id the element identifier. Starts with a {@code \@} to indicate
+     *           a node. Otherwise, the element will be considered as a virtual machine
+     * @param f  the factory to make the element to register
+     * @return the registered element. {@code null} if the factory did not make any element
+     * @throws NamingServiceException if the element made by the factory cannot be registered
+     */
+    BtrpElement registerIfAbsent(String id, ElementFactory f) throws NamingServiceException;
+}
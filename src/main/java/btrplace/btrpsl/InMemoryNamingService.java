@@ -30,7 +30,7 @@ import java.util.*;
  *
  * @author Fabien Hermenier
  */
-public class InMemoryNamingService implements NamingService {
+public class InMemoryNamingService implements BulkNamingService {
 
     private Map<String, BtrpElement> resolve;
 
@@ -44,6 +44,18 @@ public class InMemoryNamingService implements NamingService {
         rev = new HashMap<>();
     }
 
+    /**
+     * Make a new service sized for a given number of elements.
+     * The service is not resized until the number of elements is reached.
+     *
+     * @param expected the expected number of elements
+     */
+    public InMemoryNamingService(int expected) {
+        int c = (int) Math.min(Integer.MAX_VALUE, (long) expected * 4 / 3 + 1);
+        resolve = new HashMap<>(c);
+        rev = new HashMap<>(c);
+    }
+
     @Override
     public String getIdentifier() {
         return NamingService.ID;
@@ -72,6 +84,86 @@ public class InMemoryNamingService implements NamingService {
         return be;
     }
 
+    /**
+     * Register several elements at once.
+     * The names and the elements are checked before being registered, so the service
+     * is left unchanged if one of the registrations is not valid.
+     *
+     * @param ids the element identifiers
+     * @param els the elements to register, in the order of the identifiers
+     * @param nb  the number of elements to register
+     * @return the registered elements, in the order of the identifiers
+     * @throws NamingServiceException if one of the registrations is not valid
+     */
+    BtrpElement[] register(String[] ids, Element[] els, int nb) throws NamingServiceException {
+        BtrpElement[] bes = new BtrpElement[nb];
+        for (int i = 0; i < nb; i++) {
+            String id = ids[i];
+            Element e = els[i];
+            if (e instanceof Node) {
+                if (!id.startsWith("@")) {
+                    throw new NamingServiceException(id, "Node labels must start with a '@'");
+                }
+                bes[i] = new BtrpElement(BtrpOperand.Type.node, id, e);
+            } else if (e instanceof VM) {
+                bes[i] = new BtrpElement(BtrpOperand.Type.VM, id, e);
+            } else {
+                throw new NamingServiceException(id, "Unsupported type of element " + e.getClass().getSimpleName());
+            }
+        }
+        put(ids, bes, nb);
+        return bes;
+    }
+
+    @Override
+    public List<BtrpElement> register(String prefix, List<String> suffixes, List<? extends Element> els)
+            throws NamingServiceException {
+        int nb = suffixes.size();
+        if (els.size() != nb) {
+            throw new NamingServiceException(prefix, nb + " names for " + els.size() + " elements");
+        }
+        if (nb == 0) {
+            return Collections.emptyList();
+        }
+        String[] ids = new String[nb];
+        Class<?> cl = els.get(0) instanceof Node ? Node.class : VM.class;
+        for (int i = 0; i < nb; i++) {
+            ids[i] = prefix + suffixes.get(i);
+            Element e = els.get(i);
+            if (!cl.isInstance(e)) {
+                throw new NamingServiceException(ids[i], "Unsupported type of element "
+                        + (e == null ? "null" : e.getClass().getSimpleName()) + " in a batch of " + cl.getSimpleName() + "s");
+            }
+        }
+        return Arrays.asList(register(ids, els.toArray(new Element[nb]), nb));
+    }
+
+    /**
+     * Insert checked elements.
+     * The service is left unchanged if one of the names is already registered.
+     *
+     * @param ids the element identifiers
+     * @param bes the elements, in the order of the identifiers
+     * @param nb  the number of elements to insert
+     * @throws NamingServiceException if a name is already registered
+     */
+    private void put(String[] ids, BtrpElement[] bes, int nb) throws NamingServiceException {
+        for (int i = 0; i < nb; i++) {
+            BtrpElement prev = resolve.put(ids[i], bes[i]);
+            if (prev != null) {
+                //Rollback
+                resolve.put(ids[i], prev);
+                for (int j = 0; j < i; j++) {
+                    resolve.remove(ids[j]);
+                }
+                throw new NamingServiceException(ids[i], " Name already registered");
+            }
+        }
+        for (int i = 0; i < nb; i++) {
+            rev.put(bes[i].getElement(), ids[i]);
+        }
+    }
+
     @Override
     public String resolve(Element el) {
         return rev.get(el);
@@ -84,7 +176,7 @@ public class InMemoryNamingService implements NamingService {
 
     @Override
     public InMemoryNamingService clone() {
-        InMemoryNamingService cpy = new InMemoryNamingService();
+        InMemoryNamingService cpy = new InMemoryNamingService(resolve.size());
         for (Map.Entry<String, BtrpElement> e : resolve.entrySet()) {
             cpy.resolve.put(e.getKey(), e.getValue());
         }
@@ -134,7 +226,11 @@ public class InMemoryNamingService implements NamingService {
 
     @Override
     public int hashCode() {
-        return Objects.hash(resolve, rev);
+        int h = 0;
+        for (Map.Entry<Element, String> e : rev.entrySet()) {
+            h += e.getKey().hashCode() ^ e.getValue().hashCode();
+        }
+        return h;
     }
 
     @Override
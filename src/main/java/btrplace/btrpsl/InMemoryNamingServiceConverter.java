@@ -24,15 +24,29 @@ import btrplace.model.Node;
 import btrplace.model.VM;
 import net.minidev.json.JSONObject;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 /**
  * Converter to serialize/un-serialize {@link NamingService}.
+ * <p/>
+ * Besides the conversion from and to a {@link JSONObject}, the converter streams the
+ * view using {@link #write(InMemoryNamingService, Appendable)} and {@link #read(Reader)}.
+ * The streaming methods do not build any intermediate JSON object, so
+ * the memory required in addition to the service itself does not depend on its size.
+ * The elements are preceded by their number, so the service can be sized before being
+ * filled. Its elements are then registered by batches.
  *
  * @author Fabien Hermenier
  */
 public class InMemoryNamingServiceConverter extends ModelViewConverter<InMemoryNamingService> {
 
+    /**
+     * The number of elements registered at once.
+     */
+    private static final int BATCH = 4096;
+
     @Override
     public Class<InMemoryNamingService> getSupportedView() {
         return InMemoryNamingService.class;
@@ -52,7 +66,7 @@ public class InMemoryNamingServiceConverter extends ModelViewConverter<InMemoryN
         if (elements == null) {
             throw new JSONConverterException("Missing required key 'elements'");
         }
-        InMemoryNamingService ns = new InMemoryNamingService();
+        InMemoryNamingService ns = new InMemoryNamingService(elements.size());
         for (Map.Entry<String, Object> e : elements.entrySet()) {
             String n = e.getKey();
             try {
@@ -74,6 +88,7 @@ public class InMemoryNamingServiceConverter extends ModelViewConverter<InMemoryN
     public JSONObject toJSON(InMemoryNamingService ns) throws JSONConverterException {
         JSONObject res = new JSONObject();
         res.put("id", getJSONId());
+        res.put("count", ns.getRegisteredElements().size());
         JSONObject elems = new JSONObject();
         res.put("elements", elems);
         for (Element e : ns.getRegisteredElements()) {
@@ -82,4 +97,351 @@ public class InMemoryNamingServiceConverter extends ModelViewConverter<InMemoryN
         }
         return res;
     }
+
+    /**
+     * Write a service.
+     *
+     * @param ns  the service to write
+     * @param out the output
+     * @throws IOException if an error occurred while writing
+     */
+    public void write(InMemoryNamingService ns, Appendable out) throws IOException {
+        out.append("{\"id\":");
+        writeString(getJSONId(), out);
+        out.append(",\"count\":").append(Integer.toString(ns.getRegisteredElements().size()));
+        out.append(",\"elements\":{");
+        boolean first = true;
+        for (Element e : ns.getRegisteredElements()) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            writeString(ns.resolve(e), out);
+            out.append(':').append(Integer.toString(e.id()));
+        }
+        out.append("}}");
+    }
+
+    /**
+     * Write a service into a file, using UTF-8.
+     *
+     * @param ns the service to write
+     * @param f  the output file
+     * @throws IOException if an error occurred while writing
+     */
+    public void write(InMemoryNamingService ns, File f) throws IOException {
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8))) {
+            write(ns, w);
+        }
+    }
+
+    private static void writeString(String str, Appendable out) throws IOException {
+        out.append('"');
+        int from = 0;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                out.append(str, from, i).append('\\');
+                switch (c) {
+                    case '"':
+                    case '\\':
+                        out.append(c);
+                        break;
+                    case '\n':
+                        out.append('n');
+                        break;
+                    case '\r':
+                        out.append('r');
+                        break;
+                    case '\t':
+                        out.append('t');
+                        break;
+                    default:
+                        out.append(String.format("u%04x", (int) c));
+                }
+                from = i + 1;
+            }
+        }
+        out.append(str, from, str.length()).append('"');
+    }
+
+    /**
+     * Read a service.
+     * The elements are taken from the model of the converter if any.
+     *
+     * @param in the input. It is read by blocks so it does not need to be buffered
+     * @return the resulting service
+     * @throws JSONConverterException if the input is not a valid service
+     * @throws IOException            if an error occurred while reading
+     */
+    public InMemoryNamingService read(Reader in) throws JSONConverterException, IOException {
+        Lexer lex = new Lexer(in);
+        InMemoryNamingService ns = null;
+        boolean id = false;
+        int count = -1;
+        lex.expect('{');
+        if (!lex.next('}')) {
+            do {
+                String key = lex.string();
+                lex.expect(':');
+                switch (key) {
+                    case "id":
+                        if (!NamingService.ID.equals(lex.string())) {
+                            throw new JSONConverterException("Missing or incorrect value for attribute 'id'. Expecting '" + NamingService.ID);
+                        }
+                        id = true;
+                        break;
+                    case "count":
+                        count = lex.integer();
+                        break;
+                    case "elements":
+                        if (ns != null) {
+                            throw new JSONConverterException("Duplicated key 'elements'");
+                        }
+                        ns = count >= 0 ? new InMemoryNamingService(count) : new InMemoryNamingService();
+                        readElements(lex, ns);
+                        break;
+                    default:
+                        lex.skip();
+                }
+            } while (lex.next(','));
+            lex.expect('}');
+        }
+        if (!id) {
+            throw new JSONConverterException("Missing or incorrect value for attribute 'id'. Expecting '" + NamingService.ID);
+        }
+        if (ns == null) {
+            throw new JSONConverterException("Missing required key 'elements'");
+        }
+        return ns;
+    }
+
+    /**
+     * Read a service from a file, using UTF-8.
+     *
+     * @param f the input file
+     * @return the resulting service
+     * @throws JSONConverterException if the file does not contain a valid service
+     * @throws IOException            if an error occurred while reading
+     */
+    public InMemoryNamingService read(File f) throws JSONConverterException, IOException {
+        try (Reader r = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8)) {
+            return read(r);
+        }
+    }
+
+    private void readElements(Lexer lex, InMemoryNamingService ns) throws JSONConverterException, IOException {
+        String[] ids = new String[BATCH];
+        Element[] els = new Element[BATCH];
+        int nb = 0;
+        lex.expect('{');
+        if (lex.next('}')) {
+            return;
+        }
+        try {
+            do {
+                String n = lex.string();
+                lex.expect(':');
+                int i = lex.integer();
+                ids[nb] = n;
+                els[nb] = n.startsWith("@") ? getOrMakeNode(i) : getOrMakeVM(i);
+                if (++nb == BATCH) {
+                    ns.register(ids, els, nb);
+                    nb = 0;
+                }
+            } while (lex.next(','));
+            ns.register(ids, els, nb);
+        } catch (NamingServiceException ex) {
+            throw new JSONConverterException(ex.getMessage());
+        }
+        lex.expect('}');
+    }
+
+    /**
+     * A minimal JSON lexer that reads its input by blocks.
+     */
+    private static class Lexer {
+
+        private final Reader in;
+
+        private final char[] buf = new char[8192];
+
+        private int pos;
+
+        private int len;
+
+        private final StringBuilder str = new StringBuilder();
+
+        Lexer(Reader r) {
+            this.in = r;
+        }
+
+        /**
+         * Get the next non-blank character, without consuming it.
+         *
+         * @return the character, {@code -1} at the end of the input
+         */
+        private int peek() throws IOException {
+            int c = peekRaw();
+            while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                pos++;
+                c = peekRaw();
+            }
+            return c;
+        }
+
+        private char read() throws IOException, JSONConverterException {
+            if (pos == len) {
+                len = in.read(buf);
+                pos = 0;
+                if (len <= 0) {
+                    len = 0;
+                    throw new JSONConverterException("Unexpected end of input");
+                }
+            }
+            return buf[pos++];
+        }
+
+        /**
+         * Consume the next character if it is the expected one.
+         */
+        boolean next(char c) throws IOException {
+            if (peek() == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) throws IOException, JSONConverterException {
+            int x = peek();
+            if (x != c) {
+                throw new JSONConverterException("Expecting '" + c + "' but got "
+                        + (x < 0 ? "the end of the input" : "'" + (char) x + "'"));
+            }
+            pos++;
+        }
+
+        String string() throws IOException, JSONConverterException {
+            expect('"');
+            str.setLength(0);
+            while (true) {
+                char c = read();
+                if (c == '"') {
+                    return str.toString();
+                } else if (c == '\\') {
+                    c = read();
+                    switch (c) {
+                        case 'b':
+                            str.append('\b');
+                            break;
+                        case 'f':
+                            str.append('\f');
+                            break;
+                        case 'n':
+                            str.append('\n');
+                            break;
+                        case 'r':
+                            str.append('\r');
+                            break;
+                        case 't':
+                            str.append('\t');
+                            break;
+                        case 'u':
+                            int v = 0;
+                            for (int i = 0; i < 4; i++) {
+                                int d = Character.digit(read(), 16);
+                                if (d < 0) {
+                                    throw new JSONConverterException("Malformed unicode escape sequence");
+                                }
+                                v = v * 16 + d;
+                            }
+                            str.append((char) v);
+                            break;
+                        default:
+                            str.append(c);
+                    }
+                } else {
+                    str.append(c);
+                }
+            }
+        }
+
+        /**
+         * Read an integer, possibly quoted.
+         */
+        int integer() throws IOException, JSONConverterException {
+            if (peek() == '"') {
+                String s = string();
+                try {
+                    return Integer.parseInt(s);
+                } catch (NumberFormatException e) {
+                    throw new JSONConverterException("Integer expected but got '" + s + "'");
+                }
+            }
+            boolean neg = next('-');
+            long v = 0;
+            int nb = 0;
+            for (int c = peekRaw(); c >= '0' && c <= '9'; c = peekRaw()) {
+                pos++;
+                v = v * 10 + (c - '0');
+                if (++nb > 10) {
+                    break;
+                }
+            }
+            if (neg) {
+                v = -v;
+            }
+            if (nb == 0 || nb > 10 || v > Integer.MAX_VALUE || v < Integer.MIN_VALUE) {
+                throw new JSONConverterException("Integer expected");
+            }
+            return (int) v;
+        }
+
+        /**
+         * Get the next character, blank or not, without consuming it.
+         */
+        private int peekRaw() throws IOException {
+            if (pos == len) {
+                len = in.read(buf);
+                pos = 0;
+                if (len <= 0) {
+                    len = 0;
+                    return -1;
+                }
+            }
+            return buf[pos];
+        }
+
+        /**
+         * Skip a value.
+         */
+        void skip() throws IOException, JSONConverterException {
+            int c = peek();
+            if (c == '"') {
+                string();
+            } else if (c == '{' || c == '[') {
+                char end = c == '{' ? '}' : ']';
+                pos++;
+                if (!next(end)) {
+                    do {
+                        if (c == '{') {
+                            string();
+                            expect(':');
+                        }
+                        skip();
+                    } while (next(','));
+                    expect(end);
+                }
+            } else if (c < 0) {
+                throw new JSONConverterException("Unexpected end of input");
+            } else {
+                //A number, a boolean or null
+                for (int x = peekRaw(); x >= 0 && x != ',' && x != '}' && x != ']'
+                        && x != ' ' && x != '\n' && x != '\r' && x != '\t'; x = peekRaw()) {
+                    pos++;
+                }
+            }
+        }
+    }
 }
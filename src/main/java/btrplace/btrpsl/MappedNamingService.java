@@ -0,0 +1,606 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import btrplace.btrpsl.element.BtrpElement;
+import btrplace.btrpsl.element.BtrpOperand;
+import btrplace.model.Element;
+import btrplace.model.Node;
+import btrplace.model.VM;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A read-only {@link NamingService} backed by a binary snapshot, usually memory-mapped.
+ * <p/>
+ * The names are resolved straight from the snapshot, so opening a snapshot does not
+ * deserialize its content. A snapshot is made using {@link #write(NamingService, OutputStream)}.
+ * It stores the names in their UTF-8 byte order, by blocks of {@link #BLOCK_SIZE} names.
+ * Inside a block, each name is front-coded: only the length of the prefix it shares with
+ * the previous name and its remaining bytes are stored. The element of each name follows as a varint.
+ * An index of the blocks allows to locate a name with a binary search over the first name of
+ * each block, then a scan of a single block. Two tables sorted by element identifier
+ * lead from the VMs and the nodes to their names.
+ * <p/>
+ * The format is, with the integers in big-endian:
+ * <pre>
+ * magic (int), version (int), number of names (int), block size (int), number of blocks (int),
+ * number of VMs (int), number of nodes (int),
+ * offset of each block (int),
+ * VM identifier and position of its name (int, int), for each VM sorted by identifier,
+ * node identifier and position of its name (int, int), for each node sorted by identifier,
+ * the names: shared prefix length (varint), suffix length (varint), suffix (bytes),
+ * element code (varint, the element identifier shifted by one bit, the lowest bit set for a node)
+ * </pre>
+ * The service cannot be modified: {@link #register(String, Element)} fails and
+ * {@link #substituteVM(VM, VM)} returns {@code false}. The service is thread-safe.
+ *
+ * @author Fabien Hermenier
+ */
+public class MappedNamingService implements PrefixNamingService {
+
+    /**
+     * The number of names in a block.
+     */
+    public static final int BLOCK_SIZE = 16;
+
+    private static final int MAGIC = 0x42544e53;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 7 * 4;
+
+    private final ByteBuffer buf;
+
+    private final int count;
+
+    private final int nbBlocks;
+
+    private final int nbVMs;
+
+    private final int nbNodes;
+
+    /**
+     * Positions of the block index, the VM table, and the node table.
+     */
+    private final int blocks, vms, nodes;
+
+    /**
+     * Make a service from a snapshot.
+     *
+     * @param b the snapshot. It is not copied, the service reads its content from index 0
+     * @throws IOException if the buffer does not contain a valid snapshot
+     */
+    public MappedNamingService(ByteBuffer b) throws IOException {
+        buf = b.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (buf.limit() < HEADER_SIZE || buf.getInt(0) != MAGIC) {
+            throw new IOException("Not a naming service snapshot");
+        }
+        if (buf.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version: " + buf.getInt(4));
+        }
+        count = buf.getInt(8);
+        int bs = buf.getInt(12);
+        nbBlocks = buf.getInt(16);
+        nbVMs = buf.getInt(20);
+        nbNodes = buf.getInt(24);
+        blocks = HEADER_SIZE;
+        vms = blocks + nbBlocks * 4;
+        nodes = vms + nbVMs * 8;
+        if (bs != BLOCK_SIZE || count < 0 || nbBlocks != (count + BLOCK_SIZE - 1) / BLOCK_SIZE
+                || nbVMs < 0 || nbNodes < 0 || (long) nodes + nbNodes * 8L > buf.limit()) {
+            throw new IOException("Corrupted naming service snapshot");
+        }
+    }
+
+    /**
+     * Memory-map a snapshot.
+     *
+     * @param f the snapshot file
+     * @return the service
+     * @throws IOException if the file cannot be mapped or does not contain a valid snapshot
+     */
+    public static MappedNamingService open(File f) throws IOException {
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            return new MappedNamingService(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    /**
+     * Write a snapshot of a naming service.
+     *
+     * @param ns  the service
+     * @param out the output. It is not closed
+     * @throws IOException if an error occurred while writing
+     */
+    public static void write(NamingService ns, OutputStream out) throws IOException {
+        List<Named> entries = new ArrayList<>(ns.getRegisteredElements().size());
+        int nbV = 0;
+        for (Element e : ns.getRegisteredElements()) {
+            String n = ns.resolve(e);
+            if (n != null) {
+                entries.add(new Named(n.getBytes(StandardCharsets.UTF_8), e));
+                if (!(e instanceof Node)) {
+                    nbV++;
+                }
+            }
+        }
+        Collections.sort(entries);
+        int nbB = (entries.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int[] offsets = new int[nbB];
+        int base = HEADER_SIZE + nbB * 4 + entries.size() * 8;
+        ByteArrayOutputStream dict = new ByteArrayOutputStream();
+        long[] vTable = new long[nbV];
+        long[] nTable = new long[entries.size() - nbV];
+        int v = 0;
+        int nd = 0;
+        byte[] prev = null;
+        for (int i = 0; i < entries.size(); i++) {
+            Named x = entries.get(i);
+            int shared = 0;
+            if (i % BLOCK_SIZE == 0) {
+                offsets[i / BLOCK_SIZE] = base + dict.size();
+            } else {
+                int max = Math.min(prev.length, x.name.length);
+                while (shared < max && prev[shared] == x.name[shared]) {
+                    shared++;
+                }
+            }
+            writeVarint(dict, shared);
+            writeVarint(dict, x.name.length - shared);
+            dict.write(x.name, shared, x.name.length - shared);
+            boolean node = x.element instanceof Node;
+            writeVarint(dict, ((long) x.element.id() << 1) | (node ? 1 : 0));
+            if (node) {
+                nTable[nd++] = ((long) x.element.id() << 32) | i;
+            } else {
+                vTable[v++] = ((long) x.element.id() << 32) | i;
+            }
+            prev = x.name;
+        }
+        Arrays.sort(vTable);
+        Arrays.sort(nTable);
+
+        DataOutputStream o = new DataOutputStream(new BufferedOutputStream(out));
+        o.writeInt(MAGIC);
+        o.writeInt(VERSION);
+        o.writeInt(entries.size());
+        o.writeInt(BLOCK_SIZE);
+        o.writeInt(nbB);
+        o.writeInt(vTable.length);
+        o.writeInt(nTable.length);
+        for (int off : offsets) {
+            o.writeInt(off);
+        }
+        for (long x : vTable) {
+            o.writeLong(x);
+        }
+        for (long x : nTable) {
+            o.writeLong(x);
+        }
+        dict.writeTo(o);
+        o.flush();
+    }
+
+    /**
+     * Write a snapshot of a naming service into a file.
+     *
+     * @param ns the service
+     * @param f  the output file
+     * @throws IOException if an error occurred while writing
+     */
+    public static void write(NamingService ns, File f) throws IOException {
+        try (OutputStream out = new FileOutputStream(f)) {
+            write(ns, out);
+        }
+    }
+
+    private static void writeVarint(OutputStream out, long v) throws IOException {
+        long x = v;
+        while ((x & ~0x7FL) != 0) {
+            out.write((int) ((x & 0x7F) | 0x80));
+            x >>>= 7;
+        }
+        out.write((int) x);
+    }
+
+    @Override
+    public String getIdentifier() {
+        return NamingService.ID;
+    }
+
+    /**
+     * Not supported, the service is read-only.
+     *
+     * @throws NamingServiceException every time
+     */
+    @Override
+    public BtrpElement register(String id, Element e) throws NamingServiceException {
+        throw new NamingServiceException(id, "The naming service is read-only");
+    }
+
+    @Override
+    public BtrpElement resolve(String n) {
+        byte[] q = n.getBytes(StandardCharsets.UTF_8);
+        int b = block(q);
+        if (b < 0) {
+            return null;
+        }
+        Scanner s = new Scanner(b);
+        for (int i = 0; i < BLOCK_SIZE && s.hasNext(); i++) {
+            s.next();
+            int c = s.compareTo(q);
+            if (c == 0) {
+                return s.element(n);
+            } else if (c > 0) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String resolve(Element el) {
+        int i;
+        if (el instanceof VM) {
+            i = ordinal(vms, nbVMs, el.id());
+        } else if (el instanceof Node) {
+            i = ordinal(nodes, nbNodes, el.id());
+        } else {
+            return null;
+        }
+        if (i < 0) {
+            return null;
+        }
+        Scanner s = new Scanner(i / BLOCK_SIZE);
+        for (int k = i % BLOCK_SIZE; k >= 0; k--) {
+            s.next();
+        }
+        return s.name();
+    }
+
+    @Override
+    public List<BtrpElement> resolveByPrefix(String prefix) {
+        List<BtrpElement> res = new ArrayList<>();
+        byte[] q = prefix.getBytes(StandardCharsets.UTF_8);
+        Scanner s = new Scanner(Math.max(0, block(q)));
+        while (s.hasNext()) {
+            s.next();
+            if (s.startsWith(q)) {
+                res.add(s.element(s.name()));
+            } else if (s.compareTo(q) > 0) {
+                break;
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public List<BtrpElement> resolve(String prefix, List<String> suffixes) {
+        List<BtrpElement> res = new ArrayList<>(suffixes.size());
+        for (String s : suffixes) {
+            res.add(resolve(prefix + s));
+        }
+        return res;
+    }
+
+    /**
+     * Get the number of registered names.
+     *
+     * @return a positive integer
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get the block that may contain a name.
+     *
+     * @param q the name
+     * @return the index of the last block whose first name is lower or equals to the name. {@code -1} if there is none
+     */
+    private int block(byte[] q) {
+        int lb = 0;
+        int ub = nbBlocks - 1;
+        int res = -1;
+        while (lb <= ub) {
+            int m = (lb + ub) >>> 1;
+            Scanner s = new Scanner(m);
+            s.next();
+            if (s.compareTo(q) <= 0) {
+                res = m;
+                lb = m + 1;
+            } else {
+                ub = m - 1;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Get the position of the name of an element.
+     *
+     * @param table the position of the table of the elements
+     * @param nb    the number of elements in the table
+     * @param id    the element identifier
+     * @return the position of the name, {@code -1} if the element has no name
+     */
+    private int ordinal(int table, int nb, int id) {
+        int lb = 0;
+        int ub = nb - 1;
+        while (lb <= ub) {
+            int m = (lb + ub) >>> 1;
+            int x = buf.getInt(table + m * 8);
+            if (x < id) {
+                lb = m + 1;
+            } else if (x > id) {
+                ub = m - 1;
+            } else {
+                return buf.getInt(table + m * 8 + 4);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The service is read-only and can be shared, so the clone uses the same snapshot.
+     *
+     * @return a service backed by the same snapshot
+     */
+    @Override
+    public MappedNamingService clone() {
+        try {
+            return new MappedNamingService(buf);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Not supported, the service is read-only.
+     *
+     * @return {@code false}
+     */
+    @Override
+    public boolean substituteVM(VM curId, VM nextId) {
+        return false;
+    }
+
+    /**
+     * Get all the registered elements.
+     * The set is a read-only view over the snapshot.
+     *
+     * @return a set of elements. May be empty
+     */
+    @Override
+    public Set<Element> getRegisteredElements() {
+        return new AbstractSet<Element>() {
+            @Override
+            public Iterator<Element> iterator() {
+                return new Iterator<Element>() {
+                    private int i = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < nbVMs + nbNodes;
+                    }
+
+                    @Override
+                    public Element next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int k = i++;
+                        if (k < nbVMs) {
+                            return new VM(buf.getInt(vms + k * 8));
+                        }
+                        return new Node(buf.getInt(nodes + (k - nbVMs) * 8));
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return nbVMs + nbNodes;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (o instanceof VM) {
+                    return ordinal(vms, nbVMs, ((VM) o).id()) >= 0;
+                } else if (o instanceof Node) {
+                    return ordinal(nodes, nbNodes, ((Node) o).id()) >= 0;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NamingService)) {
+            return false;
+        }
+
+        NamingService that = (NamingService) o;
+        if (!getRegisteredElements().equals(that.getRegisteredElements())) {
+            return false;
+        }
+        for (Element e : getRegisteredElements()) {
+            String s = resolve(e);
+            if (!s.equals(that.resolve(e))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (Element e : getRegisteredElements()) {
+            h += e.hashCode() ^ resolve(e).hashCode();
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        for (Element e : getRegisteredElements()) {
+            if (b.length() > 0) {
+                b.append(", ");
+            }
+            b.append('<').append(e).append(" : ").append(resolve(e)).append('>');
+        }
+        return b.toString();
+    }
+
+    /**
+     * A name and its element, sorted by the bytes of the name.
+     */
+    private static class Named implements Comparable<Named> {
+
+        private final byte[] name;
+
+        private final Element element;
+
+        Named(byte[] n, Element e) {
+            this.name = n;
+            this.element = e;
+        }
+
+        @Override
+        public int compareTo(Named o) {
+            return compare(name, name.length, o.name);
+        }
+    }
+
+    /**
+     * Compare two names in the unsigned lexicographic order of their bytes.
+     *
+     * @param a   the first name
+     * @param len the length of the first name
+     * @param b   the second name
+     * @return a negative integer, zero, or a positive integer as the first name is lower than, equals to, or greater than the second
+     */
+    private static int compare(byte[] a, int len, byte[] b) {
+        int max = Math.min(len, b.length);
+        for (int i = 0; i < max; i++) {
+            int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return len - b.length;
+    }
+
+    /**
+     * Decode the names sequentially, from the beginning of a block.
+     * The current name is rebuilt in a reusable buffer.
+     */
+    private class Scanner {
+
+        private int pos;
+
+        private int ordinal;
+
+        private byte[] name = new byte[64];
+
+        private int len;
+
+        private long code;
+
+        Scanner(int b) {
+            ordinal = b * BLOCK_SIZE;
+            pos = b < nbBlocks ? buf.getInt(blocks + b * 4) : 0;
+        }
+
+        boolean hasNext() {
+            return ordinal < count;
+        }
+
+        void next() {
+            int shared = (int) varint();
+            int l = (int) varint();
+            len = shared + l;
+            if (len > name.length) {
+                name = Arrays.copyOf(name, Math.max(len, name.length * 2));
+            }
+            for (int i = 0; i < l; i++) {
+                name[shared + i] = buf.get(pos++);
+            }
+            code = varint();
+            ordinal++;
+        }
+
+        private long varint() {
+            long v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf.get(pos++);
+                v |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return v;
+        }
+
+        int compareTo(byte[] q) {
+            return compare(name, len, q);
+        }
+
+        boolean startsWith(byte[] q) {
+            if (len < q.length) {
+                return false;
+            }
+            for (int i = 0; i < q.length; i++) {
+                if (name[i] != q[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String name() {
+            return new String(name, 0, len, StandardCharsets.UTF_8);
+        }
+
+        BtrpElement element(String n) {
+            int id = (int) (code >>> 1);
+            if ((code & 1) != 0) {
+                return new BtrpElement(BtrpOperand.Type.node, n, new Node(id));
+            }
+            return new BtrpElement(BtrpOperand.Type.VM, n, new VM(id));
+        }
+    }
+}
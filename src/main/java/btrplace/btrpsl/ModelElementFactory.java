@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import btrplace.btrpsl.element.BtrpElement;
+import btrplace.model.Element;
+import btrplace.model.Model;
+import btrplace.model.Node;
+import btrplace.model.VM;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A factory that makes the elements declared in a script.
+ * A new VM is set ready while a new node is set offline.
+ *
+ * @author Fabien Hermenier
+ */
+public class ModelElementFactory implements ConcurrentNamingService.ElementFactory {
+
+    private final Model mo;
+
+    private final boolean vm;
+
+    private boolean created;
+
+    /**
+     * The positions of the elements made by the last bulk declaration.
+     */
+    private final BitSet made = new BitSet();
+
+    /**
+     * Make a new factory.
+     *
+     * @param m    the model to add the elements to
+     * @param isVM {@code true} to make VMs, {@code false} to make nodes
+     */
+    public ModelElementFactory(Model m, boolean isVM) {
+        this.mo = m;
+        this.vm = isVM;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The model is locked while the element is added, as several scripts
+     * may declare elements concurrently in a same model.
+     */
+    @Override
+    public Element make() {
+        synchronized (mo) {
+            if (vm) {
+                VM v = mo.newVM();
+                if (v != null) {
+                    mo.getMapping().addReadyVM(v);
+                    created = true;
+                }
+                return v;
+            }
+            Node n = mo.newNode();
+            if (n != null) {
+                mo.getMapping().addOfflineNode(n);
+                created = true;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Indicates if the factory made an element.
+     *
+     * @return {@code true} iff an element has been made
+     */
+    public boolean isCreated() {
+        return created;
+    }
+
+    /**
+     * Get the element associated to an identifier, or make and register a new one.
+     * The operation is atomic if the service is a {@link ConcurrentNamingService}.
+     *
+     * @param ns the naming service to use
+     * @param id the element identifier
+     * @return the element. {@code null} if there is no element and no element can be made
+     * @throws NamingServiceException if the new element cannot be registered
+     */
+    public BtrpElement declare(NamingService ns, String id) throws NamingServiceException {
+        if (ns instanceof ConcurrentNamingService) {
+            return ((ConcurrentNamingService) ns).registerIfAbsent(id, this);
+        }
+        BtrpElement el = ns.resolve(id);
+        if (el == null) {
+            Element e = make();
+            if (e != null) {
+                el = ns.register(id, e);
+            }
+        }
+        return el;
+    }
+
+    /**
+     * Indicates if the factory made the element at a given position
+     * during the last call to {@link #declare(NamingService, String, List)}.
+     *
+     * @param i the element position
+     * @return {@code true} iff the element has been made
+     */
+    public boolean isCreated(int i) {
+        return made.get(i);
+    }
+
+    /**
+     * Get the elements associated to names sharing a common prefix, and make and register
+     * the missing ones. If the service is a {@link BulkNamingService}, the missing elements
+     * are registered in one batch. Otherwise, they are declared one by one
+     * using {@link #declare(NamingService, String)}.
+     *
+     * @param ns       the naming service to use
+     * @param prefix   the prefix of every name
+     * @param suffixes the suffixes of the names. Expected to be distinct
+     * @return the elements, in the order of the suffixes. {@code null} for every element that cannot be made
+     * @throws NamingServiceException if the new elements cannot be registered. They are then removed from the mapping
+     */
+    public List<BtrpElement> declare(NamingService ns, String prefix, List<String> suffixes) throws NamingServiceException {
+        made.clear();
+        created = false;
+        if (!(ns instanceof BulkNamingService)) {
+            List<BtrpElement> res = new ArrayList<>(suffixes.size());
+            for (int i = 0; i < suffixes.size(); i++) {
+                created = false;
+                res.add(declare(ns, prefix + suffixes.get(i)));
+                made.set(i, created);
+            }
+            created = !made.isEmpty();
+            return res;
+        }
+        List<BtrpElement> res;
+        if (ns instanceof PrefixNamingService) {
+            res = new ArrayList<>(((PrefixNamingService) ns).resolve(prefix, suffixes));
+        } else {
+            res = new ArrayList<>(suffixes.size());
+            for (String s : suffixes) {
+                res.add(ns.resolve(prefix + s));
+            }
+        }
+        List<String> missing = new ArrayList<>();
+        List<Element> els = new ArrayList<>();
+        for (int i = 0; i < res.size(); i++) {
+            if (res.get(i) == null) {
+                Element e = make();
+                if (e != null) {
+                    made.set(i);
+                    missing.add(suffixes.get(i));
+                    els.add(e);
+                }
+            }
+        }
+        if (!els.isEmpty()) {
+            List<BtrpElement> news;
+            try {
+                news = ((BulkNamingService) ns).register(prefix, missing, els);
+            } catch (NamingServiceException ex) {
+                //The batch is rejected, the new elements are not kept in the model
+                for (Element e : els) {
+                    if (vm) {
+                        mo.getMapping().remove((VM) e);
+                    } else {
+                        mo.getMapping().remove((Node) e);
+                    }
+                }
+                made.clear();
+                throw ex;
+            }
+            int j = 0;
+            for (int i = made.nextSetBit(0); i >= 0; i = made.nextSetBit(i + 1)) {
+                res.set(i, news.get(j++));
+            }
+        }
+        created = !made.isEmpty();
+        return res;
+    }
+}
@@ -25,6 +25,10 @@ import java.util.Set;
 
 /**
  * A service to declare VMs and track their fully-qualified name
+ * <p>
+ * Two services are equal if they register the same elements under the same names,
+ * whatever their implementation. The hash code is then the sum, over the registered
+ * elements, of {@code e.hashCode() ^ resolve(e).hashCode()}.
  *
  * @author Fabien Hermenier
  */
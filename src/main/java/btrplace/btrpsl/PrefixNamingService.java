@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import btrplace.btrpsl.element.BtrpElement;
+
+import java.util.List;
+
+/**
+ * A naming service that indexes the names by their prefixes.
+ * This allows to select all the elements in a namespace or
+ * having a common naming pattern without iterating over all the registered elements.
+ *
+ * @author Fabien Hermenier
+ */
+public interface PrefixNamingService extends NamingService {
+
+    /**
+     * Get the elements having a name that starts with a given prefix.
+     * For example, {@code "clients.foo."} denotes the VMs in the namespace
+     * {@code clients.foo} and its sub-namespaces, while {@code "@rack12."} denotes
+     * the nodes of a rack.
+     *
+     * @param prefix the prefix. An empty string denotes all the elements
+     * @return the matching elements, sorted by name. May be empty
+     */
+    List<BtrpElement> resolveByPrefix(String prefix);
+
+    /**
+     * Resolve several names sharing a common prefix, such as the names
+     * generated by an enumeration. The prefix is looked up only once.
+     *
+     * @param prefix   the prefix of every name
+     * @param suffixes the suffixes of the names
+     * @return the elements, in the order of the suffixes. {@code null} for every unknown name
+     */
+    List<BtrpElement> resolve(String prefix, List<String> suffixes);
+}
@@ -17,8 +17,10 @@
 
 package btrplace.btrpsl;
 
+import btrplace.btrpsl.cache.EvaluationLog;
 import btrplace.btrpsl.element.BtrpElement;
 import btrplace.btrpsl.element.BtrpOperand;
+import btrplace.btrpsl.instrument.BuildReport;
 import btrplace.model.Node;
 import btrplace.model.VM;
 import btrplace.model.constraint.SatConstraint;
@@ -66,6 +68,16 @@ public class Script {
      */
     private Map<String, Set<String>> exportScopes;
 
+    /**
+     * The log of the evaluation. {@code null} if not recorded.
+     */
+    private EvaluationLog log;
+
+    /**
+     * The measurements made while building the script. {@code null} if not instrumented.
+     */
+    private BuildReport report;
+
     /**
      * Make a new script with a given identifier.
      */
@@ -310,6 +322,56 @@ public class Script {
         return this.dependencies;
     }
 
+    /**
+     * Get the log of the evaluation of the script.
+     *
+     * @return the log if recorded. {@code null} otherwise
+     */
+    public EvaluationLog getEvaluationLog() {
+        return log;
+    }
+
+    /**
+     * Set the log that records the evaluation of the script.
+     *
+     * @param l the log to use
+     */
+    public void setEvaluationLog(EvaluationLog l) {
+        this.log = l;
+    }
+
+    /**
+     * Record the exported operands into the evaluation log, if any.
+     * Exported sets such as {@code $me} may grow after their export,
+     * so they are recorded once the evaluation is complete.
+     */
+    void logExports() {
+        if (log != null) {
+            for (Map.Entry<String, BtrpOperand> e : exported.entrySet()) {
+                log.export(e.getKey(), e.getValue(), exportScopes.get(e.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Get the measurements made while building the script.
+     *
+     * @return the report if the builder was instrumented. {@code null} otherwise
+     * @see ScriptBuilder#setBuildListener(btrplace.btrpsl.instrument.BuildListener)
+     */
+    public BuildReport getBuildReport() {
+        return report;
+    }
+
+    /**
+     * Attach the measurements made while building the script.
+     *
+     * @param r the report
+     */
+    public void setBuildReport(BuildReport r) {
+        this.report = r;
+    }
+
     @Override
     public String toString() {
         StringBuilder buf = new StringBuilder();
@@ -17,43 +17,66 @@
 
 package btrplace.btrpsl;
 
+import btrplace.btrpsl.cache.EvaluationLog;
+import btrplace.btrpsl.cache.ScriptCache;
+import btrplace.btrpsl.cache.SnapshotStore;
+import btrplace.btrpsl.cache.SyntaxTreeCache;
 import btrplace.btrpsl.constraint.ConstraintsCatalog;
 import btrplace.btrpsl.constraint.DefaultConstraintsCatalog;
 import btrplace.btrpsl.includes.Includes;
 import btrplace.btrpsl.includes.PathBasedIncludes;
+import btrplace.btrpsl.instrument.BuildListener;
+import btrplace.btrpsl.instrument.BuildReport;
 import btrplace.btrpsl.template.MockTemplateFactory;
 import btrplace.btrpsl.template.TemplateFactory;
-import btrplace.btrpsl.tree.BtrPlaceTree;
-import btrplace.btrpsl.tree.BtrPlaceTreeAdaptor;
+import btrplace.btrpsl.tree.EvaluationContext;
+import btrplace.btrpsl.tree.SyntaxTree;
 import btrplace.model.Model;
-import org.antlr.runtime.*;
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CharStream;
+import org.antlr.runtime.RecognitionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Build scripts from textual descriptions.
- * For file based parsing, a LRU cache is used to prevent useless parsing. If the
+ * For file based parsing, a {@link ScriptCache} is used to prevent useless parsing. If the
  * last modification date of the script has not changed since its last parsing, the cached version
- * is returned.
+ * is returned. Otherwise, the cached version is still returned if the content of the script is unchanged.
+ * <p/>
+ * Optionally, a {@link SnapshotStore} keeps a binary snapshot of each built script
+ * to restore it without parsing nor evaluation after a restart.
  *
  * @author Fabien Hermenier
  */
 public class ScriptBuilder {
 
+    public static final int DEFAULT_CACHE_SIZE = 100;
+
+    private ScriptCache cache;
+
     /**
-     * The date of last modification for the file. The key is the hashcode of the file path.
+     * The optional store for the snapshots of the scripts.
      */
-    private Map<Integer, Long> dates;
+    private SnapshotStore snapshots;
 
-    public static final int DEFAULT_CACHE_SIZE = 100;
+    /**
+     * The optional cache for the parsed scripts.
+     */
+    private SyntaxTreeCache trees;
 
-    private Map<String, Script> cache;
+    /**
+     * The optional listener notified with the measurements of the builds.
+     */
+    private BuildListener listener;
 
     public static final Logger LOGGER = LoggerFactory.getLogger("ScriptBuilder");
 
@@ -85,8 +108,19 @@ public class ScriptBuilder {
      * Make a new builder.
      *
      * @param cacheSize the size of the cache
+     * @param mo        the model to rely on
      */
-    public ScriptBuilder(final int cacheSize, Model mo) {
+    public ScriptBuilder(int cacheSize, Model mo) {
+        this(new ScriptCache(cacheSize), mo);
+    }
+
+    /**
+     * Make a new builder that rely on a given cache.
+     *
+     * @param c  the cache to use
+     * @param mo the model to rely on
+     */
+    public ScriptBuilder(ScriptCache c, Model mo) {
 
         this.model = mo;
         namingService = (NamingService) mo.getView(NamingService.ID);
@@ -98,14 +132,26 @@ public class ScriptBuilder {
 
         catalog = DefaultConstraintsCatalog.newBundle();
         this.tpls = new MockTemplateFactory(mo);
-        this.dates = new HashMap<>();
         this.includes = new PathBasedIncludes(this);
-        this.cache = new LinkedHashMap<String, Script>() {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<String, Script> foo) {
-                return size() == cacheSize;
-            }
-        };
+        this.cache = c;
+    }
+
+    /**
+     * Get the cache used to store the scripts built from files.
+     *
+     * @return the current cache
+     */
+    public ScriptCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Set the cache used to store the scripts built from files.
+     *
+     * @param c the cache to use
+     */
+    public void setCache(ScriptCache c) {
+        this.cache = c;
     }
 
     /**
@@ -134,88 +180,466 @@ public class ScriptBuilder {
      * @throws ScriptBuilderException if an error occurred
      */
     public Script build(File f) throws ScriptBuilderException {
-        int k = f.getAbsolutePath().hashCode();
-        if (dates.containsKey(k) && dates.get(k) == f.lastModified() && cache.containsKey(f.getPath())) {
+        return build(prepare(f));
+    }
+
+    /**
+     * Build a script from a file.
+     *
+     * @param p the file to parse
+     * @return the resulting script
+     * @throws ScriptBuilderException if an error occurred
+     * @see #build(java.io.File)
+     */
+    public Script build(Path p) throws ScriptBuilderException {
+        return build(p.toFile());
+    }
+
+    /**
+     * Build a script from the UTF-8 content of a channel.
+     * The channel is read until its end but it is not closed.
+     *
+     * @param ch the channel to read
+     * @return the built script
+     * @throws ScriptBuilderException if an error occurred while reading or building the script
+     */
+    public Script build(ReadableByteChannel ch) throws ScriptBuilderException {
+        return build(prepare(ch));
+    }
+
+    /**
+     * Read and parse a script file, without evaluating it.
+     * The preparation only relies on the caches of the builder, not on its model nor
+     * on its naming service, so several scripts can be prepared concurrently.
+     * The script is then built using {@link #build(Prepared)}.
+     *
+     * @param f the file to parse
+     * @return the prepared script
+     * @throws ScriptBuilderException if an error occurred while reading or parsing the script
+     */
+    public Prepared prepare(File f) throws ScriptBuilderException {
+        Prepared p = new Prepared(f, newReport());
+        p.script = cache.get(f);
+        if (p.script != null) {
             LOGGER.debug("get '" + f.getName() + "' from the cache");
-            return cache.get(f.getPath());
-        } else {
-            LOGGER.debug(f.getName() + " is built from the file");
-            dates.put(k, f.lastModified());
-            String name = f.getName();
-            try {
-                Script v = build(new ANTLRFileStream(f.getAbsolutePath()));
-                if (!name.equals(v.getlocalName() + Script.EXTENSION)) {
-                    throw new ScriptBuilderException("Script '" + v.getlocalName()
-                            + "' must be declared in a file named '" + v.getlocalName() + Script.EXTENSION);
-                }
-                cache.put(f.getPath(), v);
-                return v;
-            } catch (IOException e) {
-                throw new ScriptBuilderException(e.getMessage(), e);
+            cacheLookup(p.report, BuildListener.SCRIPTS, true);
+            return p;
+        }
+        try {
+            p.lastModified = f.lastModified();
+            ByteBufferCharStream content = ByteBufferCharStream.open(f.toPath());
+            p.digest = ScriptCache.digest(content.getBytes());
+            p.script = cache.get(f, p.lastModified, p.digest);
+            cacheLookup(p.report, BuildListener.SCRIPTS, p.script != null);
+            if (p.script != null) {
+                LOGGER.debug("get '" + f.getName() + "' from the cache, content is unchanged");
+                return p;
             }
+            p.content = content;
+        } catch (IOException e) {
+            throw new ScriptBuilderException(e.getMessage(), e);
         }
+        return parse(p);
     }
 
     /**
-     * Build a script from a String.
+     * Read and parse the UTF-8 content of a channel, without evaluating it.
+     * The channel is read until its end but it is not closed.
      *
-     * @param description the description of the script
-     * @return the built script
-     * @throws ScriptBuilderException if an error occurred while building the script
+     * @param ch the channel to read
+     * @return the prepared script
+     * @throws ScriptBuilderException if an error occurred while reading or parsing the script
+     * @see #prepare(java.io.File)
      */
-    public Script build(String description) throws ScriptBuilderException {
-        return build(new ANTLRStringStream(description));
+    public Prepared prepare(ReadableByteChannel ch) throws ScriptBuilderException {
+        Prepared p = new Prepared(null, newReport());
+        try {
+            p.content = ByteBufferCharStream.read(ch, null);
+        } catch (IOException e) {
+            throw new ScriptBuilderException(e.getMessage(), e);
+        }
+        if (snapshots != null || trees != null) {
+            p.digest = ScriptCache.digest(((ByteBufferCharStream) p.content).getBytes());
+        }
+        return parse(p);
     }
 
     /**
-     * Internal method to check a script from a stream.
+     * Parse a prepared script, unless it will be restored from its snapshot.
      *
-     * @param cs the stream to analyze
-     * @return the built script
-     * @throws ScriptBuilderException in an error occurred while building the script
+     * @param p the prepared script
+     * @return {@code p}
+     * @throws ScriptBuilderException if an error occurred while parsing the script
      */
-    private Script build(CharStream cs) throws ScriptBuilderException {
+    private Prepared parse(Prepared p) throws ScriptBuilderException {
+        if (snapshots == null || !snapshots.contains(p.digest)) {
+            p.parsed = parse(p.digest, p.content, p.report);
+            p.content = null;
+        }
+        return p;
+    }
 
-        Script v = new Script();
+    /**
+     * Build a prepared script.
+     * The evaluation alters the model and the naming service of the builder,
+     * so the prepared scripts must be built sequentially.
+     *
+     * @param p the prepared script
+     * @return the built script
+     * @throws ScriptBuilderException if an error occurred while building the script
+     */
+    public Script build(Prepared p) throws ScriptBuilderException {
+        if (p.script != null) {
+            return p.file != null ? checkName(p.file, p.script) : p.script;
+        }
+        if (p.file != null) {
+            //The script may have been built through an import since its preparation
+            p.script = cache.get(p.file);
+            if (p.script != null) {
+                return checkName(p.file, p.script);
+            }
+            LOGGER.debug(p.file.getName() + " is built from the file");
+        }
+        Script v = restore(p.digest, includes, p.report);
+        if (v == null) {
+            SyntaxTree t = p.parsed;
+            if (t == null) {
+                t = parse(p.digest, p.content, p.report);
+            }
+            v = store(evaluate(t, p.digest, includes, p.report));
+        }
+        if (p.file != null) {
+            checkName(p.file, v);
+            cache.put(p.file, p.lastModified, p.digest, v);
+        }
+        return v;
+    }
 
-        ANTLRBtrplaceSL2Lexer lexer = new ANTLRBtrplaceSL2Lexer(cs);
+    /**
+     * Build several scripts, using a dedicated pool of threads.
+     *
+     * @param files the script files
+     * @return the built scripts and the errors
+     * @see #buildAll(java.util.Collection, java.util.concurrent.ExecutorService)
+     */
+    public BuildResult buildAll(Collection<File> files) {
+        ExecutorService exec = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return buildAll(files, exec);
+        } finally {
+            exec.shutdown();
+        }
+    }
 
-        ErrorReporter errorReporter = errBuilder.build(v);
+    /**
+     * Build several scripts.
+     * <p/>
+     * The import graph is first computed from the headers of the scripts
+     * (see {@link ScriptHeader}). Scripts involved in a cyclic import are
+     * reported before any evaluation. The scripts are read and parsed
+     * concurrently using the given executor, then evaluated by waves
+     * following a topological order of the graph. As the model and the naming service
+     * are shared, the evaluation of the scripts of a wave is sequential.
+     * <p/>
+     * An import is resolved using the given scripts first, then using the includes
+     * of the builder. A script that imports a script that cannot be built is not built.
+     *
+     * @param files the script files
+     * @param exec  the executor to read and parse the scripts
+     * @return the built scripts and the errors
+     */
+    public BuildResult buildAll(Collection<File> files, ExecutorService exec) {
+        BuildResult res = new BuildResult();
+        BuiltIncludes incs = new BuiltIncludes(includes);
+
+        //Pre-scan and parse
+        List<File> sorted = new ArrayList<>(files);
+        Collections.sort(sorted);
+        Map<File, Future<Unit>> futures = new LinkedHashMap<>();
+        for (File f : sorted) {
+            futures.put(f, exec.submit(new Preparation(f)));
+        }
+        Map<String, Unit> byId = new HashMap<>();
+        List<Unit> units = new ArrayList<>();
+        for (Map.Entry<File, Future<Unit>> e : futures.entrySet()) {
+            Unit u;
+            try {
+                u = e.getValue().get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                res.addError(e.getKey(), new ScriptBuilderException("Interrupted", ex));
+                continue;
+            } catch (ExecutionException ex) {
+                res.addError(e.getKey(), new ScriptBuilderException(ex.getCause().getMessage(), ex.getCause()));
+                continue;
+            }
+            if (u.error != null) {
+                res.addError(u.file, u.error);
+            } else if (byId.containsKey(u.header.getId())) {
+                res.addError(u.file, new ScriptBuilderException("Script '" + u.header.getId()
+                        + "' is already declared in '" + byId.get(u.header.getId()).file + "'"));
+            } else {
+                byId.put(u.header.getId(), u);
+                units.add(u);
+            }
+        }
 
-        lexer.setErrorReporter(errorReporter);
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        //The import graph
+        for (Unit u : units) {
+            for (String imp : u.header.getImports()) {
+                for (Unit o : units) {
+                    if (o != u && ScriptHeader.matches(imp, o.header) && !u.deps.contains(o)) {
+                        u.deps.add(o);
+                        o.dependents.add(u);
+                    }
+                }
+            }
+        }
 
-        ANTLRBtrplaceSL2Parser parser = new ANTLRBtrplaceSL2Parser(tokens);
-        parser.setErrorReporter(errorReporter);
+        //The waves, then the cycles
+        List<List<Unit>> waves = new ArrayList<>();
+        Map<Unit, Integer> pending = new HashMap<>();
+        List<Unit> wave = new ArrayList<>();
+        for (Unit u : units) {
+            pending.put(u, u.deps.size());
+            if (u.deps.isEmpty()) {
+                wave.add(u);
+            }
+        }
+        while (!wave.isEmpty()) {
+            waves.add(wave);
+            List<Unit> next = new ArrayList<>();
+            for (Unit u : wave) {
+                pending.remove(u);
+                for (Unit d : u.dependents) {
+                    int nb = pending.get(d) - 1;
+                    pending.put(d, nb);
+                    if (nb == 0) {
+                        next.add(d);
+                    }
+                }
+            }
+            wave = next;
+        }
+        for (Unit u : units) {
+            if (pending.containsKey(u)) {
+                u.error = cycleError(u, pending.keySet());
+                res.addError(u.file, u.error);
+            }
+        }
 
-        SymbolsTable t = new SymbolsTable();
+        //Evaluation
+        for (List<Unit> w : waves) {
+            for (Unit u : w) {
+                evaluate(u, incs);
+                if (u.error != null) {
+                    res.addError(u.file, u.error);
+                } else {
+                    incs.add(u.script);
+                    res.add(u.file, u.script);
+                }
+            }
+        }
+        return res;
+    }
 
-        parser.setTreeAdaptor(new BtrPlaceTreeAdaptor(v, model, namingService, tpls, errorReporter, t, includes, catalog));
+    /**
+     * Make the error for a script that cannot be built due to a cyclic import.
+     *
+     * @param u       the script
+     * @param blocked the scripts involved or depending on a cycle
+     * @return the error
+     */
+    private static ScriptBuilderException cycleError(Unit u, Set<Unit> blocked) {
+        //Each blocked script imports at least one blocked script, so we eventually loop
+        List<Unit> path = new ArrayList<>();
+        Unit cur = u;
+        while (!path.contains(cur)) {
+            path.add(cur);
+            for (Unit d : cur.deps) {
+                if (blocked.contains(d)) {
+                    cur = d;
+                    break;
+                }
+            }
+        }
+        List<Unit> cycle = path.subList(path.indexOf(cur), path.size());
+        StringBuilder b = new StringBuilder();
+        for (Unit c : cycle) {
+            b.append(c.header.getId()).append(" -> ");
+        }
+        b.append(cur.header.getId());
+        if (cycle.contains(u)) {
+            return new ScriptBuilderException("Cyclic import: " + b);
+        }
+        return new ScriptBuilderException("Script '" + u.header.getId()
+                + "' depends on a cyclic import: " + b);
+    }
 
+    /**
+     * Evaluate a prepared script once its dependencies have been evaluated.
+     *
+     * @param u    the script to evaluate
+     * @param incs the includes to resolve the imports
+     */
+    private void evaluate(Unit u, Includes incs) {
+        for (Unit d : u.deps) {
+            if (d.error != null) {
+                u.error = new ScriptBuilderException("Script '" + u.header.getId()
+                        + "' imports '" + d.header.getId() + "' that cannot be built");
+                return;
+            }
+        }
+        if (u.script != null) {
+            return;
+        }
         try {
-            BtrPlaceTree tree = (BtrPlaceTree) parser.script_decl().getTree();
-            //First pass, expand range
-            if (tree != null && tree.token != null) {
-                try {
-                    tree.go(tree); //Single instruction
-                } catch (UnsupportedOperationException e) {
-                    errorReporter.append(0, 0, e.getMessage());
-                }
-            } else {
-                for (int i = 0; i < tree.getChildCount(); i++) {
-                    try {
-                        tree.getChild(i).go(tree);
-                    } catch (UnsupportedOperationException e) {
-                        errorReporter.append(0, 0, e.getMessage());
-                    }
+            Script v = restore(u.digest, incs, u.report);
+            if (v == null) {
+                SyntaxTree t = u.parsed;
+                if (t == null) {
+                    t = parse(u.digest, u.content, u.report);
                 }
+                v = store(evaluate(t, u.digest, incs, u.report));
+            }
+            checkName(u.file, v);
+            cache.put(u.file, u.lastModified, u.digest, v);
+            u.script = v;
+        } catch (ScriptBuilderException ex) {
+            u.error = ex;
+        } finally {
+            u.parsed = null;
+            u.content = null;
+        }
+    }
+
+    /**
+     * Check a script is declared in a file having the appropriate name.
+     *
+     * @param f the file
+     * @param v the script declared in the file
+     * @return {@code v}
+     * @throws ScriptBuilderException if the file name does not match the script name
+     */
+    private static Script checkName(File f, Script v) throws ScriptBuilderException {
+        if (!f.getName().equals(v.getlocalName() + Script.EXTENSION)) {
+            throw new ScriptBuilderException("Script '" + v.getlocalName()
+                    + "' must be declared in a file named '" + v.getlocalName() + Script.EXTENSION);
+        }
+        return v;
+    }
+
+    /**
+     * Build a script from a String.
+     *
+     * @param description the description of the script
+     * @return the built script
+     * @throws ScriptBuilderException if an error occurred while building the script
+     */
+    public Script build(String description) throws ScriptBuilderException {
+        String digest = null;
+        if (snapshots != null || trees != null) {
+            digest = ScriptCache.digest(description.getBytes(StandardCharsets.UTF_8));
+        }
+        BuildReport rep = newReport();
+        Script v = restore(digest, includes, rep);
+        if (v == null) {
+            v = store(evaluate(parse(digest, new ANTLRStringStream(description), rep), digest, includes, rep));
+        }
+        return v;
+    }
+
+    /**
+     * Restore a script from its snapshot, if possible.
+     *
+     * @param digest the digest of the script source
+     * @param incs   the includes to retrieve the imported scripts
+     * @param rep    the report of the build. {@code null} if not instrumented
+     * @return the restored script, {@code null} if there is no snapshot store or no usable snapshot
+     * @throws ScriptBuilderException if an error occurred while restoring the script
+     */
+    private Script restore(String digest, Includes incs, BuildReport rep) throws ScriptBuilderException {
+        if (snapshots == null) {
+            return null;
+        }
+        Script v = snapshots.load(digest, this, incs);
+        cacheLookup(rep, BuildListener.SNAPSHOTS, v != null);
+        if (v != null) {
+            LOGGER.debug("'" + v.id() + "' restored from its snapshot");
+        }
+        return v;
+    }
+
+    /**
+     * Store the snapshot of a script if a snapshot store is set.
+     *
+     * @param v the built script
+     * @return {@code v}
+     */
+    private Script store(Script v) {
+        if (snapshots != null) {
+            try {
+                snapshots.store(v);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to store the snapshot of '" + v.id() + "': " + e.getMessage());
             }
+        }
+        return v;
+    }
+
+    /**
+     * Internal method to parse a script, or to get its tree from the cache.
+     *
+     * @param digest the digest of the script source. Only used if a cache of trees is set
+     * @param src    the script source
+     * @param rep    the report of the build. {@code null} if not instrumented
+     * @return the parsed script, to evaluate
+     * @throws ScriptBuilderException in an error occurred while parsing the script
+     */
+    private SyntaxTree parse(String digest, CharStream src, BuildReport rep) throws ScriptBuilderException {
+        SyntaxTree t = null;
+        if (trees != null) {
+            t = trees.get(digest);
+            cacheLookup(rep, BuildListener.TREES, t != null);
+        }
+        if (t != null) {
+            return t;
+        }
+        try {
+            t = SyntaxTree.parse(src, rep);
         } catch (RecognitionException e) {
             throw new ScriptBuilderException(e.getMessage(), e);
         }
+        if (trees != null) {
+            trees.put(digest, t);
+        }
+        return t;
+    }
+
+    /**
+     * Internal method to evaluate a parsed script.
+     *
+     * @param t      the parsed script
+     * @param digest the digest of the script source. Only used if a snapshot store is set
+     * @param incs   the includes to resolve the imports
+     * @param rep    the report of the build. {@code null} if not instrumented
+     * @return the built script
+     * @throws ScriptBuilderException in an error occurred while evaluating the script
+     */
+    private Script evaluate(SyntaxTree t, String digest, Includes incs, BuildReport rep) throws ScriptBuilderException {
+        Script v = new Script();
+        if (snapshots != null) {
+            v.setEvaluationLog(new EvaluationLog(digest));
+        }
+        v.setBuildReport(rep);
+        ErrorReporter errorReporter = errBuilder.build(v);
+        EvaluationContext ctx = new EvaluationContext(v, new SymbolsTable(), errorReporter, model, namingService, tpls, incs, catalog);
+        ctx.setBuildListener(rep);
+        t.evaluate(ctx);
         if (!errorReporter.getErrors().isEmpty()) {
             throw new ScriptBuilderException(errorReporter);
         }
+        v.logExports();
         return v;
     }
 
@@ -238,6 +662,98 @@ public class ScriptBuilder {
         this.errBuilder = b;
     }
 
+    /**
+     * Get the builder used to make the {@link ErrorReporter}.
+     *
+     * @return the current builder
+     */
+    public ErrorReporterBuilder getErrorReporterBuilder() {
+        return errBuilder;
+    }
+
+    /**
+     * Get the model the scripts are built against.
+     *
+     * @return the model provided at instantiation
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * Get the store used to keep the snapshots of the built scripts.
+     *
+     * @return the current store. {@code null} if the snapshots are disabled
+     */
+    public SnapshotStore getSnapshotStore() {
+        return snapshots;
+    }
+
+    /**
+     * Set the store used to keep the snapshots of the built scripts.
+     *
+     * @param s the store to use. {@code null} to disable the snapshots
+     */
+    public void setSnapshotStore(SnapshotStore s) {
+        this.snapshots = s;
+    }
+
+    /**
+     * Get the cache of parsed scripts.
+     *
+     * @return the current cache. {@code null} if the parsed scripts are not cached
+     */
+    public SyntaxTreeCache getSyntaxTreeCache() {
+        return trees;
+    }
+
+    /**
+     * Set the cache of parsed scripts.
+     * A cache can be shared among several builders to
+     * prevent the parsing of a script that is re-built against another model.
+     *
+     * @param c the cache to use. {@code null} to disable the caching of the parsed scripts
+     */
+    public void setSyntaxTreeCache(SyntaxTreeCache c) {
+        this.trees = c;
+    }
+
+    /**
+     * Get the listener notified with the measurements of the builds.
+     *
+     * @return the listener. {@code null} if the builds are not instrumented
+     */
+    public BuildListener getBuildListener() {
+        return listener;
+    }
+
+    /**
+     * Set the listener notified with the measurements of the builds.
+     * Once set, each built script has a {@link BuildReport} that forwards
+     * its measurements to the listener. The listener must be thread-safe
+     * to be used by {@link #buildAll(java.util.Collection, java.util.concurrent.ExecutorService)}.
+     *
+     * @param l the listener. {@code null} to disable the instrumentation
+     */
+    public void setBuildListener(BuildListener l) {
+        this.listener = l;
+    }
+
+    /**
+     * Make the report for a new build.
+     *
+     * @return the report. {@code null} if the builds are not instrumented
+     */
+    private BuildReport newReport() {
+        return listener == null ? null : new BuildReport(listener);
+    }
+
+    private static void cacheLookup(BuildListener l, String cache, boolean hit) {
+        if (l != null) {
+            l.cache(cache, hit);
+        }
+    }
+
     /**
      * Get the naming service that is used to create element.
      *
@@ -284,4 +800,137 @@ public class ScriptBuilder {
     public void setConstraintsCatalog(ConstraintsCatalog c) {
         this.catalog = c;
     }
+
+    /**
+     * A script that is read and parsed, but not evaluated yet.
+     *
+     * @see #prepare(java.io.File)
+     * @see #build(Prepared)
+     */
+    public static final class Prepared {
+
+        private final File file;
+
+        private final BuildReport report;
+
+        private long lastModified;
+
+        private String digest;
+
+        private CharStream content;
+
+        private SyntaxTree parsed;
+
+        private Script script;
+
+        private Prepared(File f, BuildReport r) {
+            this.file = f;
+            this.report = r;
+        }
+    }
+
+    /**
+     * The state of a script built by {@link #buildAll(java.util.Collection, java.util.concurrent.ExecutorService)}.
+     */
+    private static class Unit {
+
+        private final File file;
+
+        private long lastModified;
+
+        private String digest;
+
+        private ByteBufferCharStream content;
+
+        private ScriptHeader header;
+
+        private SyntaxTree parsed;
+
+        private BuildReport report;
+
+        private Script script;
+
+        private ScriptBuilderException error;
+
+        private final List<Unit> deps = new ArrayList<>();
+
+        private final List<Unit> dependents = new ArrayList<>();
+
+        Unit(File f) {
+            this.file = f;
+        }
+    }
+
+    /**
+     * Read, pre-scan and parse a script file.
+     */
+    private class Preparation implements Callable<Unit> {
+
+        private final Unit u;
+
+        Preparation(File f) {
+            this.u = new Unit(f);
+        }
+
+        @Override
+        public Unit call() {
+            try {
+                u.lastModified = u.file.lastModified();
+                u.content = ByteBufferCharStream.open(u.file.toPath());
+                u.digest = ScriptCache.digest(u.content.getBytes());
+                u.header = ScriptHeader.parse(u.content);
+                u.report = newReport();
+                u.script = cache.get(u.file, u.lastModified, u.digest);
+                cacheLookup(u.report, BuildListener.SCRIPTS, u.script != null);
+                if (u.script == null && (snapshots == null || !snapshots.contains(u.digest))) {
+                    u.parsed = parse(u.digest, u.content, u.report);
+                    u.content = null;
+                }
+            } catch (IOException e) {
+                u.error = new ScriptBuilderException(e.getMessage(), e);
+            } catch (ScriptBuilderException e) {
+                u.error = e;
+            }
+            return u;
+        }
+    }
+
+    /**
+     * Includes that resolve the scripts built so far first,
+     * then delegate to other includes.
+     */
+    private static class BuiltIncludes implements Includes {
+
+        private final Map<String, Script> built;
+
+        private final Includes fallback;
+
+        BuiltIncludes(Includes incs) {
+            this.built = new TreeMap<>();
+            this.fallback = incs;
+        }
+
+        void add(Script v) {
+            built.put(v.id(), v);
+        }
+
+        @Override
+        public List<Script> getScripts(String name) throws ScriptBuilderException {
+            List<Script> res = new ArrayList<>();
+            if (name.endsWith(".*")) {
+                String ns = name.substring(0, name.length() - 2);
+                for (Script v : built.values()) {
+                    if (v.getNamespace().equals(ns)) {
+                        res.add(v);
+                    }
+                }
+            } else if (built.containsKey(name)) {
+                res.add(built.get(name));
+            }
+            if (res.isEmpty() && fallback != null) {
+                return fallback.getScripts(name);
+            }
+            return res;
+        }
+    }
 }
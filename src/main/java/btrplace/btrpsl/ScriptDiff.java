@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import btrplace.model.Element;
+import btrplace.model.Node;
+import btrplace.model.VM;
+import btrplace.model.constraint.SatConstraint;
+
+import java.util.*;
+
+/**
+ * The differences between two builds of a same script.
+ * This allows to update a solver model with the added and the removed
+ * constraints and elements rather than to rebuild it.
+ * <p/>
+ * The constraints are identified by their {@code equals()} method, which does not depend
+ * on the ordering of their VMs and nodes, while the elements are identified by their identifier.
+ * The builds must then share their model and their naming service, as when a script is rebuilt
+ * using the same {@link ScriptBuilder}, so that the elements keep their identifier.
+ * <p/>
+ * Each constraint is hashed once, when it is looked up in the constraints of the other build.
+ * The added and the removed constraints are sorted in a canonical order, that only depends
+ * on their type, their continuity and the identifiers of their elements, so two diffs
+ * over the same changes report them in the same order.
+ *
+ * @author Fabien Hermenier
+ */
+public class ScriptDiff {
+
+    /**
+     * The canonical order of the constraints.
+     */
+    public static final Comparator<SatConstraint> CANONICAL_ORDER = new Comparator<SatConstraint>() {
+        @Override
+        public int compare(SatConstraint a, SatConstraint b) {
+            return new Key(a).compareTo(new Key(b));
+        }
+    };
+
+    private final List<SatConstraint> addedCstrs, removedCstrs, unchangedCstrs;
+
+    private final List<VM> addedVMs, removedVMs, unchangedVMs;
+
+    private final List<Node> addedNodes, removedNodes, unchangedNodes;
+
+    /**
+     * Compute the differences between two builds.
+     *
+     * @param prev the previous build. {@code null} to consider every element and every constraint as added
+     * @param next the new build
+     */
+    public ScriptDiff(Script prev, Script next) {
+        Set<SatConstraint> pc = prev != null ? prev.getConstraints() : Collections.<SatConstraint>emptySet();
+        Set<VM> pv = prev != null ? prev.getVMs() : Collections.<VM>emptySet();
+        Set<Node> pn = prev != null ? prev.getNodes() : Collections.<Node>emptySet();
+        addedCstrs = new ArrayList<>();
+        removedCstrs = new ArrayList<>();
+        unchangedCstrs = new ArrayList<>(Math.min(pc.size(), next.getConstraints().size()));
+        addedVMs = new ArrayList<>();
+        removedVMs = new ArrayList<>();
+        unchangedVMs = new ArrayList<>(Math.min(pv.size(), next.getVMs().size()));
+        addedNodes = new ArrayList<>();
+        removedNodes = new ArrayList<>();
+        unchangedNodes = new ArrayList<>(Math.min(pn.size(), next.getNodes().size()));
+
+        diff(pc, next.getConstraints(), addedCstrs, removedCstrs, unchangedCstrs);
+        diff(pv, next.getVMs(), addedVMs, removedVMs, unchangedVMs);
+        diff(pn, next.getNodes(), addedNodes, removedNodes, unchangedNodes);
+
+        sortConstraints(addedCstrs);
+        sortConstraints(removedCstrs);
+        sortElements(addedVMs);
+        sortElements(removedVMs);
+        sortElements(addedNodes);
+        sortElements(removedNodes);
+    }
+
+    /**
+     * Split the content of two sets.
+     * If a set is the other one, every value is unchanged.
+     *
+     * @param prev      the previous values
+     * @param next      the new values
+     * @param added     the values only in {@code next}
+     * @param removed   the values only in {@code prev}
+     * @param unchanged the values in both sets
+     * @param <T>       the type of value
+     */
+    private static <T> void diff(Set<T> prev, Set<T> next, List<T> added, List<T> removed, List<T> unchanged) {
+        if (prev == next) {
+            unchanged.addAll(next);
+            return;
+        }
+        for (T x : next) {
+            if (prev.contains(x)) {
+                unchanged.add(x);
+            } else {
+                added.add(x);
+            }
+        }
+        if (unchanged.size() == prev.size()) {
+            //Every previous value is still there
+            return;
+        }
+        for (T x : prev) {
+            if (!next.contains(x)) {
+                removed.add(x);
+            }
+        }
+    }
+
+    private static void sortConstraints(List<SatConstraint> l) {
+        if (l.size() < 2) {
+            return;
+        }
+        //The keys are computed once per constraint
+        Key[] keys = new Key[l.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new Key(l.get(i));
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < keys.length; i++) {
+            l.set(i, keys[i].cstr);
+        }
+    }
+
+    private static <E extends Element> void sortElements(List<E> l) {
+        Collections.sort(l, new Comparator<E>() {
+            @Override
+            public int compare(E a, E b) {
+                return Integer.compare(a.id(), b.id());
+            }
+        });
+    }
+
+    /**
+     * Get the constraints that are only in the new build.
+     *
+     * @return a list of constraints, in the canonical order
+     */
+    public List<SatConstraint> getAddedConstraints() {
+        return addedCstrs;
+    }
+
+    /**
+     * Get the constraints that are only in the previous build.
+     *
+     * @return a list of constraints, in the canonical order
+     */
+    public List<SatConstraint> getRemovedConstraints() {
+        return removedCstrs;
+    }
+
+    /**
+     * Get the constraints that are in both builds.
+     *
+     * @return a list of constraints, taken from the new build
+     */
+    public List<SatConstraint> getUnchangedConstraints() {
+        return unchangedCstrs;
+    }
+
+    /**
+     * Get the VMs that are only declared in the new build.
+     *
+     * @return a list of VMs, sorted by identifier
+     */
+    public List<VM> getAddedVMs() {
+        return addedVMs;
+    }
+
+    /**
+     * Get the VMs that are only declared in the previous build.
+     *
+     * @return a list of VMs, sorted by identifier
+     */
+    public List<VM> getRemovedVMs() {
+        return removedVMs;
+    }
+
+    /**
+     * Get the VMs that are declared in both builds.
+     *
+     * @return a list of VMs
+     */
+    public List<VM> getUnchangedVMs() {
+        return unchangedVMs;
+    }
+
+    /**
+     * Get the nodes that are only declared in the new build.
+     *
+     * @return a list of nodes, sorted by identifier
+     */
+    public List<Node> getAddedNodes() {
+        return addedNodes;
+    }
+
+    /**
+     * Get the nodes that are only declared in the previous build.
+     *
+     * @return a list of nodes, sorted by identifier
+     */
+    public List<Node> getRemovedNodes() {
+        return removedNodes;
+    }
+
+    /**
+     * Get the nodes that are declared in both builds.
+     *
+     * @return a list of nodes
+     */
+    public List<Node> getUnchangedNodes() {
+        return unchangedNodes;
+    }
+
+    /**
+     * Indicates if the builds are equivalent.
+     *
+     * @return {@code true} iff no constraint and no element was added or removed
+     */
+    public boolean isEmpty() {
+        return addedCstrs.isEmpty() && removedCstrs.isEmpty()
+                && addedVMs.isEmpty() && removedVMs.isEmpty()
+                && addedNodes.isEmpty() && removedNodes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append("constraints: +").append(addedCstrs.size()).append(" -").append(removedCstrs.size())
+                .append(" =").append(unchangedCstrs.size());
+        b.append(", VMs: +").append(addedVMs.size()).append(" -").append(removedVMs.size())
+                .append(" =").append(unchangedVMs.size());
+        b.append(", nodes: +").append(addedNodes.size()).append(" -").append(removedNodes.size())
+                .append(" =").append(unchangedNodes.size());
+        for (SatConstraint c : addedCstrs) {
+            b.append("\n+ ").append(c);
+        }
+        for (SatConstraint c : removedCstrs) {
+            b.append("\n- ").append(c);
+        }
+        return b.toString();
+    }
+
+    /**
+     * The canonical form of a constraint: its type, its continuity, and
+     * the sorted identifiers of its VMs and its nodes. The textual
+     * representation breaks the ties between constraints that only differ by their parameters.
+     */
+    private static class Key implements Comparable<Key> {
+
+        private final SatConstraint cstr;
+
+        private final int[] vms;
+
+        private final int[] nodes;
+
+        private String str;
+
+        Key(SatConstraint c) {
+            this.cstr = c;
+            this.vms = ids(c.getInvolvedVMs());
+            this.nodes = ids(c.getInvolvedNodes());
+        }
+
+        private static int[] ids(Collection<? extends Element> els) {
+            int[] res = new int[els.size()];
+            int i = 0;
+            for (Element e : els) {
+                res[i++] = e.id();
+            }
+            Arrays.sort(res);
+            return res;
+        }
+
+        private String str() {
+            if (str == null) {
+                str = cstr.toString();
+            }
+            return str;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            int c = cstr.getClass().getName().compareTo(o.cstr.getClass().getName());
+            if (c != 0) {
+                return c;
+            }
+            c = Boolean.compare(cstr.isContinuous(), o.cstr.isContinuous());
+            if (c != 0) {
+                return c;
+            }
+            c = compare(vms, o.vms);
+            if (c != 0) {
+                return c;
+            }
+            c = compare(nodes, o.nodes);
+            if (c != 0) {
+                return c;
+            }
+            return str().compareTo(o.str());
+        }
+
+        private static int compare(int[] a, int[] b) {
+            if (a.length != b.length) {
+                return Integer.compare(a.length, b.length);
+            }
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] != b[i]) {
+                    return Integer.compare(a[i], b[i]);
+                }
+            }
+            return 0;
+        }
+    }
+}
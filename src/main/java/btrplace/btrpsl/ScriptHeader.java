@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The header of a script: its identifier and the identifiers of the scripts it imports.
+ * <p/>
+ * The header is extracted using a cheap scan of the leading {@code namespace} and
+ * {@code import} statements, without lexing nor parsing the whole script.
+ *
+ * @author Fabien Hermenier
+ */
+public class ScriptHeader {
+
+    private final String id;
+
+    private final List<String> imports;
+
+    /**
+     * Make a new header.
+     *
+     * @param id      the script identifier
+     * @param imports the imported identifiers. May end with the '.*' wildcard
+     */
+    public ScriptHeader(String id, List<String> imports) {
+        this.id = id;
+        this.imports = Collections.unmodifiableList(imports);
+    }
+
+    /**
+     * Get the identifier of the script.
+     *
+     * @return a fully qualified name
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Get the namespace the script belongs to.
+     *
+     * @return the namespace, or an empty string
+     */
+    public String getNamespace() {
+        int idx = id.lastIndexOf('.');
+        return idx < 0 ? "" : id.substring(0, idx);
+    }
+
+    /**
+     * Get the identifiers of the imported scripts, in the declaration order.
+     *
+     * @return a list that may be empty
+     */
+    public List<String> getImports() {
+        return imports;
+    }
+
+    /**
+     * Check if an imported identifier designates a given script.
+     *
+     * @param imported the imported identifier, may end with the '.*' wildcard
+     * @param other    the header of the script that may be imported
+     * @return {@code true} iff {@code imported} designates {@code other}
+     */
+    public static boolean matches(String imported, ScriptHeader other) {
+        if (imported.endsWith(".*")) {
+            return other.getNamespace().equals(imported.substring(0, imported.length() - 2));
+        }
+        return imported.equals(other.getId());
+    }
+
+    /**
+     * Extract the header of a script.
+     *
+     * @param src the script source
+     * @return the header
+     * @throws ScriptBuilderException if the script does not start with a namespace declaration
+     */
+    public static ScriptHeader parse(CharSequence src) throws ScriptBuilderException {
+        Scanner s = new Scanner(src);
+        if (!"namespace".equals(s.next())) {
+            throw new ScriptBuilderException("Missing namespace declaration");
+        }
+        String id = s.next();
+        if (id == null || !";".equals(s.next())) {
+            throw new ScriptBuilderException("Malformed namespace declaration");
+        }
+        List<String> imports = new ArrayList<>();
+        while ("import".equals(s.next())) {
+            String i = s.next();
+            if (i == null || !";".equals(s.next())) {
+                throw new ScriptBuilderException("Malformed import declaration in '" + id + "'");
+            }
+            imports.add(i);
+        }
+        return new ScriptHeader(id, imports);
+    }
+
+    @Override
+    public String toString() {
+        return id + " " + imports;
+    }
+
+    /**
+     * A scanner that only distinguishes words and semicolons, and skips comments.
+     */
+    private static class Scanner {
+
+        private final CharSequence src;
+
+        private int pos;
+
+        Scanner(CharSequence s) {
+            this.src = s;
+        }
+
+        private boolean at(String s) {
+            if (pos + s.length() > src.length()) {
+                return false;
+            }
+            for (int i = 0; i < s.length(); i++) {
+                if (src.charAt(pos + i) != s.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void skip() {
+            while (pos < src.length()) {
+                if (Character.isWhitespace(src.charAt(pos))) {
+                    pos++;
+                } else if (at("//")) {
+                    while (pos < src.length() && src.charAt(pos) != '\n') {
+                        pos++;
+                    }
+                } else if (at("/*")) {
+                    pos += 2;
+                    while (pos < src.length() && !at("*/")) {
+                        pos++;
+                    }
+                    pos += 2;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Get the next word.
+         *
+         * @return the word, or {@code ";"}. {@code null} at the end of the source
+         */
+        String next() {
+            skip();
+            if (pos >= src.length()) {
+                return null;
+            }
+            if (src.charAt(pos) == ';') {
+                pos++;
+                return ";";
+            }
+            int from = pos;
+            while (pos < src.length() && src.charAt(pos) != ';'
+                    && !Character.isWhitespace(src.charAt(pos)) && !at("//") && !at("/*")) {
+                pos++;
+            }
+            return src.subSequence(from, pos).toString();
+        }
+    }
+}
@@ -19,9 +19,10 @@ package btrplace.btrpsl;
 
 import btrplace.btrpsl.element.BtrpOperand;
 
-import java.util.Hashtable;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A table of symbols to store variables in a script description.
@@ -30,6 +31,11 @@ import java.util.Map;
  * In addition, the table can be pushed or popped to simulate a context. Pushing a table
  * create a new context. When it is popped, every variable created after the last push are
  * automatically removed.
+ * <p/>
+ * Each label is bound to a slot, an integer that is stable for the lifetime of the table.
+ * The variables can then be accessed through their slot to avoid hashing their label, see {@link #slot(String)}.
+ * The variables created in a context are logged so popping the table only
+ * visits them. The table is not thread-safe.
  *
  * @author Fabien Hermenier
  */
@@ -38,18 +44,54 @@ public class SymbolsTable {
     public static final String ME = "$me";
 
     /**
-     * The declared variables.
+     * The level of the undeclared variables.
      */
-    private Map<String, BtrpOperand> type;
+    private static final int UNDECLARED = Integer.MIN_VALUE;
 
     /**
-     * The operating level of each variable.
+     * The level of the immutable variables.
      */
-    private Map<String, Integer> level;
+    private static final int IMMUTABLE = -1;
+
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    private final long id;
+
+    /**
+     * The slot of each label.
+     */
+    private Map<String, Integer> slots;
+
+    /**
+     * The label of each slot.
+     */
+    private String[] labels;
+
+    /**
+     * The content of each slot.
+     */
+    private BtrpOperand[] values;
+
+    /**
+     * The level each variable was created at.
+     * {@link #IMMUTABLE} for immutable variables, {@link #UNDECLARED} for the free slots.
+     */
+    private int[] levels;
+
+    /**
+     * The slots of the variables created at a non-zero level, in order of creation.
+     */
+    private int[] created;
+
+    private int nbCreated;
+
+    /**
+     * For each level, the number of created variables when the table was pushed.
+     */
+    private int[] marks;
 
     /**
      * The current context of the table.
-     * Every immutable variabls will have a negative context.
      */
     private int currentLevel = 0;
 
@@ -57,8 +99,48 @@ public class SymbolsTable {
      * Make a new table of symbols for a script.
      */
     public SymbolsTable() {
-        type = new Hashtable<>();
-        level = new Hashtable<>();
+        id = NEXT_ID.incrementAndGet();
+        slots = new HashMap<>();
+        labels = new String[16];
+        values = new BtrpOperand[16];
+        levels = new int[16];
+        created = new int[16];
+        marks = new int[4];
+    }
+
+    /**
+     * Get the identifier of the table.
+     * Two tables never share an identifier. This allows to cache the slots of a table
+     * without retaining it.
+     *
+     * @return a positive number
+     */
+    public long id() {
+        return id;
+    }
+
+    /**
+     * Get the slot of a label.
+     * The slot is allocated on the first call and does not depend on whether the variable is declared.
+     *
+     * @param label the label of the variable
+     * @return the slot, a positive integer
+     */
+    public int slot(String label) {
+        Integer s = slots.get(label);
+        if (s != null) {
+            return s;
+        }
+        int n = slots.size();
+        if (n == labels.length) {
+            labels = Arrays.copyOf(labels, n * 2);
+            values = Arrays.copyOf(values, n * 2);
+            levels = Arrays.copyOf(levels, n * 2);
+        }
+        labels[n] = label;
+        levels[n] = UNDECLARED;
+        slots.put(label, n);
+        return n;
     }
 
     /**
@@ -70,11 +152,12 @@ public class SymbolsTable {
      * @return {@code true} if the variable as been declared. {@code false} otherwise
      */
     public boolean declareImmutable(String label, BtrpOperand t) {
-        if (isDeclared(label)) {
+        int s = slot(label);
+        if (levels[s] != UNDECLARED) {
             return false;
         }
-        level.put(label, -1);
-        type.put(label, t);
+        levels[s] = IMMUTABLE;
+        values[s] = t;
         return true;
     }
 
@@ -85,11 +168,12 @@ public class SymbolsTable {
      * @return {@code true} if the symbol was present then removed. {@code false} otherwise
      */
     public boolean remove(String label) {
-        if (!isDeclared(label)) {
+        Integer s = slots.get(label);
+        if (s == null || levels[s] == UNDECLARED) {
             return false;
         }
-        level.remove(label);
-        type.remove(label);
+        levels[s] = UNDECLARED;
+        values[s] = null;
         return true;
     }
 
@@ -100,7 +184,18 @@ public class SymbolsTable {
      * @return {@code true} if the variable is immutable
      */
     public boolean isImmutable(String label) {
-        return (isDeclared(label) && level.get(label) < 0);
+        Integer s = slots.get(label);
+        return s != null && isImmutable(s);
+    }
+
+    /**
+     * Check if the variable of a slot is immutable.
+     *
+     * @param slot the slot of the variable
+     * @return {@code true} if the variable is immutable
+     */
+    public boolean isImmutable(int slot) {
+        return levels[slot] == IMMUTABLE;
     }
 
     /**
@@ -112,13 +207,32 @@ public class SymbolsTable {
      * @return {@code true} if the declaration succeeds, {@code false} otherwise
      */
     public final boolean declare(String label, BtrpOperand t) {
-        if (isDeclared(label) && level.get(label) < 0) { //Disallow immutable value
+        return declare(slot(label), t);
+    }
+
+    /**
+     * Declare a new variable using its slot.
+     *
+     * @param slot the slot of the variable
+     * @param t    the content of the variable
+     * @return {@code true} if the declaration succeeds, {@code false} otherwise
+     * @see #declare(String, btrplace.btrpsl.element.BtrpOperand)
+     */
+    public final boolean declare(int slot, BtrpOperand t) {
+        int l = levels[slot];
+        if (l == IMMUTABLE) { //Disallow immutable value
             return false;
         }
-        if (!isDeclared(label)) {
-            level.put(label, currentLevel);
+        if (l == UNDECLARED) {
+            levels[slot] = currentLevel;
+            if (currentLevel > 0) {
+                if (nbCreated == created.length) {
+                    created = Arrays.copyOf(created, nbCreated * 2);
+                }
+                created[nbCreated++] = slot;
+            }
         }
-        type.put(label, t);
+        values[slot] = t;
         return true;
     }
 
@@ -129,7 +243,18 @@ public class SymbolsTable {
      * @return the content of the variable if exists. {@code null} otherwise
      */
     public BtrpOperand getSymbol(String label) {
-        return type.get(label);
+        Integer s = slots.get(label);
+        return s == null ? null : values[s];
+    }
+
+    /**
+     * Get the content of a variable using its slot.
+     *
+     * @param slot the slot of the variable
+     * @return the content of the variable if exists. {@code null} otherwise
+     */
+    public BtrpOperand getSymbol(int slot) {
+        return values[slot];
     }
 
     /**
@@ -139,7 +264,18 @@ public class SymbolsTable {
      * @return {@code true} if the variable is already declared, {@code false} otherwise
      */
     public boolean isDeclared(String label) {
-        return type.containsKey(label);
+        Integer s = slots.get(label);
+        return s != null && isDeclared(s);
+    }
+
+    /**
+     * Check wether the variable of a slot is declared.
+     *
+     * @param slot the slot of the variable
+     * @return {@code true} if the variable is already declared, {@code false} otherwise
+     */
+    public boolean isDeclared(int slot) {
+        return levels[slot] != UNDECLARED;
     }
 
     /**
@@ -150,13 +286,14 @@ public class SymbolsTable {
     @Override
     public String toString() {
         StringBuilder b = new StringBuilder();
-        for (Iterator<Map.Entry<String, BtrpOperand>> ite = type.entrySet().iterator(); ite.hasNext(); ) {
-            Map.Entry<String, BtrpOperand> e = ite.next();
-            b.append(e.getKey());
-            b.append(": ");
-            b.append(e.getValue());
-            if (ite.hasNext()) {
-                b.append("\n");
+        for (int i = 0; i < slots.size(); i++) {
+            if (levels[i] != UNDECLARED) {
+                if (b.length() > 0) {
+                    b.append("\n");
+                }
+                b.append(labels[i]);
+                b.append(": ");
+                b.append(values[i]);
             }
         }
         return b.toString();
@@ -167,7 +304,10 @@ public class SymbolsTable {
      * Every variables in the table are saved
      */
     public void pushTable() {
-        currentLevel++;
+        if (currentLevel == marks.length) {
+            marks = Arrays.copyOf(marks, currentLevel * 2);
+        }
+        marks[currentLevel++] = nbCreated;
     }
 
     /**
@@ -179,15 +319,16 @@ public class SymbolsTable {
      */
     public boolean popTable() {
         if (currentLevel > 0) {
-            //Remove all the variable having a level equals to currentLevel;
-            for (Iterator<Map.Entry<String, Integer>> ite = level.entrySet().iterator(); ite.hasNext(); ) {
-                Map.Entry<String, Integer> e = ite.next();
-                if (e.getValue() == currentLevel) {
-                    ite.remove();
-                    level.remove(e.getKey());
-                    type.remove(e.getKey());
+            //Remove all the variable created at the current level
+            int from = marks[currentLevel - 1];
+            for (int i = from; i < nbCreated; i++) {
+                int s = created[i];
+                if (levels[s] == currentLevel) {
+                    levels[s] = UNDECLARED;
+                    values[s] = null;
                 }
             }
+            nbCreated = from;
             currentLevel--;
             return true;
         }
@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import btrplace.btrpsl.element.BtrpElement;
+import btrplace.btrpsl.element.BtrpOperand;
+import btrplace.model.Element;
+import btrplace.model.Node;
+import btrplace.model.VM;
+
+import java.util.*;
+
+/**
+ * Non-persistent implementation of a {@link PrefixNamingService}.
+ * The elements are indexed by their names using a radix trie.
+ *
+ * @author Fabien Hermenier
+ */
+public class TrieNamingService implements PrefixNamingService {
+
+    private TrieNode root;
+
+    private Map<Element, String> rev;
+
+    private int size;
+
+    /**
+     * Make a new service.
+     */
+    public TrieNamingService() {
+        root = new TrieNode("", null);
+        rev = new HashMap<>();
+    }
+
+    @Override
+    public String getIdentifier() {
+        return NamingService.ID;
+    }
+
+    @Override
+    public BtrpElement register(String id, Element e) throws NamingServiceException {
+        if (resolve(id) != null) {
+            throw new NamingServiceException(id, " Name already registered");
+        }
+
+        BtrpElement be;
+        //Naming consistency
+        if (e instanceof Node) {
+            if (!id.startsWith("@")) {
+                throw new NamingServiceException(id, "Node labels must start with a '@'");
+            }
+            be = new BtrpElement(BtrpOperand.Type.node, id, e);
+        } else if (e instanceof VM) {
+            be = new BtrpElement(BtrpOperand.Type.VM, id, e);
+        } else {
+            throw new NamingServiceException(id, "Unsupported type of element " + e.getClass().getSimpleName());
+        }
+        put(id, be);
+        rev.put(e, id);
+        return be;
+    }
+
+    @Override
+    public String resolve(Element el) {
+        return rev.get(el);
+    }
+
+    @Override
+    public BtrpElement resolve(String n) {
+        TrieNode t = locate(root, "", n);
+        return t == null ? null : t.value;
+    }
+
+    @Override
+    public List<BtrpElement> resolveByPrefix(String prefix) {
+        List<BtrpElement> res = new ArrayList<>();
+        TrieNode n = root;
+        int i = 0;
+        while (i < prefix.length()) {
+            TrieNode c = n.child(prefix.charAt(i));
+            if (c == null) {
+                return res;
+            }
+            int rem = prefix.length() - i;
+            if (rem <= c.label.length()) {
+                //The prefix ends on this edge
+                if (c.label.regionMatches(0, prefix, i, rem)) {
+                    collect(c, res);
+                }
+                return res;
+            }
+            if (!prefix.startsWith(c.label, i)) {
+                return res;
+            }
+            i += c.label.length();
+            n = c;
+        }
+        collect(n, res);
+        return res;
+    }
+
+    @Override
+    public List<BtrpElement> resolve(String prefix, List<String> suffixes) {
+        List<BtrpElement> res = new ArrayList<>(suffixes.size());
+        //Go to the deepest node that is entirely covered by the prefix
+        TrieNode anchor = root;
+        int i = 0;
+        while (anchor != null && i < prefix.length()) {
+            TrieNode c = anchor.child(prefix.charAt(i));
+            if (c == null || c.label.length() > prefix.length() - i) {
+                break;
+            }
+            if (!prefix.startsWith(c.label, i)) {
+                anchor = null;
+            } else {
+                i += c.label.length();
+                anchor = c;
+            }
+        }
+        String rest = prefix.substring(i);
+        for (String s : suffixes) {
+            TrieNode t = anchor == null ? null : locate(anchor, rest, s);
+            res.add(t == null ? null : t.value);
+        }
+        return res;
+    }
+
+    /**
+     * Get the number of registered names.
+     *
+     * @return a positive integer
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Look for the node associated to a key, starting from a given node.
+     * The key is the concatenation of two strings to prevent its allocation.
+     *
+     * @param from the node to start from
+     * @param a    the beginning of the key
+     * @param b    the end of the key
+     * @return the node if exists. {@code null} otherwise
+     */
+    private static TrieNode locate(TrieNode from, String a, String b) {
+        int len = a.length() + b.length();
+        TrieNode n = from;
+        int i = 0;
+        while (i < len) {
+            TrieNode c = n.child(i < a.length() ? a.charAt(i) : b.charAt(i - a.length()));
+            if (c == null || c.label.length() > len - i) {
+                return null;
+            }
+            for (int k = 0; k < c.label.length(); k++, i++) {
+                char x = i < a.length() ? a.charAt(i) : b.charAt(i - a.length());
+                if (x != c.label.charAt(k)) {
+                    return null;
+                }
+            }
+            n = c;
+        }
+        return n;
+    }
+
+    private void put(String key, BtrpElement v) {
+        TrieNode n = root;
+        int i = 0;
+        while (i < key.length()) {
+            TrieNode c = n.child(key.charAt(i));
+            if (c == null) {
+                n.add(new TrieNode(key.substring(i), v));
+                size++;
+                return;
+            }
+            int common = 0;
+            int max = Math.min(c.label.length(), key.length() - i);
+            while (common < max && c.label.charAt(common) == key.charAt(i + common)) {
+                common++;
+            }
+            if (common < c.label.length()) {
+                //Split the edge
+                TrieNode mid = new TrieNode(c.label.substring(0, common), null);
+                n.replace(mid);
+                c.label = c.label.substring(common);
+                mid.add(c);
+                c = mid;
+            }
+            i += common;
+            n = c;
+        }
+        if (n.value == null) {
+            size++;
+        }
+        n.value = v;
+    }
+
+    private static void collect(TrieNode n, List<BtrpElement> res) {
+        if (n.value != null) {
+            res.add(n.value);
+        }
+        for (int i = 0; i < n.nbChildren; i++) {
+            collect(n.children[i], res);
+        }
+    }
+
+    @Override
+    public TrieNamingService clone() {
+        TrieNamingService cpy = new TrieNamingService();
+        cpy.root = root.copy();
+        cpy.rev.putAll(rev);
+        cpy.size = size;
+        return cpy;
+    }
+
+    @Override
+    public boolean substituteVM(VM curId, VM nextId) {
+        String fqn = rev.get(curId);
+        if (fqn != null) {
+            rev.put(nextId, fqn);
+            put(fqn, new BtrpElement(BtrpOperand.Type.VM, fqn, nextId));
+        }
+        return true;
+    }
+
+    @Override
+    public Set<Element> getRegisteredElements() {
+        return rev.keySet();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NamingService)) {
+            return false;
+        }
+
+        NamingService that = (NamingService) o;
+        if (!getRegisteredElements().equals(that.getRegisteredElements())) {
+            return false;
+        }
+        for (Element e : getRegisteredElements()) {
+            String s = resolve(e);
+            if (!s.equals(that.resolve(e))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (Map.Entry<Element, String> e : rev.entrySet()) {
+            h += e.getKey().hashCode() ^ e.getValue().hashCode();
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        for (Map.Entry<Element, String> e : rev.entrySet()) {
+            if (b.length() > 0) {
+                b.append(", ");
+            }
+            b.append('<').append(e.getKey()).append(" : ").append(e.getValue()).append('>');
+        }
+        return b.toString();
+    }
+
+    /**
+     * A node of the trie.
+     * The children are sorted by the first character of their label.
+     */
+    private static class TrieNode {
+
+        private static final TrieNode[] EMPTY = new TrieNode[0];
+
+        /**
+         * The label of the edge from the parent.
+         */
+        private String label;
+
+        private BtrpElement value;
+
+        private TrieNode[] children = EMPTY;
+
+        private int nbChildren;
+
+        TrieNode(String l, BtrpElement v) {
+            this.label = l;
+            this.value = v;
+        }
+
+        private int indexOf(char c) {
+            int lb = 0;
+            int ub = nbChildren - 1;
+            while (lb <= ub) {
+                int mid = (lb + ub) >>> 1;
+                char x = children[mid].label.charAt(0);
+                if (x < c) {
+                    lb = mid + 1;
+                } else if (x > c) {
+                    ub = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(lb + 1);
+        }
+
+        TrieNode child(char c) {
+            int i = indexOf(c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        void add(TrieNode n) {
+            int i = -(indexOf(n.label.charAt(0)) + 1);
+            if (nbChildren == children.length) {
+                children = Arrays.copyOf(children, Math.max(2, nbChildren * 2));
+            }
+            System.arraycopy(children, i, children, i + 1, nbChildren - i);
+            children[i] = n;
+            nbChildren++;
+        }
+
+        /**
+         * Replace the child having the same first character.
+         *
+         * @param n the new child
+         */
+        void replace(TrieNode n) {
+            children[indexOf(n.label.charAt(0))] = n;
+        }
+
+        TrieNode copy() {
+            TrieNode cpy = new TrieNode(label, value);
+            cpy.children = new TrieNode[nbChildren];
+            for (int i = 0; i < nbChildren; i++) {
+                cpy.children[i] = children[i].copy();
+            }
+            cpy.nbChildren = nbChildren;
+            return cpy;
+        }
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.cache;
+
+import btrplace.btrpsl.ErrorReporter;
+import btrplace.btrpsl.ModelElementFactory;
+import btrplace.btrpsl.NamingService;
+import btrplace.btrpsl.NamingServiceException;
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.constraint.ConstraintsCatalog;
+import btrplace.btrpsl.constraint.SatConstraintBuilder;
+import btrplace.btrpsl.element.*;
+import btrplace.btrpsl.template.ElementBuilderException;
+import btrplace.btrpsl.template.TemplateFactory;
+import btrplace.btrpsl.tree.BtrPlaceTree;
+import btrplace.model.Model;
+import btrplace.model.constraint.SatConstraint;
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The log of the evaluation of a script.
+ * <p/>
+ * The log records, in order, the statements that altered the script
+ * or the model: the elements declared from templates, the constraints
+ * with their evaluated parameters, and the exported operands.
+ * Replaying the log against a model and a naming service restores
+ * the script without lexing, parsing, nor evaluating its source.
+ * <p/>
+ * The log is stored in a compact binary form where each string
+ * is written only once.
+ *
+ * @author Fabien Hermenier
+ */
+public class EvaluationLog {
+
+    private static final byte ELEMENT = 1;
+
+    private static final byte CONSTRAINT = 2;
+
+    private static final byte EXPORT = 3;
+
+    private static final byte NUMBER = 1;
+
+    private static final byte REAL = 2;
+
+    private static final byte STRING = 3;
+
+    private static final byte REFERENCE = 4;
+
+    private static final byte SET = 5;
+
+    private final String digest;
+
+    private final ByteArrayOutputStream bytes;
+
+    private final DataOutputStream out;
+
+    /**
+     * The index of the strings already written.
+     */
+    private final Map<String, Integer> strings;
+
+    /**
+     * {@code false} once a statement could not be recorded.
+     */
+    private boolean complete;
+
+    /**
+     * Make a new empty log.
+     *
+     * @param d the digest of the script source
+     */
+    public EvaluationLog(String d) {
+        this.digest = d;
+        this.bytes = new ByteArrayOutputStream();
+        this.out = new DataOutputStream(bytes);
+        this.strings = new HashMap<>();
+        this.complete = true;
+    }
+
+    /**
+     * Make a log from an existing content.
+     * The log must not be altered afterwards.
+     *
+     * @param d       the digest of the script source
+     * @param content the binary form of the log
+     */
+    EvaluationLog(String d, byte[] content) {
+        this(d);
+        bytes.write(content, 0, content.length);
+    }
+
+    /**
+     * Get the digest of the script source.
+     *
+     * @return a digest computed using {@link ScriptCache#digest(byte[])}
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Record the declaration of an element from a template.
+     *
+     * @param el      the declared element
+     * @param tplName the template name
+     * @param opts    the template options
+     */
+    public void element(BtrpElement el, String tplName, Map<String, String> opts) {
+        try {
+            out.writeByte(ELEMENT);
+            out.writeBoolean(el.type() == BtrpOperand.Type.VM);
+            writeString(el.getName());
+            writeString(tplName);
+            writeVarInt(opts.size());
+            for (Map.Entry<String, String> e : opts.entrySet()) {
+                writeString(e.getKey());
+                writeNullableString(e.getValue());
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Indicates whether every statement has been recorded.
+     * An incomplete log cannot restore its script.
+     *
+     * @return {@code false} if a statement was skipped as one of its operands cannot be recorded
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Record the declaration of a constraint.
+     * The log becomes incomplete if a parameter cannot be recorded.
+     *
+     * @param name     the constraint identifier
+     * @param discrete {@code true} for a discrete restriction
+     * @param params   the evaluated parameters
+     */
+    public void constraint(String name, boolean discrete, List<BtrpOperand> params) {
+        for (BtrpOperand op : params) {
+            if (!isRecordable(op)) {
+                complete = false;
+                return;
+            }
+        }
+        try {
+            out.writeByte(CONSTRAINT);
+            writeString(name);
+            out.writeBoolean(discrete);
+            writeVarInt(params.size());
+            for (BtrpOperand op : params) {
+                writeOperand(op);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Record the export of an operand.
+     * The log becomes incomplete if the operand cannot be recorded.
+     *
+     * @param name   the exported name
+     * @param op     the exported operand
+     * @param scopes the scopes of the export
+     */
+    public void export(String name, BtrpOperand op, Set<String> scopes) {
+        if (!isRecordable(op)) {
+            complete = false;
+            return;
+        }
+        try {
+            out.writeByte(EXPORT);
+            writeString(name);
+            writeOperand(op);
+            writeVarInt(scopes.size());
+            for (String s : scopes) {
+                writeString(s);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Get the recorded statements.
+     *
+     * @return the binary form of the log
+     */
+    public byte[] toByteArray() {
+        return bytes.toByteArray();
+    }
+
+    private static boolean isRecordable(BtrpOperand op) {
+        if (op instanceof BtrpSet) {
+            for (BtrpOperand o : ((BtrpSet) op).getValues()) {
+                if (!isRecordable(o)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return op instanceof BtrpNumber || op instanceof BtrpString || op instanceof BtrpElement;
+    }
+
+    private void writeOperand(BtrpOperand op) throws IOException {
+        if (op instanceof BtrpNumber) {
+            BtrpNumber n = (BtrpNumber) op;
+            if (n.isInteger()) {
+                out.writeByte(NUMBER);
+                out.writeInt(n.getIntValue());
+                out.writeByte(n.getBase().ordinal());
+            } else {
+                out.writeByte(REAL);
+                out.writeDouble(n.getDoubleValue());
+            }
+        } else if (op instanceof BtrpString) {
+            out.writeByte(STRING);
+            writeString(op.toString());
+        } else if (op instanceof BtrpElement) {
+            out.writeByte(REFERENCE);
+            out.writeBoolean(op.type() == BtrpOperand.Type.VM);
+            writeString(((BtrpElement) op).getName());
+        } else if (op instanceof BtrpSet) {
+            BtrpSet s = (BtrpSet) op;
+            out.writeByte(SET);
+            writeVarInt(s.degree());
+            out.writeByte(s.type().ordinal());
+            writeVarInt(s.size());
+            for (BtrpOperand o : s.getValues()) {
+                writeOperand(o);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported operand '" + op + "'");
+        }
+        writeNullableString(op.label());
+    }
+
+    private void writeString(String s) throws IOException {
+        Integer idx = strings.get(s);
+        if (idx != null) {
+            writeVarInt(idx + 1);
+        } else {
+            writeVarInt(0);
+            out.writeUTF(s);
+            strings.put(s, strings.size());
+        }
+    }
+
+    private void writeNullableString(String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            writeString(s);
+        }
+    }
+
+    private void writeVarInt(int v) throws IOException {
+        int x = v;
+        while ((x & ~0x7f) != 0) {
+            out.writeByte((x & 0x7f) | 0x80);
+            x >>>= 7;
+        }
+        out.writeByte(x);
+    }
+
+    /**
+     * Replay a log to restore a script.
+     * The elements are resolved or created using the same rules than
+     * a template assignment.
+     *
+     * @param log  the binary form of the log
+     * @param v    the script to restore
+     * @param mo   the model to alter
+     * @param ns   the naming service to alter
+     * @param tpls the template factory
+     * @param cat  the catalog of constraints
+     * @param errs the reporter to append the errors to
+     * @return {@code false} if the log cannot be replayed faithfully with the current constraints,
+     * for example when a restriction is no longer supported. The script must then be fully built
+     * @throws IOException if the log is corrupted
+     */
+    public static boolean replay(byte[] log, Script v, Model mo, NamingService ns, TemplateFactory tpls,
+                                 ConstraintsCatalog cat, ErrorReporter errs) throws IOException {
+        return new Replay(log, v, mo, ns, tpls, cat, errs).run();
+    }
+
+    /**
+     * The replay of a log.
+     */
+    private static class Replay {
+
+        private final DataInputStream in;
+
+        private final List<String> strings = new ArrayList<>();
+
+        private final Script script;
+
+        private final Model mo;
+
+        private final NamingService ns;
+
+        private final TemplateFactory tpls;
+
+        private final ConstraintsCatalog catalog;
+
+        private final ErrorReporter errs;
+
+        Replay(byte[] log, Script v, Model m, NamingService n, TemplateFactory t,
+               ConstraintsCatalog c, ErrorReporter e) {
+            this.in = new DataInputStream(new ByteArrayInputStream(log));
+            this.script = v;
+            this.mo = m;
+            this.ns = n;
+            this.tpls = t;
+            this.catalog = c;
+            this.errs = e;
+        }
+
+        boolean run() throws IOException {
+            int op;
+            while ((op = in.read()) != -1) {
+                switch (op) {
+                    case ELEMENT:
+                        replayElement();
+                        break;
+                    case CONSTRAINT:
+                        if (!replayConstraint()) {
+                            return false;
+                        }
+                        break;
+                    case EXPORT:
+                        replayExport();
+                        break;
+                    default:
+                        throw new IOException("Unknown statement '" + op + "'");
+                }
+            }
+            return true;
+        }
+
+        private void replayElement() throws IOException {
+            boolean isVM = in.readBoolean();
+            String id = readString();
+            String tplName = readString();
+            int nb = readVarInt();
+            Map<String, String> opts = new HashMap<>(nb);
+            for (int i = 0; i < nb; i++) {
+                opts.put(readString(), readNullableString());
+            }
+            try {
+                BtrpElement el = new ModelElementFactory(mo, isVM).declare(ns, id);
+                if (el == null) {
+                    errs.append(0, 0, "No UUID to create '" + id + "'");
+                    return;
+                }
+                tpls.check(script, tplName, el.getElement(), opts);
+                if (!script.add(el)) {
+                    errs.append(0, 0, "'" + id + "' already created");
+                }
+            } catch (ElementBuilderException | NamingServiceException ex) {
+                errs.append(0, 0, ex.getMessage());
+            }
+        }
+
+        /**
+         * Replay the declaration of a constraint.
+         *
+         * @return {@code false} if the constraint no longer supports the recorded restriction
+         * @throws IOException if the log is corrupted
+         */
+        private boolean replayConstraint() throws IOException {
+            String name = readString();
+            boolean discrete = in.readBoolean();
+            int nb = readVarInt();
+            List<BtrpOperand> params = new ArrayList<>(nb);
+            for (int i = 0; i < nb; i++) {
+                params.add(readOperand());
+            }
+            SatConstraintBuilder b = catalog == null ? null : catalog.getConstraint(name);
+            if (b == null) {
+                errs.append(0, 0, "Unknown constraint '" + name + "'");
+                return true;
+            }
+            Token t = new CommonToken(0, name);
+            for (SatConstraint c : b.buildConstraint(new BtrPlaceTree(t, errs), params)) {
+                if (c != null) {
+                    if (discrete) {
+                        if (!c.setContinuous(false)) {
+                            return false;
+                        }
+                    } else {
+                        c.setContinuous(true);
+                    }
+                    script.addConstraint(c);
+                }
+            }
+            return true;
+        }
+
+        private void replayExport() throws IOException {
+            String name = readString();
+            BtrpOperand op = readOperand();
+            int nb = readVarInt();
+            Set<String> scopes = new HashSet<>(nb);
+            for (int i = 0; i < nb; i++) {
+                scopes.add(readString());
+            }
+            script.addExportable(name, op, scopes);
+        }
+
+        private BtrpOperand readOperand() throws IOException {
+            DefaultBtrpOperand op;
+            int tag = in.readByte();
+            switch (tag) {
+                case NUMBER:
+                    int val = in.readInt();
+                    op = new BtrpNumber(val, BtrpNumber.Base.values()[in.readByte()]);
+                    break;
+                case REAL:
+                    op = new BtrpNumber(in.readDouble());
+                    break;
+                case STRING:
+                    op = new BtrpString(readString());
+                    break;
+                case REFERENCE:
+                    boolean isVM = in.readBoolean();
+                    String id = readString();
+                    BtrpElement el = ns.resolve(id);
+                    if (el == null) {
+                        errs.append(0, 0, "Unknown " + (isVM ? "VM" : "node") + " '" + id + "'");
+                        op = new BtrpElement(isVM ? BtrpOperand.Type.VM : BtrpOperand.Type.node, id, null);
+                    } else {
+                        op = el.clone();
+                    }
+                    break;
+                case SET:
+                    int degree = readVarInt();
+                    BtrpOperand.Type ty = BtrpOperand.Type.values()[in.readByte()];
+                    int nb = readVarInt();
+                    BtrpSet s = new BtrpSet(degree, ty);
+                    for (int i = 0; i < nb; i++) {
+                        s.getValues().add(readOperand());
+                    }
+                    op = s;
+                    break;
+                default:
+                    throw new IOException("Unknown operand '" + tag + "'");
+            }
+            String lbl = readNullableString();
+            if (lbl != null) {
+                op.setLabel(lbl);
+            }
+            return op;
+        }
+
+        private String readString() throws IOException {
+            int idx = readVarInt();
+            if (idx == 0) {
+                String s = in.readUTF();
+                strings.add(s);
+                return s;
+            }
+            if (idx > strings.size()) {
+                throw new IOException("Unknown string reference '" + idx + "'");
+            }
+            return strings.get(idx - 1);
+        }
+
+        private String readNullableString() throws IOException {
+            return in.readBoolean() ? readString() : null;
+        }
+
+        private int readVarInt() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = in.readByte();
+                v |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new IOException("Malformed variable-length integer");
+        }
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.cache;
+
+import btrplace.btrpsl.Script;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * A bounded cache of built scripts.
+ * <p/>
+ * Scripts are indexed by the digest of their source. For file-based scripts,
+ * the last modification date of the file is only used as a fast pre-check:
+ * if it has changed, the caller computes the digest of the new content
+ * and the cached script is still returned when the content is unchanged.
+ * <p/>
+ * The cache is bounded both by a number of scripts and by a weight, the weight
+ * of a script being its number of VMs and constraints (see {@link #weight(Script)}).
+ * When a bound is exceeded, scripts are evicted according to a {@link Policy}.
+ * <p/>
+ * All the methods are thread-safe.
+ *
+ * @author Fabien Hermenier
+ */
+public class ScriptCache {
+
+    /**
+     * The available eviction policies.
+     */
+    public static enum Policy {
+        /**
+         * Evict the least recently used script.
+         */
+        LRU,
+        /**
+         * Evict the least frequently used script.
+         * Ties are broken by evicting the least recently used one.
+         */
+        LFU
+    }
+
+    /**
+     * The algorithm used to compute the digests.
+     */
+    public static final String DIGEST_ALGORITHM = "SHA-1";
+
+    private static final char[] HEXA = "0123456789abcdef".toCharArray();
+
+    /**
+     * The cached entries, indexed by digest. The map is access-ordered
+     * so the eldest entry is the least recently used.
+     */
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * The freshness stamps, indexed by absolute file path.
+     */
+    private final Map<String, Stamp> stamps;
+
+    private final Policy policy;
+
+    private final int maxEntries;
+
+    private final long maxWeight;
+
+    private long weight;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * Make a new LRU cache bounded by a number of scripts only.
+     *
+     * @param size the maximum number of scripts to keep
+     */
+    public ScriptCache(int size) {
+        this(size, Long.MAX_VALUE, Policy.LRU);
+    }
+
+    /**
+     * Make a new cache.
+     *
+     * @param size the maximum number of scripts to keep
+     * @param w    the maximum cumulated weight of the cached scripts
+     * @param p    the eviction policy
+     */
+    public ScriptCache(int size, long w, Policy p) {
+        if (size < 0 || w < 0) {
+            throw new IllegalArgumentException("The bounds of the cache must be positive");
+        }
+        this.maxEntries = size;
+        this.maxWeight = w;
+        this.policy = p;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.stamps = new HashMap<>();
+    }
+
+    /**
+     * Get the script associated to a file if the file was not modified
+     * since it has been cached.
+     * No miss is reported when the file looks modified as the
+     * caller is expected to check the content using {@link #get(File, long, String)}.
+     *
+     * @param f the script file
+     * @return the cached script if the modification date is unchanged. {@code null} otherwise
+     */
+    public synchronized Script get(File f) {
+        Stamp s = stamps.get(f.getAbsolutePath());
+        if (s == null || s.lastModified != f.lastModified()) {
+            return null;
+        }
+        Entry e = entries.get(s.digest);
+        if (e == null) {
+            return null;
+        }
+        hit(e);
+        return e.script;
+    }
+
+    /**
+     * Get the script associated to a file content.
+     * On success, the modification date of the file is refreshed
+     * so the next lookup can be solved using {@link #get(File)}.
+     *
+     * @param f            the script file
+     * @param lastModified the modification date of the file when its content was read
+     * @param digest       the digest of the file content
+     * @return the cached script if exists. {@code null} otherwise
+     */
+    public synchronized Script get(File f, long lastModified, String digest) {
+        Script s = get(digest);
+        if (s != null) {
+            stamp(f, lastModified, digest);
+        }
+        return s;
+    }
+
+    /**
+     * Get the script associated to a content.
+     *
+     * @param digest the digest of the content
+     * @return the cached script if exists. {@code null} otherwise
+     */
+    public synchronized Script get(String digest) {
+        Entry e = entries.get(digest);
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hit(e);
+        return e.script;
+    }
+
+    /**
+     * Cache a script built from a file.
+     *
+     * @param f            the script file
+     * @param lastModified the modification date of the file when its content was read
+     * @param digest       the digest of the file content
+     * @param s            the built script
+     */
+    public synchronized void put(File f, long lastModified, String digest, Script s) {
+        put(digest, s);
+        if (entries.containsKey(digest)) {
+            stamp(f, lastModified, digest);
+        }
+    }
+
+    /**
+     * Cache a script.
+     * The script is not retained if its weight exceeds the weight bound.
+     *
+     * @param digest the digest of the script source
+     * @param s      the built script
+     */
+    public synchronized void put(String digest, Script s) {
+        Entry e = new Entry(s);
+        Entry old = entries.put(digest, e);
+        if (old != null) {
+            weight -= old.weight;
+            e.paths.addAll(old.paths);
+        }
+        weight += e.weight;
+        while (!entries.isEmpty() && (entries.size() > maxEntries || weight > maxWeight)) {
+            evict(victim(digest));
+        }
+    }
+
+    /**
+     * Remove the script associated to a file.
+     *
+     * @param f the script file
+     * @return {@code true} iff a script was removed
+     */
+    public synchronized boolean invalidate(File f) {
+        Stamp s = stamps.remove(f.getAbsolutePath());
+        if (s == null) {
+            return false;
+        }
+        Entry e = entries.remove(s.digest);
+        if (e == null) {
+            return false;
+        }
+        weight -= e.weight;
+        for (String p : e.paths) {
+            stamps.remove(p);
+        }
+        return true;
+    }
+
+    /**
+     * Remove all the cached scripts.
+     * The statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        stamps.clear();
+        weight = 0;
+    }
+
+    /**
+     * Get the number of cached scripts.
+     *
+     * @return a positive integer
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the cumulated weight of the cached scripts.
+     *
+     * @return a positive number
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Get the number of successful lookups.
+     *
+     * @return a positive number
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of unsuccessful lookups.
+     *
+     * @return a positive number
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of scripts evicted to satisfy the bounds.
+     *
+     * @return a positive number
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Get the eviction policy.
+     *
+     * @return the policy provided at instantiation
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Get the weight of a script.
+     *
+     * @param s the script
+     * @return {@code 1} plus the number of VMs and constraints in the script
+     */
+    public static long weight(Script s) {
+        return 1L + s.getVMs().size() + s.getConstraints().size();
+    }
+
+    /**
+     * Compute the digest of a content.
+     *
+     * @param content the content
+     * @return the digest, as an hexadecimal string
+     */
+    public static String digest(byte[] content) {
+        return toHexa(newDigest().digest(content));
+    }
+
+    /**
+     * Compute the digest of a content, without copying it.
+     *
+     * @param content the content, from the position to the limit of the buffer.
+     *                The position of the buffer is not modified
+     * @return the digest, as an hexadecimal string
+     */
+    public static String digest(ByteBuffer content) {
+        MessageDigest d = newDigest();
+        d.update(content.duplicate());
+        return toHexa(d.digest());
+    }
+
+    /**
+     * Make a new {@link MessageDigest} using {@link #DIGEST_ALGORITHM}.
+     *
+     * @return a fresh digest
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            //Every Java platform must support SHA-1
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Hexadecimal representation of a digest.
+     *
+     * @param bytes the digest
+     * @return a String of {@code 2 * bytes.length} characters
+     */
+    public static String toHexa(byte[] bytes) {
+        char[] buf = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            buf[2 * i] = HEXA[(bytes[i] >> 4) & 0xf];
+            buf[2 * i + 1] = HEXA[bytes[i] & 0xf];
+        }
+        return new String(buf);
+    }
+
+    private void hit(Entry e) {
+        e.frequency++;
+        hits++;
+    }
+
+    private void stamp(File f, long lastModified, String digest) {
+        String p = f.getAbsolutePath();
+        Stamp old = stamps.put(p, new Stamp(lastModified, digest));
+        if (old != null && !old.digest.equals(digest)) {
+            Entry prev = entries.get(old.digest);
+            if (prev != null) {
+                prev.paths.remove(p);
+            }
+        }
+        entries.get(digest).paths.add(p);
+    }
+
+    /**
+     * Select the entry to evict.
+     * With LFU, the newcomer is evicted last as it did not have a chance to be used yet.
+     *
+     * @param newcomer the digest of the entry that has just been inserted
+     * @return the digest of the entry to evict
+     */
+    private String victim(String newcomer) {
+        Iterator<Map.Entry<String, Entry>> ite = entries.entrySet().iterator();
+        Map.Entry<String, Entry> v = ite.next();
+        if (policy == Policy.LFU) {
+            while (ite.hasNext()) {
+                Map.Entry<String, Entry> e = ite.next();
+                if (v.getKey().equals(newcomer)
+                        || (!e.getKey().equals(newcomer) && e.getValue().frequency < v.getValue().frequency)) {
+                    v = e;
+                }
+            }
+        }
+        return v.getKey();
+    }
+
+    private void evict(String digest) {
+        Entry e = entries.remove(digest);
+        weight -= e.weight;
+        for (String p : e.paths) {
+            stamps.remove(p);
+        }
+        evictions++;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "scripts: " + entries.size() + ", weight: " + weight + ", hits: " + hits
+                + ", misses: " + misses + ", evictions: " + evictions;
+    }
+
+    /**
+     * A cached script.
+     */
+    private static class Entry {
+
+        private final Script script;
+
+        private final long weight;
+
+        private long frequency;
+
+        /**
+         * The files having this script as a content.
+         */
+        private final Set<String> paths;
+
+        Entry(Script s) {
+            this.script = s;
+            this.weight = weight(s);
+            this.paths = new HashSet<>();
+        }
+    }
+
+    /**
+     * The state of a file when it was cached.
+     */
+    private static class Stamp {
+
+        private final long lastModified;
+
+        private final String digest;
+
+        Stamp(long lm, String d) {
+            this.lastModified = lm;
+            this.digest = d;
+        }
+    }
+}
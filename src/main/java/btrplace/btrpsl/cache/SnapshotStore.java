@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.cache;
+
+import btrplace.btrpsl.ErrorReporter;
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.ScriptBuilderException;
+import btrplace.btrpsl.includes.Includes;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A directory storing binary snapshots of built scripts, to survive restarts.
+ * <p/>
+ * A snapshot is indexed by the digest of the script source. It contains
+ * the identifier of the script, the identifier and the source digest of each
+ * imported script, and the {@link EvaluationLog} of the script.
+ * A snapshot is used only if every imported script currently has the
+ * recorded digest. In that case, the script is restored by replaying its log
+ * so lexing, parsing, and evaluation are skipped.
+ *
+ * @author Fabien Hermenier
+ */
+public class SnapshotStore {
+
+    /**
+     * The extension of the snapshot files.
+     */
+    public static final String EXTENSION = ".snap";
+
+    private static final int MAGIC = 0x42545250;
+
+    private static final int VERSION = 1;
+
+    private final File root;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Make a new store.
+     *
+     * @param dir the directory storing the snapshots. Created if needed
+     */
+    public SnapshotStore(File dir) {
+        this.root = dir;
+    }
+
+    /**
+     * Get the directory storing the snapshots.
+     *
+     * @return the directory provided at instantiation
+     */
+    public File getDirectory() {
+        return root;
+    }
+
+    /**
+     * Write the snapshot of a script.
+     * Nothing is written if the script or one of its dependencies
+     * does not have a complete {@link EvaluationLog}.
+     *
+     * @param v the script to store
+     * @return {@code true} iff the snapshot has been written
+     * @throws IOException if an error occurred while writing the snapshot
+     */
+    public boolean store(Script v) throws IOException {
+        EvaluationLog log = v.getEvaluationLog();
+        if (log == null || !log.isComplete()) {
+            return false;
+        }
+        for (Script dep : v.getDependencies()) {
+            if (dep.getEvaluationLog() == null || !dep.getEvaluationLog().isComplete()) {
+                return false;
+            }
+        }
+        if (!root.isDirectory() && !root.mkdirs()) {
+            throw new IOException("Unable to create directory '" + root + "'");
+        }
+        File tmp = File.createTempFile(log.getDigest(), ".tmp", root);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(v.id());
+                out.writeInt(v.getDependencies().size());
+                for (Script dep : v.getDependencies()) {
+                    out.writeUTF(dep.id());
+                    out.writeUTF(dep.getEvaluationLog().getDigest());
+                }
+                byte[] b = log.toByteArray();
+                out.writeInt(b.length);
+                out.write(b);
+            }
+            Files.move(tmp.toPath(), file(log.getDigest()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+        return true;
+    }
+
+    /**
+     * Check if a snapshot exists for a given digest.
+     * The snapshot may be outdated.
+     *
+     * @param digest the digest of the script source
+     * @return {@code true} iff a snapshot exists
+     */
+    public boolean contains(String digest) {
+        return file(digest).isFile();
+    }
+
+    /**
+     * Restore a script from its snapshot.
+     * The imported scripts are retrieved using the includes of the builder.
+     *
+     * @param digest the digest of the script source
+     * @param b      the builder providing the model, the naming service, the
+     *               template factory, the constraints catalog and the includes
+     * @return the restored script. {@code null} if there is no snapshot, if it is outdated or
+     * if it cannot be replayed with the current constraints
+     * @throws ScriptBuilderException if an error occurred while replaying the snapshot
+     */
+    public Script load(String digest, ScriptBuilder b) throws ScriptBuilderException {
+        return load(digest, b, b.getIncludes());
+    }
+
+    /**
+     * Restore a script from its snapshot.
+     *
+     * @param digest the digest of the script source
+     * @param b      the builder providing the model, the naming service, the
+     *               template factory and the constraints catalog
+     * @param incs   the includes to retrieve the imported scripts
+     * @return the restored script. {@code null} if there is no snapshot, if it is outdated or
+     * if it cannot be replayed with the current constraints
+     * @throws ScriptBuilderException if an error occurred while replaying the snapshot
+     */
+    public Script load(String digest, ScriptBuilder b, Includes incs) throws ScriptBuilderException {
+        File f = file(digest);
+        if (!f.isFile()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        Script v = new Script();
+        byte[] log;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                ScriptBuilder.LOGGER.debug("Ignoring snapshot '" + f + "': unsupported format");
+                misses.incrementAndGet();
+                return null;
+            }
+            v.setFullyQualifiedName(in.readUTF());
+            int nb = in.readInt();
+            List<Script> deps = new ArrayList<>(nb);
+            for (int i = 0; i < nb; i++) {
+                Script dep = dependency(incs, in.readUTF(), in.readUTF());
+                if (dep == null) {
+                    misses.incrementAndGet();
+                    return null;
+                }
+                deps.add(dep);
+            }
+            v.getDependencies().addAll(deps);
+            log = new byte[in.readInt()];
+            in.readFully(log);
+        } catch (IOException e) {
+            ScriptBuilder.LOGGER.debug("Ignoring snapshot '" + f + "': " + e.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+
+        ErrorReporter errs = b.getErrorReporterBuilder().build(v);
+        v.setEvaluationLog(new EvaluationLog(digest, log));
+        try {
+            if (!EvaluationLog.replay(log, v, b.getModel(), b.getNamingService(), b.getTemplateFactory(),
+                    b.getConstraintsCatalog(), errs)) {
+                //A full build reports the errors as usual
+                ScriptBuilder.LOGGER.debug("Ignoring snapshot '" + f + "': not supported by the current constraints");
+                misses.incrementAndGet();
+                return null;
+            }
+        } catch (IOException e) {
+            throw new ScriptBuilderException("Corrupted snapshot '" + f + "': " + e.getMessage(), e);
+        }
+        if (!errs.getErrors().isEmpty()) {
+            throw new ScriptBuilderException(errs);
+        }
+        hits.incrementAndGet();
+        return v;
+    }
+
+    /**
+     * Get an imported script if its source has the expected digest.
+     *
+     * @return the script. {@code null} if the script cannot be retrieved or has a different digest
+     */
+    private static Script dependency(Includes incs, String id, String digest) {
+        try {
+            for (Script s : incs.getScripts(id)) {
+                if (s.id().equals(id)) {
+                    EvaluationLog l = s.getEvaluationLog();
+                    return l != null && l.getDigest().equals(digest) ? s : null;
+                }
+            }
+        } catch (ScriptBuilderException e) {
+            //A full build will report the error
+            ScriptBuilder.LOGGER.debug("Unable to get script '" + id + "': " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Remove all the snapshots.
+     *
+     * @throws IOException if a snapshot cannot be deleted
+     */
+    public void clear() throws IOException {
+        File[] files = root.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.getName().endsWith(EXTENSION)) {
+                    Files.delete(f.toPath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of scripts restored from a snapshot.
+     *
+     * @return a positive number
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of scripts without usable snapshot.
+     *
+     * @return a positive number
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private File file(String digest) {
+        return new File(root, digest + EXTENSION);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.cache;
+
+import btrplace.btrpsl.tree.SyntaxTree;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A LRU cache of parsed scripts, indexed by the digest of their source.
+ * <p/>
+ * The cache can be shared among several {@link btrplace.btrpsl.ScriptBuilder}
+ * so a script re-built against a new model is evaluated from its cached
+ * tree, without being lexed nor parsed again.
+ * All the methods are thread-safe.
+ *
+ * @author Fabien Hermenier
+ */
+public class SyntaxTreeCache {
+
+    private final Map<String, SyntaxTree> trees;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * Make a new cache.
+     *
+     * @param size the maximum number of trees to keep
+     */
+    public SyntaxTreeCache(final int size) {
+        trees = new LinkedHashMap<String, SyntaxTree>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SyntaxTree> e) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Get the tree associated to a source.
+     *
+     * @param digest the digest of the source
+     * @return the tree if it is cached. {@code null} otherwise
+     */
+    public synchronized SyntaxTree get(String digest) {
+        SyntaxTree t = trees.get(digest);
+        if (t == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return t;
+    }
+
+    /**
+     * Cache a tree.
+     *
+     * @param digest the digest of the source
+     * @param t      the parsed source
+     */
+    public synchronized void put(String digest, SyntaxTree t) {
+        trees.put(digest, t);
+    }
+
+    /**
+     * Remove all the cached trees.
+     */
+    public synchronized void clear() {
+        trees.clear();
+    }
+
+    /**
+     * Get the number of cached trees.
+     *
+     * @return a positive integer
+     */
+    public synchronized int size() {
+        return trees.size();
+    }
+
+    /**
+     * Get the number of successful lookups.
+     *
+     * @return a positive number
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of unsuccessful lookups.
+     *
+     * @return a positive number
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
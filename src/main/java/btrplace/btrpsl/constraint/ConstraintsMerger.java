@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.constraint;
+
+import btrplace.btrpsl.Script;
+import btrplace.model.Node;
+import btrplace.model.VM;
+import btrplace.model.constraint.*;
+
+import java.util.*;
+
+/**
+ * An optional pass over the constraints of several built scripts to remove
+ * the redundant ones before solving. Many scripts state the same restrictions,
+ * each being a distinct constraint to propagate.
+ * <p/>
+ * The constraints are compared using their {@code equals()} method, which
+ * does not depend on the ordering of their VMs and nodes. The pass then:
+ * <ul>
+ * <li>removes the duplicates, for example the {@link Running} constraints
+ * stated by several scripts for a same VM;</li>
+ * <li>unions the nodes of the {@link Ban} constraints on a same VM;</li>
+ * <li>intersects the nodes of the {@link Fence} constraints on a same VM. The fences
+ * are not merged if there is no node in common, to let the solver report the conflict;</li>
+ * <li>removes the {@link ResourceCapacity} and {@link RunningCapacity} constraints
+ * that are implied by another one over the same resource: a capacity of {@code a} on nodes
+ * {@code S} is implied by a capacity of {@code b <= a} on nodes {@code T} that include {@code S}.</li>
+ * </ul>
+ * Constraints are only merged if they have the same continuity, except for the subsumption
+ * where a continuous constraint implies a discrete one.
+ *
+ * @author Fabien Hermenier
+ */
+public class ConstraintsMerger {
+
+    /**
+     * Merge the constraints of several scripts.
+     *
+     * @param scripts the scripts
+     * @return the report of the merge
+     */
+    public MergeReport merge(Collection<Script> scripts) {
+        List<SatConstraint> cstrs = new ArrayList<>();
+        for (Script s : scripts) {
+            cstrs.addAll(s.getConstraints());
+        }
+        return mergeConstraints(cstrs);
+    }
+
+    /**
+     * Merge constraints.
+     *
+     * @param cstrs the constraints to merge
+     * @return the report of the merge
+     */
+    public MergeReport mergeConstraints(Collection<? extends SatConstraint> cstrs) {
+        List<Group> groups = new ArrayList<>();
+        Map<SatConstraint, Group> seen = new HashMap<>();
+        Map<VM, Group> bans = new HashMap<>();
+        Map<VM, Group> fences = new HashMap<>();
+        for (SatConstraint c : cstrs) {
+            Group g = seen.get(c);
+            if (g != null) {
+                g.add(c, MergeReport.Kind.duplicate);
+                continue;
+            }
+            if (c.getClass() == Ban.class) {
+                g = merge(bans, c, false, groups);
+            } else if (c.getClass() == Fence.class) {
+                g = merge(fences, c, true, groups);
+            } else {
+                g = new Group(c);
+                groups.add(g);
+            }
+            seen.put(c, g);
+        }
+        subsume(groups);
+
+        MergeReport r = new MergeReport(cstrs.size());
+        for (Group g : groups) {
+            if (g.removed) {
+                continue;
+            }
+            r.add(g.result);
+            if (g.kind != null) {
+                r.add(g.kind, g.sources, g.result);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Merge a ban or a fence with the previous one on the same VM, if possible.
+     *
+     * @param prev      the group of the previous constraints, per VM
+     * @param c         the constraint
+     * @param intersect {@code true} to intersect the nodes, {@code false} to union them
+     * @param groups    the groups, to add the constraint to if it is not merged
+     * @return the group of the constraint
+     */
+    private static Group merge(Map<VM, Group> prev, SatConstraint c, boolean intersect, List<Group> groups) {
+        VM v = c.getInvolvedVMs().size() == 1 ? c.getInvolvedVMs().iterator().next() : null;
+        Group g = v != null ? prev.get(v) : null;
+        Set<Node> ns = null;
+        if (g != null && g.result.isContinuous() == c.isContinuous()) {
+            ns = new HashSet<>(g.result.getInvolvedNodes());
+            if (intersect) {
+                ns.retainAll(c.getInvolvedNodes());
+            } else {
+                ns.addAll(c.getInvolvedNodes());
+            }
+        }
+        if (ns == null || ns.isEmpty()) {
+            Group n = new Group(c);
+            groups.add(n);
+            if (v != null && g == null) {
+                prev.put(v, n);
+            }
+            return n;
+        }
+        SatConstraint res;
+        if (intersect) {
+            res = new Fence(v, ns);
+        } else {
+            ns.addAll(c.getInvolvedNodes());
+            res = new Ban(v, ns);
+        }
+        res.setContinuous(c.isContinuous());
+        g.result = res;
+        g.add(c, intersect ? MergeReport.Kind.intersection : MergeReport.Kind.union);
+        return g;
+    }
+
+    /**
+     * Remove the capacities implied by other ones.
+     *
+     * @param groups the groups of constraints
+     */
+    private static void subsume(List<Group> groups) {
+        //The capacities, per resource. null for the running capacities
+        Map<String, List<Group>> caps = new HashMap<>();
+        for (Group g : groups) {
+            String rc;
+            if (g.result.getClass() == ResourceCapacity.class) {
+                rc = ((ResourceCapacity) g.result).getResource();
+            } else if (g.result.getClass() == RunningCapacity.class) {
+                rc = null;
+            } else {
+                continue;
+            }
+            List<Group> l = caps.get(rc);
+            if (l == null) {
+                l = new ArrayList<>();
+                caps.put(rc, l);
+            }
+            l.add(g);
+        }
+        for (List<Group> l : caps.values()) {
+            for (Group g : l) {
+                for (Group h : l) {
+                    if (h != g && !h.removed && implies(h.result, g.result)) {
+                        g.removed = true;
+                        for (SatConstraint c : g.sources) {
+                            h.add(c, MergeReport.Kind.subsumption);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if a capacity implies another one over the same resource.
+     *
+     * @param strong the strongest capacity
+     * @param weak   the weakest capacity
+     * @return {@code true} iff {@code strong} implies {@code weak}
+     */
+    private static boolean implies(SatConstraint strong, SatConstraint weak) {
+        if (!strong.isContinuous() && weak.isContinuous()) {
+            return false;
+        }
+        return amount(strong) <= amount(weak)
+                && strong.getInvolvedNodes().containsAll(weak.getInvolvedNodes());
+    }
+
+    private static int amount(SatConstraint c) {
+        if (c instanceof ResourceCapacity) {
+            return ((ResourceCapacity) c).getAmount();
+        }
+        return ((RunningCapacity) c).getAmount();
+    }
+
+    /**
+     * Constraints that are merged into a single one.
+     */
+    private static class Group {
+
+        private SatConstraint result;
+
+        private final List<SatConstraint> sources;
+
+        private MergeReport.Kind kind;
+
+        private boolean removed;
+
+        Group(SatConstraint c) {
+            result = c;
+            sources = new ArrayList<>(1);
+            sources.add(c);
+        }
+
+        void add(SatConstraint c, MergeReport.Kind k) {
+            sources.add(c);
+            if (kind == null || k.ordinal() > kind.ordinal()) {
+                kind = k;
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.constraint;
+
+import btrplace.model.constraint.SatConstraint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of a {@link ConstraintsMerger} pass.
+ * It contains the remaining constraints and the merges that were performed.
+ *
+ * @author Fabien Hermenier
+ */
+public class MergeReport {
+
+    /**
+     * The way constraints were merged.
+     */
+    public static enum Kind {
+        /**
+         * Identical constraints, only one is kept.
+         */
+        duplicate,
+        /**
+         * Constraints on the same VM, the nodes are unioned.
+         */
+        union,
+        /**
+         * Constraints on the same VM, the nodes are intersected.
+         */
+        intersection,
+        /**
+         * Constraints that are implied by a stronger one, only the stronger one is kept.
+         */
+        subsumption
+    }
+
+    /**
+     * A merge of several constraints into a single one.
+     */
+    public static class Merge {
+
+        private final Kind kind;
+
+        private final List<SatConstraint> sources;
+
+        private final SatConstraint result;
+
+        /**
+         * Make a new merge.
+         *
+         * @param k   the kind of merge
+         * @param src the merged constraints
+         * @param res the resulting constraint. May be one of the merged constraints
+         */
+        public Merge(Kind k, List<SatConstraint> src, SatConstraint res) {
+            this.kind = k;
+            this.sources = src;
+            this.result = res;
+        }
+
+        /**
+         * Get the kind of merge.
+         * If several kinds were involved, the strongest one, in the order
+         * {@link Kind#subsumption}, {@link Kind#intersection}, {@link Kind#union}, {@link Kind#duplicate}.
+         *
+         * @return the kind
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Get the constraints that were merged.
+         *
+         * @return a list of at least 2 constraints, in the order of the input
+         */
+        public List<SatConstraint> getSources() {
+            return sources;
+        }
+
+        /**
+         * Get the constraint that replaces the merged ones.
+         *
+         * @return the constraint
+         */
+        public SatConstraint getResult() {
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return kind + ": " + sources + " -> " + result;
+        }
+    }
+
+    private final int nbInput;
+
+    private final List<SatConstraint> constraints;
+
+    private final List<Merge> merges;
+
+    /**
+     * Make a new report.
+     *
+     * @param nb the number of constraints before the merge
+     */
+    public MergeReport(int nb) {
+        this.nbInput = nb;
+        this.constraints = new ArrayList<>();
+        this.merges = new ArrayList<>();
+    }
+
+    /**
+     * Get the constraints after the merge.
+     *
+     * @return a list of constraints, in the order of their first source
+     */
+    public List<SatConstraint> getConstraints() {
+        return constraints;
+    }
+
+    /**
+     * Get the merges.
+     *
+     * @return a list of merges, that may be empty
+     */
+    public List<Merge> getMerges() {
+        return merges;
+    }
+
+    /**
+     * Get the number of constraints that were removed by the merges.
+     *
+     * @return a positive integer
+     */
+    public int getNbRemoved() {
+        return nbInput - constraints.size();
+    }
+
+    void add(SatConstraint c) {
+        constraints.add(c);
+    }
+
+    void add(Kind k, List<SatConstraint> src, SatConstraint res) {
+        merges.add(new Merge(k, Collections.unmodifiableList(src), res));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append(nbInput).append(" constraint(s) reduced to ").append(constraints.size())
+                .append(", ").append(merges.size()).append(" merge(s)");
+        for (Merge m : merges) {
+            b.append('\n').append(m);
+        }
+        return b.toString();
+    }
+}
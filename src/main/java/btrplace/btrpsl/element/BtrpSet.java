@@ -17,21 +17,40 @@
 
 package btrplace.btrpsl.element;
 
+import btrplace.model.Element;
+
 import java.util.*;
 
 /**
  * Denotes a set of operand.
  * The set is homogeneous: every operand into the set have the same type and the same degree.
  * The degree of a set is then one greater than the operand into it.
+ * <p/>
+ * Sets of VMs or nodes (degree 1) are also indexed by the identifier of their elements
+ * ({@link btrplace.model.Element#id()}), so union, difference, equality, cardinality and
+ * membership are computed on bitsets. The list of the elements resulting from a union or
+ * a difference is only materialized when it is required, for example by {@link #getValues()}.
  *
  * @author Fabien Hermenier
  */
 public class BtrpSet extends DefaultBtrpOperand implements Cloneable {
 
     /**
-     * The operands in the set.
+     * The operands in the set. {@code null} until materialized
+     * when the set is defined by {@link #ids} and {@link #sources}.
+     */
+    private Values values;
+
+    /**
+     * The identifiers of the elements in the set.
+     * {@code null} if the set is not indexed.
      */
-    private List<BtrpOperand> values;
+    private BitSet ids;
+
+    /**
+     * The sets the operands are taken from, in order, to materialize {@link #values}.
+     */
+    private BtrpSet[] sources;
 
     /**
      * The degree of the set.
@@ -55,9 +74,39 @@ public class BtrpSet extends DefaultBtrpOperand implements Cloneable {
      * @param ty the type of the set
      */
     public BtrpSet(int d, Type ty) {
-        values = new ArrayList<>();
         this.degree = d;
         this.t = ty;
+        values = new Values();
+        if (d == 1 && (ty == Type.VM || ty == Type.node)) {
+            ids = new BitSet();
+        }
+    }
+
+    /**
+     * Make a new set backed by a read-only list, such as a {@link RangeView}.
+     * The list is copied on the first modification of the set.
+     *
+     * @param d  the degree of the set
+     * @param ty the type of the set
+     * @param l  the operands in the set
+     */
+    public BtrpSet(int d, Type ty, List<BtrpOperand> l) {
+        this(d, ty);
+        values = new Values(l);
+    }
+
+    /**
+     * Make a set of elements that is materialized on demand.
+     *
+     * @param ty   the type of the elements
+     * @param i    the identifiers of the elements
+     * @param srcs the sets the elements are taken from
+     */
+    private BtrpSet(Type ty, BitSet i, BtrpSet... srcs) {
+        this.degree = 1;
+        this.t = ty;
+        this.ids = i;
+        this.sources = srcs;
     }
 
     @Override
@@ -65,13 +114,19 @@ public class BtrpSet extends DefaultBtrpOperand implements Cloneable {
         if (degree != s.degree() || t != s.type()) {
             throw new UnsupportedOperationException("Unable to add a '" + s.prettyType() + "' to a '" + prettyType() + "'");
         }
+        BtrpSet o = (BtrpSet) s;
+        if (ids != null && o.ids != null) {
+            BitSet u = (BitSet) ids.clone();
+            u.or(o.ids);
+            return new BtrpSet(t, u, this.snapshot(), o.snapshot());
+        }
         BtrpSet res = new BtrpSet(degree, t);
         Set<BtrpOperand> used = new HashSet<>();
-        for (BtrpOperand x : values) {
+        for (BtrpOperand x : values()) {
             res.add(x);
             used.add(x);
         }
-        List<BtrpOperand> other = ((BtrpSet) s).values;
+        List<BtrpOperand> other = o.values();
         for (BtrpOperand x : other) {
             if (!used.contains(x)) {
                 res.add(x);
@@ -85,12 +140,18 @@ public class BtrpSet extends DefaultBtrpOperand implements Cloneable {
         if (degree != s.degree() || t != s.type()) {
             throw new UnsupportedOperationException("Unable to subtract a '" + s.prettyType() + "' from a '" + prettyType() + "'");
         }
+        BtrpSet o = (BtrpSet) s;
+        if (ids != null && o.ids != null) {
+            BitSet d = (BitSet) ids.clone();
+            d.andNot(o.ids);
+            return new BtrpSet(t, d, this.snapshot());
+        }
         BtrpSet res = new BtrpSet(degree, t);
         Set<BtrpOperand> used = new HashSet<>();
         if (degree == s.degree()) {
-            List<BtrpOperand> other = ((BtrpSet) s).values;
+            List<BtrpOperand> other = o.values();
             used.addAll(other);
-            for (BtrpOperand x : values) {
+            for (BtrpOperand x : values()) {
                 if (!used.contains(x)) {
                     res.add(x);
                 }
@@ -101,13 +162,33 @@ public class BtrpSet extends DefaultBtrpOperand implements Cloneable {
 
     /**
      * Get the number of operand in this set.
+     * The operands are not materialized to compute the cardinality.
      *
      * @return a positive integer
      */
     public int size() {
+        if (values == null) {
+            return ids.cardinality();
+        }
         return values.size();
     }
 
+    /**
+     * Check if an operand is in this set.
+     *
+     * @param o the operand to look for
+     * @return {@code true} iff the set contains the operand
+     */
+    public boolean contains(BtrpOperand o) {
+        if (ids != null && o instanceof BtrpElement && o.type() == t) {
+            Element e = ((BtrpElement) o).getElement();
+            if (e != null) {
+                return ids.get(e.id());
+            }
+        }
+        return values().contains(o);
+    }
+
     @Override
     public int degree() {
         return degree;
@@ -117,7 +198,7 @@ public class BtrpSet extends DefaultBtrpOperand implements Cloneable {
         if (s.degree() != degree() - 1 || t != s.type()) {
             throw new UnsupportedOperationException("Cannot add a '" + s.prettyType() + "' to a '" + prettyType() + "'. Expect a '" + DefaultBtrpOperand.prettyType(degree() - 1, type()) + "'");
         }
-        values.add(s);
+        values().add(s);
     }
 
     @Override
@@ -131,12 +212,16 @@ public class BtrpSet extends DefaultBtrpOperand implements Cloneable {
             if (size == 0) {
                 throw new UnsupportedOperationException("cannot split into empty subsets");
             }
+            RangeView r = getRange();
+            if (r != null && size > 0 && r.size() > 0) {
+                return split(r, size);
+            }
             BtrpSet res = new BtrpSet(degree + 1, t);
             res.t = t;
             BtrpSet s = new BtrpSet(degree, t);
             s.t = t;
             res.add(s);
-            for (Iterator<BtrpOperand> ite = values.iterator(); ite.hasNext(); ) {
+            for (Iterator<BtrpOperand> ite = values().iterator(); ite.hasNext(); ) {
                 BtrpOperand v = ite.next();
                 s.add(v);
                 if (s.size() == size && ite.hasNext()) {
@@ -164,11 +249,15 @@ public class BtrpSet extends DefaultBtrpOperand implements Cloneable {
                 throw new UnsupportedOperationException("Divider can not be greater than the set cardinality");
             }
             int card = (int) Math.ceil(size() * 1.0 / s);
+            RangeView r = getRange();
+            if (r != null && s > 0) {
+                return split(r, card);
+            }
             BtrpSet res = new BtrpSet(degree() + 1, t);
             BtrpSet cur = new BtrpSet(degree(), t);
             res.add(cur);
             for (int i = 0; i < size(); i++) {
-                cur.add(values.get(i));
+                cur.add(values().get(i));
                 if (cur.size() == card && i != size() - 1) {
                     cur = new BtrpSet(degree(), t);
                     res.add(cur);
@@ -179,48 +268,60 @@ public class BtrpSet extends DefaultBtrpOperand implements Cloneable {
         throw new UnsupportedOperationException("Integer divider expected");
     }
 
+    /**
+     * Split a range into consecutive sub-ranges without expanding it.
+     *
+     * @param r    the range to split
+     * @param card the cardinality of each sub-range. The last one may be smaller
+     * @return a set of sets that are views over the sub-ranges
+     */
+    private BtrpSet split(RangeView r, int card) {
+        BtrpSet res = new BtrpSet(degree + 1, t);
+        for (int k = 0; k < r.size(); k += card) {
+            res.add(new BtrpSet(degree, t, r.subList(k, Math.min(k + card, r.size()))));
+        }
+        return res;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The product is a view that makes the pairs when they are accessed.
+     * The product of a set by itself is the pairs of its operands.
+     */
     @Override
     public BtrpSet times(BtrpOperand s) {
         if (degree != s.degree() || t != s.type()) {
             throw new UnsupportedOperationException("Non-homogeneous cartesian product between a '" + prettyType() + "' and a '" + s.prettyType() + "'");
         }
         BtrpSet s2 = (BtrpSet) s;
-        BtrpOperand[] mine = values.toArray(new BtrpOperand[values.size()]);
-        BtrpOperand[] other = s2.values.toArray(new BtrpOperand[s2.size()]);
-        BtrpSet res = new BtrpSet(degree + 1, t);
-        Set<Set<BtrpOperand>> used = new HashSet<>();
         if (s2.size() == 0) {
             return this.clone();
         }
-        for (BtrpOperand i : mine) {
-            Set<BtrpOperand> u = new HashSet<>();
-            u.add(i);
-            for (BtrpOperand j : other) {
-                if (u.add(j) && !used.contains(u)) {
-                    BtrpSet cur = new BtrpSet(degree(), type());
-                    cur.add(i);
-                    cur.add(j);
-                    res.add(cur);
-                    used.add(u);
-                }
-            }
-            u.clear();
+        BtrpOperand[] mine = values().toArray(new BtrpOperand[size()]);
+        if (s2 == this) {
+            return new BtrpSet(degree + 1, t, new Combinations(mine, 2, degree, t));
         }
-        return res;
+        BtrpOperand[] other = s2.values().toArray(new BtrpOperand[s2.size()]);
+        return new BtrpSet(degree + 1, t, new Product(mine, other, degree, t));
     }
 
+    /**
+     * {@inheritDoc}
+     * The power {@code k} of a set is the subsets of {@code k} operands. These
+     * combinations are made when they are accessed.
+     */
     @Override
     public BtrpSet power(BtrpOperand nb) {
         if (nb instanceof BtrpNumber) {
             BtrpNumber x = (BtrpNumber) nb;
-            if (!((BtrpNumber) nb).isInteger()) {
+            if (!x.isInteger()) {
                 throw new UnsupportedOperationException("Integer divider expected");
             }
             int val = x.getIntValue();
-            if (val != 2) {
-                throw new UnsupportedOperationException("Unable to compute other than a power of 2");
+            if (val <= 0) {
+                throw new UnsupportedOperationException("Strictly positive exponent expected");
             }
-            return this.times(this);
+            return new BtrpSet(degree + 1, t, new Combinations(values().toArray(new BtrpOperand[size()]), val, degree, t));
         }
         throw new UnsupportedOperationException("Integer divider expected");
     }
@@ -229,7 +330,7 @@ public class BtrpSet extends DefaultBtrpOperand implements Cloneable {
     public String toString() {
         StringBuilder buf = new StringBuilder();
         buf.append("{");
-        for (Iterator ite = values.iterator(); ite.hasNext(); ) {
+        for (Iterator ite = values().iterator(); ite.hasNext(); ) {
             buf.append(ite.next());
             if (ite.hasNext()) {
                 buf.append(", ");
@@ -239,15 +340,32 @@ public class BtrpSet extends DefaultBtrpOperand implements Cloneable {
         return buf.toString();
     }
 
+    /**
+     * {@inheritDoc}
+     * The copy shares the operands and the views of this set, so a lazy set is not expanded.
+     * The shared operands are copied by the first of the two sets to be modified.
+     */
     @Override
     public BtrpSet clone() {
-        BtrpSet elems = new BtrpSet(degree, t);
-        for (BtrpOperand e : values) {
-            elems.add(e.clone());
+        BtrpSet c = new BtrpSet(degree, t);
+        c.ids = ids == null ? null : (BitSet) ids.clone();
+        if (values == null) {
+            c.values = null;
+            c.sources = sources;
+        } else {
+            values.shared = true;
+            c.values = c.new Values(values.list, false);
+            c.values.dups = values.dups == null ? null : (BitSet) values.dups.clone();
         }
-        return elems;
+        return c;
     }
 
+    /**
+     * Check the equality of two sets.
+     * Both are equals if they have the same type, the same degree and the same operands, whatever their order.
+     * Indexed sets are compared using the identifiers of their elements, so
+     * the elements are expected to come from a same model.
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -259,7 +377,13 @@ public class BtrpSet extends DefaultBtrpOperand implements Cloneable {
 
         BtrpSet that = (BtrpSet) o;
 
-        return degree == that.degree && values.containsAll(that.values) && that.values.containsAll(values);
+        if (degree != that.degree || t != that.t) {
+            return false;
+        }
+        if (ids != null && that.ids != null) {
+            return ids.equals(that.ids);
+        }
+        return new HashSet<>(values()).equals(new HashSet<>(that.values()));
     }
 
     @Override
@@ -270,12 +394,216 @@ public class BtrpSet extends DefaultBtrpOperand implements Cloneable {
         return BtrpNumber.FALSE;
     }
 
+    /**
+     * The hash code is the sum of the hash codes of the distinct operands,
+     * so it does not depend on their order nor on the set being indexed.
+     */
     @Override
     public int hashCode() {
-        return Objects.hash(values, degree, t);
+        int h = 0;
+        for (BtrpOperand o : new HashSet<>(values())) {
+            h += o.hashCode();
+        }
+        return Objects.hash(h, degree, t);
     }
 
+    /**
+     * Get the operands in the set.
+     * The list is materialized if needed. Operands added to the list are indexed.
+     *
+     * @return a mutable list
+     */
     public List<BtrpOperand> getValues() {
+        return values();
+    }
+
+    /**
+     * Get the range this set is a view of.
+     *
+     * @return the range if the set is an unmodified view over a range. {@code null} otherwise
+     */
+    public RangeView getRange() {
+        if (values != null && values.list instanceof RangeView) {
+            return (RangeView) values.list;
+        }
+        return null;
+    }
+
+    /**
+     * Get a copy of this set with its operands materialized.
+     * This prevents the chaining of lazy sets. As the copy shares the operands until
+     * this set is modified, a later modification does not alter the lazy sets made from it.
+     *
+     * @return a copy that is never modified
+     */
+    private BtrpSet snapshot() {
+        values();
+        return clone();
+    }
+
+    /**
+     * Get the operands, materialized from the sources if needed.
+     * Operands are taken in the order of the sources, without duplicates.
+     *
+     * @return the operands
+     */
+    private Values values() {
+        if (values == null) {
+            Values vs = new Values();
+            BitSet seen = new BitSet();
+            for (BtrpSet src : sources) {
+                for (BtrpOperand o : src.values()) {
+                    int id = ((BtrpElement) o).getElement().id();
+                    if (ids.get(id) && !seen.get(id)) {
+                        seen.set(id);
+                        vs.list.add(o);
+                    }
+                }
+            }
+            values = vs;
+            sources = null;
+        }
         return values;
     }
+
+    /**
+     * The list of operands. The identifiers of the elements are
+     * indexed on insertion. If an operand cannot be indexed, the index is dropped.
+     * The list may be a read-only view that is copied on the first modification.
+     */
+    private class Values extends AbstractList<BtrpOperand> {
+
+        private List<BtrpOperand> list;
+
+        private boolean shared;
+
+        /**
+         * The identifiers of the elements that were indexed more than once.
+         * {@code null} until an element is indexed twice.
+         */
+        private BitSet dups;
+
+        Values() {
+            list = new ArrayList<>();
+        }
+
+        Values(List<BtrpOperand> l) {
+            this(l, true);
+        }
+
+        /**
+         * Make a list over a read-only list.
+         *
+         * @param l     the shared list
+         * @param index {@code true} to index the operands, {@code false} if the identifiers are already known
+         */
+        Values(List<BtrpOperand> l, boolean index) {
+            list = l;
+            shared = true;
+            if (index) {
+                reindex();
+            }
+        }
+
+        private List<BtrpOperand> own() {
+            if (shared) {
+                list = new ArrayList<>(list);
+                shared = false;
+            }
+            return list;
+        }
+
+        @Override
+        public BtrpOperand get(int i) {
+            return list.get(i);
+        }
+
+        @Override
+        public Iterator<BtrpOperand> iterator() {
+            //A read-only view, such as a product, may iterate faster than through its indexes
+            return shared ? Collections.unmodifiableList(list).iterator() : super.iterator();
+        }
+
+        @Override
+        public int size() {
+            return list.size();
+        }
+
+        @Override
+        public void add(int i, BtrpOperand o) {
+            own().add(i, o);
+            index(o);
+        }
+
+        @Override
+        public BtrpOperand set(int i, BtrpOperand o) {
+            BtrpOperand old = own().set(i, o);
+            unindex(old);
+            index(o);
+            return old;
+        }
+
+        @Override
+        public BtrpOperand remove(int i) {
+            BtrpOperand old = own().remove(i);
+            unindex(old);
+            return old;
+        }
+
+        private void index(BtrpOperand o) {
+            if (ids != null) {
+                if (o instanceof BtrpElement && o.type() == t && ((BtrpElement) o).getElement() != null) {
+                    int id = ((BtrpElement) o).getElement().id();
+                    if (ids.get(id)) {
+                        if (dups == null) {
+                            dups = new BitSet();
+                        }
+                        dups.set(id);
+                    }
+                    ids.set(id);
+                } else {
+                    ids = null;
+                    dups = null;
+                }
+            }
+        }
+
+        /**
+         * Forget the identifier of a removed operand, unless another copy of it remains.
+         *
+         * @param o the removed operand
+         */
+        private void unindex(BtrpOperand o) {
+            if (ids == null) {
+                return;
+            }
+            int id = ((BtrpElement) o).getElement().id();
+            if (dups != null && dups.get(id)) {
+                //Rare, so the remaining copies are counted
+                int nb = 0;
+                for (BtrpOperand x : list) {
+                    if (((BtrpElement) x).getElement().id() == id) {
+                        nb++;
+                    }
+                }
+                if (nb <= 1) {
+                    dups.clear(id);
+                }
+                if (nb > 0) {
+                    return;
+                }
+            }
+            ids.clear(id);
+        }
+
+        private void reindex() {
+            if (ids != null) {
+                ids.clear();
+                dups = null;
+                for (BtrpOperand o : list) {
+                    index(o);
+                }
+            }
+        }
+    }
 }
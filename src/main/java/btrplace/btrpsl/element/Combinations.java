@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.element;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * A read-only view over the k-combinations of some operands, such as {@code $s^3}.
+ * The combinations are sorted in the lexicographic order of the positions of
+ * their operands. A combination is a set made when it is accessed, so
+ * the combinations are never stored. Accessing a combination by its index
+ * takes {@code O(n.k)} operations while iterating takes {@code O(k)} operations per combination.
+ *
+ * @author Fabien Hermenier
+ */
+final class Combinations extends AbstractList<BtrpOperand> implements RandomAccess {
+
+    private final BtrpOperand[] ops;
+
+    private final int k;
+
+    private final int size;
+
+    /**
+     * The degree of each combination.
+     */
+    private final int degree;
+
+    /**
+     * The type of the operands.
+     */
+    private final BtrpOperand.Type type;
+
+    /**
+     * Make a new view.
+     *
+     * @param o  the operands to combine
+     * @param nb the number of operands in each combination. Strictly positive
+     * @param d  the degree of each combination
+     * @param t  the type of the operands
+     * @throws UnsupportedOperationException if there is more than {@link Integer#MAX_VALUE} combinations
+     */
+    Combinations(BtrpOperand[] o, int nb, int d, BtrpOperand.Type t) {
+        this.ops = o;
+        this.k = nb;
+        this.degree = d;
+        this.type = t;
+        long s = binomial(o.length, nb);
+        if (s > Integer.MAX_VALUE) {
+            throw new UnsupportedOperationException("Too many combinations of " + nb + " operands among " + o.length);
+        }
+        this.size = (int) s;
+    }
+
+    /**
+     * Compute a binomial coefficient.
+     *
+     * @param n the number of operands
+     * @param p the number of operands to choose
+     * @return the number of combinations, or {@link Long#MAX_VALUE} if it exceeds {@link Integer#MAX_VALUE}
+     */
+    private static long binomial(int n, int p) {
+        if (p < 0 || p > n) {
+            return 0;
+        }
+        int q = Math.min(p, n - p);
+        long res = 1;
+        for (int i = 1; i <= q; i++) {
+            //Exact, as the product of i consecutive integers is divisible by i!
+            res = res * (n - q + i) / i;
+            if (res > Integer.MAX_VALUE) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public BtrpSet get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException(i + " in a list of size " + size);
+        }
+        int[] idx = new int[k];
+        int x = i;
+        int c = 0;
+        for (int p = 0; p < k; p++) {
+            //Skip the combinations starting with the lower positions
+            for (long nb = binomial(ops.length - c - 1, k - p - 1); x >= nb; nb = binomial(ops.length - c - 1, k - p - 1)) {
+                x -= nb;
+                c++;
+            }
+            idx[p] = c++;
+        }
+        return make(idx);
+    }
+
+    private BtrpSet make(int[] idx) {
+        BtrpSet s = new BtrpSet(degree, type);
+        for (int i : idx) {
+            s.getValues().add(ops[i]);
+        }
+        return s;
+    }
+
+    @Override
+    public Iterator<BtrpOperand> iterator() {
+        return new Iterator<BtrpOperand>() {
+
+            private final int[] idx = new int[k];
+
+            private int nb = 0;
+
+            {
+                for (int p = 0; p < k; p++) {
+                    idx[p] = p;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return nb < size;
+            }
+
+            @Override
+            public BtrpOperand next() {
+                if (nb >= size) {
+                    throw new NoSuchElementException();
+                }
+                BtrpSet s = make(idx);
+                nb++;
+                //The next combination: increment the rightmost position that can be
+                int p = k - 1;
+                while (p >= 0 && idx[p] == ops.length - k + p) {
+                    p--;
+                }
+                if (p >= 0) {
+                    idx[p]++;
+                    for (int q = p + 1; q < k; q++) {
+                        idx[q] = idx[q - 1] + 1;
+                    }
+                }
+                return s;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.element;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only view over the cartesian product of two sets of operands, such as {@code $a * $b}.
+ * The product is made of the pairs of distinct operands. As a pair is not ordered, a pair
+ * of operands that belong to both sets is only considered once, the first time it appears
+ * when the pairs are sorted by the position of their left then right operand.
+ * <p/>
+ * A pair is a set made when it is accessed, so the product is never stored.
+ * Only the positions of the operands that are common to both sets are indexed.
+ *
+ * @author Fabien Hermenier
+ */
+final class Product extends AbstractList<BtrpOperand> {
+
+    private final BtrpOperand[] left;
+
+    private final BtrpOperand[] right;
+
+    /**
+     * For each right operand, its position among the left operands. {@code -1} if it is not a left operand.
+     */
+    private final int[] rightPos;
+
+    /**
+     * Indicates if each left operand is a right operand too.
+     */
+    private final boolean[] common;
+
+    /**
+     * For each left operand, the number of pairs made by the previous left operands.
+     */
+    private final int[] offsets;
+
+    /**
+     * The degree of each pair.
+     */
+    private final int degree;
+
+    /**
+     * The type of the operands.
+     */
+    private final BtrpOperand.Type type;
+
+    /**
+     * Make a new view.
+     *
+     * @param l the left operands
+     * @param r the right operands
+     * @param d the degree of each pair
+     * @param t the type of the operands
+     * @throws UnsupportedOperationException if there is more than {@link Integer#MAX_VALUE} pairs
+     */
+    Product(BtrpOperand[] l, BtrpOperand[] r, int d, BtrpOperand.Type t) {
+        this.left = l;
+        this.right = r;
+        this.degree = d;
+        this.type = t;
+        Map<BtrpOperand, Integer> pos = new HashMap<>(l.length * 2);
+        for (int i = l.length - 1; i >= 0; i--) {
+            pos.put(l[i], i);
+        }
+        rightPos = new int[r.length];
+        common = new boolean[l.length];
+        //The number of right operands at each left position
+        int[] nbAt = new int[l.length];
+        for (int j = 0; j < r.length; j++) {
+            Integer p = pos.get(r[j]);
+            rightPos[j] = p == null ? -1 : p;
+            if (p != null) {
+                common[p] = true;
+                nbAt[p]++;
+            }
+        }
+        offsets = new int[l.length + 1];
+        long nb = 0;
+        int excluded = 0;
+        for (int i = 0; i < l.length; i++) {
+            offsets[i] = (int) nb;
+            excluded += nbAt[i];
+            nb += common[i] ? r.length - excluded : r.length;
+            if (nb > Integer.MAX_VALUE) {
+                throw new UnsupportedOperationException("Too many pairs in the product of sets of size " + l.length + " and " + r.length);
+            }
+        }
+        offsets[l.length] = (int) nb;
+    }
+
+    /**
+     * Check if a pair is part of the product.
+     *
+     * @param i the position of the left operand
+     * @param j the position of the right operand
+     * @return {@code false} if both operands are equals or if the pair was already made with a previous left operand
+     */
+    private boolean accept(int i, int j) {
+        return !common[i] || rightPos[j] < 0 || rightPos[j] > i;
+    }
+
+    private BtrpSet make(int i, int j) {
+        BtrpSet s = new BtrpSet(degree, type);
+        s.getValues().add(left[i]);
+        s.getValues().add(right[j]);
+        return s;
+    }
+
+    @Override
+    public int size() {
+        return offsets[left.length];
+    }
+
+    @Override
+    public BtrpSet get(int k) {
+        if (k < 0 || k >= size()) {
+            throw new IndexOutOfBoundsException(k + " in a list of size " + size());
+        }
+        int i = Arrays.binarySearch(offsets, k);
+        if (i < 0) {
+            i = -i - 2;
+        } else {
+            //Skip the left operands that make no pair
+            while (offsets[i + 1] == k) {
+                i++;
+            }
+        }
+        int x = k - offsets[i];
+        for (int j = 0; j < right.length; j++) {
+            if (accept(i, j) && x-- == 0) {
+                return make(i, j);
+            }
+        }
+        throw new IllegalStateException("Pair " + k + " not found");
+    }
+
+    @Override
+    public Iterator<BtrpOperand> iterator() {
+        return new Iterator<BtrpOperand>() {
+
+            private int i = 0;
+
+            private int j = -1;
+
+            private int nb = 0;
+
+            @Override
+            public boolean hasNext() {
+                return nb < size();
+            }
+
+            @Override
+            public BtrpOperand next() {
+                if (nb >= size()) {
+                    throw new NoSuchElementException();
+                }
+                do {
+                    j++;
+                    if (j == right.length) {
+                        j = 0;
+                        i++;
+                    }
+                } while (!accept(i, j));
+                nb++;
+                return make(i, j);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
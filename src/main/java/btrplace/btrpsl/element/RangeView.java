@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.element;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A read-only view over the strings denoted by a range of integers,
+ * such as {@code srv-[1..100]}.
+ * Each string is made of a prefix, an integer expressed in a given base, and a suffix.
+ * The strings are computed when they are accessed so the range is never expanded.
+ *
+ * @author Fabien Hermenier
+ */
+public class RangeView extends AbstractList<BtrpOperand> implements RandomAccess {
+
+    private final String prefix;
+
+    private final int from;
+
+    private final int to;
+
+    private final BtrpNumber.Base base;
+
+    private final String suffix;
+
+    /**
+     * Make a new view.
+     *
+     * @param p  the prefix of each string
+     * @param lb the lower bound of the range, inclusive
+     * @param ub the upper bound of the range, inclusive
+     * @param b  the base to express the integers with
+     * @param s  the suffix of each string
+     */
+    public RangeView(String p, int lb, int ub, BtrpNumber.Base b, String s) {
+        this.prefix = p;
+        this.from = lb;
+        this.to = ub;
+        this.base = b;
+        this.suffix = s;
+    }
+
+    /**
+     * Get a string of the range.
+     *
+     * @param i the index of the string
+     * @return the string
+     */
+    public String label(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size());
+        }
+        int v = from + i;
+        String n;
+        if (v < 0) {
+            n = new BtrpNumber(v, base).toString();
+        } else {
+            n = Integer.toString(v, radix(base));
+        }
+        return new StringBuilder(prefix.length() + n.length() + suffix.length())
+                .append(prefix).append(n).append(suffix).toString();
+    }
+
+    @Override
+    public BtrpString get(int i) {
+        return new BtrpString(label(i));
+    }
+
+    /**
+     * @return {@code ub - lb + 1}, or 0 if the bounds are inverted
+     */
+    @Override
+    public int size() {
+        return Math.max(0, to - from + 1);
+    }
+
+    /**
+     * Get a view over a part of the range.
+     *
+     * @param lb the index of the first string, inclusive
+     * @param ub the index of the last string, exclusive
+     * @return a view
+     */
+    @Override
+    public RangeView subList(int lb, int ub) {
+        if (lb < 0 || ub > size() || lb > ub) {
+            throw new IndexOutOfBoundsException("[" + lb + ", " + ub + "[ in a list of size " + size());
+        }
+        return new RangeView(prefix, from + lb, from + ub - 1, base, suffix);
+    }
+
+    /**
+     * Get a view with an additional prefix and suffix.
+     *
+     * @param p the string to prepend to the current prefix
+     * @param s the string to append to the current suffix
+     * @return a view
+     */
+    public RangeView compose(String p, String s) {
+        return new RangeView(p + prefix, from, to, base, suffix + s);
+    }
+
+    /**
+     * Get the strings of the range.
+     *
+     * @return a read-only view
+     */
+    public List<String> labels() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int i) {
+                return label(i);
+            }
+
+            @Override
+            public int size() {
+                return RangeView.this.size();
+            }
+        };
+    }
+
+    private static int radix(BtrpNumber.Base b) {
+        switch (b) {
+            case base8:
+                return 8;
+            case base16:
+                return 16;
+            default:
+                return 10;
+        }
+    }
+
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.includes;
+
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.ScriptBuilderException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Includes that get the scripts from zip or jar archives, and from the classpath.
+ * <p/>
+ * The entries of an archive are indexed once, when the archive is added, and the archive
+ * is kept open. A script is then built straight from the stream of its entry,
+ * using {@link ScriptBuilder#build(java.nio.channels.ReadableByteChannel)}, and kept
+ * for the next imports. The identifier of a script is the path of its entry
+ * relative to a prefix, without the extension. For example, the entry
+ * {@code btrpsl/std/rack.btrp} with the prefix {@code btrpsl} declares the
+ * script {@code std.rack}.
+ * <p/>
+ * The scripts of a wildcard import are read and parsed concurrently, then evaluated
+ * sequentially as the model and the naming service of the builder are not thread-safe.
+ * <p/>
+ * When a script is available in several sources, the first added source has the priority.
+ * The includes must be closed to release the archives.
+ *
+ * @author Fabien Hermenier
+ */
+public class ArchiveIncludes implements Includes, Closeable {
+
+    private final ScriptBuilder builder;
+
+    private final List<ZipFile> archives;
+
+    /**
+     * The entries, indexed by script identifier.
+     */
+    private final Map<String, Entry> entries;
+
+    /**
+     * The identifiers of the scripts, indexed by namespace.
+     */
+    private final Map<String, SortedSet<String>> namespaces;
+
+    /**
+     * The built scripts, indexed by identifier.
+     */
+    private final ConcurrentMap<String, Script> built;
+
+    /**
+     * The executor to parse the scripts of a wildcard import.
+     */
+    private volatile ExecutorService executor = ConcurrentImport.sharedExecutor();
+
+    /**
+     * Make new includes without any source.
+     *
+     * @param b the builder to make the scripts
+     */
+    public ArchiveIncludes(ScriptBuilder b) {
+        this.builder = b;
+        this.archives = new ArrayList<>();
+        this.entries = new HashMap<>();
+        this.namespaces = new HashMap<>();
+        this.built = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Make new includes that get the scripts from the classpath.
+     *
+     * @param b      the builder to make the scripts
+     * @param prefix the folder of the scripts on the classpath, for example {@code btrpsl}
+     * @return the includes
+     * @throws IOException if an error occurred while indexing the classpath
+     * @see #addClasspath(ClassLoader, String)
+     */
+    public static ArchiveIncludes fromClasspath(ScriptBuilder b, String prefix) throws IOException {
+        ArchiveIncludes incs = new ArchiveIncludes(b);
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        incs.addClasspath(cl != null ? cl : ArchiveIncludes.class.getClassLoader(), prefix);
+        return incs;
+    }
+
+    /**
+     * Add the scripts of an archive.
+     * The archive is kept open only if it contains scripts.
+     *
+     * @param f      the zip or jar archive
+     * @param prefix the folder of the scripts inside the archive. Empty for the root of the archive
+     * @return the number of indexed scripts
+     * @throws IOException if an error occurred while reading the archive
+     */
+    public synchronized int addArchive(File f, String prefix) throws IOException {
+        ZipFile zip = new ZipFile(f);
+        String p = normalize(prefix);
+        int nb = 0;
+        for (Enumeration<? extends ZipEntry> ite = zip.entries(); ite.hasMoreElements(); ) {
+            ZipEntry e = ite.nextElement();
+            String n = e.getName();
+            if (!e.isDirectory() && n.startsWith(p) && n.endsWith(Script.EXTENSION)
+                    && index(n.substring(p.length()), new Entry(zip, e, null))) {
+                nb++;
+            }
+        }
+        if (nb == 0) {
+            zip.close();
+        } else {
+            archives.add(zip);
+        }
+        return nb;
+    }
+
+    /**
+     * Add the scripts available on a classpath.
+     * The jars and the folders are taken from the class loader and its parents if they are
+     * {@link URLClassLoader}s, and from the locations of the prefix folder known by the class loader.
+     * Each jar that contains scripts is opened once and indexed, then the folders are browsed.
+     * The jars then have the priority over the folders.
+     *
+     * @param cl     the class loader
+     * @param prefix the folder of the scripts on the classpath, for example {@code btrpsl}
+     * @return the number of indexed scripts
+     * @throws IOException if an error occurred while indexing the classpath
+     */
+    public synchronized int addClasspath(ClassLoader cl, String prefix) throws IOException {
+        String p = normalize(prefix);
+        Set<File> jars = new LinkedHashSet<>();
+        Set<Path> folders = new LinkedHashSet<>();
+        try {
+            Deque<ClassLoader> chain = new ArrayDeque<>();
+            for (ClassLoader c = cl; c != null; c = c.getParent()) {
+                chain.push(c);
+            }
+            for (ClassLoader c : chain) {
+                if (c instanceof URLClassLoader) {
+                    for (URL u : ((URLClassLoader) c).getURLs()) {
+                        if ("file".equals(u.getProtocol())) {
+                            File f = new File(u.toURI());
+                            if (f.isDirectory()) {
+                                folders.add(f.toPath().resolve(p));
+                            } else if (f.isFile()) {
+                                jars.add(f);
+                            }
+                        }
+                    }
+                }
+            }
+            if (!p.isEmpty()) {
+                for (Enumeration<URL> ite = cl.getResources(p.substring(0, p.length() - 1)); ite.hasMoreElements(); ) {
+                    URL u = ite.nextElement();
+                    if ("jar".equals(u.getProtocol())) {
+                        jars.add(new File(((JarURLConnection) u.openConnection()).getJarFileURL().toURI()));
+                    } else if ("file".equals(u.getProtocol())) {
+                        folders.add(Paths.get(u.toURI()));
+                    }
+                }
+            }
+        } catch (URISyntaxException e) {
+            throw new IOException("Unsupported classpath location: " + e.getMessage(), e);
+        }
+        int nb = 0;
+        for (File jar : jars) {
+            nb += addArchive(jar, p);
+        }
+        for (Path d : folders) {
+            if (Files.isDirectory(d)) {
+                nb += addFolder(d);
+            }
+        }
+        return nb;
+    }
+
+    /**
+     * Index the scripts of a folder.
+     *
+     * @param root the folder
+     * @return the number of indexed scripts
+     * @throws IOException if an error occurred while browsing the folder
+     */
+    private int addFolder(final Path root) throws IOException {
+        final int[] nb = {0};
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path f, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && f.getFileName().toString().endsWith(Script.EXTENSION)) {
+                    String rel = root.relativize(f).toString().replace(File.separatorChar, '/');
+                    if (index(rel, new Entry(null, null, f))) {
+                        nb[0]++;
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return nb[0];
+    }
+
+    private static String normalize(String prefix) {
+        String p = prefix.replace('\\', '/');
+        while (p.startsWith("/")) {
+            p = p.substring(1);
+        }
+        if (!p.isEmpty() && !p.endsWith("/")) {
+            p = p + '/';
+        }
+        return p;
+    }
+
+    /**
+     * Index a script.
+     *
+     * @param rel the path of the script, relative to the prefix
+     * @param e   the entry of the script
+     * @return {@code false} if the script is already available in another source
+     */
+    private boolean index(String rel, Entry e) {
+        String id = rel.substring(0, rel.length() - Script.EXTENSION.length()).replace('/', '.');
+        if (entries.containsKey(id)) {
+            return false;
+        }
+        entries.put(id, e);
+        int idx = id.lastIndexOf('.');
+        String ns = idx < 0 ? "" : id.substring(0, idx);
+        SortedSet<String> ids = namespaces.get(ns);
+        if (ids == null) {
+            ids = new TreeSet<>();
+            namespaces.put(ns, ids);
+        }
+        ids.add(id);
+        return true;
+    }
+
+    /**
+     * Set the executor used to parse the scripts of a wildcard import.
+     * The scripts are then evaluated sequentially, as the builder is not thread-safe.
+     * By default, an executor shared by all the includes, having one thread per processor, is used.
+     *
+     * @param exec the executor to use. {@code null} to parse the scripts from the calling thread
+     */
+    public void setExecutorService(ExecutorService exec) {
+        this.executor = exec;
+    }
+
+    /**
+     * Get the executor used to parse the scripts of a wildcard import.
+     *
+     * @return the executor. {@code null} if the scripts are parsed from the calling thread
+     */
+    public ExecutorService getExecutorService() {
+        return executor;
+    }
+
+    /**
+     * Get the identifiers of the available scripts.
+     *
+     * @return a sorted set of identifiers
+     */
+    public synchronized SortedSet<String> getIdentifiers() {
+        return new TreeSet<>(entries.keySet());
+    }
+
+    @Override
+    public List<Script> getScripts(String name) throws ScriptBuilderException {
+        List<String> ids = new ArrayList<>();
+        synchronized (this) {
+            if (!name.endsWith(".*")) {
+                if (entries.containsKey(name)) {
+                    ids.add(name);
+                }
+            } else {
+                SortedSet<String> s = namespaces.get(name.substring(0, name.length() - 2));
+                if (s != null) {
+                    ids.addAll(s);
+                }
+            }
+        }
+        if (ids.size() == 1) {
+            return new ArrayList<>(Collections.singletonList(get(ids.get(0))));
+        }
+        return ConcurrentImport.load(builder, ids, new ConcurrentImport.Loader<String>() {
+            @Override
+            public ScriptBuilder.Prepared prepare(String id) throws ScriptBuilderException {
+                if (built.containsKey(id)) {
+                    return null;
+                }
+                Entry e = entry(id);
+                try (ReadableByteChannel ch = e.open()) {
+                    return builder.prepare(ch);
+                } catch (IOException ex) {
+                    throw new ScriptBuilderException("Unable to read '" + e + "': " + ex.getMessage(), ex);
+                }
+            }
+
+            @Override
+            public Script load(String id, ScriptBuilder.Prepared p) throws ScriptBuilderException {
+                if (p == null) {
+                    return get(id);
+                }
+                Script s = built.get(id);
+                return s != null ? s : register(id, builder.build(p));
+            }
+        }, executor);
+    }
+
+    /**
+     * Get a script, build it if needed.
+     *
+     * @param id the script identifier
+     * @return the script
+     * @throws ScriptBuilderException if the script cannot be built
+     */
+    private Script get(String id) throws ScriptBuilderException {
+        Script s = built.get(id);
+        if (s != null) {
+            return s;
+        }
+        Entry e = entry(id);
+        try (ReadableByteChannel ch = e.open()) {
+            s = builder.build(ch);
+        } catch (IOException ex) {
+            throw new ScriptBuilderException("Unable to read '" + e + "': " + ex.getMessage(), ex);
+        }
+        return register(id, s);
+    }
+
+    private synchronized Entry entry(String id) {
+        return entries.get(id);
+    }
+
+    /**
+     * Keep a built script for the next imports.
+     *
+     * @param id the script identifier
+     * @param s  the built script
+     * @return the script to use
+     * @throws ScriptBuilderException if the script is not declared in the expected entry
+     */
+    private Script register(String id, Script s) throws ScriptBuilderException {
+        if (!id.equals(s.id())) {
+            throw new ScriptBuilderException("Script '" + s.id() + "' must be declared in '"
+                    + id.replace('.', '/') + Script.EXTENSION + "', not in '" + entry(id) + "'");
+        }
+        Script prev = built.putIfAbsent(id, s);
+        return prev != null ? prev : s;
+    }
+
+    /**
+     * Release the archives.
+     *
+     * @throws IOException if an error occurred while closing an archive
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        IOException ex = null;
+        for (ZipFile z : archives) {
+            try {
+                z.close();
+            } catch (IOException e) {
+                ex = e;
+            }
+        }
+        archives.clear();
+        if (ex != null) {
+            throw ex;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder b = new StringBuilder();
+        for (Iterator<ZipFile> ite = archives.iterator(); ite.hasNext(); ) {
+            b.append(ite.next().getName());
+            if (ite.hasNext()) {
+                b.append(File.pathSeparatorChar);
+            }
+        }
+        return b.toString();
+    }
+
+    /**
+     * The location of a script, either an archive entry or a file.
+     */
+    private static class Entry {
+
+        private final ZipFile zip;
+
+        private final ZipEntry entry;
+
+        private final Path file;
+
+        Entry(ZipFile z, ZipEntry e, Path f) {
+            this.zip = z;
+            this.entry = e;
+            this.file = f;
+        }
+
+        ReadableByteChannel open() throws IOException {
+            if (zip != null) {
+                return Channels.newChannel(zip.getInputStream(entry));
+            }
+            return Files.newByteChannel(file);
+        }
+
+        @Override
+        public String toString() {
+            return zip != null ? zip.getName() + '!' + entry.getName() : file.toString();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.includes;
+
+import btrplace.btrpsl.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Build the scripts matched by a wildcard import.
+ * <p/>
+ * The scripts are read and parsed concurrently, then evaluated sequentially
+ * by the calling thread, in the order of their locations: the evaluation alters the model
+ * and the naming service of the builder, that are not thread-safe.
+ * The calling thread parses scripts too: the scripts are picked by the first
+ * available thread, and the caller only waits for the scripts that are being parsed by
+ * other threads. A wildcard import nested in an imported script can then use the same
+ * bounded executor without any risk of deadlock, even if every thread is busy.
+ *
+ * @author Fabien Hermenier
+ */
+final class ConcurrentImport {
+
+    /**
+     * The way to get a script from its location.
+     *
+     * @param <T> the type of location
+     */
+    interface Loader<T> {
+
+        /**
+         * Read and parse a script. Called concurrently, so
+         * the model and the naming service must not be altered.
+         *
+         * @param l the script location
+         * @return the prepared script. {@code null} if the script is already built
+         * @throws ScriptBuilderException if the script cannot be read or parsed
+         */
+        ScriptBuilder.Prepared prepare(T l) throws ScriptBuilderException;
+
+        /**
+         * Get a script. Called sequentially, from the calling thread.
+         *
+         * @param l the script location
+         * @param p the prepared script. {@code null} if the script is already built
+         * @return the script
+         * @throws ScriptBuilderException if the script cannot be built
+         */
+        Script load(T l, ScriptBuilder.Prepared p) throws ScriptBuilderException;
+    }
+
+    private ConcurrentImport() {
+    }
+
+    /**
+     * The executor shared by default, with one daemon thread per processor.
+     */
+    private static class Shared {
+
+        private static final ExecutorService INSTANCE = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            private final AtomicInteger nb = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "btrpsl-import-" + nb.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Get the executor shared by default by the includes.
+     *
+     * @return a fixed pool of daemon threads
+     */
+    static ExecutorService sharedExecutor() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Get several scripts.
+     *
+     * @param b     the builder, to report the errors
+     * @param files the script locations
+     * @param l     the way to get a script
+     * @param exec  the executor to parse the scripts. {@code null} to parse them from the calling thread
+     * @param <T>   the type of location
+     * @return the scripts, in the order of the locations
+     * @throws ScriptBuilderException if at least one script cannot be built. The exception reports
+     *                                the errors of every failing script, in the order of the locations
+     */
+    static <T> List<Script> load(ScriptBuilder b, final List<T> files, final Loader<T> l, ExecutorService exec)
+            throws ScriptBuilderException {
+        final ScriptBuilder.Prepared[] prepared = new ScriptBuilder.Prepared[files.size()];
+        final ScriptBuilderException[] errors = new ScriptBuilderException[files.size()];
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(files.size());
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = next.getAndIncrement(); i < prepared.length; i = next.getAndIncrement()) {
+                    try {
+                        prepared[i] = l.prepare(files.get(i));
+                    } catch (ScriptBuilderException ex) {
+                        errors[i] = ex;
+                    } catch (RuntimeException ex) {
+                        errors[i] = new ScriptBuilderException(ex.getMessage(), ex);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+        if (exec != null) {
+            //No need to wake more threads than scripts, the caller is one of the workers
+            int nb = Math.min(files.size() - 1, Runtime.getRuntime().availableProcessors());
+            for (int i = 0; i < nb; i++) {
+                try {
+                    exec.execute(worker);
+                } catch (RejectedExecutionException ex) {
+                    //The caller will do the job
+                    break;
+                }
+            }
+        }
+        worker.run();
+        try {
+            done.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ScriptBuilderException("Interrupted while importing scripts", ex);
+        }
+
+        //Sequential evaluation
+        Script[] scripts = new Script[files.size()];
+        for (int i = 0; i < scripts.length; i++) {
+            if (errors[i] != null) {
+                continue;
+            }
+            try {
+                scripts[i] = l.load(files.get(i), prepared[i]);
+            } catch (ScriptBuilderException ex) {
+                errors[i] = ex;
+            }
+            prepared[i] = null;
+        }
+
+        ErrorReporter rep = null;
+        List<Script> res = new ArrayList<>(scripts.length);
+        for (int i = 0; i < scripts.length; i++) {
+            if (errors[i] == null) {
+                res.add(scripts[i]);
+                continue;
+            }
+            if (rep == null) {
+                rep = b.getErrorReporterBuilder().build(new Script());
+            }
+            ErrorReporter r = errors[i].getErrorReporter();
+            if (r != null) {
+                rep.getErrors().addAll(r.getErrors());
+            } else {
+                rep.getErrors().add(new ErrorMessage(files.get(i).toString(), 0, 0, errors[i].getMessage()));
+            }
+        }
+        if (rep != null) {
+            throw new ScriptBuilderException(rep);
+        }
+        return res;
+    }
+}
@@ -22,10 +22,10 @@ import btrplace.btrpsl.ScriptBuilder;
 import btrplace.btrpsl.ScriptBuilderException;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 
 /**
  * An implementation that loop for the searched script among several folders.
@@ -35,6 +35,11 @@ import java.util.List;
  */
 public class PathBasedIncludes implements Includes {
 
+    /**
+     * The coarsest precision of the modification dates, in milliseconds.
+     */
+    private static final long TIMESTAMP_GRANULARITY = 2000;
+
     /**
      * The folders to browse.
      */
@@ -43,7 +48,17 @@ public class PathBasedIncludes implements Includes {
     /**
      * The builder to create the scripts.
      */
-    private ScriptBuilder builder;
+    private final ScriptBuilder builder;
+
+    /**
+     * The cached listings of the folders, for the wildcard imports.
+     */
+    private final ConcurrentMap<File, Listing> listings = new ConcurrentHashMap<>();
+
+    /**
+     * The executor to parse the scripts of a wildcard import.
+     */
+    private ExecutorService executor = ConcurrentImport.sharedExecutor();
 
     /**
      * Make a new instance that will browse a first folder.
@@ -71,7 +86,9 @@ public class PathBasedIncludes implements Includes {
 
     /**
      * Get the script associated to a given identifier by browsing the given paths.
-     * The first script having a matching identifier is selected, whatever the parsing process result will be
+     * The first script having a matching identifier is selected, whatever the parsing process result will be.
+     * With a wildcard, the matching scripts are parsed concurrently, then evaluated sequentially,
+     * and returned sorted by folder, then by name.
      *
      * @param name the identifier of the script
      * @return the script if found
@@ -92,36 +109,80 @@ public class PathBasedIncludes implements Includes {
             }
 
         } else {
-
-            //We need to consolidate the errors in allEx and rethrow it at the end if necessary
-            ScriptBuilderException allEx = null;
             String base = name.substring(0, name.length() - 2).replaceAll("\\.", File.separator);
+            List<File> files = new ArrayList<>();
             for (File path : paths) {
-                File f = new File(path.getPath() + File.separator + base);
-                if (f.isDirectory()) {
-                    for (File sf : f.listFiles()) {
-                        if (sf.getName().endsWith(Script.EXTENSION)) {
-
-                            try {
-                                scripts.add(builder.build(sf));
-                            } catch (ScriptBuilderException ex) {
-                                if (allEx == null) {
-                                    allEx = ex;
-                                } else {
-                                    allEx.getErrorReporter().getErrors().addAll(ex.getErrorReporter().getErrors());
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-            if (allEx != null) {
-                throw allEx;
+                files.addAll(list(new File(path.getPath() + File.separator + base)));
             }
+            scripts = ConcurrentImport.load(builder, files, new ConcurrentImport.Loader<File>() {
+                @Override
+                public ScriptBuilder.Prepared prepare(File f) throws ScriptBuilderException {
+                    return builder.prepare(f);
+                }
+
+                @Override
+                public Script load(File f, ScriptBuilder.Prepared p) throws ScriptBuilderException {
+                    return builder.build(p);
+                }
+            }, executor);
         }
         return scripts;
     }
 
+    /**
+     * Get the scripts stored in a folder.
+     * The listing is cached until the modification date of the folder changes.
+     * Some file systems record the modification dates to the second or less, so a file
+     * added right after a listing may not change the date. A listing is then only reused
+     * if it was made long enough after the last modification of the folder.
+     *
+     * @param dir the folder
+     * @return the script files, sorted by name. Empty if the folder does not exist
+     */
+    private List<File> list(File dir) {
+        long lastModified = dir.lastModified();
+        Listing l = listings.get(dir);
+        if (l != null && l.lastModified == lastModified && l.listedAt - lastModified >= TIMESTAMP_GRANULARITY) {
+            return l.files;
+        }
+        long listedAt = System.currentTimeMillis();
+        File[] content = dir.listFiles();
+        if (content == null) {
+            listings.remove(dir);
+            return Collections.emptyList();
+        }
+        List<File> files = new ArrayList<>();
+        for (File sf : content) {
+            if (sf.getName().endsWith(Script.EXTENSION)) {
+                files.add(sf);
+            }
+        }
+        Collections.sort(files);
+        files = Collections.unmodifiableList(files);
+        listings.put(dir, new Listing(lastModified, listedAt, files));
+        return files;
+    }
+
+    /**
+     * Set the executor used to parse the scripts of a wildcard import.
+     * The scripts are then evaluated sequentially, as the builder is not thread-safe.
+     * By default, an executor shared by all the includes, having one thread per processor, is used.
+     *
+     * @param exec the executor to use. {@code null} to parse the scripts from the calling thread
+     */
+    public void setExecutorService(ExecutorService exec) {
+        this.executor = exec;
+    }
+
+    /**
+     * Get the executor used to parse the scripts of a wildcard import.
+     *
+     * @return the executor. {@code null} if the scripts are parsed from the calling thread
+     */
+    public ExecutorService getExecutorService() {
+        return executor;
+    }
+
     /**
      * Add a new folder to browse.
      *
@@ -185,4 +246,22 @@ public class PathBasedIncludes implements Includes {
         }
         return b.toString();
     }
+
+    /**
+     * The scripts stored in a folder at a given time.
+     */
+    private static class Listing {
+
+        private final long lastModified;
+
+        private final long listedAt;
+
+        private final List<File> files;
+
+        Listing(long d, long at, List<File> fs) {
+            this.lastModified = d;
+            this.listedAt = at;
+            this.files = fs;
+        }
+    }
 }
@@ -0,0 +1,620 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.includes;
+
+import btrplace.btrpsl.BuildResult;
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.ScriptBuilderException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Includes that keep an in-memory index of the scripts stored in several folders,
+ * and that watch the folders to rebuild the scripts once they are modified.
+ * <p/>
+ * The folders are browsed like in {@link PathBasedIncludes}, but only once: the
+ * index is then maintained using a {@link WatchService}, so looking for a script
+ * never touches the file system. The built scripts are kept too. When a script file
+ * is created, modified or deleted, the script and every script that imports it,
+ * directly or not, are forgotten then rebuilt in the background using
+ * {@link ScriptBuilder#buildAll(java.util.Collection, java.util.concurrent.ExecutorService)}.
+ * The {@link Listener}s are then notified with the result.
+ * <p/>
+ * The folders are only watched once {@link #start()} is called.
+ * The includes must be closed to stop the watching.
+ * <p/>
+ * The builder belongs to the includes: the background rebuilds alter its model and its
+ * naming service, that are not thread-safe. Every use of the builder is then serialized
+ * by synchronizing on the builder, and any other use of the builder must do the same:
+ * <pre>
+ * synchronized (builder) {
+ *     builder.build(f);
+ * }
+ * </pre>
+ *
+ * @author Fabien Hermenier
+ */
+public class WatchedIncludes implements Includes, Closeable {
+
+    /**
+     * The delay, in milliseconds, to wait for additional changes before
+     * rebuilding the scripts. Editors usually save a file in several steps.
+     */
+    public static final long COALESCING_DELAY = 50;
+
+    /**
+     * A listener notified after the rebuilding of modified scripts.
+     */
+    public static interface Listener {
+
+        /**
+         * Notify scripts were rebuilt.
+         *
+         * @param invalidated the files of the scripts that were forgotten, including the deleted ones
+         * @param res         the rebuilt scripts and the errors
+         */
+        void rebuilt(Set<File> invalidated, BuildResult res);
+    }
+
+    private final ScriptBuilder builder;
+
+    private final List<Root> roots;
+
+    private final WatchService watcher;
+
+    /**
+     * The watched folders, indexed by their key.
+     */
+    private final ConcurrentMap<WatchKey, Root> keys;
+
+    /**
+     * The built scripts, indexed by file.
+     */
+    private final ConcurrentMap<File, Script> built;
+
+    /**
+     * The files of the scripts importing a given script, indexed by script identifier.
+     * Guarded by itself.
+     */
+    private final Map<String, Set<File>> dependents;
+
+    private final List<Listener> listeners;
+
+    private final ExecutorService workers;
+
+    private Thread thread;
+
+    private volatile boolean closed;
+
+    /**
+     * Make new includes that browse several folders.
+     * The folders are indexed immediately.
+     *
+     * @param b     the builder to make the scripts
+     * @param paths the folders to browse, by order of priority
+     * @throws IOException if an error occurred while indexing the folders
+     */
+    public WatchedIncludes(ScriptBuilder b, List<File> paths) throws IOException {
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("At least one folder is required");
+        }
+        this.builder = b;
+        this.roots = new ArrayList<>();
+        this.keys = new ConcurrentHashMap<>();
+        this.built = new ConcurrentHashMap<>();
+        this.dependents = new HashMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "btrpsl-rebuild");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        for (File path : paths) {
+            if (!path.isDirectory()) {
+                throw new IllegalArgumentException(path + " must be an existing directory");
+            }
+        }
+        this.watcher = FileSystems.getDefault().newWatchService();
+        for (File path : paths) {
+            Root r = new Root(path.toPath().toAbsolutePath().normalize());
+            roots.add(r);
+            index(r, r.dir, null);
+        }
+    }
+
+    /**
+     * Make new includes that browse a single folder.
+     *
+     * @param b    the builder to make the scripts
+     * @param path the folder to browse
+     * @throws IOException if an error occurred while indexing the folder
+     */
+    public WatchedIncludes(ScriptBuilder b, File path) throws IOException {
+        this(b, Collections.singletonList(path));
+    }
+
+    /**
+     * Start watching the folders, using a daemon thread.
+     */
+    public synchronized void start() {
+        if (closed) {
+            throw new IllegalStateException("The includes are closed");
+        }
+        if (thread == null) {
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    watch();
+                }
+            }, "btrpsl-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop watching the folders.
+     *
+     * @throws IOException if an error occurred while closing the watch service
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watcher.close();
+        workers.shutdown();
+    }
+
+    /**
+     * Add a listener.
+     *
+     * @param l the listener to notify after every rebuilding
+     */
+    public void addListener(Listener l) {
+        listeners.add(l);
+    }
+
+    /**
+     * Remove a listener.
+     *
+     * @param l the listener to remove
+     * @return {@code true} if the listener was registered
+     */
+    public boolean removeListener(Listener l) {
+        return listeners.remove(l);
+    }
+
+    /**
+     * Get the watched folders.
+     *
+     * @return a list of folders, by order of priority
+     */
+    public List<File> getPaths() {
+        List<File> res = new ArrayList<>(roots.size());
+        for (Root r : roots) {
+            res.add(r.dir.toFile());
+        }
+        return res;
+    }
+
+    /**
+     * Get the file of a script.
+     *
+     * @param id the script identifier
+     * @return the file in the first folder declaring the script. {@code null} if there is no such a file
+     */
+    public File getFile(String id) {
+        for (Root r : roots) {
+            File f = r.files.get(id);
+            if (f != null) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<Script> getScripts(String name) throws ScriptBuilderException {
+        List<Script> scripts = new ArrayList<>();
+        if (!name.endsWith(".*")) {
+            File f = getFile(name);
+            if (f != null) {
+                scripts.add(get(f));
+            }
+            return scripts;
+        }
+        String ns = name.substring(0, name.length() - 2);
+        List<File> files = new ArrayList<>();
+        for (Root r : roots) {
+            Set<File> fs = r.namespaces.get(ns);
+            if (fs != null) {
+                files.addAll(fs);
+            }
+        }
+        synchronized (builder) {
+            return ConcurrentImport.load(builder, files, new ConcurrentImport.Loader<File>() {
+                @Override
+                public ScriptBuilder.Prepared prepare(File f) throws ScriptBuilderException {
+                    return built.containsKey(f) ? null : builder.prepare(f);
+                }
+
+                @Override
+                public Script load(File f, ScriptBuilder.Prepared p) throws ScriptBuilderException {
+                    if (p == null) {
+                        return get(f);
+                    }
+                    Script s = built.get(f);
+                    if (s == null) {
+                        s = builder.build(p);
+                        built.put(f, s);
+                        record(f, s);
+                    }
+                    return s;
+                }
+            }, ConcurrentImport.sharedExecutor());
+        }
+    }
+
+    /**
+     * Get the script stored in a file, build it if needed.
+     *
+     * @param f the script file
+     * @return the script
+     * @throws ScriptBuilderException if the script cannot be built
+     */
+    private Script get(File f) throws ScriptBuilderException {
+        synchronized (builder) {
+            Script s = built.get(f);
+            if (s == null) {
+                s = builder.build(f);
+                built.put(f, s);
+                record(f, s);
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Record the imports of a script.
+     * Previous imports are not forgotten: a stale dependency only leads to an unnecessary rebuild.
+     *
+     * @param f the script file
+     * @param s the script
+     */
+    private void record(File f, Script s) {
+        synchronized (dependents) {
+            for (Script d : s.getDependencies()) {
+                Set<File> ds = dependents.get(d.id());
+                if (ds == null) {
+                    ds = new HashSet<>();
+                    dependents.put(d.id(), ds);
+                }
+                ds.add(f);
+            }
+        }
+    }
+
+    /**
+     * Forget modified scripts and their transitive dependents.
+     *
+     * @param changed the files of the modified scripts
+     * @return the files of all the forgotten scripts
+     */
+    public Set<File> invalidate(Collection<File> changed) {
+        Set<File> stale = new LinkedHashSet<>();
+        Deque<File> todo = new ArrayDeque<>(changed);
+        while (!todo.isEmpty()) {
+            File f = todo.poll();
+            if (!stale.add(f)) {
+                continue;
+            }
+            built.remove(f);
+            builder.getCache().invalidate(f);
+            String id = id(f);
+            if (id != null) {
+                synchronized (dependents) {
+                    Set<File> ds = dependents.get(id);
+                    if (ds != null) {
+                        todo.addAll(ds);
+                    }
+                }
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * Forget modified scripts and their transitive dependents, then rebuild them
+     * and notify the listeners. The builder is locked during the rebuild.
+     *
+     * @param changed the files of the modified scripts
+     * @return the rebuilt scripts and the errors
+     */
+    public BuildResult rebuild(Collection<File> changed) {
+        Set<File> stale;
+        BuildResult res;
+        synchronized (builder) {
+            stale = invalidate(changed);
+            List<File> todo = new ArrayList<>(stale.size());
+            for (File f : stale) {
+                String id = id(f);
+                //Skip the deleted scripts and those hidden by another folder
+                if (id != null && f.equals(getFile(id))) {
+                    todo.add(f);
+                }
+            }
+            res = builder.buildAll(todo, workers);
+            for (File f : todo) {
+                Script s = res.getScript(f);
+                if (s != null) {
+                    built.putIfAbsent(f, s);
+                    record(f, s);
+                }
+            }
+        }
+        for (Listener l : listeners) {
+            l.rebuilt(stale, res);
+        }
+        return res;
+    }
+
+    /**
+     * The watching loop.
+     */
+    private void watch() {
+        try {
+            while (!closed) {
+                WatchKey k = watcher.take();
+                Set<File> changed = new HashSet<>();
+                boolean overflow = false;
+                while (k != null) {
+                    overflow |= process(k, changed);
+                    k = watcher.poll(COALESCING_DELAY, TimeUnit.MILLISECONDS);
+                }
+                if (overflow) {
+                    changed.addAll(reindex());
+                }
+                if (!changed.isEmpty()) {
+                    rebuild(changed);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            ScriptBuilder.LOGGER.debug("Stop watching " + this);
+        } catch (IOException e) {
+            ScriptBuilder.LOGGER.error("Stop watching " + this + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Update the index with the events of a folder.
+     *
+     * @param k       the key of the folder
+     * @param changed to store the modified script files
+     * @return {@code true} if some events were lost
+     * @throws IOException if an error occurred while indexing a new folder
+     */
+    private boolean process(WatchKey k, Set<File> changed) throws IOException {
+        Root r = keys.get(k);
+        if (r == null) {
+            k.cancel();
+            return false;
+        }
+        Path dir = (Path) k.watchable();
+        boolean overflow = false;
+        for (WatchEvent<?> e : k.pollEvents()) {
+            if (e.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            Path p = dir.resolve((Path) e.context());
+            if (e.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(p)) {
+                index(r, p, changed);
+            } else if (isScript(p)) {
+                if (e.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    r.remove(p);
+                } else {
+                    r.add(p);
+                }
+                changed.add(p.toFile());
+            }
+        }
+        if (!k.reset()) {
+            //The folder is no longer accessible
+            keys.remove(k);
+            changed.addAll(r.removeAll(dir));
+        }
+        return overflow;
+    }
+
+    /**
+     * Index and watch a folder and its sub-folders.
+     *
+     * @param r       the root of the folder
+     * @param dir     the folder
+     * @param changed to store the indexed script files. May be {@code null}
+     * @throws IOException if an error occurred while browsing the folder
+     */
+    private void index(final Root r, Path dir, final Set<File> changed) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                WatchKey k = d.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                keys.put(k, r);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path p, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && isScript(p)) {
+                    r.add(p);
+                    if (changed != null) {
+                        changed.add(p.toFile());
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Rebuild the whole index after some events were lost.
+     *
+     * @return the files of every script that was built so far
+     * @throws IOException if an error occurred while browsing the folders
+     */
+    private Set<File> reindex() throws IOException {
+        ScriptBuilder.LOGGER.warn("Some file events were lost, re-indexing " + this);
+        Set<File> changed = new HashSet<>(built.keySet());
+        for (Root r : roots) {
+            changed.addAll(r.removeAll(r.dir));
+            index(r, r.dir, changed);
+        }
+        return changed;
+    }
+
+    /**
+     * Get the identifier of a script from its file.
+     *
+     * @param f the file
+     * @return the identifier. {@code null} if the file is not in a watched folder
+     */
+    private String id(File f) {
+        Path p = f.toPath();
+        for (Root r : roots) {
+            if (p.startsWith(r.dir)) {
+                return Root.id(r.dir.relativize(p));
+            }
+        }
+        return null;
+    }
+
+    private static boolean isScript(Path p) {
+        return p.getFileName().toString().endsWith(Script.EXTENSION);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        for (Iterator<Root> ite = roots.iterator(); ite.hasNext(); ) {
+            b.append(ite.next().dir);
+            if (ite.hasNext()) {
+                b.append(File.pathSeparatorChar);
+            }
+        }
+        return b.toString();
+    }
+
+    /**
+     * The index of a watched folder.
+     */
+    private static class Root {
+
+        private final Path dir;
+
+        /**
+         * The script files, indexed by script identifier.
+         */
+        private final ConcurrentMap<String, File> files = new ConcurrentHashMap<>();
+
+        /**
+         * The script files, indexed by namespace.
+         */
+        private final ConcurrentMap<String, Set<File>> namespaces = new ConcurrentHashMap<>();
+
+        Root(Path d) {
+            this.dir = d;
+        }
+
+        /**
+         * Get a script identifier from the path of its file relative to the folder.
+         *
+         * @param rel the relative path
+         * @return the identifier
+         */
+        static String id(Path rel) {
+            StringBuilder b = new StringBuilder();
+            for (Path e : rel) {
+                if (b.length() > 0) {
+                    b.append('.');
+                }
+                b.append(e.toString());
+            }
+            return b.substring(0, b.length() - Script.EXTENSION.length());
+        }
+
+        private static String namespace(String id) {
+            int idx = id.lastIndexOf('.');
+            return idx < 0 ? "" : id.substring(0, idx);
+        }
+
+        void add(Path p) {
+            String id = id(dir.relativize(p));
+            File f = p.toFile();
+            files.put(id, f);
+            String ns = namespace(id);
+            Set<File> s = namespaces.get(ns);
+            if (s == null) {
+                s = new ConcurrentSkipListSet<>();
+                Set<File> prev = namespaces.putIfAbsent(ns, s);
+                if (prev != null) {
+                    s = prev;
+                }
+            }
+            s.add(f);
+        }
+
+        void remove(Path p) {
+            String id = id(dir.relativize(p));
+            File f = files.remove(id);
+            if (f != null) {
+                Set<File> s = namespaces.get(namespace(id));
+                if (s != null) {
+                    s.remove(f);
+                }
+            }
+        }
+
+        /**
+         * Remove all the scripts stored in a folder or its sub-folders.
+         *
+         * @param d the folder
+         * @return the files of the removed scripts
+         */
+        Set<File> removeAll(Path d) {
+            Set<File> res = new HashSet<>();
+            for (File f : files.values()) {
+                Path p = f.toPath();
+                if (p.startsWith(d)) {
+                    remove(p);
+                    res.add(f);
+                }
+            }
+            return res;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.instrument;
+
+/**
+ * A listener that is notified with the measurements made while building scripts.
+ * A listener may be notified concurrently when scripts are built using several threads.
+ * <p/>
+ * Durations are in nanoseconds. Allocations are in bytes, and equal to {@code -1}
+ * when the JVM cannot measure the allocations of a thread.
+ *
+ * @author Fabien Hermenier
+ * @see btrplace.btrpsl.ScriptBuilder#setBuildListener(BuildListener)
+ */
+public interface BuildListener {
+
+    /**
+     * The identifier of the cache of the scripts built from files.
+     */
+    String SCRIPTS = "scripts";
+
+    /**
+     * The identifier of the cache of the syntax trees.
+     */
+    String TREES = "trees";
+
+    /**
+     * The identifier of the store of snapshots.
+     */
+    String SNAPSHOTS = "snapshots";
+
+    /**
+     * The phases of a build.
+     */
+    public static enum Phase {
+        /**
+         * Split the source into tokens.
+         */
+        lexing,
+        /**
+         * Make the syntax tree from the tokens.
+         */
+        parsing,
+        /**
+         * Evaluate the syntax tree.
+         */
+        evaluation,
+        /**
+         * Resolve the imports. Includes the building of the imported scripts.
+         */
+        imports,
+        /**
+         * Declare the elements using templates.
+         */
+        templates,
+        /**
+         * Build the constraints from their parameters.
+         */
+        constraints
+    }
+
+    /**
+     * Notify a phase terminated.
+     *
+     * @param p     the phase
+     * @param nanos the duration of the phase
+     * @param bytes the memory allocated during the phase
+     */
+    void phase(Phase p, long nanos, long bytes);
+
+    /**
+     * Notify the evaluation of a statement at the top-level of a script terminated.
+     *
+     * @param type  the type of statement, the simple name of the tree class
+     * @param nanos the duration of the evaluation
+     * @param bytes the memory allocated during the evaluation
+     */
+    void statement(String type, long nanos, long bytes);
+
+    /**
+     * Notify a constraint builder terminated.
+     *
+     * @param id    the identifier of the constraint
+     * @param nanos the duration of the building
+     * @param bytes the memory allocated during the building
+     */
+    void constraint(String id, long nanos, long bytes);
+
+    /**
+     * Notify a cache was looked up.
+     *
+     * @param cache the cache identifier
+     * @param hit   {@code true} if the cache had the expected entry
+     */
+    void cache(String cache, boolean hit);
+}
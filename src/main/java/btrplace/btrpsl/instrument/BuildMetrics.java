@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.instrument;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A thread-safe listener that accumulates the measurements of all the builds.
+ * The measurements can be exposed through JMX using {@link #register(String)}.
+ *
+ * @author Fabien Hermenier
+ */
+public class BuildMetrics implements BuildListener, BuildMetricsMXBean {
+
+    /**
+     * The domain of the registered MBeans.
+     */
+    public static final String DOMAIN = "btrplace.btrpsl";
+
+    private final Map<String, Metric> phases = new HashMap<>();
+
+    private final Map<String, Metric> statements = new HashMap<>();
+
+    private final Map<String, Metric> constraints = new HashMap<>();
+
+    private final Map<String, Long> hits = new HashMap<>();
+
+    private final Map<String, Long> misses = new HashMap<>();
+
+    private ObjectName name;
+
+    private static void add(Map<String, Metric> m, String k, long nanos, long bytes) {
+        Metric x = m.get(k);
+        if (x == null) {
+            x = new Metric();
+            m.put(k, x);
+        }
+        x.add(nanos, bytes);
+    }
+
+    private static void inc(Map<String, Long> m, String k) {
+        Long x = m.get(k);
+        m.put(k, x == null ? 1L : x + 1);
+    }
+
+    /**
+     * Extract a value of the metrics.
+     *
+     * @param m    the metrics
+     * @param what 0 for the durations, 1 for the allocations, 2 for the counts
+     * @return a sorted copy of the values
+     */
+    private static Map<String, Long> extract(Map<String, Metric> m, int what) {
+        Map<String, Long> res = new TreeMap<>();
+        for (Map.Entry<String, Metric> e : m.entrySet()) {
+            Metric x = e.getValue();
+            res.put(e.getKey(), what == 0 ? x.getTime() : what == 1 ? x.getAllocated() : x.getCount());
+        }
+        return res;
+    }
+
+    @Override
+    public synchronized void phase(Phase p, long nanos, long bytes) {
+        add(phases, p.name(), nanos, bytes);
+    }
+
+    @Override
+    public synchronized void statement(String type, long nanos, long bytes) {
+        add(statements, type, nanos, bytes);
+    }
+
+    @Override
+    public synchronized void constraint(String id, long nanos, long bytes) {
+        add(constraints, id, nanos, bytes);
+    }
+
+    @Override
+    public synchronized void cache(String cache, boolean hit) {
+        inc(hit ? hits : misses, cache);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getPhaseTimes() {
+        return extract(phases, 0);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getPhaseAllocations() {
+        return extract(phases, 1);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getPhaseCounts() {
+        return extract(phases, 2);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getStatementTimes() {
+        return extract(statements, 0);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getStatementAllocations() {
+        return extract(statements, 1);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getStatementCounts() {
+        return extract(statements, 2);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getConstraintTimes() {
+        return extract(constraints, 0);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getConstraintAllocations() {
+        return extract(constraints, 1);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getConstraintCounts() {
+        return extract(constraints, 2);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getCacheHits() {
+        return new TreeMap<>(hits);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getCacheMisses() {
+        return new TreeMap<>(misses);
+    }
+
+    @Override
+    public synchronized void reset() {
+        phases.clear();
+        statements.clear();
+        constraints.clear();
+        hits.clear();
+        misses.clear();
+    }
+
+    /**
+     * Register the metrics in the platform MBean server.
+     *
+     * @param id the identifier of the metrics, to distinguish several builders
+     * @return the name of the registered MBean
+     * @throws JMException if the registration failed
+     */
+    public synchronized ObjectName register(String id) throws JMException {
+        if (name != null) {
+            unregister();
+        }
+        ObjectName n = new ObjectName(DOMAIN + ":type=BuildMetrics,name=" + ObjectName.quote(id));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, n);
+        name = n;
+        return n;
+    }
+
+    /**
+     * Unregister the metrics from the platform MBean server.
+     *
+     * @return {@code true} if the metrics were registered
+     * @throws JMException if the un-registration failed
+     */
+    public synchronized boolean unregister() throws JMException {
+        if (name == null) {
+            return false;
+        }
+        MBeanServer srv = ManagementFactory.getPlatformMBeanServer();
+        if (srv.isRegistered(name)) {
+            srv.unregisterMBean(name);
+        }
+        name = null;
+        return true;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.instrument;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link BuildMetrics}.
+ * Durations are in nanoseconds, allocations in bytes.
+ *
+ * @author Fabien Hermenier
+ */
+public interface BuildMetricsMXBean {
+
+    /**
+     * Get the cumulated duration of each phase.
+     *
+     * @return the durations, indexed by phase name
+     */
+    Map<String, Long> getPhaseTimes();
+
+    /**
+     * Get the cumulated allocations of each phase.
+     *
+     * @return the allocations, indexed by phase name
+     */
+    Map<String, Long> getPhaseAllocations();
+
+    /**
+     * Get the number of occurrences of each phase.
+     *
+     * @return the occurrences, indexed by phase name
+     */
+    Map<String, Long> getPhaseCounts();
+
+    /**
+     * Get the cumulated duration of the top-level statements.
+     *
+     * @return the durations, indexed by statement type
+     */
+    Map<String, Long> getStatementTimes();
+
+    /**
+     * Get the cumulated allocations of the top-level statements.
+     *
+     * @return the allocations, indexed by statement type
+     */
+    Map<String, Long> getStatementAllocations();
+
+    /**
+     * Get the number of evaluated top-level statements.
+     *
+     * @return the occurrences, indexed by statement type
+     */
+    Map<String, Long> getStatementCounts();
+
+    /**
+     * Get the cumulated duration of the constraint builders.
+     *
+     * @return the durations, indexed by constraint identifier
+     */
+    Map<String, Long> getConstraintTimes();
+
+    /**
+     * Get the cumulated allocations of the constraint builders.
+     *
+     * @return the allocations, indexed by constraint identifier
+     */
+    Map<String, Long> getConstraintAllocations();
+
+    /**
+     * Get the number of calls to the constraint builders.
+     *
+     * @return the occurrences, indexed by constraint identifier
+     */
+    Map<String, Long> getConstraintCounts();
+
+    /**
+     * Get the number of hits of each cache.
+     *
+     * @return the hits, indexed by cache identifier
+     */
+    Map<String, Long> getCacheHits();
+
+    /**
+     * Get the number of misses of each cache.
+     *
+     * @return the misses, indexed by cache identifier
+     */
+    Map<String, Long> getCacheMisses();
+
+    /**
+     * Forget all the measurements.
+     */
+    void reset();
+}
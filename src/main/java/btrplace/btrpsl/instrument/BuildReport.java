@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.instrument;
+
+import java.util.*;
+
+/**
+ * The measurements made while building a single script.
+ * The report is attached to the built script. Each measurement is forwarded
+ * to the listener the report was made with, if any.
+ * <p/>
+ * The phases and the statements overlap: the duration of the evaluation includes
+ * the duration of every statement, while the duration of the imports includes
+ * the building of the imported scripts.
+ *
+ * @author Fabien Hermenier
+ */
+public class BuildReport implements BuildListener {
+
+    private final BuildListener next;
+
+    private final Map<Phase, Metric> phases;
+
+    private final Map<String, Metric> statements;
+
+    private final Map<String, Metric> constraints;
+
+    private final Map<String, int[]> caches;
+
+    /**
+     * Make a new report.
+     *
+     * @param l the listener to forward the measurements to. May be {@code null}
+     */
+    public BuildReport(BuildListener l) {
+        next = l;
+        phases = new EnumMap<>(Phase.class);
+        statements = new TreeMap<>();
+        constraints = new TreeMap<>();
+        caches = new TreeMap<>();
+    }
+
+    private static Metric get(Map<String, Metric> m, String k) {
+        Metric x = m.get(k);
+        if (x == null) {
+            x = new Metric();
+            m.put(k, x);
+        }
+        return x;
+    }
+
+    @Override
+    public void phase(Phase p, long nanos, long bytes) {
+        Metric x = phases.get(p);
+        if (x == null) {
+            x = new Metric();
+            phases.put(p, x);
+        }
+        x.add(nanos, bytes);
+        if (next != null) {
+            next.phase(p, nanos, bytes);
+        }
+    }
+
+    @Override
+    public void statement(String type, long nanos, long bytes) {
+        get(statements, type).add(nanos, bytes);
+        if (next != null) {
+            next.statement(type, nanos, bytes);
+        }
+    }
+
+    @Override
+    public void constraint(String id, long nanos, long bytes) {
+        get(constraints, id).add(nanos, bytes);
+        if (next != null) {
+            next.constraint(id, nanos, bytes);
+        }
+    }
+
+    @Override
+    public void cache(String cache, boolean hit) {
+        int[] x = caches.get(cache);
+        if (x == null) {
+            x = new int[2];
+            caches.put(cache, x);
+        }
+        x[hit ? 0 : 1]++;
+        if (next != null) {
+            next.cache(cache, hit);
+        }
+    }
+
+    /**
+     * Get the measurements of a phase.
+     *
+     * @param p the phase
+     * @return the measurements. {@code null} if the phase did not occur
+     */
+    public Metric getPhase(Phase p) {
+        return phases.get(p);
+    }
+
+    /**
+     * Get the measurements of the phases that occurred.
+     *
+     * @return a read-only map
+     */
+    public Map<Phase, Metric> getPhases() {
+        return Collections.unmodifiableMap(phases);
+    }
+
+    /**
+     * Get the measurements of the top-level statements, by type of statement.
+     *
+     * @return a read-only map, sorted by statement type
+     */
+    public Map<String, Metric> getStatements() {
+        return Collections.unmodifiableMap(statements);
+    }
+
+    /**
+     * Get the measurements of the constraint builders, by constraint identifier.
+     *
+     * @return a read-only map, sorted by identifier
+     */
+    public Map<String, Metric> getConstraints() {
+        return Collections.unmodifiableMap(constraints);
+    }
+
+    /**
+     * Get the number of hits of a cache.
+     *
+     * @param cache the cache identifier
+     * @return a positive integer
+     */
+    public int getHits(String cache) {
+        int[] x = caches.get(cache);
+        return x == null ? 0 : x[0];
+    }
+
+    /**
+     * Get the number of misses of a cache.
+     *
+     * @param cache the cache identifier
+     * @return a positive integer
+     */
+    public int getMisses(String cache) {
+        int[] x = caches.get(cache);
+        return x == null ? 0 : x[1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        for (Map.Entry<Phase, Metric> e : phases.entrySet()) {
+            b.append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Metric> e : statements.entrySet()) {
+            b.append("statement ").append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Metric> e : constraints.entrySet()) {
+            b.append("constraint ").append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+        }
+        for (Map.Entry<String, int[]> e : caches.entrySet()) {
+            b.append("cache ").append(e.getKey()).append(": ").append(e.getValue()[0]).append(" hit(s), ")
+                    .append(e.getValue()[1]).append(" miss(es)\n");
+        }
+        return b.toString();
+    }
+}
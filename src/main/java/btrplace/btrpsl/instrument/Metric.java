@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.instrument;
+
+/**
+ * Accumulate the measurements of a same kind of operation.
+ * This class is not thread-safe.
+ *
+ * @author Fabien Hermenier
+ */
+public class Metric {
+
+    private int count;
+
+    private long time;
+
+    private long allocated;
+
+    /**
+     * Add a measurement.
+     *
+     * @param nanos the duration of the operation
+     * @param bytes the memory allocated by the operation. Ignored if negative
+     */
+    public void add(long nanos, long bytes) {
+        count++;
+        time += nanos;
+        if (bytes > 0) {
+            allocated += bytes;
+        }
+    }
+
+    /**
+     * Get the number of measured operations.
+     *
+     * @return a positive integer
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Get the cumulated duration of the operations.
+     *
+     * @return a duration in nanoseconds
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Get the cumulated memory allocated by the operations.
+     *
+     * @return a number of bytes
+     */
+    public long getAllocated() {
+        return allocated;
+    }
+
+    @Override
+    public String toString() {
+        return count + " op(s), " + (time / 1000) + " us, " + allocated + " B";
+    }
+}
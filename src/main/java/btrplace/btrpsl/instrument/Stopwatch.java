@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.instrument;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measure the time elapsed and the memory allocated by the current thread
+ * since the stopwatch was started.
+ * The allocations are measured only on JVMs providing {@code com.sun.management.ThreadMXBean}.
+ *
+ * @author Fabien Hermenier
+ */
+public final class Stopwatch {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private final long start;
+
+    private final long allocated;
+
+    private Stopwatch() {
+        allocated = allocatedBytes();
+        start = System.nanoTime();
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        ThreadMXBean b = ManagementFactory.getThreadMXBean();
+        if (b instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sb = (com.sun.management.ThreadMXBean) b;
+            if (sb.isThreadAllocatedMemorySupported() && sb.isThreadAllocatedMemoryEnabled()) {
+                return sb;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Start a new stopwatch.
+     *
+     * @return the stopwatch
+     */
+    public static Stopwatch start() {
+        return new Stopwatch();
+    }
+
+    /**
+     * Get the memory allocated by the current thread since it started.
+     *
+     * @return a number of bytes. {@code -1} if the allocations cannot be measured
+     */
+    public static long allocatedBytes() {
+        if (THREADS == null) {
+            return -1;
+        }
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Get the time elapsed since the stopwatch was started.
+     *
+     * @return a duration in nanoseconds
+     */
+    public long elapsed() {
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Get the memory allocated by the current thread since the stopwatch was started.
+     * The stopwatch must be read from the thread that started it.
+     *
+     * @return a number of bytes. {@code -1} if the allocations cannot be measured
+     */
+    public long allocated() {
+        if (allocated < 0) {
+            return -1;
+        }
+        return allocatedBytes() - allocated;
+    }
+}
@@ -56,14 +56,17 @@ public class MockTemplateFactory implements TemplateFactory {
 
     @Override
     public void check(Script scr, String tplName, Element e, Map<String, String> attrs) throws ElementBuilderException {
-        for (Map.Entry<String, String> attr : attrs.entrySet()) {
-            String value = "true";
-            if (attr.getValue() != null) {
-                value = attr.getValue();
+        //Scripts sharing the model may be built concurrently
+        synchronized (mo) {
+            for (Map.Entry<String, String> attr : attrs.entrySet()) {
+                String value = "true";
+                if (attr.getValue() != null) {
+                    value = attr.getValue();
+                }
+                mo.getAttributes().castAndPut(e, attr.getKey(), value);
             }
-            mo.getAttributes().castAndPut(e, attr.getKey(), value);
+            mo.getAttributes().put(e, "template", tplName);
         }
-        mo.getAttributes().put(e, "template", tplName);
     }
 
     @Override
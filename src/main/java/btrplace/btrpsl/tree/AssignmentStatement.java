@@ -18,7 +18,6 @@
 package btrplace.btrpsl.tree;
 
 import btrplace.btrpsl.ANTLRBtrplaceSL2Parser;
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.SymbolsTable;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.BtrpSet;
@@ -34,30 +33,23 @@ import java.util.List;
  */
 public class AssignmentStatement extends BtrPlaceTree {
 
-    /**
-     * The table of symbols to use;
-     */
-    private final SymbolsTable symbols;
-
     /**
      * Make a new parser
      *
-     * @param t    the root token
-     * @param errs the errors to report
-     * @param syms the table of symbols to use
+     * @param t   the root token
+     * @param ctx the evaluation context
      */
-    public AssignmentStatement(Token t, ErrorReporter errs, SymbolsTable syms) {
-        super(t, errs);
-        symbols = syms;
+    public AssignmentStatement(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     private BtrpOperand declareVariable(String lbl, BtrpOperand res) {
-        if (symbols.isImmutable(lbl)) {
+        if (context.getSymbols().isImmutable(lbl)) {
             return ignoreError(lbl + " is an immutable variable. Assignment not permitted");
         }
         BtrpOperand cpy = res.clone();
         cpy.setLabel(lbl);
-        symbols.declare(lbl, cpy);
+        context.getSymbols().declare(lbl, cpy);
         return IgnorableOperand.getInstance();
     }
 
@@ -68,7 +60,7 @@ public class AssignmentStatement extends BtrPlaceTree {
             BtrpOperand res = getChild(1).go(this);
             if (res == IgnorableOperand.getInstance()) {
                 //We declare the variable to reduce the number of errors
-                symbols.declare(getChild(0).getText(), res);
+                context.getSymbols().declare(getChild(0).getText(), res);
                 return res;
             }
             if (getChild(0).getType() == ANTLRBtrplaceSL2Parser.VARIABLE) {
@@ -112,4 +104,37 @@ public class AssignmentStatement extends BtrPlaceTree {
         }
         return IgnorableOperand.getInstance();
     }
+
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        if (getChild(0).getType() != ANTLRBtrplaceSL2Parser.VARIABLE) {
+            return super.compile(parent);
+        }
+        final VariableSlot v = new VariableSlot(getChild(0).getText());
+        final Closure rhs = getChild(1).compile(this);
+        return new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                try {
+                    BtrpOperand res = rhs.eval();
+                    SymbolsTable syms = context.getSymbols();
+                    int slot = v.in(syms);
+                    if (res == IgnorableOperand.getInstance()) {
+                        //We declare the variable to reduce the number of errors
+                        syms.declare(slot, res);
+                        return res;
+                    }
+                    if (syms.isImmutable(slot)) {
+                        return ignoreError(v.label() + " is an immutable variable. Assignment not permitted");
+                    }
+                    BtrpOperand cpy = res.clone();
+                    cpy.setLabel(v.label());
+                    syms.declare(slot, cpy);
+                    return IgnorableOperand.getInstance();
+                } catch (UnsupportedOperationException e) {
+                    return ignoreError(e.getMessage());
+                }
+            }
+        };
+    }
 }
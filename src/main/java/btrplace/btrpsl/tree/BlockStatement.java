@@ -17,7 +17,6 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.IgnorableOperand;
 import org.antlr.runtime.Token;
@@ -30,11 +29,11 @@ public class BlockStatement extends BtrPlaceTree {
     /**
      * Make a new parser.
      *
-     * @param t    the root token
-     * @param errs the errors to report
+     * @param t   the root token
+     * @param ctx the evaluation context
      */
-    public BlockStatement(Token t, ErrorReporter errs) {
-        super(t, errs);
+    public BlockStatement(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     @Override
@@ -45,4 +44,18 @@ public class BlockStatement extends BtrPlaceTree {
         }
         return IgnorableOperand.getInstance();
     }
+
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        final Closure[] stmts = compileChildren(0);
+        return new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                for (Closure c : stmts) {
+                    c.eval();
+                }
+                return IgnorableOperand.getInstance();
+            }
+        };
+    }
 }
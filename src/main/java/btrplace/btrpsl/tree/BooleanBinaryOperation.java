@@ -17,7 +17,6 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.element.BtrpNumber;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.IgnorableOperand;
@@ -35,12 +34,12 @@ public class BooleanBinaryOperation extends BtrPlaceTree {
     /**
      * Make a new operator
      *
-     * @param t    the 'OR' token
-     * @param a    {@code true} for a boolean 'and' operation. {@code false} for a 'or'.
-     * @param errs the list of errors.
+     * @param t   the 'OR' token
+     * @param a   {@code true} for a boolean 'and' operation. {@code false} for a 'or'.
+     * @param ctx the evaluation context
      */
-    public BooleanBinaryOperation(Token t, boolean a, ErrorReporter errs) {
-        super(t, errs);
+    public BooleanBinaryOperation(Token t, boolean a, EvaluationContext ctx) {
+        super(t, ctx);
         this.and = a;
     }
 
@@ -48,7 +47,23 @@ public class BooleanBinaryOperation extends BtrPlaceTree {
     public BtrpOperand go(BtrPlaceTree parent) {
         BtrpOperand l = getChild(0).go(this);
         BtrpOperand r = getChild(1).go(this);
+        return combine(l, r);
+    }
+
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        final Closure l = getChild(0).compile(this);
+        final Closure r = getChild(1).compile(this);
+        return fold(new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                BtrpOperand lv = l.eval();
+                return combine(lv, r.eval());
+            }
+        }, l, r);
+    }
 
+    private BtrpOperand combine(BtrpOperand l, BtrpOperand r) {
         if (l == IgnorableOperand.getInstance() || r == IgnorableOperand.getInstance()) {
             return IgnorableOperand.getInstance();
         }
@@ -17,12 +17,15 @@
 
 package btrplace.btrpsl.tree;
 
+import btrplace.btrpsl.ErrorMessage;
 import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.IgnorableOperand;
 import org.antlr.runtime.Token;
 import org.antlr.runtime.tree.CommonTree;
 
+import java.util.List;
+
 
 /**
  * An abstract parser for a tree.
@@ -32,19 +35,29 @@ import org.antlr.runtime.tree.CommonTree;
 public class BtrPlaceTree extends CommonTree {
 
     /**
-     * All the errors to report.
+     * The context the tree is evaluated against.
      */
-    protected final ErrorReporter errors;
+    protected final EvaluationContext context;
 
     /**
-     * Make a new tree.
+     * Make a new tree that only reports errors.
      *
      * @param t    the token to handle. The root of this tree
      * @param errs the errors to report
      */
     public BtrPlaceTree(Token t, ErrorReporter errs) {
+        this(t, new EvaluationContext(errs));
+    }
+
+    /**
+     * Make a new tree.
+     *
+     * @param t   the token to handle. The root of this tree
+     * @param ctx the evaluation context
+     */
+    public BtrPlaceTree(Token t, EvaluationContext ctx) {
         super(t);
-        errors = errs;
+        context = ctx;
     }
 
     /**
@@ -58,6 +71,81 @@ public class BtrPlaceTree extends CommonTree {
         return IgnorableOperand.getInstance();
     }
 
+    /**
+     * Compile the tree into a closure.
+     * By default, the closure walks the tree using {@link #go(BtrPlaceTree)}.
+     *
+     * @param parent the parent of the root
+     * @return a closure evaluated like {@link #go(BtrPlaceTree)}
+     */
+    public Closure compile(BtrPlaceTree parent) {
+        return walk(parent);
+    }
+
+    /**
+     * Make a closure that walks the tree.
+     *
+     * @param parent the parent of the root
+     * @return a closure that calls {@link #go(BtrPlaceTree)}
+     */
+    public final Closure walk(final BtrPlaceTree parent) {
+        return new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                return go(parent);
+            }
+        };
+    }
+
+    /**
+     * Compile the children of the tree.
+     *
+     * @param from the index of the first child to compile
+     * @return the closures of the children
+     */
+    protected Closure[] compileChildren(int from) {
+        Closure[] cs = new Closure[Math.max(0, getChildCount() - from)];
+        for (int i = 0; i < cs.length; i++) {
+            cs[i] = getChild(from + i).compile(this);
+        }
+        return cs;
+    }
+
+    /**
+     * Fold a closure into a constant if its arguments are constants.
+     * The closure is then evaluated once, at compilation. It is kept as is if its
+     * evaluation fails, so the errors are reported at each evaluation.
+     * Only closures that do not depend on the state of the evaluation but through their arguments
+     * must be folded.
+     *
+     * @param c    the closure to fold
+     * @param args the closures of the arguments
+     * @return a {@link Constant} if the closure was folded, {@code c} otherwise
+     */
+    protected Closure fold(Closure c, Closure... args) {
+        for (Closure a : args) {
+            if (!(a instanceof Constant)) {
+                return c;
+            }
+        }
+        List<ErrorMessage> errs = context.getErrorReporter().getErrors();
+        int nb = errs.size();
+        BtrpOperand v;
+        try {
+            v = c.eval();
+        } catch (RuntimeException e) {
+            v = null;
+        }
+        if (errs.size() != nb) {
+            errs.subList(nb, errs.size()).clear();
+            return c;
+        }
+        if (v == null || v == IgnorableOperand.getInstance()) {
+            return c;
+        }
+        return new Constant(v);
+    }
+
     /**
      * Report an error for the current token and generate a content to ignore.
      *
@@ -76,7 +164,7 @@ public class BtrPlaceTree extends CommonTree {
      * @return {@link IgnorableOperand} to indicate to skip the operand
      */
     public IgnorableOperand ignoreErrors(ErrorReporter err) {
-        errors.getErrors().addAll(err.getErrors());
+        context.getErrorReporter().getErrors().addAll(err.getErrors());
         return IgnorableOperand.getInstance();
     }
 
@@ -99,7 +187,7 @@ public class BtrPlaceTree extends CommonTree {
      * @param msg the error message
      */
     public void append(Token t, String msg) {
-        errors.append(t.getLine(), t.getCharPositionInLine(), msg);
+        context.getErrorReporter().append(t.getLine(), t.getCharPositionInLine(), msg);
     }
 
     @Override
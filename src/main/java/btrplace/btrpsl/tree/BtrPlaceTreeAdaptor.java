@@ -17,12 +17,8 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.*;
-import btrplace.btrpsl.constraint.ConstraintsCatalog;
+import btrplace.btrpsl.ANTLRBtrplaceSL2Lexer;
 import btrplace.btrpsl.element.BtrpOperand;
-import btrplace.btrpsl.includes.Includes;
-import btrplace.btrpsl.template.TemplateFactory;
-import btrplace.model.Model;
 import org.antlr.runtime.RecognitionException;
 import org.antlr.runtime.Token;
 import org.antlr.runtime.TokenStream;
@@ -35,138 +31,128 @@ import org.antlr.runtime.tree.CommonTreeAdaptor;
  */
 public class BtrPlaceTreeAdaptor extends CommonTreeAdaptor {
 
-    private final ErrorReporter errors;
-
-    private final SymbolsTable symbols;
-
-    private final ConstraintsCatalog catalog;
-
-    private final Includes includes;
-
-    private final Script script;
-
-    private TemplateFactory tpls;
-
-    private NamingService srv;
-
-    private Model model;
+    /**
+     * The context shared by all the created trees.
+     */
+    private final EvaluationContext context;
 
     /**
      * Build a new adaptor.
      *
-     * @param errs the errors to report
-     * @param s    the symbol table to use
+     * @param ctx the context the created trees will be evaluated against
+     */
+    public BtrPlaceTreeAdaptor(EvaluationContext ctx) {
+        this.context = ctx;
+    }
+
+    /**
+     * Get the context the created trees will be evaluated against.
+     *
+     * @return the context provided at instantiation
      */
-    public BtrPlaceTreeAdaptor(Script scr, Model mo, NamingService ns, TemplateFactory tplFactory, ErrorReporter errs, SymbolsTable s, Includes incs, ConstraintsCatalog c) {
-        this.errors = errs;
-        this.srv = ns;
-        this.tpls = tplFactory;
-        this.symbols = s;
-        this.catalog = c;
-        this.includes = incs;
-        this.script = scr;
-        this.model = mo;
+    public EvaluationContext getContext() {
+        return context;
     }
 
 
     @Override
     public Object create(Token payload) {
         if (payload == null) {
-            return new BtrPlaceTree(payload, errors);
+            return new BtrPlaceTree(payload, context);
         }
         switch (payload.getType()) {
             case ANTLRBtrplaceSL2Lexer.RANGE:
-                return new Range(payload, errors);
+                return new Range(payload, context);
             case ANTLRBtrplaceSL2Lexer.ENUM_VAR:
-                return new EnumVar(payload, symbols, errors);
+                return new EnumVar(payload, context);
             case ANTLRBtrplaceSL2Lexer.ENUM_FQDN:
-                return new EnumElement(payload, srv, script, BtrpOperand.Type.node, errors);
+                return new EnumElement(payload, BtrpOperand.Type.node, context);
             case ANTLRBtrplaceSL2Lexer.ENUM_ID:
-                return new EnumElement(payload, srv, script, BtrpOperand.Type.VM, errors);
+                return new EnumElement(payload, BtrpOperand.Type.VM, context);
             case ANTLRBtrplaceSL2Lexer.AND:
-                return new BooleanBinaryOperation(payload, true, errors);
+                return new BooleanBinaryOperation(payload, true, context);
             case ANTLRBtrplaceSL2Lexer.OR:
-                return new BooleanBinaryOperation(payload, false, errors);
+                return new BooleanBinaryOperation(payload, false, context);
             case ANTLRBtrplaceSL2Lexer.BLOCK:
-                return new BlockStatement(payload, errors);
+                return new BlockStatement(payload, context);
             case ANTLRBtrplaceSL2Lexer.FLOAT:
             case ANTLRBtrplaceSL2Lexer.OCTAL:
             case ANTLRBtrplaceSL2Lexer.DECIMAL:
             case ANTLRBtrplaceSL2Lexer.HEXA:
-                return new NumberTree(payload, errors);
+                return new NumberTree(payload, context);
             case ANTLRBtrplaceSL2Lexer.STRING:
-                return new StringTree(payload, errors);
+                return new StringTree(payload, context);
             case ANTLRBtrplaceSL2Lexer.PLUS:
-                return new AddOperator(payload, errors);
+                return new AddOperator(payload, context);
             case ANTLRBtrplaceSL2Lexer.MINUS:
-                return new MinusOperator(payload, errors);
+                return new MinusOperator(payload, context);
             case ANTLRBtrplaceSL2Lexer.TIMES:
-                return new TimesOperator(payload, errors);
+                return new TimesOperator(payload, context);
             case ANTLRBtrplaceSL2Lexer.POWER:
-                return new PowerOperator(payload, errors);
+                return new PowerOperator(payload, context);
             case ANTLRBtrplaceSL2Lexer.EQUALS:
-                return new AssignmentStatement(payload, errors, symbols);
+                return new AssignmentStatement(payload, context);
             case ANTLRBtrplaceSL2Lexer.PLUS_EQUALS:
-                return new SelfAssignmentStatement(SelfAssignmentStatement.Type.plus_equals, payload, errors, symbols);
+                return new SelfAssignmentStatement(SelfAssignmentStatement.Type.plus_equals, payload, context);
             case ANTLRBtrplaceSL2Lexer.MINUS_EQUALS:
-                return new SelfAssignmentStatement(SelfAssignmentStatement.Type.minus_equals, payload, errors, symbols);
+                return new SelfAssignmentStatement(SelfAssignmentStatement.Type.minus_equals, payload, context);
             case ANTLRBtrplaceSL2Lexer.DIV_EQUALS:
-                return new SelfAssignmentStatement(SelfAssignmentStatement.Type.div_equals, payload, errors, symbols);
+                return new SelfAssignmentStatement(SelfAssignmentStatement.Type.div_equals, payload, context);
             case ANTLRBtrplaceSL2Lexer.TIMES_EQUALS:
-                return new SelfAssignmentStatement(SelfAssignmentStatement.Type.times_equals, payload, errors, symbols);
+                return new SelfAssignmentStatement(SelfAssignmentStatement.Type.times_equals, payload, context);
             case ANTLRBtrplaceSL2Lexer.REMAINDER_EQUALS:
-                return new SelfAssignmentStatement(SelfAssignmentStatement.Type.remainder_equals, payload, errors, symbols);
+                return new SelfAssignmentStatement(SelfAssignmentStatement.Type.remainder_equals, payload, context);
             case ANTLRBtrplaceSL2Lexer.VARIABLE:
-                return new VariableTree(payload, errors, symbols);
+                return new VariableTree(payload, context);
             case ANTLRBtrplaceSL2Lexer.DIV:
-                return new DivideOperator(payload, errors);
+                return new DivideOperator(payload, context);
             case ANTLRBtrplaceSL2Lexer.REMAINDER:
-                return new RemainderOperator(payload, errors);
+                return new RemainderOperator(payload, context);
             case ANTLRBtrplaceSL2Lexer.EQ:
-                return new EqComparisonOperator(payload, false, errors);
+                return new EqComparisonOperator(payload, false, context);
             case ANTLRBtrplaceSL2Lexer.NOT:
-                return new NotOperator(payload, errors);
+                return new NotOperator(payload, context);
             case ANTLRBtrplaceSL2Lexer.NEQ:
-                return new EqComparisonOperator(payload, true, errors);
+                return new EqComparisonOperator(payload, true, context);
             case ANTLRBtrplaceSL2Lexer.GT:
-                return new StrictComparisonOperator(payload, false, errors);
+                return new StrictComparisonOperator(payload, false, context);
             case ANTLRBtrplaceSL2Lexer.LT:
-                return new StrictComparisonOperator(payload, true, errors);
+                return new StrictComparisonOperator(payload, true, context);
             case ANTLRBtrplaceSL2Lexer.LEQ:
-                return new NonStrictComparisonOperator(payload, true, errors);
+                return new NonStrictComparisonOperator(payload, true, context);
             case ANTLRBtrplaceSL2Lexer.GEQ:
-                return new NonStrictComparisonOperator(payload, false, errors);
+                return new NonStrictComparisonOperator(payload, false, context);
             case ANTLRBtrplaceSL2Lexer.IF:
-                return new IfStatement(payload, symbols, errors);
+                return new IfStatement(payload, context);
             case ANTLRBtrplaceSL2Lexer.FOR:
-                return new ForStatement(payload, symbols, errors);
+                return new ForStatement(payload, context);
             case ANTLRBtrplaceSL2Lexer.IDENTIFIER:
-                return new ElementTree(payload, srv, script, errors);
+                return new ElementTree(payload, context);
             case ANTLRBtrplaceSL2Lexer.NODE_NAME:
-                return new ElementTree(payload, srv, script, errors);
+                return new ElementTree(payload, context);
             case ANTLRBtrplaceSL2Lexer.EXPLODED_SET:
-                return new ExplodedSetTree(payload, errors);
+                return new ExplodedSetTree(payload, context);
             case ANTLRBtrplaceSL2Lexer.CARDINALITY:
-                return new CardinalityOperator(payload, errors);
+                return new CardinalityOperator(payload, context);
             case ANTLRBtrplaceSL2Lexer.CONSTRAINTIDENTIFIER:
-                return new ConstraintStatement(payload, script, catalog, errors);
+                return new ConstraintStatement(payload, context);
             case ANTLRBtrplaceSL2Lexer.TYPE_DEFINITION:
-                return new TemplateAssignment(payload, script, tpls, symbols, model, srv, errors);
+                return new TemplateAssignment(payload, context);
             case ANTLRBtrplaceSL2Lexer.EXPORT:
-                return new ExportStatement(payload, script, errors);
+                return new ExportStatement(payload, context);
             case ANTLRBtrplaceSL2Lexer.USE:
-                return new ImportStatement(payload, includes, symbols, script, errors);
+                return new ImportStatement(payload, context);
             case ANTLRBtrplaceSL2Lexer.NAMESPACE:
-                return new NameSpaceStatement(payload, script, symbols, errors);
+                return new NameSpaceStatement(payload, context);
             case ANTLRBtrplaceSL2Lexer.TEMPLATE_OPTION:
-                return new TemplateOptionTree(payload, errors);
+                return new TemplateOptionTree(payload, context);
             case ANTLRBtrplaceSL2Lexer.EOF:
                 return new ErrorTree(payload, null);
             case ANTLRBtrplaceSL2Lexer.DISCRETE:
                 return new DiscreteToken(payload);
             case ANTLRBtrplaceSL2Lexer.BLANK:
             default:
-                return new BtrPlaceTree(payload, errors);
+                return new BtrPlaceTree(payload, context);
         }
     }
 
@@ -17,7 +17,6 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.element.BtrpNumber;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.BtrpSet;
@@ -33,11 +32,11 @@ public class CardinalityOperator extends BtrPlaceTree {
     /**
      * Make a new parser.
      *
-     * @param t    the root token
-     * @param errs the errors to report
+     * @param t   the root token
+     * @param ctx the evaluation context
      */
-    public CardinalityOperator(Token t, ErrorReporter errs) {
-        super(t, errs);
+    public CardinalityOperator(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     @Override
@@ -48,4 +47,19 @@ public class CardinalityOperator extends BtrPlaceTree {
         }
         return new BtrpNumber(((BtrpSet) c).size(), BtrpNumber.Base.base10);
     }
+
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        final Closure c = getChild(0).compile(this);
+        return fold(new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                BtrpOperand v = c.eval();
+                if (v.degree() == 0) {
+                    return ignoreError("Cardinality operator only applies to a set");
+                }
+                return new BtrpNumber(((BtrpSet) v).size(), BtrpNumber.Base.base10);
+            }
+        }, c);
+    }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.tree;
+
+import btrplace.btrpsl.element.BtrpOperand;
+
+/**
+ * The compiled form of a tree.
+ * <p/>
+ * A closure captures, once for all, everything that does not depend on the evaluation:
+ * the closures of the sub-trees, the constants and the variable names. Evaluating
+ * a closure is then equivalent to {@link BtrPlaceTree#go(BtrPlaceTree)} without
+ * re-walking the tree, which matters for the loops and for the trees evaluated several times.
+ * The state of the evaluation is still read from the {@link EvaluationContext} of the tree.
+ *
+ * @author Fabien Hermenier
+ * @see BtrPlaceTree#compile(BtrPlaceTree)
+ */
+public interface Closure {
+
+    /**
+     * Evaluate the closure.
+     *
+     * @return the resulting operand, {@link btrplace.btrpsl.element.IgnorableOperand} to indicate an error
+     */
+    BtrpOperand eval();
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.tree;
+
+import btrplace.btrpsl.element.BtrpOperand;
+
+/**
+ * The compiled form of a tree that does not depend on the evaluation.
+ * The value is computed once, when the tree is compiled, and kept
+ * with the tree. See {@link BtrPlaceTree#fold(Closure, Closure...)}.
+ * <p/>
+ * The value is never returned as is, as the operands may be labelled or modified once
+ * evaluated. Each evaluation returns a fresh copy. The copy of a set shares the operands
+ * of the value until it is modified.
+ *
+ * @author Fabien Hermenier
+ */
+final class Constant implements Closure {
+
+    private final BtrpOperand value;
+
+    /**
+     * Make a new constant.
+     *
+     * @param v the value
+     */
+    Constant(BtrpOperand v) {
+        this.value = v;
+    }
+
+    @Override
+    public BtrpOperand eval() {
+        return value.clone();
+    }
+}
@@ -17,12 +17,11 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
-import btrplace.btrpsl.Script;
-import btrplace.btrpsl.constraint.ConstraintsCatalog;
 import btrplace.btrpsl.constraint.SatConstraintBuilder;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.IgnorableOperand;
+import btrplace.btrpsl.instrument.BuildListener;
+import btrplace.btrpsl.instrument.Stopwatch;
 import btrplace.model.constraint.SatConstraint;
 import org.antlr.runtime.Token;
 
@@ -37,21 +36,14 @@ import java.util.List;
  */
 public class ConstraintStatement extends BtrPlaceTree {
 
-    private Script script;
-
-    private ConstraintsCatalog catalog;
-
     /**
      * Make a new Tree parser.
      *
-     * @param t    the root symbol
-     * @param cat  the catalog of available constraints
-     * @param errs the errors to report
+     * @param t   the root symbol
+     * @param ctx the evaluation context
      */
-    public ConstraintStatement(Token t, Script scr, ConstraintsCatalog cat, ErrorReporter errs) {
-        super(t, errs);
-        this.catalog = cat;
-        this.script = scr;
+    public ConstraintStatement(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     /**
@@ -66,28 +58,68 @@ public class ConstraintStatement extends BtrPlaceTree {
     @Override
     public BtrpOperand go(BtrPlaceTree parent) {
         String cname = getText();
-
-        if (catalog == null) {
+        if (context.getConstraintsCatalog() == null) {
             return ignoreError("No constraints available");
         }
-        SatConstraintBuilder b = catalog.getConstraint(cname);
+        SatConstraintBuilder b = context.getConstraintsCatalog().getConstraint(cname);
         if (b == null) {
             ignoreError("Unknown constraint '" + cname + "'");
         }
-
-        //Get the params
-        int i = 0;
-        boolean discrete = false;
-        if (getChild(0).getText().equals(">>")) {
-            i = 1;
-            discrete = true;
-        }
+        boolean discrete = getChildCount() > 0 && getChild(0).getText().equals(">>");
         List<BtrpOperand> params = new ArrayList<>();
-        for (; i < getChildCount(); i++) {
+        for (int i = discrete ? 1 : 0; i < getChildCount(); i++) {
             params.add(getChild(i).go(this));
         }
+        return build(b, discrete, params);
+    }
+
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        final boolean discrete = getChildCount() > 0 && getChild(0).getText().equals(">>");
+        final Closure[] args = compileChildren(discrete ? 1 : 0);
+        return new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                String cname = getText();
+                if (context.getConstraintsCatalog() == null) {
+                    return ignoreError("No constraints available");
+                }
+                SatConstraintBuilder b = context.getConstraintsCatalog().getConstraint(cname);
+                if (b == null) {
+                    ignoreError("Unknown constraint '" + cname + "'");
+                }
+                List<BtrpOperand> params = new ArrayList<>(args.length);
+                for (Closure c : args) {
+                    params.add(c.eval());
+                }
+                return build(b, discrete, params);
+            }
+        };
+    }
+
+    /**
+     * Build the constraint and add it to the script.
+     *
+     * @param b        the constraint builder. {@code null} if unknown
+     * @param discrete {@code true} for a discrete restriction
+     * @param params   the parameters
+     * @return {@link IgnorableOperand}
+     */
+    private BtrpOperand build(SatConstraintBuilder b, boolean discrete, List<BtrpOperand> params) {
+        String cname = getText();
         if (b != null) {
+            if (context.getScript().getEvaluationLog() != null) {
+                context.getScript().getEvaluationLog().constraint(cname, discrete, params);
+            }
+            BuildListener l = context.getBuildListener();
+            Stopwatch w = l == null ? null : Stopwatch.start();
             List<SatConstraint> constraints = b.buildConstraint(this, params);
+            if (w != null) {
+                long nanos = w.elapsed();
+                long bytes = w.allocated();
+                l.constraint(cname, nanos, bytes);
+                l.phase(BuildListener.Phase.constraints, nanos, bytes);
+            }
             for (SatConstraint c : constraints) {
                 if (c != null) {
                     if (discrete) {
@@ -98,7 +130,7 @@ public class ConstraintStatement extends BtrPlaceTree {
                         //force the continuous mode, if available
                         c.setContinuous(true);
                     }
-                    script.addConstraint(c);
+                    context.getScript().addConstraint(c);
                 }
             }
         }
@@ -32,7 +32,7 @@ public class DiscreteToken extends BtrPlaceTree {
      * @param t the ANTLR token to use
      */
     public DiscreteToken(Token t) {
-        super(t, null);
+        super(t, new EvaluationContext());
     }
 
     @Override
@@ -18,9 +18,6 @@
 package btrplace.btrpsl.tree;
 
 import btrplace.btrpsl.ANTLRBtrplaceSL2Parser;
-import btrplace.btrpsl.ErrorReporter;
-import btrplace.btrpsl.NamingService;
-import btrplace.btrpsl.Script;
 import btrplace.btrpsl.element.BtrpElement;
 import btrplace.btrpsl.element.BtrpOperand;
 import org.antlr.runtime.Token;
@@ -32,20 +29,14 @@ import org.antlr.runtime.Token;
  */
 public class ElementTree extends BtrPlaceTree {
 
-    private Script script;
-
-    private NamingService namingService;
-
     /**
      * Make a new parser.
      *
-     * @param t    the token to analyze
-     * @param errs the errors to report
+     * @param t   the token to analyze
+     * @param ctx the evaluation context
      */
-    public ElementTree(Token t, NamingService ns, Script scr, ErrorReporter errs) {
-        super(t, errs);
-        this.script = scr;
-        this.namingService = ns;
+    public ElementTree(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     @Override
@@ -55,7 +46,7 @@ public class ElementTree extends BtrPlaceTree {
         switch (token.getType()) {
             case ANTLRBtrplaceSL2Parser.NODE_NAME:
                 String ref = lbl.substring(1, lbl.length());
-                el = namingService.resolve(lbl);
+                el = context.getNamingService().resolve(lbl);
                 if (el == null) {
                     return ignoreError("Unknown node '" + ref + "'");
                 }
@@ -64,8 +55,8 @@ public class ElementTree extends BtrPlaceTree {
                 /**
                  * Switch to Fully Qualified name before getting the VM
                  */
-                String fqn = script.id() + '.' + lbl;
-                el = namingService.resolve(fqn);
+                String fqn = context.getScript().id() + '.' + lbl;
+                el = context.getNamingService().resolve(fqn);
                 if (el == null) {
                     return ignoreError("Unknown VM '" + lbl + "'");
                 }
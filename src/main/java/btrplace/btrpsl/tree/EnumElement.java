@@ -17,12 +17,15 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.NamingService;
-import btrplace.btrpsl.Script;
+import btrplace.btrpsl.PrefixNamingService;
 import btrplace.btrpsl.element.*;
 import org.antlr.runtime.Token;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * An enumeration of either nodes or virtual machines.
  *
@@ -32,23 +35,16 @@ public class EnumElement extends BtrPlaceTree {
 
     private BtrpOperand.Type type;
 
-    private Script script;
-
-    private NamingService namingService;
-
     /**
      * Make a new tree.
      *
      * @param payload the root token
-     * @param v       the script being check
      * @param ty      the type of the elements in the enumeration
-     * @param errors  the errors to report
+     * @param ctx     the evaluation context
      */
-    public EnumElement(Token payload, NamingService srv, Script v, BtrpOperand.Type ty, ErrorReporter errors) {
-        super(payload, errors);
+    public EnumElement(Token payload, BtrpOperand.Type ty, EvaluationContext ctx) {
+        super(payload, ctx);
         this.type = ty;
-        this.script = v;
-        this.namingService = srv;
     }
 
     /**
@@ -76,7 +72,7 @@ public class EnumElement extends BtrPlaceTree {
                 if (type == BtrpOperand.Type.node) {
                     res.getValues().add(new BtrpString(id));
                 } else {
-                    res.getValues().add(new BtrpString(script.id() + '.' + id));
+                    res.getValues().add(new BtrpString(context.getScript().id() + '.' + id));
                 }
 
             }
@@ -84,8 +80,116 @@ public class EnumElement extends BtrPlaceTree {
         return res;
     }
 
+    /**
+     * Get the prefix shared by the names of the elements in the enumeration.
+     * The namespace of the script is included for the VMs.
+     *
+     * @return the prefix
+     */
+    public String getPrefix() {
+        String head = getChild(0).getText().substring(0, getChild(0).getText().length() - 1);
+        return type == BtrpOperand.Type.node ? head : context.getScript().id() + '.' + head;
+    }
+
+    /**
+     * Expand the enumeration, range by range.
+     * Elements are not evaluated.
+     *
+     * @return for each range, the suffixes to append to {@link #getPrefix()} to get the names
+     * of its elements. {@code null} if a range cannot be evaluated
+     */
+    public List<List<String>> expandSuffixes() {
+        String tail = getChild(getChildCount() - 1).getText().substring(1);
+        List<List<String>> res = new ArrayList<>(getChildCount() - 2);
+        for (int i = 1; i < getChildCount() - 1; i++) {
+            BtrpOperand op = getChild(i).go(this);
+            if (op == IgnorableOperand.getInstance()) {
+                return null;
+            }
+            List<String> sfx = suffixes((BtrpSet) op, tail);
+            if (sfx == null) {
+                return null;
+            }
+            res.add(sfx);
+        }
+        return res;
+    }
+
     @Override
     public BtrpOperand go(BtrPlaceTree parent) {
+        Closure[] ranges = new Closure[Math.max(0, getChildCount() - 2)];
+        List<List<String>> suffixes = new ArrayList<>(ranges.length);
+        for (int i = 0; i < ranges.length; i++) {
+            ranges[i] = getChild(i + 1).walk(this);
+            suffixes.add(null);
+        }
+        return resolve(parent, ranges, suffixes);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The suffixes of the constant ranges, such as {@code [1..2000]}, are computed once.
+     */
+    @Override
+    public Closure compile(final BtrPlaceTree parent) {
+        if (type != BtrpOperand.Type.node && type != BtrpOperand.Type.VM) {
+            return super.compile(parent);
+        }
+        String tail = getChild(getChildCount() - 1).getText().substring(1);
+        final Closure[] ranges = new Closure[Math.max(0, getChildCount() - 2)];
+        final List<List<String>> suffixes = new ArrayList<>(ranges.length);
+        for (int i = 0; i < ranges.length; i++) {
+            ranges[i] = getChild(i + 1).compile(this);
+            List<String> sfx = null;
+            if (ranges[i] instanceof Constant) {
+                sfx = suffixes((BtrpSet) ranges[i].eval(), tail);
+                if (sfx != null) {
+                    sfx = Collections.unmodifiableList(new ArrayList<>(sfx));
+                }
+            }
+            suffixes.add(sfx);
+        }
+        return new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                return resolve(parent, ranges, suffixes);
+            }
+        };
+    }
+
+    /**
+     * Get the suffixes of the elements declared by a range.
+     *
+     * @param s    the evaluated range
+     * @param tail the common tail of the elements
+     * @return the suffixes, {@code null} if the range contains an operand to ignore
+     */
+    private static List<String> suffixes(BtrpSet s, String tail) {
+        //The labels of a range are computed without intermediate operands
+        RangeView r = s.getRange();
+        if (r != null) {
+            return r.compose("", tail).labels();
+        }
+        List<BtrpOperand> labels = s.getValues();
+        List<String> res = new ArrayList<>(labels.size());
+        for (BtrpOperand o : labels) {
+            if (o == IgnorableOperand.getInstance()) {
+                return null;
+            }
+            res.add(o.toString() + tail);
+        }
+        return res;
+    }
+
+    /**
+     * Resolve the elements of the enumeration.
+     *
+     * @param parent   the parent of the enumeration
+     * @param ranges   the ranges of the enumeration
+     * @param suffixes the suffixes of each range, if known before the evaluation. {@code null} otherwise
+     * @return the set of elements or an error
+     */
+    private BtrpOperand resolve(BtrPlaceTree parent, Closure[] ranges, List<List<String>> suffixes) {
         String head = getChild(0).getText().substring(0, getChild(0).getText().length() - 1);
         String tail = getChild(getChildCount() - 1).getText().substring(1);
         BtrpSet res;
@@ -100,47 +204,60 @@ public class EnumElement extends BtrPlaceTree {
             default:
                 return ignoreError("Unsupported enumeration type: '" + type + "'");
         }
-
-        for (int i = 1; i < getChildCount() - 1; i++) {
-            BtrpOperand op = getChild(i).go(this);
-            if (op == IgnorableOperand.getInstance()) {
-                return op;
-            }
-            BtrpSet s = (BtrpSet) op;
-            for (BtrpOperand o : s.getValues()) {
-
-                if (o == IgnorableOperand.getInstance()) {
-                    return o;
+        String prefix = getPrefix();
+        NamingService ns = context.getNamingService();
+        for (int i = 0; i < ranges.length; i++) {
+            List<String> sfx = suffixes.get(i);
+            if (sfx == null) {
+                BtrpOperand op = ranges[i].eval();
+                if (op == IgnorableOperand.getInstance()) {
+                    return op;
                 }
-
-                //Compose
-                String id = head + o.toString() + tail;
-
-                if (type == BtrpOperand.Type.node) {
-                    BtrpElement el = namingService.resolve(id);
-                    if (el == null) {
-                        //Should be fair as each getChild(i) is a range with at least on child. Prevent from a fake token
-                        //with no line number
-                        Token t = getChild(i).getChild(0).getToken();
-                        if (t.getCharPositionInLine() == -1) {
-                            t = parent.getToken();
-                        }
-                        return ignoreError(t, "Unknown node '" + id.substring(1) + "'");
-                    }
-                    res.getValues().add(el);
-                } else if (type == BtrpOperand.Type.VM) {
-                    String fqn = script.id() + '.' + id;
-                    BtrpElement el = namingService.resolve(fqn);
-                    Token t = getChild(i).getChild(0).getToken();
-                    if (el == null) {
-                        return ignoreError(t, "Unknown VM '" + id + "'");
+                sfx = suffixes((BtrpSet) op, tail);
+                if (sfx == null) {
+                    return IgnorableOperand.getInstance();
+                }
+            }
+            if (ns instanceof PrefixNamingService) {
+                //Bulk resolution, the common prefix is looked up once
+                List<BtrpElement> els = ((PrefixNamingService) ns).resolve(prefix, sfx);
+                for (int j = 0; j < els.size(); j++) {
+                    if (els.get(j) == null) {
+                        return unknown(parent, i + 1, head + sfx.get(j));
                     }
-                    res.getValues().add(el);
-                } else {
-                    return ignoreError("Unsupported type '" + type + "' in enumeration");
                 }
+                res.getValues().addAll(els);
+                continue;
+            }
+            for (String x : sfx) {
+                BtrpElement el = ns.resolve(prefix + x);
+                if (el == null) {
+                    return unknown(parent, i + 1, head + x);
+                }
+                res.getValues().add(el);
             }
         }
         return res;
     }
+
+    /**
+     * Report an unknown element.
+     *
+     * @param parent the parent of the enumeration
+     * @param i      the index of the range where the element is declared
+     * @param id     the element identifier, without the namespace
+     * @return {@link IgnorableOperand}
+     */
+    private IgnorableOperand unknown(BtrPlaceTree parent, int i, String id) {
+        Token t = getChild(i).getChild(0).getToken();
+        if (type == BtrpOperand.Type.node) {
+            //Should be fair as each getChild(i) is a range with at least on child. Prevent from a fake token
+            //with no line number
+            if (t.getCharPositionInLine() == -1) {
+                t = parent.getToken();
+            }
+            return ignoreError(t, "Unknown node '" + id.substring(1) + "'");
+        }
+        return ignoreError(t, "Unknown VM '" + id + "'");
+    }
 }
@@ -17,12 +17,11 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
-import btrplace.btrpsl.SymbolsTable;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.BtrpSet;
 import btrplace.btrpsl.element.BtrpString;
 import btrplace.btrpsl.element.IgnorableOperand;
+import btrplace.btrpsl.element.RangeView;
 import org.antlr.runtime.Token;
 
 /**
@@ -32,18 +31,14 @@ import org.antlr.runtime.Token;
  */
 public class EnumVar extends BtrPlaceTree {
 
-    private SymbolsTable syms;
-
     /**
      * Make a new tree.
      *
      * @param payload the root token
-     * @param sTable  to symbol table
-     * @param errors  the errors to report
+     * @param ctx     the evaluation context
      */
-    public EnumVar(Token payload, SymbolsTable sTable, ErrorReporter errors) {
-        super(payload, errors);
-        this.syms = sTable;
+    public EnumVar(Token payload, EvaluationContext ctx) {
+        super(payload, ctx);
     }
 
     /**
@@ -63,6 +58,11 @@ public class EnumVar extends BtrPlaceTree {
                 return op;
             }
             BtrpSet s = (BtrpSet) op;
+            RangeView r = s.getRange();
+            if (r != null && getChildCount() == 3) {
+                //A single range, the expansion is a view
+                return new BtrpSet(1, BtrpOperand.Type.string, r.compose(head, tail));
+            }
             for (BtrpOperand o : s.getValues()) {
                 //Compose
                 res.getValues().add(new BtrpString(head + o.toString() + tail));
@@ -87,7 +87,7 @@ public class EnumVar extends BtrPlaceTree {
                 //Compose
                 String id = head + o.toString() + tail;
                 //lookup
-                BtrpOperand var = syms.getSymbol(id);
+                BtrpOperand var = context.getSymbols().getSymbol(id);
                 if (var == null) {
                     return ignoreError(parent.getToken(), "Unknown variable '" + id + "'");
                 }
@@ -17,7 +17,7 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
+import btrplace.btrpsl.element.BtrpNumber;
 import btrplace.btrpsl.element.BtrpOperand;
 import org.antlr.runtime.Token;
 
@@ -34,11 +34,11 @@ public class EqComparisonOperator extends BtrPlaceTree {
     /**
      * Make a new parser.
      *
-     * @param t    the root token
-     * @param errs the errors to report
+     * @param t   the root token
+     * @param ctx the evaluation context
      */
-    public EqComparisonOperator(Token t, boolean opp, ErrorReporter errs) {
-        super(t, errs);
+    public EqComparisonOperator(Token t, boolean opp, EvaluationContext ctx) {
+        super(t, ctx);
         this.opposite = opp;
     }
 
@@ -53,4 +53,17 @@ public class EqComparisonOperator extends BtrPlaceTree {
         }
     }
 
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        final Closure l = getChild(0).compile(this);
+        final Closure r = getChild(1).compile(this);
+        return fold(new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                BtrpOperand lv = l.eval();
+                BtrpNumber res = lv.eq(r.eval());
+                return opposite ? res.not() : res;
+            }
+        }, l, r);
+    }
 }
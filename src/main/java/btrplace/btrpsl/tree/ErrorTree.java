@@ -34,7 +34,7 @@ public class ErrorTree extends BtrPlaceTree {
      * A tree signaling an error.
      */
     public ErrorTree(Token start, Token stop) {
-        super(start, null);
+        super(start, new EvaluationContext());
         end = stop;
     }
 
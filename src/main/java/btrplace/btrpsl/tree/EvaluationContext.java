@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.tree;
+
+import btrplace.btrpsl.ErrorReporter;
+import btrplace.btrpsl.NamingService;
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.SymbolsTable;
+import btrplace.btrpsl.constraint.ConstraintsCatalog;
+import btrplace.btrpsl.includes.Includes;
+import btrplace.btrpsl.instrument.BuildListener;
+import btrplace.btrpsl.template.TemplateFactory;
+import btrplace.model.Model;
+
+/**
+ * The state a tree is evaluated against.
+ * <p/>
+ * The nodes of a tree share a single context and read it when they are evaluated,
+ * so a parsed tree can be evaluated several times, against different
+ * scripts, models or naming services, by re-binding its context.
+ *
+ * @author Fabien Hermenier
+ */
+public class EvaluationContext {
+
+    private Script script;
+
+    private SymbolsTable symbols;
+
+    private ErrorReporter errors;
+
+    private Model model;
+
+    private NamingService namingService;
+
+    private TemplateFactory templateFactory;
+
+    private Includes includes;
+
+    private ConstraintsCatalog catalog;
+
+    private BuildListener listener;
+
+    /**
+     * Make a new empty context.
+     */
+    public EvaluationContext() {
+    }
+
+    /**
+     * Make a context that only reports errors.
+     *
+     * @param errs the errors to report
+     */
+    public EvaluationContext(ErrorReporter errs) {
+        this.errors = errs;
+    }
+
+    /**
+     * Make a new context.
+     *
+     * @param v    the script under construction
+     * @param s    the symbol table
+     * @param errs the errors to report
+     * @param mo   the model to alter
+     * @param ns   the naming service to use
+     * @param tpls the template factory
+     * @param incs the includes to resolve the imports
+     * @param cat  the constraints catalog
+     */
+    public EvaluationContext(Script v, SymbolsTable s, ErrorReporter errs, Model mo, NamingService ns,
+                             TemplateFactory tpls, Includes incs, ConstraintsCatalog cat) {
+        this.script = v;
+        this.symbols = s;
+        this.errors = errs;
+        this.model = mo;
+        this.namingService = ns;
+        this.templateFactory = tpls;
+        this.includes = incs;
+        this.catalog = cat;
+    }
+
+    /**
+     * Bind this context to the state of another one.
+     *
+     * @param other the context to copy
+     */
+    public void bind(EvaluationContext other) {
+        this.script = other.script;
+        this.symbols = other.symbols;
+        this.errors = other.errors;
+        this.model = other.model;
+        this.namingService = other.namingService;
+        this.templateFactory = other.templateFactory;
+        this.includes = other.includes;
+        this.catalog = other.catalog;
+        this.listener = other.listener;
+    }
+
+    /**
+     * Release the state the context is bound to.
+     */
+    public void unbind() {
+        bind(new EvaluationContext());
+    }
+
+    /**
+     * Get the script under construction.
+     *
+     * @return the script
+     */
+    public Script getScript() {
+        return script;
+    }
+
+    /**
+     * Get the symbol table.
+     *
+     * @return the table
+     */
+    public SymbolsTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Get the errors to report.
+     *
+     * @return the reporter
+     */
+    public ErrorReporter getErrorReporter() {
+        return errors;
+    }
+
+    /**
+     * Get the model to alter.
+     *
+     * @return the model
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * Get the naming service.
+     *
+     * @return the naming service
+     */
+    public NamingService getNamingService() {
+        return namingService;
+    }
+
+    /**
+     * Get the template factory.
+     *
+     * @return the factory
+     */
+    public TemplateFactory getTemplateFactory() {
+        return templateFactory;
+    }
+
+    /**
+     * Get the includes to resolve the imports.
+     *
+     * @return the includes
+     */
+    public Includes getIncludes() {
+        return includes;
+    }
+
+    /**
+     * Get the catalog of constraints.
+     *
+     * @return the catalog
+     */
+    public ConstraintsCatalog getConstraintsCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Get the listener notified with the measurements of the evaluation.
+     *
+     * @return the listener. {@code null} if the evaluation is not instrumented
+     */
+    public BuildListener getBuildListener() {
+        return listener;
+    }
+
+    /**
+     * Set the listener notified with the measurements of the evaluation.
+     *
+     * @param l the listener. {@code null} to disable the instrumentation
+     */
+    public void setBuildListener(BuildListener l) {
+        this.listener = l;
+    }
+}
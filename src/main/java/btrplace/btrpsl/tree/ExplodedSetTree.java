@@ -17,7 +17,6 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.BtrpSet;
 import btrplace.btrpsl.element.DefaultBtrpOperand;
@@ -37,11 +36,11 @@ public class ExplodedSetTree extends BtrPlaceTree {
     /**
      * Make a new parser.
      *
-     * @param t    the root token
-     * @param errs the errors to report
+     * @param t   the root token
+     * @param ctx the evaluation context
      */
-    public ExplodedSetTree(Token t, ErrorReporter errs) {
-        super(t, errs);
+    public ExplodedSetTree(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     @Override
@@ -58,25 +57,65 @@ public class ExplodedSetTree extends BtrPlaceTree {
 
         Set<BtrpOperand> viewed = new HashSet<>();
         for (int i = 0; i < getChildCount(); i++) {
-            BtrpOperand tx = getChild(i).go(this);
-            //s.getIntValue().add() is not safe at all. So preconditions have to be check
-            if (tx == IgnorableOperand.getInstance()) {
-                return tx;
-            }
-            if (tx.degree() != s.degree() - 1) {
-                return ignoreError(tx + " has type '" + tx.prettyType() + "'. It should be a '" +
-                        DefaultBtrpOperand.prettyType(s.degree() - 1, s.type()) + "' to be insertable into a '" +
-                        s.prettyType() + "'");
-            }
-            if (tx.type() != s.type()) {
-                return ignoreError("Unable to add '" + tx.type() + "' elements in a set of '" + s.type() + "' elements");
-            }
-            if (viewed.add(tx)) {
-                s.getValues().add(tx);
-            } else {
-                return ignoreError(tx + " ignored");
+            BtrpOperand err = add(s, viewed, i == 0 ? t0 : getChild(i).go(this));
+            if (err != null) {
+                return err;
             }
         }
         return s;
     }
+
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        if (getChildCount() == 0) {
+            return super.compile(parent);
+        }
+        final Closure[] cs = compileChildren(0);
+        return fold(new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                BtrpOperand t0 = cs[0].eval();
+                if (t0 == IgnorableOperand.getInstance()) {
+                    return t0;
+                }
+                BtrpSet s = new BtrpSet(t0.degree() + 1, t0.type());
+                Set<BtrpOperand> viewed = new HashSet<>();
+                for (int i = 0; i < cs.length; i++) {
+                    BtrpOperand err = add(s, viewed, i == 0 ? t0 : cs[i].eval());
+                    if (err != null) {
+                        return err;
+                    }
+                }
+                return s;
+            }
+        }, cs);
+    }
+
+    /**
+     * Add an element to the set.
+     *
+     * @param s      the set
+     * @param viewed the elements already added
+     * @param tx     the element to add
+     * @return {@code null} if the element was added, the operand to return otherwise
+     */
+    private BtrpOperand add(BtrpSet s, Set<BtrpOperand> viewed, BtrpOperand tx) {
+        //s.getIntValue().add() is not safe at all. So preconditions have to be check
+        if (tx == IgnorableOperand.getInstance()) {
+            return tx;
+        }
+        if (tx.degree() != s.degree() - 1) {
+            return ignoreError(tx + " has type '" + tx.prettyType() + "'. It should be a '" +
+                    DefaultBtrpOperand.prettyType(s.degree() - 1, s.type()) + "' to be insertable into a '" +
+                    s.prettyType() + "'");
+        }
+        if (tx.type() != s.type()) {
+            return ignoreError("Unable to add '" + tx.type() + "' elements in a set of '" + s.type() + "' elements");
+        }
+        if (viewed.add(tx)) {
+            s.getValues().add(tx);
+            return null;
+        }
+        return ignoreError(tx + " ignored");
+    }
 }
@@ -18,8 +18,6 @@
 package btrplace.btrpsl.tree;
 
 import btrplace.btrpsl.ANTLRBtrplaceSL2Parser;
-import btrplace.btrpsl.ErrorReporter;
-import btrplace.btrpsl.Script;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.BtrpSet;
 import btrplace.btrpsl.element.IgnorableOperand;
@@ -40,18 +38,14 @@ import java.util.Set;
  */
 public class ExportStatement extends BtrPlaceTree {
 
-    private Script script;
-
     /**
      * Make a new statement.
      *
-     * @param t    the export token
-     * @param scr  the script to alter with the variables to export
-     * @param errs the list of errors
+     * @param t   the export token
+     * @param ctx the evaluation context
      */
-    public ExportStatement(Token t, Script scr, ErrorReporter errs) {
-        super(t, errs);
-        this.script = scr;
+    public ExportStatement(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     @Override
@@ -85,7 +79,7 @@ public class ExportStatement extends BtrPlaceTree {
         }
         try {
             for (BtrpOperand op : toAdd) {
-                script.addExportable(op.label(), op, scope);
+                context.getScript().addExportable(op.label(), op, scope);
             }
         } catch (UnsupportedOperationException ex) {
             return ignoreError(ex.getMessage());
@@ -17,7 +17,6 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.SymbolsTable;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.BtrpSet;
@@ -31,18 +30,14 @@ import org.antlr.runtime.Token;
  */
 public class ForStatement extends BtrPlaceTree {
 
-    private SymbolsTable table;
-
     /**
      * Make a new parser.
      *
-     * @param t    the root token
-     * @param syms the symbol table
-     * @param errs the errors to report
+     * @param t   the root token
+     * @param ctx the evaluation context
      */
-    public ForStatement(Token t, SymbolsTable syms, ErrorReporter errs) {
-        super(t, errs);
-        this.table = syms;
+    public ForStatement(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     @Override
@@ -53,9 +48,11 @@ public class ForStatement extends BtrPlaceTree {
             return ignoreError("Malformed iteration loop");
         }
 
-        table.pushTable();
+        SymbolsTable syms = context.getSymbols();
+        syms.pushTable();
         String inVar = getChild(0).getText();
-        if (table.isDeclared(inVar)) {
+        int slot = syms.slot(inVar);
+        if (syms.isDeclared(slot)) {
             return ignoreError("Variable " + inVar + " already declared");
         }
 
@@ -67,16 +64,51 @@ public class ForStatement extends BtrPlaceTree {
             return ignoreError("The literal to iterate one must be a set");
         }
         BtrpSet set = (BtrpSet) c;
-        for (Object elem : set.getValues()) {
-            table.declare(inVar, (BtrpOperand) elem);
+        for (BtrpOperand elem : set.getValues()) {
+            syms.declare(slot, elem);
             getChild(2).go(this);
             //TODO a good solution to avoid to iterate once an iteration fail?
         }
 
-        if (!table.popTable()) {
+        if (!syms.popTable()) {
             return ignoreError("Unable to Pop the symbol table");
         }
         return IgnorableOperand.getInstance();
     }
 
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        if (this.getChildCount() != 3) {
+            return super.compile(parent);
+        }
+        final VariableSlot inVar = new VariableSlot(getChild(0).getText());
+        final Closure set = getChild(1).compile(this);
+        final Closure body = getChild(2).compile(this);
+        return new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                SymbolsTable syms = context.getSymbols();
+                syms.pushTable();
+                int slot = inVar.in(syms);
+                if (syms.isDeclared(slot)) {
+                    return ignoreError("Variable " + inVar.label() + " already declared");
+                }
+                BtrpOperand c = set.eval();
+                if (c == IgnorableOperand.getInstance()) {
+                    return c;
+                }
+                if (c.degree() < 1) {
+                    return ignoreError("The literal to iterate one must be a set");
+                }
+                for (BtrpOperand elem : ((BtrpSet) c).getValues()) {
+                    syms.declare(slot, elem);
+                    body.eval();
+                }
+                if (!syms.popTable()) {
+                    return ignoreError("Unable to Pop the symbol table");
+                }
+                return IgnorableOperand.getInstance();
+            }
+        };
+    }
 }
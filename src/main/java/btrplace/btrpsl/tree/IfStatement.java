@@ -17,8 +17,6 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
-import btrplace.btrpsl.SymbolsTable;
 import btrplace.btrpsl.element.BtrpNumber;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.IgnorableOperand;
@@ -33,31 +31,27 @@ import org.antlr.runtime.Token;
  */
 public class IfStatement extends BtrPlaceTree {
 
-    private SymbolsTable sTable;
-
     /**
      * Make a new parser.
      *
-     * @param t    the root token
-     * @param syms the symbol table to use
-     * @param errs the errors to report
+     * @param t   the root token
+     * @param ctx the evaluation context
      */
-    public IfStatement(Token t, SymbolsTable syms, ErrorReporter errs) {
-        super(t, errs);
-        this.sTable = syms;
+    public IfStatement(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     @Override
     public BtrpOperand go(BtrPlaceTree parent) {
         BtrpOperand expr = getChild(0).go(this);
         if (expr.equals(BtrpNumber.TRUE)) {
-            sTable.pushTable();
+            context.getSymbols().pushTable();
             getChild(1).go(this);
-            sTable.popTable();
+            context.getSymbols().popTable();
         } else if (getChildCount() == 3) {
-            sTable.pushTable();
+            context.getSymbols().pushTable();
             getChild(2).go(this);
-            sTable.popTable();
+            context.getSymbols().popTable();
 
         } else {
             return ignoreError(expr + ": not an expression");
@@ -65,4 +59,28 @@ public class IfStatement extends BtrPlaceTree {
         return IgnorableOperand.getInstance();
     }
 
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        final Closure cond = getChild(0).compile(this);
+        final Closure then = getChild(1).compile(this);
+        final Closure otherwise = getChildCount() == 3 ? getChild(2).compile(this) : null;
+        return new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                BtrpOperand expr = cond.eval();
+                if (expr.equals(BtrpNumber.TRUE)) {
+                    context.getSymbols().pushTable();
+                    then.eval();
+                    context.getSymbols().popTable();
+                } else if (otherwise != null) {
+                    context.getSymbols().pushTable();
+                    otherwise.eval();
+                    context.getSymbols().popTable();
+                } else {
+                    return ignoreError(expr + ": not an expression");
+                }
+                return IgnorableOperand.getInstance();
+            }
+        };
+    }
 }
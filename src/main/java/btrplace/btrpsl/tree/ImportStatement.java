@@ -17,14 +17,11 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.Script;
 import btrplace.btrpsl.ScriptBuilderException;
-import btrplace.btrpsl.SymbolsTable;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.BtrpSet;
 import btrplace.btrpsl.element.IgnorableOperand;
-import btrplace.btrpsl.includes.Includes;
 import org.antlr.runtime.Token;
 
 import java.util.List;
@@ -40,32 +37,14 @@ import java.util.List;
  */
 public class ImportStatement extends BtrPlaceTree {
 
-    /**
-     * The list of available includes.
-     */
-    private Includes includes;
-
-    /**
-     * The symbol table to fulfil.
-     */
-    private SymbolsTable symTable;
-
-    private Script script;
-
     /**
      * Make a new statement
      *
-     * @param t      the 'IMPORT' token
-     * @param incs   the list of available includes
-     * @param sTable the symbol table.
-     * @param scr    the currently built script
-     * @param errs   the list of errors.
+     * @param t   the 'IMPORT' token
+     * @param ctx the evaluation context
      */
-    public ImportStatement(Token t, Includes incs, SymbolsTable sTable, Script scr, ErrorReporter errs) {
-        super(t, errs);
-        this.includes = incs;
-        this.symTable = sTable;
-        this.script = scr;
+    public ImportStatement(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     @Override
@@ -80,8 +59,8 @@ public class ImportStatement extends BtrPlaceTree {
         String id = scriptId.toString();
         List<Script> res;
         try {
-            res = includes.getScripts(id);
-            script.getDependencies().addAll(res);
+            res = context.getIncludes().getScripts(id);
+            context.getScript().getDependencies().addAll(res);
         } catch (ScriptBuilderException e) {
             int nb = e.getErrorReporter().getErrors().size();
             return ignoreError(Integer.toString(nb) + " error(s) imported through '" + id + "'");
@@ -96,15 +75,15 @@ public class ImportStatement extends BtrPlaceTree {
             global.setLabel("$".concat(id.substring(0, id.length() - 2)));
         }
         for (Script v : res) {
-            List<BtrpOperand> toImport = v.getImportables(script.id());
+            List<BtrpOperand> toImport = v.getImportables(context.getScript().id());
             for (BtrpOperand op : toImport) {
                 String fqn = v.fullyQualifiedSymbolName(op.label());
-                if (!symTable.declareImmutable(fqn, op)) {
+                if (!context.getSymbols().declareImmutable(fqn, op)) {
                     return ignoreError("Unable to import '" + fqn + "': already declared");
                 }
             }
         }
-        if (global != null && global.size() > 0 && !symTable.declareImmutable(global.label(), global)) {
+        if (global != null && global.size() > 0 && !context.getSymbols().declareImmutable(global.label(), global)) {
             return ignoreError("Unable to add variable '" + global.label() + "'");
         }
         return IgnorableOperand.getInstance();
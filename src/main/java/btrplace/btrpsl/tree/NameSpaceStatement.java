@@ -17,8 +17,6 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
-import btrplace.btrpsl.Script;
 import btrplace.btrpsl.SymbolsTable;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.BtrpSet;
@@ -32,24 +30,14 @@ import org.antlr.runtime.Token;
  */
 public class NameSpaceStatement extends BtrPlaceTree {
 
-    private SymbolsTable symbols;
-
-    /**
-     * The script that is built.
-     */
-    private Script script;
-
     /**
      * Make a new statement.
      *
-     * @param t    the token to consider
-     * @param scr  the built script
-     * @param errs the reported errors
+     * @param t   the token to consider
+     * @param ctx the evaluation context
      */
-    public NameSpaceStatement(Token t, Script scr, SymbolsTable syms, ErrorReporter errs) {
-        super(t, errs);
-        this.script = scr;
-        this.symbols = syms;
+    public NameSpaceStatement(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     @Override
@@ -62,14 +50,14 @@ public class NameSpaceStatement extends BtrPlaceTree {
             }
         }
         String id = fqdn.toString();
-        script.setFullyQualifiedName(id);
+        context.getScript().setFullyQualifiedName(id);
 
         //$me is immutable and contains all the VMs.
         BtrpSet me = new BtrpSet(1, BtrpOperand.Type.VM);
         me.setLabel(SymbolsTable.ME);
-        symbols.declareImmutable(me.label(), me);
+        context.getSymbols().declareImmutable(me.label(), me);
 
-        errors.updateNamespace();
+        context.getErrorReporter().updateNamespace();
         return IgnorableOperand.getInstance();
     }
 }
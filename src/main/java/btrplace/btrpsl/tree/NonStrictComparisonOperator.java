@@ -17,7 +17,6 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.element.BtrpOperand;
 import org.antlr.runtime.Token;
 
@@ -34,11 +33,11 @@ public class NonStrictComparisonOperator extends BtrPlaceTree {
     /**
      * Make a new parser.
      *
-     * @param t    the root token
-     * @param errs the errors to report
+     * @param t   the root token
+     * @param ctx the evaluation context
      */
-    public NonStrictComparisonOperator(Token t, boolean rev, ErrorReporter errs) {
-        super(t, errs);
+    public NonStrictComparisonOperator(Token t, boolean rev, EvaluationContext ctx) {
+        super(t, ctx);
         this.reverse = rev;
     }
 
@@ -53,4 +52,17 @@ public class NonStrictComparisonOperator extends BtrPlaceTree {
         }
     }
 
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        final Closure l = getChild(0).compile(this);
+        final Closure r = getChild(1).compile(this);
+        return fold(new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                BtrpOperand lv = l.eval();
+                BtrpOperand rv = r.eval();
+                return reverse ? rv.geq(lv) : lv.geq(rv);
+            }
+        }, l, r);
+    }
 }
@@ -17,7 +17,6 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.element.BtrpOperand;
 import org.antlr.runtime.Token;
 
@@ -31,15 +30,26 @@ public class NotOperator extends BtrPlaceTree {
     /**
      * Make a new parser.
      *
-     * @param t    the root token
-     * @param errs the errors to report
+     * @param t   the root token
+     * @param ctx the evaluation context
      */
-    public NotOperator(Token t, ErrorReporter errs) {
-        super(t, errs);
+    public NotOperator(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     @Override
     public BtrpOperand go(BtrPlaceTree parent) {
         return getChild(0).go(this).not();
     }
+
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        final Closure c = getChild(0).compile(this);
+        return fold(new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                return c.eval().not();
+            }
+        }, c);
+    }
 }
@@ -18,7 +18,6 @@
 package btrplace.btrpsl.tree;
 
 import btrplace.btrpsl.ANTLRBtrplaceSL2Lexer;
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.element.BtrpNumber;
 import btrplace.btrpsl.element.BtrpOperand;
 import org.antlr.runtime.Token;
@@ -33,16 +32,19 @@ public class NumberTree extends BtrPlaceTree {
     /**
      * Make a new parser.
      *
-     * @param t    the root token
-     * @param errs the errors to report
+     * @param t   the root token
+     * @param ctx the evaluation context
      */
-    public NumberTree(Token t, ErrorReporter errs) {
-        super(t, errs);
+    public NumberTree(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
-    @Override
-    public BtrpOperand go(BtrPlaceTree parent) {
-
+    /**
+     * Get the value of the number.
+     *
+     * @return the value, {@code null} if the number is malformed
+     */
+    private BtrpNumber value() {
         try {
             switch (token.getType()) {
                 case ANTLRBtrplaceSL2Lexer.OCTAL:
@@ -56,6 +58,25 @@ public class NumberTree extends BtrPlaceTree {
             }
         } catch (NumberFormatException e) {
         }
-        return ignoreError("Malformed integer: " + getText());
+        return null;
+    }
+
+    @Override
+    public BtrpOperand go(BtrPlaceTree parent) {
+        BtrpNumber v = value();
+        if (v == null) {
+            return ignoreError("Malformed integer: " + getText());
+        }
+        return v;
+    }
+
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        BtrpNumber cst = value();
+        if (cst == null) {
+            //Malformed, the error is reported at each evaluation
+            return super.compile(parent);
+        }
+        return new Constant(cst);
     }
 }
@@ -17,7 +17,6 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.element.BtrpOperand;
 import org.antlr.runtime.Token;
 
@@ -31,11 +30,11 @@ public class PowerOperator extends BtrPlaceTree {
     /**
      * Make a new parser.
      *
-     * @param t    the root token
-     * @param errs the errors to report
+     * @param t   the root token
+     * @param ctx the evaluation context
      */
-    public PowerOperator(Token t, ErrorReporter errs) {
-        super(t, errs);
+    public PowerOperator(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     @Override
@@ -44,4 +43,17 @@ public class PowerOperator extends BtrPlaceTree {
         BtrpOperand r = getChild(1).go(this);
         return l.power(r);
     }
+
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        final Closure l = getChild(0).compile(this);
+        final Closure r = getChild(1).compile(this);
+        return fold(new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                BtrpOperand lv = l.eval();
+                return lv.power(r.eval());
+            }
+        }, l, r);
+    }
 }
@@ -18,14 +18,14 @@
 package btrplace.btrpsl.tree;
 
 import btrplace.btrpsl.ANTLRBtrplaceSL2Lexer;
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.element.*;
 import org.antlr.runtime.Token;
 
 /**
  * A part of an enumeration.
  * Can be a single element or a range of numbers.
- * Returns a set of string
+ * Returns a set of string. A range of numbers is not expanded,
+ * the set is a view over the range (see {@link RangeView}).
  *
  * @author Fabien Hermenier
  */
@@ -35,10 +35,10 @@ public class Range extends BtrPlaceTree {
      * Make a new tree
      *
      * @param payload the root token
-     * @param errors  the errors to report
+     * @param ctx     the evaluation context
      */
-    public Range(Token payload, ErrorReporter errors) {
-        super(payload, errors);
+    public Range(Token payload, EvaluationContext ctx) {
+        super(payload, ctx);
     }
 
     @Override
@@ -76,10 +76,8 @@ public class Range extends BtrPlaceTree {
 
             int from = Math.min(begin.getIntValue(), end.getIntValue());
             int to = Math.max(begin.getIntValue(), end.getIntValue());
-            for (int i = from; i <= to; i++) {
-                BtrpNumber bi = new BtrpNumber(i, begin.getBase()); //Keep the base
-                s.getValues().add(new BtrpString(bi.toString()));
-            }
+            //A view over the range, to not expand it. The base is kept
+            s = new BtrpSet(1, BtrpOperand.Type.string, new RangeView("", from, to, begin.getBase(), ""));
 
             //Set the right line and col number wrt the second number (as the first one is an artificial token)
             token.setLine(getChild(1).getLine());
@@ -90,4 +88,16 @@ public class Range extends BtrPlaceTree {
 
         return s;
     }
+
+    /**
+     * {@inheritDoc}
+     * A range with constant bounds is a constant.
+     */
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        if (getChildCount() == 1 && getChild(0).getType() == ANTLRBtrplaceSL2Lexer.IDENTIFIER) {
+            return fold(walk(parent));
+        }
+        return fold(walk(parent), compileChildren(0));
+    }
 }
@@ -17,7 +17,6 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.IgnorableOperand;
 import org.antlr.runtime.Token;
@@ -32,11 +31,11 @@ public class RemainderOperator extends BtrPlaceTree {
     /**
      * Make a new parser.
      *
-     * @param t    the root token
-     * @param errs the errors to report
+     * @param t   the root token
+     * @param ctx the evaluation context
      */
-    public RemainderOperator(Token t, ErrorReporter errs) {
-        super(t, errs);
+    public RemainderOperator(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     @Override
@@ -52,4 +51,24 @@ public class RemainderOperator extends BtrPlaceTree {
         return l.remainder(r);
 
     }
+
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        final Closure l = getChild(0).compile(this);
+        final Closure r = getChild(1).compile(this);
+        return fold(new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                BtrpOperand lv = l.eval();
+                if (lv == IgnorableOperand.getInstance()) {
+                    return lv;
+                }
+                BtrpOperand rv = r.eval();
+                if (rv == IgnorableOperand.getInstance()) {
+                    return rv;
+                }
+                return lv.remainder(rv);
+            }
+        }, l, r);
+    }
 }
@@ -18,8 +18,6 @@
 package btrplace.btrpsl.tree;
 
 import btrplace.btrpsl.ANTLRBtrplaceSL2Parser;
-import btrplace.btrpsl.ErrorReporter;
-import btrplace.btrpsl.SymbolsTable;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.IgnorableOperand;
 import org.antlr.runtime.Token;
@@ -54,21 +52,15 @@ public class SelfAssignmentStatement extends BtrPlaceTree {
 
     private Type type;
 
-    /**
-     * The table of symbols to use;
-     */
-    private SymbolsTable symbols;
-
     /**
      * Make a new parser
      *
-     * @param t    the root token
-     * @param errs the errors to report
+     * @param t   the root token
+     * @param ctx the evaluation context
      */
-    public SelfAssignmentStatement(Type t, Token tok, ErrorReporter errs, SymbolsTable syms) {
-        super(tok, errs);
+    public SelfAssignmentStatement(Type t, Token tok, EvaluationContext ctx) {
+        super(tok, ctx);
         this.type = t;
-        this.symbols = syms;
     }
 
     @Override
@@ -76,7 +68,7 @@ public class SelfAssignmentStatement extends BtrPlaceTree {
 
         if (getChild(0).getType() == ANTLRBtrplaceSL2Parser.VARIABLE) {
             String lbl = getChild(0).getText();
-            if (symbols.isImmutable(lbl)) {
+            if (context.getSymbols().isImmutable(lbl)) {
                 return ignoreError(lbl + " is an immutable variable. Assignment not permitted");
             }
             BtrpOperand e = getChild(0).go(parent);
@@ -101,7 +93,7 @@ public class SelfAssignmentStatement extends BtrPlaceTree {
                 default:
                     return ignoreError("Unsupported operation: " + type);
             }
-            symbols.declare(lbl, res);
+            context.getSymbols().declare(lbl, res);
             res.setLabel(lbl);
             return IgnorableOperand.getInstance();
         }
@@ -17,7 +17,6 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.BtrpString;
 import org.antlr.runtime.Token;
@@ -34,10 +33,10 @@ public class StringTree extends BtrPlaceTree {
      * Make a new tree
      *
      * @param payload the token containing the string
-     * @param errors  to report error
+     * @param ctx     the evaluation context
      */
-    public StringTree(Token payload, ErrorReporter errors) {
-        super(payload, errors);
+    public StringTree(Token payload, EvaluationContext ctx) {
+        super(payload, ctx);
     }
 
     @Override
@@ -45,4 +44,10 @@ public class StringTree extends BtrPlaceTree {
         //Remove the \" \"
         return new BtrpString(getText().substring(1, getText().length() - 1));
     }
+
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        BtrpOperand cst = go(parent);
+        return new Constant(cst);
+    }
 }
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.tree;
+
+import btrplace.btrpsl.*;
+import btrplace.btrpsl.instrument.BuildListener;
+import btrplace.btrpsl.instrument.Stopwatch;
+import org.antlr.runtime.CharStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parsed form of a script, independent from any evaluation.
+ * <p/>
+ * The tree only retains the errors reported while lexing and parsing.
+ * The script, the symbol table, the model, the naming service, and the reporter
+ * the errors are appended to are bound when the tree is evaluated. The same tree
+ * can then be evaluated several times, for example against successive models,
+ * without lexing nor parsing the source again.
+ *
+ * @author Fabien Hermenier
+ */
+public class SyntaxTree {
+
+    private final BtrPlaceTree root;
+
+    private final EvaluationContext context;
+
+    private final List<ErrorMessage> parseErrors;
+
+    /**
+     * The top-level statements.
+     */
+    private BtrPlaceTree[] statements;
+
+    /**
+     * The compiled form of the top-level statements. {@code null} until the first evaluation.
+     */
+    private Closure[] program;
+
+    private boolean compiled = true;
+
+    /**
+     * Make a new tree.
+     *
+     * @param r    the root of the tree
+     * @param ctx  the context shared by the nodes of the tree
+     * @param errs the errors reported while lexing and parsing
+     */
+    public SyntaxTree(BtrPlaceTree r, EvaluationContext ctx, List<ErrorMessage> errs) {
+        this.root = r;
+        this.context = ctx;
+        this.parseErrors = Collections.unmodifiableList(errs);
+    }
+
+    /**
+     * Lex and parse a script.
+     *
+     * @param cs the stream to analyze
+     * @return the resulting tree
+     * @throws RecognitionException if the stream cannot be parsed
+     */
+    public static SyntaxTree parse(CharStream cs) throws RecognitionException {
+        return parse(cs, null);
+    }
+
+    /**
+     * Lex and parse a script, and measure both phases.
+     * When instrumented, the whole stream is lexed before being parsed.
+     *
+     * @param cs the stream to analyze
+     * @param l  the listener to notify. {@code null} to disable the instrumentation
+     * @return the resulting tree
+     * @throws RecognitionException if the stream cannot be parsed
+     */
+    public static SyntaxTree parse(CharStream cs, BuildListener l) throws RecognitionException {
+        EvaluationContext ctx = new EvaluationContext();
+        ParseErrors errs = new ParseErrors();
+
+        ANTLRBtrplaceSL2Lexer lexer = new ANTLRBtrplaceSL2Lexer(cs);
+        lexer.setErrorReporter(errs);
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        if (l != null) {
+            Stopwatch w = Stopwatch.start();
+            tokens.fill();
+            l.phase(BuildListener.Phase.lexing, w.elapsed(), w.allocated());
+        }
+
+        Stopwatch w = l == null ? null : Stopwatch.start();
+        ANTLRBtrplaceSL2Parser parser = new ANTLRBtrplaceSL2Parser(tokens);
+        parser.setErrorReporter(errs);
+        parser.setTreeAdaptor(new BtrPlaceTreeAdaptor(ctx));
+        BtrPlaceTree tree = (BtrPlaceTree) parser.script_decl().getTree();
+        if (w != null) {
+            l.phase(BuildListener.Phase.parsing, w.elapsed(), w.allocated());
+        }
+        return new SyntaxTree(tree, ctx, errs.getErrors());
+    }
+
+    /**
+     * Get the root of the tree.
+     *
+     * @return the root
+     */
+    public BtrPlaceTree getRoot() {
+        return root;
+    }
+
+    /**
+     * Get the errors reported while lexing and parsing.
+     *
+     * @return a list that may be empty
+     */
+    public List<ErrorMessage> getParseErrors() {
+        return parseErrors;
+    }
+
+    /**
+     * Evaluate the tree.
+     * The parse errors are first appended to the reporter of the context.
+     * A tree cannot be evaluated concurrently so this method blocks
+     * until the evaluations in progress are terminated.
+     *
+     * @param env the state to evaluate the tree against
+     */
+    public synchronized void evaluate(EvaluationContext env) {
+        context.bind(env);
+        try {
+            ErrorReporter errorReporter = env.getErrorReporter();
+            for (ErrorMessage m : parseErrors) {
+                errorReporter.append(m.lineNo(), m.colNo(), m.message());
+            }
+            BuildListener l = env.getBuildListener();
+            Stopwatch w = l == null ? null : Stopwatch.start();
+            if (program == null) {
+                compile();
+            }
+            for (int i = 0; i < program.length; i++) {
+                statement(i, l);
+            }
+            if (w != null) {
+                l.phase(BuildListener.Phase.evaluation, w.elapsed(), w.allocated());
+            }
+        } finally {
+            context.unbind();
+        }
+    }
+
+    /**
+     * Indicates if the tree is compiled into closures before being evaluated.
+     *
+     * @return {@code true} by default
+     */
+    public synchronized boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Indicate if the tree is compiled into closures before being evaluated.
+     * Otherwise, the tree is walked at each evaluation.
+     *
+     * @param b {@code true} to compile the tree
+     */
+    public synchronized void setCompiled(boolean b) {
+        if (b != compiled) {
+            compiled = b;
+            program = null;
+        }
+    }
+
+    /**
+     * Compile the top-level statements.
+     * A statement that cannot be compiled, for example because its tree is malformed, is walked.
+     */
+    private void compile() {
+        if (root.token != null) {
+            statements = new BtrPlaceTree[]{root}; //Single instruction
+        } else {
+            statements = new BtrPlaceTree[root.getChildCount()];
+            for (int i = 0; i < statements.length; i++) {
+                statements[i] = root.getChild(i);
+            }
+        }
+        Closure[] p = new Closure[statements.length];
+        for (int i = 0; i < p.length; i++) {
+            BtrPlaceTree t = statements[i];
+            if (compiled) {
+                try {
+                    p[i] = t.compile(root);
+                } catch (RuntimeException e) {
+                    p[i] = null;
+                }
+            }
+            if (p[i] == null) {
+                p[i] = t.walk(root);
+            }
+        }
+        program = p;
+    }
+
+    /**
+     * Evaluate a top-level statement.
+     *
+     * @param i the index of the statement
+     * @param l the listener to notify. {@code null} to disable the instrumentation
+     */
+    private void statement(int i, BuildListener l) {
+        BtrPlaceTree t = statements[i];
+        Stopwatch w = l == null ? null : Stopwatch.start();
+        try {
+            program[i].eval();
+        } catch (UnsupportedOperationException e) {
+            context.getErrorReporter().append(0, 0, e.getMessage());
+        }
+        if (w != null) {
+            long nanos = w.elapsed();
+            long bytes = w.allocated();
+            l.statement(t.getClass().getSimpleName(), nanos, bytes);
+            if (t instanceof ImportStatement) {
+                l.phase(BuildListener.Phase.imports, nanos, bytes);
+            } else if (t instanceof TemplateAssignment) {
+                l.phase(BuildListener.Phase.templates, nanos, bytes);
+            }
+        }
+    }
+
+    /**
+     * The reporter used while lexing and parsing, before any script exists.
+     */
+    private static class ParseErrors implements ErrorReporter {
+
+        private final List<ErrorMessage> errors = new ArrayList<>();
+
+        @Override
+        public void append(int lineNo, int colNo, String msg) {
+            errors.add(new ErrorMessage(lineNo, colNo, msg));
+        }
+
+        @Override
+        public List<ErrorMessage> getErrors() {
+            return errors;
+        }
+
+        @Override
+        public void updateNamespace() {
+        }
+    }
+}
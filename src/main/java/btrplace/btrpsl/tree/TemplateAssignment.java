@@ -23,10 +23,6 @@ import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.BtrpSet;
 import btrplace.btrpsl.element.IgnorableOperand;
 import btrplace.btrpsl.template.ElementBuilderException;
-import btrplace.btrpsl.template.TemplateFactory;
-import btrplace.model.Model;
-import btrplace.model.Node;
-import btrplace.model.VM;
 import org.antlr.runtime.Token;
 import org.antlr.runtime.tree.BaseTree;
 
@@ -41,37 +37,14 @@ import java.util.Map;
  */
 public class TemplateAssignment extends BtrPlaceTree {
 
-    private NamingService namingService;
-
-    private Model mo;
-
-    /**
-     * The current script.
-     */
-    private Script script;
-
-    /**
-     * The template factory.
-     */
-    private TemplateFactory tpls;
-
-    private SymbolsTable syms;
-
     /**
      * Make a new tree.
      *
-     * @param t            the token to consider
-     * @param s            the script that is built
-     * @param symbolsTable the symbol table
-     * @param errs         the errors
+     * @param t   the token to consider
+     * @param ctx the evaluation context
      */
-    public TemplateAssignment(Token t, Script s, TemplateFactory tplFactory, SymbolsTable symbolsTable, Model m, NamingService ns, ErrorReporter errs) {
-        super(t, errs);
-        this.script = s;
-        this.tpls = tplFactory;
-        this.syms = symbolsTable;
-        this.mo = m;
-        this.namingService = ns;
+    public TemplateAssignment(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     private Map<String, String> getTemplateOptions() {
@@ -90,41 +63,31 @@ public class TemplateAssignment extends BtrPlaceTree {
         BtrPlaceTree t = getChild(0);
 
         String tplName = getChild(1).getText();
-        if (!tpls.isAvailable(tplName)) {
+        if (!context.getTemplateFactory().isAvailable(tplName)) {
             return ignoreError("Unknown template '" + tplName + "'");
         }
         Map<String, String> opts = getTemplateOptions();
 
         int nType = t.getType();
         if (nType == ANTLRBtrplaceSL2Parser.IDENTIFIER) {
-            addVM(tplName, script.id() + "." + t.getText(), opts);
+            addVM(tplName, context.getScript().id() + "." + t.getText(), opts);
         } else if (nType == ANTLRBtrplaceSL2Parser.NODE_NAME) {
             addNode(tplName, t.getText(), opts);
-        } else if (nType == ANTLRBtrplaceSL2Parser.ENUM_ID) {
-            BtrpOperand op = ((EnumElement) t).expand();
-
-            if (op == IgnorableOperand.getInstance()) {
-                return op;
+        } else if (nType == ANTLRBtrplaceSL2Parser.ENUM_ID || nType == ANTLRBtrplaceSL2Parser.ENUM_FQDN) {
+            EnumElement en = (EnumElement) t;
+            List<List<String>> ranges = en.expandSuffixes();
+            if (ranges == null) {
+                return IgnorableOperand.getInstance();
             }
-
-            for (BtrpOperand o : ((BtrpSet) op).getValues()) {
-                addVM(tplName, o.toString(), opts);
-            }
-        } else if (nType == ANTLRBtrplaceSL2Parser.ENUM_FQDN) {
-            BtrpOperand op = ((EnumElement) t).expand();
-
-            if (op == IgnorableOperand.getInstance()) {
-                return op;
-            }
-
-            for (BtrpOperand o : ((BtrpSet) op).getValues()) {
-                addNode(tplName, o.toString(), opts);
+            //One batch per range, as the names of a range are distinct
+            for (List<String> sfx : ranges) {
+                addAll(tplName, en.getPrefix(), sfx, nType == ANTLRBtrplaceSL2Parser.ENUM_ID, opts);
             }
         } else if (nType == ANTLRBtrplaceSL2Parser.EXPLODED_SET) {
             List<BtrPlaceTree> children = t.getChildren();
             for (BtrPlaceTree child : children) {
                 if (child.getType() == ANTLRBtrplaceSL2Parser.IDENTIFIER) {
-                    addVM(tplName, script.id() + "." + child.getText(), opts);
+                    addVM(tplName, context.getScript().id() + "." + child.getText(), opts);
                 } else if (child.getType() == ANTLRBtrplaceSL2Parser.NODE_NAME) {
                     addNode(tplName, child.getText(), opts);
                 } else {
@@ -138,23 +101,24 @@ public class TemplateAssignment extends BtrPlaceTree {
     }
 
     private void addVM(String tplName, String id, Map<String, String> opts) {
-
+        Script script = context.getScript();
         try {
-            BtrpElement el = namingService.resolve(id);
+            //Atomic if the naming service is shared by concurrent builds
+            ModelElementFactory f = new ModelElementFactory(context.getModel(), true);
+            BtrpElement el = f.declare(context.getNamingService(), id);
             if (el == null) {
-                VM vm = mo.newVM();
-                mo.getMapping().addReadyVM(vm);
+                ignoreError("No UUID to create node '" + id + "'");
+                return;
+            }
+            if (f.isCreated()) {
                 //We add the VM to the $me variable
-                if (vm == null) {
-                    ignoreError("No UUID to create node '" + id + "'");
-                } else {
-                    el = namingService.register(id, vm);
-                    ((BtrpSet) syms.getSymbol(SymbolsTable.ME)).getValues().add(el);
-                }
+                ((BtrpSet) context.getSymbols().getSymbol(SymbolsTable.ME)).getValues().add(el);
             }
-            tpls.check(script, tplName, el.getElement(), opts);
+            context.getTemplateFactory().check(script, tplName, el.getElement(), opts);
             if (!script.add(el)) {
                 ignoreError("VM '" + id + "' already created");
+            } else if (script.getEvaluationLog() != null) {
+                script.getEvaluationLog().element(el, tplName, opts);
             }
         } catch (ElementBuilderException | NamingServiceException ex) {
             ignoreError(ex.getMessage());
@@ -162,23 +126,67 @@ public class TemplateAssignment extends BtrPlaceTree {
     }
 
     private void addNode(String tplName, String id, Map<String, String> opts) {
+        Script script = context.getScript();
         try {
-            BtrpElement el = namingService.resolve(id);
+            BtrpElement el = new ModelElementFactory(context.getModel(), false).declare(context.getNamingService(), id);
             if (el == null) {
-                Node n = mo.newNode();
-                mo.getMapping().addOfflineNode(n);
-                if (n == null) {
-                    ignoreError("No UUID to create node '" + id + "'");
-                } else {
-                    el = namingService.register(id, n);
-                }
+                ignoreError("No UUID to create node '" + id + "'");
+                return;
             }
-            tpls.check(script, tplName, el.getElement(), opts);
+            context.getTemplateFactory().check(script, tplName, el.getElement(), opts);
             if (!script.add(el)) {
                 ignoreError("Node '" + id + "' already created");
+            } else if (script.getEvaluationLog() != null) {
+                script.getEvaluationLog().element(el, tplName, opts);
             }
         } catch (ElementBuilderException | NamingServiceException ex) {
             ignoreError(ex.getMessage());
         }
     }
+
+    /**
+     * Declare the elements of an enumeration in one batch.
+     *
+     * @param tplName  the template name
+     * @param prefix   the prefix of every name
+     * @param suffixes the suffixes of the names
+     * @param vm       {@code true} to declare VMs, {@code false} to declare nodes
+     * @param opts     the template options
+     */
+    private void addAll(String tplName, String prefix, List<String> suffixes, boolean vm, Map<String, String> opts) {
+        Script script = context.getScript();
+        ModelElementFactory f = new ModelElementFactory(context.getModel(), vm);
+        List<BtrpElement> els;
+        try {
+            els = f.declare(context.getNamingService(), prefix, suffixes);
+        } catch (NamingServiceException ex) {
+            ignoreError(ex.getMessage());
+            return;
+        }
+        String kind = vm ? "VM" : "Node";
+        BtrpSet me = vm ? (BtrpSet) context.getSymbols().getSymbol(SymbolsTable.ME) : null;
+        for (int i = 0; i < els.size(); i++) {
+            BtrpElement el = els.get(i);
+            String id = prefix + suffixes.get(i);
+            if (el == null) {
+                ignoreError("No UUID to create " + (vm ? "VM" : "node") + " '" + id + "'");
+                continue;
+            }
+            if (me != null && f.isCreated(i)) {
+                //We add the VM to the $me variable
+                me.getValues().add(el);
+            }
+            try {
+                context.getTemplateFactory().check(script, tplName, el.getElement(), opts);
+            } catch (ElementBuilderException ex) {
+                ignoreError(ex.getMessage());
+                continue;
+            }
+            if (!script.add(el)) {
+                ignoreError(kind + " '" + id + "' already created");
+            } else if (script.getEvaluationLog() != null) {
+                script.getEvaluationLog().element(el, tplName, opts);
+            }
+        }
+    }
 }
@@ -18,7 +18,6 @@
 package btrplace.btrpsl.tree;
 
 import btrplace.btrpsl.ANTLRBtrplaceSL2Parser;
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.IgnorableOperand;
 import org.antlr.runtime.Token;
@@ -43,11 +42,11 @@ public class TemplateOptionTree extends BtrPlaceTree {
     /**
      * Make a new tree.
      *
-     * @param t    the token to handle. The root of this tree
-     * @param errs the errors to report
+     * @param t   the token to handle. The root of this tree
+     * @param ctx the evaluation context
      */
-    public TemplateOptionTree(Token t, ErrorReporter errs) {
-        super(t, errs);
+    public TemplateOptionTree(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     @Override
@@ -17,7 +17,6 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.element.BtrpOperand;
 import btrplace.btrpsl.element.IgnorableOperand;
 import org.antlr.runtime.Token;
@@ -32,11 +31,11 @@ public class TimesOperator extends BtrPlaceTree {
     /**
      * Make a new parser.
      *
-     * @param t    the root token
-     * @param errs the errors to report
+     * @param t   the root token
+     * @param ctx the evaluation context
      */
-    public TimesOperator(Token t, ErrorReporter errs) {
-        super(t, errs);
+    public TimesOperator(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     @Override
@@ -49,4 +48,20 @@ public class TimesOperator extends BtrPlaceTree {
         return IgnorableOperand.getInstance();
     }
 
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        final Closure l = getChild(0).compile(this);
+        final Closure r = getChild(1).compile(this);
+        return fold(new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                BtrpOperand lv = l.eval();
+                BtrpOperand rv = r.eval();
+                if (lv != IgnorableOperand.getInstance() && rv != IgnorableOperand.getInstance()) {
+                    return lv.times(rv);
+                }
+                return IgnorableOperand.getInstance();
+            }
+        }, l, r);
+    }
 }
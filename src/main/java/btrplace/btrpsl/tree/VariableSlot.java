@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.tree;
+
+import btrplace.btrpsl.SymbolsTable;
+
+/**
+ * The slot of a variable in a table of symbols.
+ * The slot is resolved on the first access to a table, then
+ * reused while the closures are evaluated against that table.
+ *
+ * @author Fabien Hermenier
+ * @see SymbolsTable#slot(String)
+ */
+final class VariableSlot {
+
+    private final String label;
+
+    /**
+     * The identifier of the table the slot belongs to.
+     */
+    private long table;
+
+    private int slot;
+
+    /**
+     * Make a new slot.
+     *
+     * @param lbl the label of the variable
+     */
+    VariableSlot(String lbl) {
+        this.label = lbl;
+    }
+
+    /**
+     * Get the slot of the variable.
+     *
+     * @param t the table of symbols
+     * @return the slot in the table
+     */
+    int in(SymbolsTable t) {
+        if (t.id() != table) {
+            slot = t.slot(label);
+            table = t.id();
+        }
+        return slot;
+    }
+
+    /**
+     * Get the label of the variable.
+     *
+     * @return the label
+     */
+    String label() {
+        return label;
+    }
+}
@@ -17,7 +17,6 @@
 
 package btrplace.btrpsl.tree;
 
-import btrplace.btrpsl.ErrorReporter;
 import btrplace.btrpsl.SymbolsTable;
 import btrplace.btrpsl.element.BtrpOperand;
 import org.antlr.runtime.Token;
@@ -29,29 +28,38 @@ import org.antlr.runtime.Token;
  */
 public class VariableTree extends BtrPlaceTree {
 
-    /**
-     * The table of symbols to use.
-     */
-    private SymbolsTable symbols;
-
     /**
      * Make a new parser.
      *
-     * @param t    the root of the tree
-     * @param errs the errors to report
-     * @param syms the symbols' table to use
+     * @param t   the root of the tree
+     * @param ctx the evaluation context
      */
-    public VariableTree(Token t, ErrorReporter errs, SymbolsTable syms) {
-        super(t, errs);
-        symbols = syms;
+    public VariableTree(Token t, EvaluationContext ctx) {
+        super(t, ctx);
     }
 
     @Override
     public BtrpOperand go(BtrPlaceTree parent) {
         String lbl = token.getText();
-        if (!symbols.isDeclared(lbl)) {
+        if (!context.getSymbols().isDeclared(lbl)) {
             return ignoreError("Unknown variable " + lbl);
         }
-        return symbols.getSymbol(lbl);
+        return context.getSymbols().getSymbol(lbl);
+    }
+
+    @Override
+    public Closure compile(BtrPlaceTree parent) {
+        final VariableSlot v = new VariableSlot(token.getText());
+        return new Closure() {
+            @Override
+            public BtrpOperand eval() {
+                SymbolsTable syms = context.getSymbols();
+                BtrpOperand o = syms.getSymbol(v.in(syms));
+                if (o == null) {
+                    return ignoreError("Unknown variable " + v.label());
+                }
+                return o;
+            }
+        };
     }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import btrplace.model.DefaultModel;
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CharStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Unit tests for {@link ByteBufferCharStream}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class ByteBufferCharStreamTest {
+
+    private static final String SRC = "namespace foo;\nVM[1..10] : tiny;\n@N[1..3] : defaultNode;\n"
+            + "$x = VM[1..5];\nspread($x);\nban($x, @N[1..2]);\n";
+
+    private static ByteBufferCharStream stream(String s) {
+        return new ByteBufferCharStream(ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)), "test");
+    }
+
+    /**
+     * Check the stream behaves like an {@link ANTLRStringStream} over the same content.
+     */
+    private static void checkLikeString(String s) {
+        ByteBufferCharStream b = stream(s);
+        CharStream a = new ANTLRStringStream(s);
+        Assert.assertEquals(b.size(), a.size());
+        Assert.assertEquals(b.length(), s.length());
+        Assert.assertEquals(b.toString(), s);
+        Assert.assertEquals(b.LA(-1), a.LA(-1));
+        int m = -1;
+        while (a.LA(1) != CharStream.EOF) {
+            Assert.assertEquals(b.LA(1), a.LA(1));
+            Assert.assertEquals(b.LA(2), a.LA(2));
+            Assert.assertEquals(b.LT(-1), a.LT(-1));
+            Assert.assertEquals(b.getLine(), a.getLine());
+            Assert.assertEquals(b.getCharPositionInLine(), a.getCharPositionInLine());
+            if (a.index() == s.length() / 2) {
+                m = b.mark();
+                a.mark();
+            }
+            a.consume();
+            b.consume();
+        }
+        Assert.assertEquals(b.LA(1), CharStream.EOF);
+        Assert.assertEquals(b.index(), a.index());
+        if (m > 0) {
+            b.rewind();
+            a.rewind();
+            Assert.assertEquals(b.index(), a.index());
+            Assert.assertEquals(b.getLine(), a.getLine());
+            Assert.assertEquals(b.getCharPositionInLine(), a.getCharPositionInLine());
+            Assert.assertEquals(b.substring(2, b.index()), a.substring(2, a.index()));
+        }
+    }
+
+    public void testAscii() {
+        checkLikeString(SRC);
+        checkLikeString("");
+    }
+
+    public void testUTF8() {
+        checkLikeString("// caf\u00e9 \u20ac \ud83d\ude00\nnamespace foo;\n// \u00e0 la carte\n");
+        //The decoding is lazy
+        ByteBufferCharStream b = stream("abc\u00e9d");
+        Assert.assertEquals(b.charAt(1), 'b');
+        Assert.assertEquals(b.subSequence(3, 5).toString(), "\u00e9d");
+    }
+
+    public void testMalformed() {
+        ByteBufferCharStream b = new ByteBufferCharStream(ByteBuffer.wrap(new byte[]{'a', (byte) 0xc3, 'b'}), null);
+        Assert.assertEquals(b.toString(), "a\ufffdb");
+        Assert.assertEquals(b.size(), 3);
+    }
+
+    public void testNestedMarks() {
+        ByteBufferCharStream b = stream(SRC);
+        int m1 = b.mark();
+        b.consume();
+        int m2 = b.mark();
+        b.consume();
+        b.rewind(m2);
+        Assert.assertEquals(b.index(), 1);
+        b.rewind(m1);
+        Assert.assertEquals(b.index(), 0);
+        b.seek(20);
+        Assert.assertEquals(b.getLine(), 2);
+        b.reset();
+        Assert.assertEquals(b.index(), 0);
+        Assert.assertEquals(b.getLine(), 1);
+    }
+
+    public void testOpen() throws IOException {
+        Path p = Files.createTempFile("btrpsl", ".btrp");
+        try {
+            Files.write(p, SRC.getBytes(StandardCharsets.UTF_8));
+            Assert.assertEquals(ByteBufferCharStream.open(p).toString(), SRC);
+            //Large enough to be mapped
+            StringBuilder b = new StringBuilder();
+            while (b.length() < ByteBufferCharStream.MAP_THRESHOLD) {
+                b.append(SRC);
+            }
+            Files.write(p, b.toString().getBytes(StandardCharsets.UTF_8));
+            ByteBufferCharStream s = ByteBufferCharStream.open(p);
+            Assert.assertTrue(s.getBytes().isDirect());
+            Assert.assertEquals(s.toString(), b.toString());
+            Assert.assertEquals(s.getSourceName(), p.toString());
+        } finally {
+            Files.delete(p);
+        }
+    }
+
+    public void testBuild() throws IOException, ScriptBuilderException {
+        ScriptBuilder sb = new ScriptBuilder(new DefaultModel());
+        Script s = sb.build(Channels.newChannel(new ByteArrayInputStream(SRC.getBytes(StandardCharsets.UTF_8))));
+        Assert.assertEquals(s.getVMs().size(), 10);
+        Assert.assertEquals(s.getConstraints().size(), new ScriptBuilder(new DefaultModel()).build(SRC).getConstraints().size());
+
+        File d = Files.createTempDirectory("btrpsl").toFile();
+        File f = new File(d, "foo.btrp");
+        try {
+            Files.write(f.toPath(), "namespace foo;\n//\u00e9\nVM[1..3] : tiny;\n".getBytes(StandardCharsets.UTF_8));
+            sb = new ScriptBuilder(new DefaultModel());
+            Assert.assertEquals(sb.build(f.toPath()).getVMs().size(), 3);
+        } finally {
+            Assert.assertTrue(f.delete());
+            Assert.assertTrue(d.delete());
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import btrplace.btrpsl.element.BtrpElement;
+import btrplace.btrpsl.element.BtrpOperand;
+import btrplace.model.DefaultModel;
+import btrplace.model.Element;
+import btrplace.model.Model;
+import btrplace.model.Node;
+import btrplace.model.VM;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * Unit tests for {@link CompactNamingService}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class CompactNamingServiceTest {
+
+    public void testRegisterAndResolve() throws NamingServiceException {
+        Model mo = new DefaultModel();
+        CompactNamingService ns = new CompactNamingService();
+        Set<Element> registered = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            VM v = mo.newVM();
+            Node n = mo.newNode();
+            Assert.assertEquals(ns.register("foo.VM" + i, v).getElement(), v);
+            BtrpElement el = ns.register("@N" + i, n);
+            Assert.assertEquals(el.type(), BtrpOperand.Type.node);
+            registered.add(v);
+            registered.add(n);
+        }
+        Assert.assertEquals(ns.size(), 2000);
+        Assert.assertEquals(ns.getRegisteredElements(), registered);
+        for (Element e : registered) {
+            String name = ns.resolve(e);
+            Assert.assertNotNull(name);
+            Assert.assertEquals(ns.resolve(name).getElement(), e);
+        }
+        Assert.assertEquals(ns.resolve("foo.VM12").type(), BtrpOperand.Type.VM);
+        Assert.assertEquals(ns.resolve("foo.VM12").getName(), "foo.VM12");
+        Assert.assertNull(ns.resolve("foo.VM1000"));
+        Assert.assertNull(ns.resolve(mo.newVM()));
+    }
+
+    @Test(expectedExceptions = {NamingServiceException.class})
+    public void testDuplicate() throws NamingServiceException {
+        Model mo = new DefaultModel();
+        CompactNamingService ns = new CompactNamingService();
+        ns.register("foo.VM1", mo.newVM());
+        ns.register("foo.VM1", mo.newVM());
+    }
+
+    @Test(expectedExceptions = {NamingServiceException.class})
+    public void testBadNodeName() throws NamingServiceException {
+        new CompactNamingService().register("N1", new DefaultModel().newNode());
+    }
+
+    public void testCopyOnWrite() throws NamingServiceException {
+        Model mo = new DefaultModel();
+        CompactNamingService ns = new CompactNamingService();
+        VM v1 = mo.newVM();
+        ns.register("foo.VM1", v1);
+        CompactNamingService cpy = ns.clone();
+        Assert.assertEquals(cpy, ns);
+
+        VM v2 = mo.newVM();
+        cpy.register("foo.VM2", v2);
+        Assert.assertNull(ns.resolve("foo.VM2"));
+        Assert.assertNull(ns.resolve(v2));
+        Assert.assertEquals(cpy.resolve(v2), "foo.VM2");
+
+        VM v3 = mo.newVM();
+        ns.substituteVM(v1, v3);
+        Assert.assertEquals(ns.resolve("foo.VM1").getElement(), v3);
+        Assert.assertEquals(cpy.resolve("foo.VM1").getElement(), v1);
+        Assert.assertNull(cpy.resolve(v3));
+    }
+
+    public void testEqualsInMemory() throws NamingServiceException {
+        Model mo = new DefaultModel();
+        CompactNamingService ns = new CompactNamingService();
+        InMemoryNamingService ref = new InMemoryNamingService();
+        for (int i = 0; i < 10; i++) {
+            VM v = mo.newVM();
+            ns.register("foo.VM" + i, v);
+            ref.register("foo.VM" + i, v);
+        }
+        Assert.assertEquals(ns, ref);
+        Assert.assertEquals(ref, ns);
+        ns.register("@N1", mo.newNode());
+        Assert.assertNotEquals(ns, ref);
+    }
+
+    public void testWithBuilder() throws ScriptBuilderException {
+        Model mo = new DefaultModel();
+        CompactNamingService ns = new CompactNamingService();
+        mo.attach(ns);
+        ScriptBuilder b = new ScriptBuilder(mo);
+        Script s = b.build("namespace foo;\nVM[1..50] : tiny;\n@N[1..5] : defaultNode;\n"
+                + "$x = VM[1..10] + VM[5..20];\nban($x, @N[1..2]);\n");
+        Assert.assertSame(b.getNamingService(), ns);
+        Assert.assertEquals(s.getVMs().size(), 50);
+        Assert.assertEquals(ns.size(), 55);
+        Assert.assertEquals(s.getConstraints().size(), 20);
+    }
+
+    public void testBulkRegister() throws NamingServiceException {
+        Model mo = new DefaultModel();
+        BulkNamingService[] services = {new CompactNamingService(), new InMemoryNamingService()};
+        List<String> suffixes = new ArrayList<>();
+        List<VM> vms = new ArrayList<>();
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            suffixes.add(Integer.toString(i));
+            vms.add(mo.newVM());
+            nodes.add(mo.newNode());
+        }
+        for (BulkNamingService ns : services) {
+            ns.register("foo.VM0", vms.get(0));
+            List<BtrpElement> res = ns.register("@N", suffixes, nodes);
+            Assert.assertEquals(res.size(), 100);
+            Assert.assertEquals(res.get(12).getName(), "@N12");
+            Assert.assertEquals(res.get(12).type(), BtrpOperand.Type.node);
+            Assert.assertEquals(ns.resolve("@N99").getElement(), nodes.get(99));
+            Assert.assertEquals(ns.resolve(nodes.get(5)), "@N5");
+            //'foo.VM0' is already registered, nothing is registered
+            try {
+                ns.register("foo.VM", suffixes, vms);
+                Assert.fail("'foo.VM0' is already registered");
+            } catch (NamingServiceException e) {
+                Assert.assertEquals(e.getName(), "foo.VM0");
+            }
+            Assert.assertNull(ns.resolve("foo.VM1"));
+            Assert.assertEquals(ns.getRegisteredElements().size(), 101);
+            //Duplicated suffixes, nothing is registered
+            try {
+                ns.register("foo.VM", Arrays.asList("a", "b", "a"), vms.subList(1, 4));
+                Assert.fail("'foo.VMa' is duplicated");
+            } catch (NamingServiceException e) {
+                Assert.assertEquals(e.getName(), "foo.VMa");
+            }
+            Assert.assertNull(ns.resolve("foo.VMa"));
+            Assert.assertNull(ns.resolve("foo.VMb"));
+            Assert.assertEquals(ns.resolve("@N42").getElement(), nodes.get(42));
+            //Naming consistency
+            try {
+                ns.register("N", suffixes, nodes);
+                Assert.fail("Node labels must start with a '@'");
+            } catch (NamingServiceException e) {
+                Assert.assertEquals(e.getName(), "N0");
+            }
+            try {
+                ns.register("", Arrays.asList("@Nx", "Ny"), nodes.subList(0, 2));
+                Assert.fail("Node labels must start with a '@'");
+            } catch (NamingServiceException e) {
+                Assert.assertEquals(e.getName(), "Ny");
+            }
+            Assert.assertEquals(ns.getRegisteredElements().size(), 101);
+        }
+        Assert.assertEquals(services[0], services[1]);
+    }
+
+    public void testBulkDeclare() throws NamingServiceException {
+        Model mo = new DefaultModel();
+        NamingService[] services = {new CompactNamingService(), new TrieNamingService()};
+        for (NamingService ns : services) {
+            VM v = mo.newVM();
+            ns.register("foo.VM2", v);
+            ModelElementFactory f = new ModelElementFactory(mo, true);
+            List<BtrpElement> res = f.declare(ns, "foo.VM", Arrays.asList("1", "2", "3"));
+            Assert.assertEquals(res.size(), 3);
+            Assert.assertEquals(res.get(1).getElement(), v);
+            Assert.assertTrue(f.isCreated(0));
+            Assert.assertFalse(f.isCreated(1));
+            Assert.assertTrue(f.isCreated(2));
+            Assert.assertTrue(f.isCreated());
+            Assert.assertEquals(ns.resolve("foo.VM3").getElement(), res.get(2).getElement());
+            Assert.assertTrue(mo.getMapping().getReadyVMs().contains(res.get(0).getElement()));
+            //Nothing is made the second time
+            Assert.assertEquals(f.declare(ns, "foo.VM", Arrays.asList("1", "3")).size(), 2);
+            Assert.assertFalse(f.isCreated(0));
+            Assert.assertFalse(f.isCreated());
+        }
+        //A rejected batch does not leave unnamed nodes in the model
+        try {
+            new ModelElementFactory(mo, false).declare(services[0], "N", Arrays.asList("1", "2", "3"));
+            Assert.fail("Node labels must start with a '@'");
+        } catch (NamingServiceException e) {
+            Assert.assertTrue(mo.getMapping().getOfflineNodes().isEmpty());
+        }
+    }
+
+    public void testEqualityAcrossImplementations() throws NamingServiceException {
+        Model mo = new DefaultModel();
+        NamingService[] services = {new CompactNamingService(), new TrieNamingService(),
+                new InMemoryNamingService(), new ConcurrentInMemoryNamingService()};
+        List<VM> vms = new ArrayList<>();
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            vms.add(mo.newVM());
+            nodes.add(mo.newNode());
+        }
+        for (NamingService ns : services) {
+            for (int i = 0; i < 10; i++) {
+                ns.register("foo.VM" + i, vms.get(i));
+                ns.register("@N" + i, nodes.get(i));
+            }
+        }
+        for (NamingService a : services) {
+            for (NamingService b : services) {
+                Assert.assertEquals(a, b);
+                Assert.assertEquals(a.hashCode(), b.hashCode());
+            }
+        }
+        services[0].register("foo.VM10", mo.newVM());
+        Assert.assertNotEquals(services[0], services[1]);
+        Assert.assertNotEquals(services[1], services[0]);
+    }
+}
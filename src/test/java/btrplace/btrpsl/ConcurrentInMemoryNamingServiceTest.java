@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import btrplace.btrpsl.element.BtrpElement;
+import btrplace.model.DefaultModel;
+import btrplace.model.Element;
+import btrplace.model.Model;
+import btrplace.model.VM;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Unit tests for {@link ConcurrentInMemoryNamingService}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class ConcurrentInMemoryNamingServiceTest {
+
+    public void testRegisterIfAbsent() throws NamingServiceException {
+        Model mo = new DefaultModel();
+        ConcurrentInMemoryNamingService ns = new ConcurrentInMemoryNamingService();
+        ModelElementFactory f = new ModelElementFactory(mo, true);
+        BtrpElement el = ns.registerIfAbsent("foo.VM1", f);
+        Assert.assertTrue(f.isCreated());
+        Assert.assertTrue(mo.getMapping().getReadyVMs().contains(el.getElement()));
+
+        ModelElementFactory f2 = new ModelElementFactory(mo, true);
+        Assert.assertEquals(ns.registerIfAbsent("foo.VM1", f2), el);
+        Assert.assertFalse(f2.isCreated());
+
+        ModelElementFactory f3 = new ModelElementFactory(mo, false);
+        el = f3.declare(ns, "@N1");
+        Assert.assertTrue(f3.isCreated());
+        Assert.assertTrue(mo.getMapping().getOfflineNodes().contains(el.getElement()));
+        Assert.assertEquals(ns.resolve(el.getElement()), "@N1");
+    }
+
+    @Test(expectedExceptions = {NamingServiceException.class})
+    public void testBadNodeName() throws NamingServiceException {
+        new ConcurrentInMemoryNamingService().registerIfAbsent("N1", new ModelElementFactory(new DefaultModel(), false));
+    }
+
+    /**
+     * Threads declare overlapping names. Each name must be associated to a single element.
+     */
+    public void testConcurrentRegistrations() throws Exception {
+        final Model mo = new DefaultModel();
+        final ConcurrentInMemoryNamingService ns = new ConcurrentInMemoryNamingService();
+        final int nbNames = 500;
+        int nbThreads = 8;
+        ExecutorService exec = Executors.newFixedThreadPool(nbThreads);
+        final CyclicBarrier barrier = new CyclicBarrier(nbThreads);
+        List<Future<Integer>> res = new ArrayList<>();
+        for (int t = 0; t < nbThreads; t++) {
+            final int offset = t;
+            res.add(exec.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    barrier.await();
+                    int created = 0;
+                    for (int i = 0; i < nbNames; i++) {
+                        String id = (i + offset) % 2 == 0 ? "foo.VM" + ((i + offset) % nbNames) : "@N" + ((i + offset) % nbNames);
+                        ModelElementFactory f = new ModelElementFactory(mo, id.charAt(0) != '@');
+                        Assert.assertNotNull(f.declare(ns, id));
+                        if (f.isCreated()) {
+                            created++;
+                        }
+                    }
+                    return created;
+                }
+            }));
+        }
+        int created = 0;
+        for (Future<Integer> f : res) {
+            created += f.get();
+        }
+        exec.shutdown();
+        Assert.assertEquals(created, nbNames);
+        Assert.assertEquals(ns.getRegisteredElements().size(), nbNames);
+        Assert.assertEquals(mo.getMapping().getReadyVMs().size() + mo.getMapping().getOfflineNodes().size(), nbNames);
+        Set<String> names = new HashSet<>();
+        for (Element e : ns.getRegisteredElements()) {
+            Assert.assertTrue(names.add(ns.resolve(e)));
+            Assert.assertEquals(ns.resolve(ns.resolve(e)).getElement(), e);
+        }
+    }
+
+    public void testWithBuilder() throws ScriptBuilderException {
+        Model mo = new DefaultModel();
+        ConcurrentInMemoryNamingService ns = new ConcurrentInMemoryNamingService();
+        mo.attach(ns);
+        ScriptBuilder b = new ScriptBuilder(mo);
+        Script s1 = b.build("namespace foo;\nVM[1..10] : tiny;\n@N[1..3] : defaultNode;\nspread($me);\n");
+        Script s2 = b.build("namespace bar;\nVM[1..5] : tiny;\n@N[1..4] : defaultNode;\nspread($me);\n");
+        Assert.assertEquals(s1.getNodes().size(), 3);
+        Assert.assertEquals(s2.getNodes().size(), 4);
+        Assert.assertEquals(mo.getMapping().getOfflineNodes().size(), 4);
+        Assert.assertEquals(ns.getRegisteredElements().size(), 19);
+        Assert.assertEquals(b.getNamingService().resolve("bar.VM5").getName(), "bar.VM5");
+    }
+
+    /**
+     * Several builders share the model and its naming service.
+     * The nodes are declared by every script.
+     */
+    public void testConcurrentBuilders() throws Exception {
+        final Model mo = new DefaultModel();
+        final ConcurrentInMemoryNamingService ns = new ConcurrentInMemoryNamingService();
+        mo.attach(ns);
+        int nbThreads = 8;
+        final int nbScripts = 10;
+        ExecutorService exec = Executors.newFixedThreadPool(nbThreads);
+        final CyclicBarrier barrier = new CyclicBarrier(nbThreads);
+        List<Future<List<Script>>> res = new ArrayList<>();
+        for (int t = 0; t < nbThreads; t++) {
+            final ScriptBuilder b = new ScriptBuilder(mo);
+            final int id = t;
+            res.add(exec.submit(new Callable<List<Script>>() {
+                @Override
+                public List<Script> call() throws Exception {
+                    barrier.await();
+                    List<Script> scripts = new ArrayList<>();
+                    for (int i = 0; i < nbScripts; i++) {
+                        scripts.add(b.build("namespace t" + id + ".s" + i + ";\nVM[1..50] : tiny<migratable>;\n"
+                                + "@N[1..20] : defaultNode;\nspread($me);\n"));
+                    }
+                    return scripts;
+                }
+            }));
+        }
+        Set<Element> vms = new HashSet<>();
+        for (Future<List<Script>> f : res) {
+            for (Script s : f.get()) {
+                Assert.assertEquals(s.getVMs().size(), 50);
+                Assert.assertEquals(s.getNodes().size(), 20);
+                //$me only holds the VMs of the script
+                Assert.assertEquals(s.getConstraints().iterator().next().getInvolvedVMs().size(), 50);
+                vms.addAll(s.getVMs());
+            }
+        }
+        exec.shutdown();
+        int nbVMs = nbThreads * nbScripts * 50;
+        Assert.assertEquals(vms.size(), nbVMs);
+        Assert.assertEquals(mo.getMapping().getReadyVMs().size(), nbVMs);
+        Assert.assertEquals(mo.getMapping().getOfflineNodes().size(), 20);
+        Assert.assertEquals(ns.getRegisteredElements().size(), nbVMs + 20);
+        for (Element e : ns.getRegisteredElements()) {
+            Assert.assertEquals(ns.resolve(ns.resolve(e)).getElement(), e);
+            Assert.assertEquals(mo.getAttributes().getString(e, "template"), e instanceof VM ? "tiny" : "defaultNode");
+        }
+    }
+}
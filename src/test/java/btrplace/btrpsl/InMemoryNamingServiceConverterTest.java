@@ -25,6 +25,7 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.io.StringReader;
 
 /**
  * Unit tests for {@link InMemoryNamingServiceConverter}.
@@ -48,4 +49,55 @@ public class InMemoryNamingServiceConverterTest {
         NamingService ns2 = conv.fromJSON(o.toJSONString());
         Assert.assertEquals(ns, ns2);
     }
+
+    @Test
+    public void testStreaming() throws Exception {
+        InMemoryNamingService ns = new InMemoryNamingService();
+        Model mo = new DefaultModel();
+        for (int i = 0; i < 10000; i++) {
+            ns.register("clients.foo.vm-" + i, mo.newVM());
+        }
+        ns.register("@N1", mo.newNode());
+        ns.register("bar.\"quoted\\\u00e9\n", mo.newVM());
+        InMemoryNamingServiceConverter conv = new InMemoryNamingServiceConverter();
+        conv.setModel(mo);
+        StringBuilder b = new StringBuilder();
+        conv.write(ns, b);
+        Assert.assertTrue(b.toString().startsWith("{\"id\":\"btrpsl.ns\",\"count\":10002,"), b.substring(0, 40));
+
+        InMemoryNamingService ns2 = conv.read(new StringReader(b.toString()));
+        Assert.assertEquals(ns2, ns);
+        Assert.assertEquals(ns2.resolve("@N1").getElement(), ns.resolve("@N1").getElement());
+
+        //Compatible with the JSON objects
+        Assert.assertEquals(conv.fromJSON(b.toString()), ns);
+        Assert.assertEquals(conv.read(new StringReader(conv.toJSON(ns).toJSONString())), ns);
+        //Whatever the order of the keys, without count, and with unknown keys
+        String json = " {\n \"elements\" : { \"@N1\" : 5, \"foo.VM1\" : \"7\" },\n"
+                + "\"extra\": [1, {\"a\": [true, null, -1.5e3]}, \"x\"],\n \"id\" : \"btrpsl.ns\"}";
+        ns2 = new InMemoryNamingServiceConverter().read(new StringReader(json));
+        Assert.assertEquals(ns2.resolve("@N1").getElement().id(), 5);
+        Assert.assertEquals(ns2.resolve("foo.VM1").getElement().id(), 7);
+    }
+
+    @Test
+    public void testStreamingErrors() throws Exception {
+        String[] bad = {
+                "{\"elements\":{}}",
+                "{\"id\":\"foo\",\"elements\":{}}",
+                "{\"id\":\"btrpsl.ns\"}",
+                "{\"id\":\"btrpsl.ns\",\"elements\":{\"a\":1,\"a\":2}}",
+                "{\"id\":\"btrpsl.ns\",\"elements\":{\"N1\":1,",
+                "{\"id\":\"btrpsl.ns\",\"elements\":{\"a\":abc}}",
+                "{\"id\":\"btrpsl.ns\",\"elements\":{\"a\":99999999999}}",
+        };
+        for (String s : bad) {
+            try {
+                new InMemoryNamingServiceConverter().read(new StringReader(s));
+                Assert.fail("Should fail: " + s);
+            } catch (JSONConverterException e) {
+                Assert.assertNotNull(e.getMessage());
+            }
+        }
+    }
 }
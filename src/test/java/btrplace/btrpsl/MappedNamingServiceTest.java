@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import btrplace.btrpsl.element.BtrpElement;
+import btrplace.btrpsl.element.BtrpOperand;
+import btrplace.model.DefaultModel;
+import btrplace.model.Element;
+import btrplace.model.Model;
+import btrplace.model.Node;
+import btrplace.model.VM;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link MappedNamingService}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class MappedNamingServiceTest {
+
+    private static InMemoryNamingService makeService(Model mo) throws NamingServiceException {
+        InMemoryNamingService ns = new InMemoryNamingService();
+        for (int i = 0; i < 1000; i++) {
+            ns.register(String.format("clients.foo.vm-%06d", i), mo.newVM());
+        }
+        for (int i = 0; i < 100; i++) {
+            ns.register("@rack" + (i % 4) + ".N" + i, mo.newNode());
+        }
+        ns.register("clients.bär.VM1", mo.newVM());
+        ns.register("clients.zeta.VM1", mo.newVM());
+        return ns;
+    }
+
+    private static MappedNamingService snapshot(NamingService ns) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MappedNamingService.write(ns, out);
+        return new MappedNamingService(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    public void testRoundTrip() throws Exception {
+        Model mo = new DefaultModel();
+        InMemoryNamingService ref = makeService(mo);
+        MappedNamingService ns = snapshot(ref);
+        Assert.assertEquals(ns.size(), 1102);
+        Assert.assertEquals(ns.getRegisteredElements(), ref.getRegisteredElements());
+        Assert.assertEquals(ns, ref);
+        Assert.assertEquals(ref, ns);
+        Assert.assertEquals(ns.hashCode(), snapshot(ns).hashCode());
+        for (Element e : ref.getRegisteredElements()) {
+            String n = ref.resolve(e);
+            Assert.assertEquals(ns.resolve(e), n);
+            BtrpElement el = ns.resolve(n);
+            Assert.assertEquals(el.getElement(), e);
+            Assert.assertEquals(el.getName(), n);
+            Assert.assertEquals(el.type(), e instanceof Node ? BtrpOperand.Type.node : BtrpOperand.Type.VM);
+        }
+        Assert.assertNull(ns.resolve("clients.foo.vm-001000"));
+        Assert.assertNull(ns.resolve("clients.foo.vm-"));
+        Assert.assertNull(ns.resolve("a"));
+        Assert.assertNull(ns.resolve("zz"));
+        Assert.assertNull(ns.resolve(mo.newVM()));
+        Assert.assertNull(ns.resolve(mo.newNode()));
+        Assert.assertFalse(ns.getRegisteredElements().contains(mo.newVM()));
+        Assert.assertEquals(ns.clone(), ns);
+    }
+
+    public void testPrefix() throws Exception {
+        MappedNamingService ns = snapshot(makeService(new DefaultModel()));
+        Assert.assertEquals(ns.resolveByPrefix("@rack1.").size(), 25);
+        Assert.assertEquals(ns.resolveByPrefix("clients.foo.vm-0001").size(), 100);
+        Assert.assertEquals(ns.resolveByPrefix("clients.").size(), 1002);
+        Assert.assertTrue(ns.resolveByPrefix("foo").isEmpty());
+        List<BtrpElement> res = ns.resolve("clients.foo.vm-", Arrays.asList("000012", "000999", "001000"));
+        Assert.assertEquals(res.get(0).getName(), "clients.foo.vm-000012");
+        Assert.assertEquals(res.get(1).getName(), "clients.foo.vm-000999");
+        Assert.assertNull(res.get(2));
+    }
+
+    public void testReadOnly() throws Exception {
+        Model mo = new DefaultModel();
+        InMemoryNamingService ref = makeService(mo);
+        MappedNamingService ns = snapshot(ref);
+        VM v = (VM) ns.resolve("clients.zeta.VM1").getElement();
+        Assert.assertFalse(ns.substituteVM(v, mo.newVM()));
+        try {
+            ns.register("clients.zeta.VM2", mo.newVM());
+            Assert.fail("The service is read-only");
+        } catch (NamingServiceException e) {
+            Assert.assertEquals(e.getName(), "clients.zeta.VM2");
+        }
+    }
+
+    public void testFile() throws Exception {
+        InMemoryNamingService ref = makeService(new DefaultModel());
+        File f = File.createTempFile("btrpsl", ".ns");
+        File json = File.createTempFile("btrpsl", ".json");
+        try {
+            MappedNamingService.write(ref, f);
+            new InMemoryNamingServiceConverter().write(ref, json);
+            Assert.assertTrue(f.length() < json.length());
+            MappedNamingService ns = MappedNamingService.open(f);
+            Assert.assertEquals(ns, ref);
+        } finally {
+            Assert.assertTrue(f.delete());
+            Assert.assertTrue(json.delete());
+        }
+    }
+
+    public void testEmpty() throws Exception {
+        MappedNamingService ns = snapshot(new InMemoryNamingService());
+        Assert.assertEquals(ns.size(), 0);
+        Assert.assertTrue(ns.getRegisteredElements().isEmpty());
+        Assert.assertNull(ns.resolve("foo"));
+        Assert.assertTrue(ns.resolveByPrefix("").isEmpty());
+    }
+
+    @Test(expectedExceptions = {IOException.class})
+    public void testBadMagic() throws IOException {
+        new MappedNamingService(ByteBuffer.wrap(new byte[64]));
+    }
+
+    @Test(expectedExceptions = {IOException.class})
+    public void testTruncated() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MappedNamingService.write(makeService(new DefaultModel()), out);
+        new MappedNamingService(ByteBuffer.wrap(Arrays.copyOf(out.toByteArray(), 100)));
+    }
+}
@@ -37,6 +37,10 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Unit tests for {@link ScriptBuilder}.
@@ -336,6 +340,19 @@ public class ScriptBuilderTest {
         Assert.assertEquals(out.size(), 250);
     }
 
+    public void testLargeProductAssignment() throws ScriptBuilderException {
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        Script v = b.build("namespace foo; VM[1..2000] : tiny;\n$s = VM[1..2000];\n"
+                + "$p = $s * $s;\n$c = $s^3;\n$q = $p;\nexport $p, $c, $q to *;");
+        //The products are not expanded by the assignments
+        BtrpSet c = (BtrpSet) v.getImportable("$c");
+        Assert.assertEquals(c.size(), 1331334000);
+        Assert.assertEquals(c.getValues().get(c.size() - 1).toString(), "{foo.VM1998, foo.VM1999, foo.VM2000}");
+        BtrpSet q = (BtrpSet) v.getImportable("$q");
+        Assert.assertEquals(q.size(), 1999000);
+        Assert.assertEquals(q.getValues().get(12345), ((BtrpSet) v.getImportable("$p")).getValues().get(12345));
+    }
+
     public void testDependencies() {
         //
         // a
@@ -531,4 +548,70 @@ public class ScriptBuilderTest {
         Assert.assertEquals(cp.getResult(), p.getResult());
         Assert.assertEquals(cp.getOrigin(), p.getOrigin());
     }
+
+    public void testBuildAll() {
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        List<File> files = Arrays.asList(new File(RC_ROOT + "deps/a.btrp"),
+                new File(RC_ROOT + "deps/b.btrp"),
+                new File(RC_ROOT + "deps/c.btrp"),
+                new File(RC_ROOT + "deps/in/titi.btrp"),
+                new File(RC_ROOT + "deps/in/toto.btrp"),
+                new File(RC_ROOT + "deps/out/foo.btrp"),
+                new File(RC_ROOT + "deps/out/bar.btrp"));
+        ExecutorService exec = Executors.newFixedThreadPool(3);
+        try {
+            BuildResult res = b.buildAll(files, exec);
+            Assert.assertTrue(res.isSuccessful(), res.toString());
+            List<Script> scripts = res.getScripts();
+            Assert.assertEquals(scripts.size(), 7);
+            Script a = res.getScript(files.get(0));
+            Assert.assertEquals(scripts.get(6), a);
+            Assert.assertSame(a.getDependencies().get(0), res.getScript(files.get(1)));
+            for (Script s : scripts) {
+                for (Script d : s.getDependencies()) {
+                    Assert.assertTrue(scripts.indexOf(d) < scripts.indexOf(s));
+                }
+            }
+            String pretty = "a\n" +
+                    "|- b\n" +
+                    "   |- in.titi\n" +
+                    "   \\- in.toto\n" +
+                    "\\- c\n" +
+                    "   |- out.foo\n" +
+                    "   \\- out.bar\n";
+            Assert.assertEquals(a.prettyDependencies(), pretty);
+
+            //Already built scripts are taken from the cache
+            Assert.assertSame(b.build(files.get(0)), a);
+        } catch (Exception x) {
+            Assert.fail(x.getMessage(), x);
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    public void testBuildAllWithCycles() {
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        File x = new File(RC_ROOT + "cycles/x.btrp");
+        File y = new File(RC_ROOT + "cycles/y.btrp");
+        File z = new File(RC_ROOT + "cycles/z.btrp");
+        File w = new File(RC_ROOT + "cycles/w.btrp");
+        BuildResult res = b.buildAll(Arrays.asList(x, y, z, w));
+        Assert.assertFalse(res.isSuccessful());
+        Assert.assertEquals(res.getErrors().size(), 3);
+        Assert.assertTrue(res.getErrors().get(x).getMessage().startsWith("Cyclic import"));
+        Assert.assertTrue(res.getErrors().get(y).getMessage().startsWith("Cyclic import"));
+        Assert.assertTrue(res.getErrors().get(z).getMessage().contains("depends on a cyclic import"));
+        Assert.assertEquals(res.getScripts().size(), 1);
+        Assert.assertEquals(res.getScript(w).getVMs().size(), 3);
+    }
+
+    public void testBuildAllWithErrors() {
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        BuildResult res = b.buildAll(Arrays.asList(new File(RC_ROOT + "badName.btrp"),
+                new File(RC_ROOT + "number.btrp")));
+        Assert.assertEquals(res.getErrors().size(), 1);
+        Assert.assertNotNull(res.getErrors().get(new File(RC_ROOT + "badName.btrp")));
+        Assert.assertNotNull(res.getScript(new File(RC_ROOT + "number.btrp")));
+    }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import btrplace.model.DefaultModel;
+import btrplace.model.VM;
+import btrplace.model.constraint.Ban;
+import btrplace.model.constraint.SatConstraint;
+import btrplace.model.constraint.Spread;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit tests for {@link ScriptDiff}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class ScriptDiffTest {
+
+    private static final String SCRIPT = "namespace foo;\nVM[1..10] : tiny;\n@N[1..4] : defaultNode;\n"
+            + "spread(VM[1..3]);\nban(VM[1..2], @N[1..2]);\nroot(VM5);\n";
+
+    public void testDiff() throws Exception {
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        Script s1 = b.build(SCRIPT);
+        String edited = SCRIPT.replace("VM[1..10]", "VM[2..11]").replace("spread(VM[1..3])", "spread({VM3,VM2})")
+                .replace("root(VM5);", "root(VM6);");
+        Script s2 = b.build(edited);
+        ScriptDiff d = new ScriptDiff(s1, s2);
+        Assert.assertFalse(d.isEmpty());
+        //The spread and the root changed, the bans did not
+        Assert.assertEquals(d.getAddedConstraints().size(), 2, d.toString());
+        Assert.assertEquals(d.getRemovedConstraints().size(), 2, d.toString());
+        Assert.assertEquals(d.getUnchangedConstraints().size(), 2, d.toString());
+        Assert.assertEquals(d.getAddedVMs().size(), 1);
+        Assert.assertEquals(b.getNamingService().resolve(d.getAddedVMs().get(0)), "foo.VM11");
+        Assert.assertEquals(d.getRemovedVMs().size(), 1);
+        Assert.assertEquals(b.getNamingService().resolve(d.getRemovedVMs().get(0)), "foo.VM1");
+        Assert.assertEquals(d.getUnchangedVMs().size(), 9);
+        Assert.assertEquals(d.getUnchangedNodes().size(), 4);
+        Assert.assertTrue(d.getAddedNodes().isEmpty());
+
+        //The spread is unchanged despite the different ordering of its VMs
+        Assert.assertTrue(new ScriptDiff(s2, b.build(edited.replace("{VM3,VM2}", "VM[2..3]"))).isEmpty());
+        Assert.assertTrue(new ScriptDiff(s2, s2).isEmpty());
+        ScriptDiff all = new ScriptDiff(null, s1);
+        Assert.assertEquals(all.getAddedConstraints().size(), s1.getConstraints().size());
+        Assert.assertEquals(all.getAddedVMs().size(), 10);
+    }
+
+    public void testCanonicalOrder() throws Exception {
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        Script s = b.build(SCRIPT);
+        List<SatConstraint> l = new ArrayList<>(s.getConstraints());
+        List<SatConstraint> expected = new ArrayList<>(new ScriptDiff(null, s).getAddedConstraints());
+        for (int i = 0; i < 5; i++) {
+            Collections.shuffle(l);
+            Collections.sort(l, ScriptDiff.CANONICAL_ORDER);
+            Assert.assertEquals(l, expected);
+        }
+        //Ban < Root < Spread, then by VM
+        Assert.assertTrue(expected.get(0) instanceof Ban);
+        Assert.assertTrue(expected.get(expected.size() - 1) instanceof Spread);
+        VM v1 = expected.get(0).getInvolvedVMs().iterator().next();
+        VM v2 = expected.get(1).getInvolvedVMs().iterator().next();
+        Assert.assertTrue(v1.id() < v2.id());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link ScriptHeader}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class ScriptHeaderTest {
+
+    public void testParse() throws ScriptBuilderException {
+        ScriptHeader h = ScriptHeader.parse("/* a\n comment */ namespace foo.bar; // another\n"
+                + "import toto;import clients.*;\n\nimport a.b ;\nVM[1..5] : tiny;\nimport c;");
+        Assert.assertEquals(h.getId(), "foo.bar");
+        Assert.assertEquals(h.getNamespace(), "foo");
+        Assert.assertEquals(h.getImports(), Arrays.asList("toto", "clients.*", "a.b"));
+
+        h = ScriptHeader.parse("namespace foo;");
+        Assert.assertEquals(h.getNamespace(), "");
+        Assert.assertTrue(h.getImports().isEmpty());
+    }
+
+    @Test(expectedExceptions = {ScriptBuilderException.class})
+    public void testMissingNamespace() throws ScriptBuilderException {
+        ScriptHeader.parse("VM[1..5] : tiny;");
+    }
+
+    @Test(expectedExceptions = {ScriptBuilderException.class})
+    public void testMalformedImport() throws ScriptBuilderException {
+        ScriptHeader.parse("namespace foo; import bar");
+    }
+
+    public void testMatches() {
+        ScriptHeader h = new ScriptHeader("clients.foo", Arrays.<String>asList());
+        Assert.assertTrue(ScriptHeader.matches("clients.foo", h));
+        Assert.assertTrue(ScriptHeader.matches("clients.*", h));
+        Assert.assertFalse(ScriptHeader.matches("clients", h));
+        Assert.assertFalse(ScriptHeader.matches("foo.*", h));
+    }
+}
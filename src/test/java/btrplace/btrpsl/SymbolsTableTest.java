@@ -127,4 +127,63 @@ public class SymbolsTableTest {
 
 
     }
+
+    public void testSlots() {
+        SymbolsTable t = new SymbolsTable();
+        int s1 = t.slot("$v1");
+        Assert.assertEquals(t.slot("$v1"), s1);
+        Assert.assertFalse(t.isDeclared(s1));
+        Assert.assertFalse(t.isDeclared("$v1"));
+        Assert.assertNull(t.getSymbol(s1));
+
+        BtrpNumber i = new BtrpNumber(5, BtrpNumber.Base.base10);
+        Assert.assertTrue(t.declare(s1, i));
+        Assert.assertSame(t.getSymbol("$v1"), i);
+        Assert.assertSame(t.getSymbol(s1), i);
+
+        t.declareImmutable("$v2", i);
+        int s2 = t.slot("$v2");
+        Assert.assertNotEquals(s2, s1);
+        Assert.assertTrue(t.isImmutable(s2));
+        Assert.assertFalse(t.declare(s2, i));
+
+        //Slots survive the removal of the variables
+        Assert.assertTrue(t.remove("$v1"));
+        Assert.assertEquals(t.slot("$v1"), s1);
+        Assert.assertFalse(t.isDeclared(s1));
+        Assert.assertNotEquals(new SymbolsTable().id(), t.id());
+
+        //Many variables
+        for (int x = 0; x < 100; x++) {
+            Assert.assertTrue(t.declare("$x" + x, i));
+        }
+        Assert.assertTrue(t.isImmutable("$v2"));
+        Assert.assertSame(t.getSymbol("$x99"), i);
+    }
+
+    public void testNestedPops() {
+        SymbolsTable t = new SymbolsTable();
+        BtrpNumber i = new BtrpNumber(5, BtrpNumber.Base.base10);
+        t.declare("$v0", i);
+        t.pushTable();
+        t.declare("$v1", i);
+        for (int x = 0; x < 10; x++) {
+            t.pushTable();
+            t.declare("$v2", i);
+            t.declare("$v0", new BtrpNumber(x, BtrpNumber.Base.base10));
+            //Removed then declared again, at the current level
+            t.remove("$v1");
+            t.declare("$v1", i);
+            Assert.assertTrue(t.popTable());
+            Assert.assertFalse(t.isDeclared("$v2"));
+            Assert.assertFalse(t.isDeclared("$v1"));
+            t.declare("$v1", i);
+        }
+        Assert.assertEquals(t.getSymbol("$v0").toString(), "9");
+        Assert.assertTrue(t.isDeclared("$v1"));
+        Assert.assertTrue(t.popTable());
+        Assert.assertFalse(t.isDeclared("$v1"));
+        Assert.assertTrue(t.isDeclared("$v0"));
+        Assert.assertFalse(t.popTable());
+    }
 }
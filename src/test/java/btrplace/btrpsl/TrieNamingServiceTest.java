@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl;
+
+import btrplace.btrpsl.element.BtrpElement;
+import btrplace.model.DefaultModel;
+import btrplace.model.Model;
+import btrplace.model.VM;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link TrieNamingService}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class TrieNamingServiceTest {
+
+    private static List<String> names(List<BtrpElement> els) {
+        List<String> res = new ArrayList<>();
+        for (BtrpElement e : els) {
+            res.add(e == null ? null : e.getName());
+        }
+        return res;
+    }
+
+    private static TrieNamingService make(Model mo) throws NamingServiceException {
+        TrieNamingService ns = new TrieNamingService();
+        for (String n : new String[]{"clients.foo.VM1", "clients.foo.VM2", "clients.foo.VM10",
+                "clients.foobar.VM1", "clients.bar.VM1", "clients.foo.sub.VM1"}) {
+            ns.register(n, mo.newVM());
+        }
+        for (int r = 1; r <= 3; r++) {
+            for (int i = 1; i <= 4; i++) {
+                ns.register("@rack" + r + ".srv" + i, mo.newNode());
+            }
+        }
+        return ns;
+    }
+
+    public void testRegisterAndResolve() throws NamingServiceException {
+        Model mo = new DefaultModel();
+        TrieNamingService ns = make(mo);
+        Assert.assertEquals(ns.size(), 18);
+        Assert.assertEquals(ns.getRegisteredElements().size(), 18);
+        Assert.assertEquals(ns.resolve("clients.foo.VM1").getName(), "clients.foo.VM1");
+        Assert.assertEquals(ns.resolve("clients.foo.VM10").getName(), "clients.foo.VM10");
+        Assert.assertNull(ns.resolve("clients.foo.VM"));
+        Assert.assertNull(ns.resolve("clients.foo.VM100"));
+        Assert.assertNull(ns.resolve("clients"));
+        BtrpElement el = ns.resolve("@rack2.srv3");
+        Assert.assertEquals(ns.resolve(el.getElement()), "@rack2.srv3");
+    }
+
+    @Test(expectedExceptions = {NamingServiceException.class})
+    public void testDuplicate() throws NamingServiceException {
+        Model mo = new DefaultModel();
+        make(mo).register("clients.foo.VM2", mo.newVM());
+    }
+
+    public void testResolveByPrefix() throws NamingServiceException {
+        TrieNamingService ns = make(new DefaultModel());
+        Assert.assertEquals(names(ns.resolveByPrefix("clients.foo.")),
+                Arrays.asList("clients.foo.VM1", "clients.foo.VM10", "clients.foo.VM2", "clients.foo.sub.VM1"));
+        //The prefix ends in the middle of an edge
+        Assert.assertEquals(names(ns.resolveByPrefix("clients.foob")), Arrays.asList("clients.foobar.VM1"));
+        Assert.assertEquals(ns.resolveByPrefix("@rack2.").size(), 4);
+        Assert.assertEquals(ns.resolveByPrefix("@").size(), 12);
+        Assert.assertEquals(ns.resolveByPrefix("").size(), 18);
+        Assert.assertTrue(ns.resolveByPrefix("@rack4.").isEmpty());
+        Assert.assertTrue(ns.resolveByPrefix("clients.fox").isEmpty());
+    }
+
+    public void testBulkResolution() throws NamingServiceException {
+        TrieNamingService ns = make(new DefaultModel());
+        Assert.assertEquals(names(ns.resolve("clients.foo.VM", Arrays.asList("1", "10", "3", "2"))),
+                Arrays.asList("clients.foo.VM1", "clients.foo.VM10", null, "clients.foo.VM2"));
+        Assert.assertEquals(names(ns.resolve("@rack", Arrays.asList("1.srv1", "3.srv4", "4.srv1"))),
+                Arrays.asList("@rack1.srv1", "@rack3.srv4", null));
+        Assert.assertEquals(names(ns.resolve("clients.z", Arrays.asList("", "oo"))), Arrays.asList(null, null));
+    }
+
+    public void testCloneAndSubstitute() throws NamingServiceException {
+        Model mo = new DefaultModel();
+        TrieNamingService ns = make(mo);
+        TrieNamingService cpy = ns.clone();
+        Assert.assertEquals(cpy, ns);
+        cpy.register("clients.foo.VM3", mo.newVM());
+        Assert.assertNull(ns.resolve("clients.foo.VM3"));
+        Assert.assertEquals(cpy.size(), ns.size() + 1);
+
+        VM v = (VM) ns.resolve("clients.bar.VM1").getElement();
+        VM v2 = mo.newVM();
+        ns.substituteVM(v, v2);
+        Assert.assertEquals(ns.resolve("clients.bar.VM1").getElement(), v2);
+        Assert.assertEquals(cpy.resolve("clients.bar.VM1").getElement(), v);
+        Assert.assertEquals(ns.size(), 18);
+    }
+
+    public void testWithBuilder() throws ScriptBuilderException {
+        Model mo = new DefaultModel();
+        mo.attach(new TrieNamingService());
+        ScriptBuilder b = new ScriptBuilder(mo);
+        Script s = b.build("namespace foo;\nVM[1..20] : tiny;\n@srv-[1..4].rack : defaultNode;\n"
+                + "ban(VM[1..10], @srv-[1..2].rack);\n");
+        Assert.assertEquals(s.getConstraints().size(), 10);
+        try {
+            b.build("namespace bar;\nVM[1..5] : tiny;\nban(VM[3..6], @srv-[1..2].rack);\n");
+            Assert.fail();
+        } catch (ScriptBuilderException ex) {
+            Assert.assertEquals(ex.getErrorReporter().getErrors().size(), 1);
+            Assert.assertTrue(ex.getErrorReporter().getErrors().get(0).toString().contains("Unknown VM 'VM6'"));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.cache;
+
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.element.BtrpElement;
+import btrplace.btrpsl.element.BtrpOperand;
+import btrplace.model.DefaultModel;
+import btrplace.model.Model;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Unit tests for {@link ScriptCache}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class ScriptCacheTest {
+
+    private static Script newScript(String id, int nbVMs) {
+        Model mo = new DefaultModel();
+        Script s = new Script();
+        s.setFullyQualifiedName(id);
+        for (int i = 0; i < nbVMs; i++) {
+            s.add(new BtrpElement(BtrpOperand.Type.VM, "VM" + i, mo.newVM()));
+        }
+        return s;
+    }
+
+    public void testDigest() {
+        String d = ScriptCache.digest("foo".getBytes());
+        Assert.assertEquals(d, "0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33");
+        Assert.assertEquals(ScriptCache.digest("foo".getBytes()), d);
+        Assert.assertNotEquals(ScriptCache.digest("bar".getBytes()), d);
+    }
+
+    public void testLRUEviction() {
+        ScriptCache c = new ScriptCache(2);
+        Script a = newScript("a", 0);
+        Script b = newScript("b", 0);
+        c.put("a", a);
+        c.put("b", b);
+        Assert.assertEquals(c.get("a"), a);
+        c.put("c", newScript("c", 0));
+        Assert.assertEquals(c.size(), 2);
+        Assert.assertEquals(c.getEvictions(), 1);
+        Assert.assertNull(c.get("b"));
+        Assert.assertEquals(c.get("a"), a);
+        Assert.assertEquals(c.getHits(), 2);
+        Assert.assertEquals(c.getMisses(), 1);
+    }
+
+    public void testLFUEviction() {
+        ScriptCache c = new ScriptCache(2, Long.MAX_VALUE, ScriptCache.Policy.LFU);
+        Script a = newScript("a", 0);
+        Script b = newScript("b", 0);
+        c.put("a", a);
+        c.put("b", b);
+        c.get("a");
+        c.get("a");
+        c.get("b");
+        c.put("c", newScript("c", 0));
+        Assert.assertNotNull(c.get("a"));
+        Assert.assertNull(c.get("b"));
+        Assert.assertNotNull(c.get("c"));
+    }
+
+    public void testWeightBound() {
+        ScriptCache c = new ScriptCache(10, 10, ScriptCache.Policy.LRU);
+        c.put("a", newScript("a", 4));
+        c.put("b", newScript("b", 3));
+        Assert.assertEquals(c.getWeight(), 9);
+        c.put("c", newScript("c", 2));
+        Assert.assertEquals(c.size(), 2);
+        Assert.assertEquals(c.getWeight(), 7);
+        Assert.assertNull(c.get("a"));
+
+        //Too heavy to be cached
+        c.put("d", newScript("d", 20));
+        Assert.assertEquals(c.size(), 0);
+        Assert.assertEquals(c.getWeight(), 0);
+    }
+
+    public void testFileStamps() throws IOException {
+        File f = File.createTempFile("foo", ".btrp");
+        f.deleteOnExit();
+        ScriptCache c = new ScriptCache(5);
+        Script s = newScript("foo", 1);
+        Assert.assertNull(c.get(f));
+        c.put(f, f.lastModified(), "d1", s);
+        Assert.assertEquals(c.get(f), s);
+        Assert.assertTrue(f.setLastModified(f.lastModified() + 5000));
+        Assert.assertNull(c.get(f));
+        //Content unchanged
+        Assert.assertEquals(c.get(f, f.lastModified(), "d1"), s);
+        Assert.assertEquals(c.get(f), s);
+
+        Assert.assertTrue(c.invalidate(f));
+        Assert.assertFalse(c.invalidate(f));
+        Assert.assertNull(c.get(f));
+        Assert.assertEquals(c.size(), 0);
+    }
+
+    public void testBuilderReuseUnchangedContent() throws Exception {
+        File d = new File(System.getProperty("java.io.tmpdir"), "btrpsl-cache-" + System.nanoTime());
+        Assert.assertTrue(d.mkdirs());
+        File f = new File(d, "foo.btrp");
+        try {
+            try (Writer w = new FileWriter(f)) {
+                w.write("namespace foo;\nVM[1..5] : tiny;\n");
+            }
+            ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+            Script s = b.build(f);
+            Assert.assertEquals(b.getCache().getMisses(), 1);
+            Assert.assertSame(b.build(f), s);
+            Assert.assertTrue(f.setLastModified(f.lastModified() + 5000));
+            Assert.assertSame(b.build(f), s);
+            Assert.assertEquals(b.getCache().getHits(), 2);
+
+            try (Writer w = new FileWriter(f)) {
+                w.write("namespace foo;\nVM[1..3] : tiny;\n");
+            }
+            Assert.assertTrue(f.setLastModified(f.lastModified() + 10000));
+            Script s2 = b.build(f);
+            Assert.assertNotSame(s2, s);
+            Assert.assertEquals(s2.getVMs().size(), 3);
+        } finally {
+            Assert.assertTrue(f.delete());
+            Assert.assertTrue(d.delete());
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.cache;
+
+import btrplace.btrpsl.NamingService;
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.ScriptBuilderException;
+import btrplace.btrpsl.constraint.DefaultConstraintsCatalog;
+import btrplace.btrpsl.constraint.RootBuilder;
+import btrplace.btrpsl.element.BtrpElement;
+import btrplace.btrpsl.element.BtrpOperand;
+import btrplace.btrpsl.element.BtrpSet;
+import btrplace.btrpsl.element.IgnorableOperand;
+import btrplace.btrpsl.includes.PathBasedIncludes;
+import btrplace.btrpsl.tree.BtrPlaceTree;
+import btrplace.model.DefaultModel;
+import btrplace.model.Model;
+import btrplace.model.constraint.SatConstraint;
+import btrplace.model.constraint.Spread;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Unit tests for {@link SnapshotStore}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class SnapshotStoreTest {
+
+    private File root;
+
+    private File src;
+
+    private File snaps;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        root = new File(System.getProperty("java.io.tmpdir"), "btrpsl-snap-" + System.nanoTime());
+        src = new File(root, "src");
+        snaps = new File(root, "snaps");
+        Assert.assertTrue(src.mkdirs());
+        write("b.btrp", "namespace b;\n@N[1..4] : defaultNode;\n$ns = @N[1..4];\nexport $ns to *;\n");
+        write("a.btrp", "namespace a;\nimport b;\nVM[1..5] : tiny<volatile>;\n"
+                + "spread(VM[1..3]);\nban(VM4, $b.ns);\n$x = VM[1..2];\nexport $x to *;\n");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        delete(root);
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) {
+                delete(c);
+            }
+        }
+        Assert.assertTrue(f.delete());
+    }
+
+    private void write(String name, String content) throws IOException {
+        File f = new File(src, name);
+        try (Writer w = new FileWriter(f)) {
+            w.write(content);
+        }
+    }
+
+    private ScriptBuilder newBuilder(Model mo, SnapshotStore store) {
+        ScriptBuilder b = new ScriptBuilder(mo);
+        b.setIncludes(new PathBasedIncludes(b, src));
+        b.setSnapshotStore(store);
+        return b;
+    }
+
+    private static Set<Class> types(Script v) {
+        Set<Class> s = new HashSet<>();
+        for (SatConstraint c : v.getConstraints()) {
+            s.add(c.getClass());
+        }
+        return s;
+    }
+
+    public void testWarmStart() throws Exception {
+        SnapshotStore store = new SnapshotStore(snaps);
+        Model mo = new DefaultModel();
+        Script a = newBuilder(mo, store).build(new File(src, "a.btrp"));
+        Assert.assertEquals(store.getMisses(), 2);
+        Assert.assertEquals(snaps.listFiles().length, 2);
+
+        SnapshotStore store2 = new SnapshotStore(snaps);
+        Model mo2 = new DefaultModel();
+        Script a2 = newBuilder(mo2, store2).build(new File(src, "a.btrp"));
+        Assert.assertEquals(store2.getHits(), 2);
+        Assert.assertEquals(store2.getMisses(), 0);
+
+        Assert.assertEquals(a2.id(), "a");
+        Assert.assertEquals(a2.getVMs().size(), 5);
+        Assert.assertEquals(a2.getConstraints().size(), a.getConstraints().size());
+        Assert.assertEquals(types(a2), types(a));
+        Assert.assertEquals(a2.getDependencies().size(), 1);
+        Script b2 = a2.getDependencies().get(0);
+        Assert.assertEquals(b2.id(), "b");
+        Assert.assertEquals(b2.getNodes().size(), 4);
+        Assert.assertEquals(a2.getExported(), a.getExported());
+        //Sets of elements are compared by identifier, so only their names can be compared across models
+        Assert.assertEquals(a2.getImportable("$x", "foo").toString(), a.getImportable("$x", "foo").toString());
+        Assert.assertEquals(b2.getImportable("$ns", "a").toString(), a.getDependencies().get(0).getImportable("$ns", "a").toString());
+
+        NamingService ns = (NamingService) mo2.getView(NamingService.ID);
+        BtrpElement vm1 = ns.resolve("a.VM1");
+        Assert.assertNotNull(vm1);
+        Assert.assertTrue(a2.getVMs().contains(vm1.getElement()));
+        Assert.assertTrue(mo2.getMapping().getReadyVMs().contains(vm1.getElement()));
+        Assert.assertEquals(mo2.getAttributes().getString(vm1.getElement(), "template"), "tiny");
+        Assert.assertNotNull(ns.resolve("@N3"));
+    }
+
+    public void testExportBeforeDeclarations() throws Exception {
+        //$me grows after its export
+        write("e.btrp", "namespace e;\nexport $me to *;\nVM[1..3] : tiny;\nVM[4..5] : small;\n");
+        SnapshotStore store = new SnapshotStore(snaps);
+        Script e = newBuilder(new DefaultModel(), store).build(new File(src, "e.btrp"));
+        Assert.assertEquals(((BtrpSet) e.getImportable("$me")).size(), 5);
+
+        SnapshotStore store2 = new SnapshotStore(snaps);
+        Script e2 = newBuilder(new DefaultModel(), store2).build(new File(src, "e.btrp"));
+        Assert.assertEquals(store2.getHits(), 1);
+        Assert.assertEquals(e2.getExported(), e.getExported());
+        Assert.assertEquals(e2.getImportable("$me").toString(), e.getImportable("$me").toString());
+    }
+
+    public void testUnsupportedDiscreteRestriction() throws Exception {
+        //A catalog where 'root' supports the discrete restrictions
+        DefaultConstraintsCatalog cat = new DefaultConstraintsCatalog();
+        cat.add(new RootBuilder() {
+            @Override
+            public List<SatConstraint> buildConstraint(BtrPlaceTree t, List<BtrpOperand> args) {
+                List<SatConstraint> l = new ArrayList<>();
+                for (SatConstraint c : super.buildConstraint(t, args)) {
+                    l.add(new Spread(new HashSet<>(c.getInvolvedVMs()), false));
+                }
+                return l;
+            }
+        });
+        write("f.btrp", "namespace f;\nVM[1..3] : tiny;\n>>root(VM1);\n");
+        SnapshotStore store = new SnapshotStore(snaps);
+        ScriptBuilder b = newBuilder(new DefaultModel(), store);
+        b.setConstraintsCatalog(cat);
+        Assert.assertEquals(b.build(new File(src, "f.btrp")).getConstraints().size(), 1);
+
+        //The restored constraint is built as a full build would
+        SnapshotStore store2 = new SnapshotStore(snaps);
+        try {
+            newBuilder(new DefaultModel(), store2).build(new File(src, "f.btrp"));
+            Assert.fail("Discrete restriction is not supported by 'root'");
+        } catch (ScriptBuilderException ex) {
+            Assert.assertTrue(ex.getMessage().contains("Discrete restriction is not supported"), ex.getMessage());
+        }
+        Assert.assertEquals(store2.getHits(), 0);
+        Assert.assertEquals(store2.getMisses(), 1);
+    }
+
+    public void testOutdatedDependency() throws Exception {
+        SnapshotStore store = new SnapshotStore(snaps);
+        newBuilder(new DefaultModel(), store).build(new File(src, "a.btrp"));
+
+        write("b.btrp", "namespace b;\n@N[1..5] : defaultNode;\n$ns = @N[1..5];\nexport $ns to *;\n");
+        SnapshotStore store2 = new SnapshotStore(snaps);
+        Script a = newBuilder(new DefaultModel(), store2).build(new File(src, "a.btrp"));
+        Assert.assertEquals(store2.getHits(), 0);
+        Assert.assertEquals(store2.getMisses(), 2);
+        Assert.assertEquals(a.getDependencies().get(0).getNodes().size(), 5);
+        //The previous snapshot of 'a' is replaced
+        Assert.assertEquals(snaps.listFiles().length, 3);
+
+        SnapshotStore store3 = new SnapshotStore(snaps);
+        newBuilder(new DefaultModel(), store3).build(new File(src, "a.btrp"));
+        Assert.assertEquals(store3.getHits(), 2);
+    }
+
+    public void testCorruptedSnapshot() throws Exception {
+        SnapshotStore store = new SnapshotStore(snaps);
+        ScriptBuilder b = newBuilder(new DefaultModel(), store);
+        b.build("namespace c;\nVM[1..3] : tiny;\n");
+        File[] files = snaps.listFiles();
+        Assert.assertEquals(files.length, 1);
+        try (Writer w = new FileWriter(files[0])) {
+            w.write("foo");
+        }
+        Script c = newBuilder(new DefaultModel(), store).build("namespace c;\nVM[1..3] : tiny;\n");
+        Assert.assertEquals(c.getVMs().size(), 3);
+        Assert.assertEquals(store.getHits(), 0);
+        store.clear();
+        Assert.assertEquals(snaps.listFiles().length, 0);
+    }
+
+    public void testErroneousScript() throws Exception {
+        SnapshotStore store = new SnapshotStore(snaps);
+        ScriptBuilder b = newBuilder(new DefaultModel(), store);
+        try {
+            b.build("namespace d;\nVM[1..3] : tiny;\nspread($undefined);\nexport $undefined to *;\n");
+            Assert.fail();
+        } catch (ScriptBuilderException ex) {
+            Assert.assertFalse(ex.getErrorReporter().getErrors().isEmpty());
+        }
+        Assert.assertTrue(snaps.listFiles() == null || snaps.listFiles().length == 0);
+
+        //An incomplete log is never stored
+        EvaluationLog log = new EvaluationLog("foo");
+        log.constraint("spread", false, Arrays.<BtrpOperand>asList(IgnorableOperand.getInstance()));
+        Assert.assertFalse(log.isComplete());
+        Assert.assertEquals(log.toByteArray().length, 0);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.cache;
+
+import btrplace.btrpsl.ErrorMessage;
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.ScriptBuilderException;
+import btrplace.btrpsl.tree.SyntaxTree;
+import btrplace.model.DefaultModel;
+import btrplace.model.Model;
+import btrplace.model.VM;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+
+/**
+ * Unit tests for {@link SyntaxTreeCache}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class SyntaxTreeCacheTest {
+
+    private static final String SCRIPT = "namespace foo;\n"
+            + "VM[1..10] : tiny;\n@N[1..3] : defaultNode;\n"
+            + "for $n in @N[1..2] {\n  ban(VM[1..5], $n);\n}\n"
+            + "$x = VM[6..10];\nif (#$x > 3) {\n  ban($x, @N1);\n} else {\n  fence($x, @N2);\n}\n";
+
+    public void testLRU() {
+        SyntaxTreeCache c = new SyntaxTreeCache(2);
+        SyntaxTree t = new SyntaxTree(null, null, new ArrayList<ErrorMessage>());
+        c.put("a", t);
+        c.put("b", t);
+        Assert.assertSame(c.get("a"), t);
+        c.put("c", t);
+        Assert.assertEquals(c.size(), 2);
+        Assert.assertNull(c.get("b"));
+        Assert.assertSame(c.get("a"), t);
+        Assert.assertSame(c.get("c"), t);
+        Assert.assertEquals(c.getHits(), 3);
+        Assert.assertEquals(c.getMisses(), 1);
+        c.clear();
+        Assert.assertEquals(c.size(), 0);
+    }
+
+    public void testReuseAmongModels() throws ScriptBuilderException {
+        SyntaxTreeCache c = new SyntaxTreeCache(10);
+        Model m1 = new DefaultModel();
+        ScriptBuilder b1 = new ScriptBuilder(m1);
+        b1.setSyntaxTreeCache(c);
+        Script s1 = b1.build(SCRIPT);
+        Assert.assertEquals(c.getMisses(), 1);
+        Assert.assertEquals(c.getHits(), 0);
+
+        Model m2 = new DefaultModel();
+        ScriptBuilder b2 = new ScriptBuilder(m2);
+        b2.setSyntaxTreeCache(c);
+        Script s2 = b2.build(SCRIPT);
+        Assert.assertEquals(c.getHits(), 1);
+        Assert.assertEquals(c.size(), 1);
+
+        Assert.assertEquals(s2.getVMs().size(), s1.getVMs().size());
+        Assert.assertEquals(s2.getNodes().size(), s1.getNodes().size());
+        Assert.assertEquals(s2.getConstraints().size(), s1.getConstraints().size());
+        Assert.assertEquals(s2.getConstraints().size(), 15);
+        for (VM v : s2.getVMs()) {
+            Assert.assertNotNull(b2.getNamingService().resolve(v));
+            Assert.assertNull(b1.getNamingService().resolve(v));
+            Assert.assertEquals(m2.getAttributes().getString(v, "template"), "tiny");
+        }
+    }
+
+    public void testParseErrorsAreKept() {
+        SyntaxTreeCache c = new SyntaxTreeCache(10);
+        String bad = "namespace foo;\nVM[1..5] : tiny;\nspread(VM[1..5];\n";
+        for (int i = 0; i < 2; i++) {
+            ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+            b.setSyntaxTreeCache(c);
+            try {
+                b.build(bad);
+                Assert.fail("The parse error must be reported, build " + i);
+            } catch (ScriptBuilderException ex) {
+                Assert.assertFalse(ex.getErrorReporter().getErrors().isEmpty());
+            }
+        }
+        Assert.assertEquals(c.getHits(), 1);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.constraint;
+
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.includes.BasicIncludes;
+import btrplace.model.DefaultModel;
+import btrplace.model.Model;
+import btrplace.model.Node;
+import btrplace.model.VM;
+import btrplace.model.constraint.*;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * Unit tests for {@link ConstraintsMerger}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class ConstraintsMergerTest {
+
+    public void testScripts() throws Exception {
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        Script nodes = b.build("namespace infra;\n@N[1..6] : defaultNode;\n");
+        Script s1 = b.build("namespace t1;\nVM[1..3] : tiny;\nrunning($me);\n"
+                + "ban(VM[1..2], @N[1..2]);\nfence(VM1, @N[3..6]);\nrunningCapacity(@N[1..3], 5);\n"
+                + "$all = VM[1..3];\n$first = VM1;\nexport $all, $first to *;\n");
+        Script s2 = b.build("namespace t2;\nVM[1..2] : tiny;\nrunning($me);\nrunning($me);\n"
+                + "ban(VM[1..2], @N[2..3]);\nrunningCapacity(@N[1..4], 3);\n");
+        BasicIncludes incs = new BasicIncludes();
+        incs.add(s1);
+        b.setIncludes(incs);
+        Script s3 = b.build("namespace t1.x;\nimport t1;\n"
+                + "ban($t1.all, @N[2..3]);\nfence($t1.first, @N[4..6]);\nrunningCapacity(@N[1..3], 5);\n");
+        int nb = 0;
+        for (Script s : Arrays.asList(nodes, s1, s2, s3)) {
+            nb += s.getConstraints().size();
+        }
+        MergeReport r = new ConstraintsMerger().merge(Arrays.asList(nodes, s1, s2, s3));
+        Assert.assertEquals(r.getNbRemoved(), nb - r.getConstraints().size());
+        Set<SatConstraint> res = new HashSet<>(r.getConstraints());
+        Assert.assertEquals(res.size(), r.getConstraints().size());
+
+        VM t1vm1 = (VM) b.getNamingService().resolve("t1.VM1").getElement();
+        List<Node> ns = new ArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            ns.add((Node) b.getNamingService().resolve("@N" + i).getElement());
+        }
+        //One ban per VM, with the union of the nodes
+        int nbBans = 0;
+        for (SatConstraint c : r.getConstraints()) {
+            if (c instanceof Ban) {
+                nbBans++;
+                if (c.getInvolvedVMs().contains(t1vm1)) {
+                    Assert.assertEquals(new HashSet<>(c.getInvolvedNodes()), new HashSet<>(ns.subList(0, 3)));
+                }
+            }
+        }
+        Assert.assertEquals(nbBans, 5);
+        //The fences are intersected
+        Assert.assertTrue(res.contains(new Fence(t1vm1, new HashSet<>(ns.subList(3, 6)))));
+        //The capacity on @N[1..4] implies the others
+        int nbCaps = 0;
+        for (SatConstraint c : r.getConstraints()) {
+            if (c instanceof RunningCapacity) {
+                nbCaps++;
+                Assert.assertEquals(((RunningCapacity) c).getAmount(), 3);
+            }
+        }
+        Assert.assertEquals(nbCaps, 1);
+        //One running constraint per VM
+        int nbRunnings = 0;
+        for (SatConstraint c : r.getConstraints()) {
+            if (c instanceof Running) {
+                nbRunnings++;
+            }
+        }
+        Assert.assertEquals(nbRunnings, 5);
+        Assert.assertFalse(r.getMerges().isEmpty());
+        Assert.assertTrue(r.toString().startsWith(nb + " constraint(s) reduced to " + r.getConstraints().size()), r.toString());
+    }
+
+    public void testMerges() {
+        Model mo = new DefaultModel();
+        VM v = mo.newVM();
+        List<Node> ns = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ns.add(mo.newNode());
+        }
+        Ban b1 = new Ban(v, ns.subList(0, 2));
+        Ban b2 = new Ban(v, ns.subList(1, 3));
+        Running r1 = new Running(v);
+        Fence f1 = new Fence(v, ns.subList(0, 3));
+        Fence f2 = new Fence(v, ns.subList(3, 5));
+        ResourceCapacity c1 = new ResourceCapacity(new HashSet<>(ns.subList(0, 2)), "cpu", 10);
+        ResourceCapacity c2 = new ResourceCapacity(new HashSet<>(ns.subList(0, 3)), "cpu", 8, true);
+        ResourceCapacity c3 = new ResourceCapacity(new HashSet<>(ns.subList(0, 2)), "mem", 4);
+        ResourceCapacity c4 = new ResourceCapacity(new HashSet<>(ns.subList(0, 2)), "cpu", 6, true);
+        List<SatConstraint> in = Arrays.<SatConstraint>asList(b1, r1, b2, new Running(v), f1, f2, c1, c2, c3, c4);
+        MergeReport r = new ConstraintsMerger().mergeConstraints(in);
+        Assert.assertEquals(r.getConstraints().size(), 7, r.toString());
+        Assert.assertEquals(r.getConstraints().get(0), new Ban(v, ns.subList(0, 3)));
+        Assert.assertEquals(r.getConstraints().get(1), r1);
+        //No node in common, the fences are kept
+        Assert.assertEquals(r.getConstraints().get(2), f1);
+        Assert.assertEquals(r.getConstraints().get(3), f2);
+        //c1 is implied by c2. The continuous c4 is not implied by the continuous c2
+        Assert.assertEquals(r.getConstraints().subList(4, 7), Arrays.asList(c2, c3, c4));
+        Assert.assertEquals(r.getNbRemoved(), 3);
+
+        Assert.assertEquals(r.getMerges().size(), 3);
+        MergeReport.Merge m = r.getMerges().get(0);
+        Assert.assertEquals(m.getKind(), MergeReport.Kind.union);
+        Assert.assertEquals(m.getSources(), Arrays.asList(b1, b2));
+        Assert.assertEquals(r.getMerges().get(1).getKind(), MergeReport.Kind.duplicate);
+        Assert.assertEquals(r.getMerges().get(2).getKind(), MergeReport.Kind.subsumption);
+        Assert.assertEquals(r.getMerges().get(2).getSources(), Arrays.asList(c2, c1));
+        Assert.assertSame(r.getMerges().get(2).getResult(), c2);
+    }
+
+    public void testContinuity() {
+        Model mo = new DefaultModel();
+        VM v = mo.newVM();
+        Node n1 = mo.newNode();
+        Node n2 = mo.newNode();
+        RunningCapacity c1 = new RunningCapacity(new HashSet<>(Arrays.asList(n1, n2)), 2);
+        RunningCapacity c2 = new RunningCapacity(new HashSet<>(Arrays.asList(n1, n2)), 2, true);
+        Fence f1 = new Fence(v, Arrays.asList(n1, n2));
+        Fence f2 = new Fence(v, Arrays.asList(n2));
+        MergeReport r = new ConstraintsMerger().mergeConstraints(Arrays.<SatConstraint>asList(c1, c2, f1, f2));
+        //The continuous capacity implies the discrete one
+        Assert.assertEquals(r.getConstraints(), Arrays.<SatConstraint>asList(c2, new Fence(v, Arrays.asList(n2))));
+        Assert.assertEquals(r.getMerges().get(1).getKind(), MergeReport.Kind.intersection);
+    }
+}
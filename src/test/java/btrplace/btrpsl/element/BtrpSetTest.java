@@ -19,9 +19,13 @@ package btrplace.btrpsl.element;
 
 import btrplace.model.DefaultModel;
 import btrplace.model.Model;
+import btrplace.model.Node;
+import btrplace.model.VM;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+
 /**
  * Unit tests for {@link BtrpSet}
  *
@@ -54,7 +58,78 @@ public class BtrpSetTest {
         BtrpSet res = s.power(new BtrpNumber(2, BtrpNumber.Base.base10));
         Assert.assertEquals(res.degree(), 2);
         Assert.assertEquals(res.type(), BtrpOperand.Type.number);
-        Assert.assertEquals(res.size(), 2);
+        //{2,3} == {3,2}
+        Assert.assertEquals(res.size(), 1);
+    }
+
+    private static BtrpSet numbers(int from, int to) {
+        BtrpSet s = new BtrpSet(1, BtrpOperand.Type.number);
+        for (int i = from; i <= to; i++) {
+            s.getValues().add(new BtrpNumber(i, BtrpNumber.Base.base10));
+        }
+        return s;
+    }
+
+    public void testCombinations() {
+        BtrpSet s = numbers(1, 5);
+        BtrpSet res = s.power(new BtrpNumber(3, BtrpNumber.Base.base10));
+        Assert.assertEquals(res.degree(), 2);
+        Assert.assertEquals(res.size(), 10);
+        Assert.assertEquals(res.toString(), "{{1, 2, 3}, {1, 2, 4}, {1, 2, 5}, {1, 3, 4}, {1, 3, 5}, {1, 4, 5}, "
+                + "{2, 3, 4}, {2, 3, 5}, {2, 4, 5}, {3, 4, 5}}");
+        //Random access is consistent with the iteration
+        int i = 0;
+        for (BtrpOperand o : res.getValues()) {
+            Assert.assertEquals(res.getValues().get(i++), o);
+        }
+        Assert.assertEquals(s.power(new BtrpNumber(1, BtrpNumber.Base.base10)).size(), 5);
+        Assert.assertEquals(s.power(new BtrpNumber(5, BtrpNumber.Base.base10)).size(), 1);
+        Assert.assertEquals(s.power(new BtrpNumber(6, BtrpNumber.Base.base10)).size(), 0);
+
+        //Self product
+        res = s.times(s);
+        Assert.assertEquals(res.size(), 10);
+        Assert.assertEquals(res, s.power(new BtrpNumber(2, BtrpNumber.Base.base10)));
+
+        //Not expanded
+        BtrpSet big = numbers(1, 2000);
+        res = big.power(new BtrpNumber(3, BtrpNumber.Base.base10));
+        Assert.assertEquals(res.size(), 1331334000);
+        Assert.assertEquals(res.getValues().get(res.size() - 1).toString(), "{1998, 1999, 2000}");
+    }
+
+    @Test(expectedExceptions = {UnsupportedOperationException.class})
+    public void testTooManyCombinations() {
+        numbers(1, 2000).power(new BtrpNumber(4, BtrpNumber.Base.base10));
+    }
+
+    public void testProduct() {
+        //Common operands: 3, 4
+        BtrpSet a = numbers(1, 4);
+        BtrpSet b = numbers(3, 6);
+        BtrpSet res = a.times(b);
+        //16 pairs, minus {3,3}, {4,4} and {4,3} == {3,4}
+        Assert.assertEquals(res.size(), 13);
+        Assert.assertEquals(res.toString(), "{{1, 3}, {1, 4}, {1, 5}, {1, 6}, {2, 3}, {2, 4}, {2, 5}, {2, 6}, "
+                + "{3, 4}, {3, 5}, {3, 6}, {4, 5}, {4, 6}}");
+        int i = 0;
+        for (BtrpOperand o : res.getValues()) {
+            Assert.assertEquals(res.getValues().get(i++), o);
+        }
+        Assert.assertEquals(i, 13);
+
+        //Same operands, but distinct sets
+        Assert.assertEquals(a.times(numbers(1, 4)), a.power(new BtrpNumber(2, BtrpNumber.Base.base10)));
+        //Left operands that make no pair
+        res = numbers(1, 2).times(numbers(1, 2));
+        Assert.assertEquals(res.size(), 1);
+        Assert.assertEquals(res.getValues().get(0).toString(), "{1, 2}");
+
+        //The product is copied on modification
+        res = a.times(b);
+        res.getValues().remove(0);
+        Assert.assertEquals(res.size(), 12);
+        Assert.assertEquals(res.getValues().get(0).toString(), "{1, 4}");
     }
 
     @Test(expectedExceptions = {UnsupportedOperationException.class})
@@ -333,5 +408,105 @@ public class BtrpSetTest {
         Assert.assertEquals(s, s2);
         s.getValues().add(new BtrpNumber(12, BtrpNumber.Base.base10));
         Assert.assertNotEquals(s, s2);
+        Assert.assertEquals(s2.size(), 6);
+        //The copy of a copy is also isolated
+        BtrpSet s3 = s2.clone();
+        s3.getValues().remove(0);
+        Assert.assertEquals(s2.size(), 6);
+        Assert.assertEquals(s3.size(), 5);
+    }
+
+    private static BtrpSet vms(Model mo, BtrpElement[] all, int... idx) {
+        BtrpSet s = new BtrpSet(1, BtrpOperand.Type.VM);
+        for (int i : idx) {
+            s.getValues().add(all[i]);
+        }
+        return s;
+    }
+
+    public void testIndexedOperations() {
+        Model mo = new DefaultModel();
+        BtrpElement[] all = new BtrpElement[6];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = new BtrpElement(BtrpOperand.Type.VM, "VM" + i, mo.newVM());
+        }
+        BtrpSet a = vms(mo, all, 3, 0, 1);
+        BtrpSet b = vms(mo, all, 1, 5, 2);
+
+        BtrpSet u = a.plus(b);
+        Assert.assertEquals(u.size(), 5);
+        Assert.assertTrue(u.contains(all[5]));
+        Assert.assertFalse(u.contains(all[4]));
+        Assert.assertEquals(u.toString(), "{VM3, VM0, VM1, VM5, VM2}");
+
+        BtrpSet d = u.minus(vms(mo, all, 0, 5));
+        Assert.assertEquals(d.size(), 3);
+        Assert.assertEquals(d.getValues(), Arrays.asList(all[3], all[1], all[2]));
+        Assert.assertEquals(d, vms(mo, all, 1, 2, 3));
+        Assert.assertEquals(d.hashCode(), vms(mo, all, 1, 2, 3).hashCode());
+        Assert.assertNotEquals(d, vms(mo, all, 1, 2));
+
+        //Late insertions are indexed
+        d.getValues().add(all[4]);
+        Assert.assertTrue(d.contains(all[4]));
+        Assert.assertEquals(d.size(), 4);
+        d.getValues().remove(all[4]);
+        Assert.assertFalse(d.contains(all[4]));
+
+        //A lazy set is not altered by a later modification of its operands
+        BtrpSet m = a.minus(vms(mo, all, 0));
+        a.getValues().add(all[4]);
+        Assert.assertEquals(m.getValues(), Arrays.asList(all[3], all[1]));
+    }
+
+    public void testIndexedEquality() {
+        BtrpSet vms = new BtrpSet(1, BtrpOperand.Type.VM);
+        vms.getValues().add(new BtrpElement(BtrpOperand.Type.VM, "VM1", new VM(1)));
+        BtrpSet nodes = new BtrpSet(1, BtrpOperand.Type.node);
+        nodes.getValues().add(new BtrpElement(BtrpOperand.Type.node, "@N1", new Node(1)));
+        //Same identifiers but not the same type
+        Assert.assertNotEquals(vms, nodes);
+        Assert.assertNotEquals(nodes, vms);
+
+        //A set that is no longer indexed hashes like an indexed one
+        BtrpSet a = new BtrpSet(1, BtrpOperand.Type.VM);
+        BtrpSet b = new BtrpSet(1, BtrpOperand.Type.VM);
+        BtrpElement unbound = new BtrpElement(BtrpOperand.Type.VM, "VM0", null);
+        b.getValues().add(unbound);
+        for (int i = 1; i <= 3; i++) {
+            a.getValues().add(new BtrpElement(BtrpOperand.Type.VM, "VM" + i, new VM(i)));
+            b.getValues().add(new BtrpElement(BtrpOperand.Type.VM, "VM" + (4 - i), new VM(4 - i)));
+        }
+        b.getValues().remove(unbound);
+        Assert.assertEquals(a, b);
+        Assert.assertEquals(b, a);
+        Assert.assertEquals(a.hashCode(), b.hashCode());
+    }
+
+    public void testIncrementalIndex() {
+        Model mo = new DefaultModel();
+        BtrpElement[] all = new BtrpElement[6];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = new BtrpElement(BtrpOperand.Type.VM, "VM" + i, mo.newVM());
+        }
+        BtrpSet s = vms(mo, all, 0, 1, 2, 3, 1);
+        //VM1 is still there after removing one of its copies
+        s.getValues().remove(1);
+        Assert.assertTrue(s.contains(all[1]));
+        s.getValues().remove(all[1]);
+        Assert.assertFalse(s.contains(all[1]));
+        s.getValues().set(0, all[5]);
+        Assert.assertFalse(s.contains(all[0]));
+        Assert.assertTrue(s.contains(all[5]));
+        s.getValues().retainAll(Arrays.asList(all[2], all[5]));
+        Assert.assertEquals(s.size(), 2);
+        Assert.assertEquals(s, vms(mo, all, 2, 5));
+        Assert.assertFalse(s.contains(all[3]));
+
+        //The sources of a lazy set may stop being indexed
+        BtrpSet a = vms(mo, all, 0, 1);
+        BtrpSet u = a.plus(vms(mo, all, 2));
+        a.getValues().add(new BtrpElement(BtrpOperand.Type.VM, "VMx", null));
+        Assert.assertEquals(u.getValues(), Arrays.asList(all[0], all[1], all[2]));
     }
 }
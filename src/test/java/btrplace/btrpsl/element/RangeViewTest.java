@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.element;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link RangeView}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class RangeViewTest {
+
+    public void testLabels() {
+        RangeView r = new RangeView("srv-", 8, 17, BtrpNumber.Base.base10, ".net");
+        Assert.assertEquals(r.size(), 10);
+        Assert.assertEquals(r.label(0), "srv-8.net");
+        Assert.assertEquals(r.get(9).toString(), "srv-17.net");
+
+        RangeView h = new RangeView("", 10, 16, BtrpNumber.Base.base16, "");
+        Assert.assertEquals(h.label(0), new BtrpNumber(10, BtrpNumber.Base.base16).toString());
+        RangeView o = new RangeView("", -2, 9, BtrpNumber.Base.base8, "");
+        Assert.assertEquals(o.label(0), new BtrpNumber(-2, BtrpNumber.Base.base8).toString());
+        Assert.assertEquals(o.label(11), "11");
+
+        RangeView c = r.subList(2, 4).compose("foo.", "!");
+        Assert.assertEquals(c.size(), 2);
+        Assert.assertEquals(c.label(0), "foo.srv-10.net!");
+        Assert.assertEquals(c.label(1), "foo.srv-11.net!");
+    }
+
+    @Test(expectedExceptions = {IndexOutOfBoundsException.class})
+    public void testOutOfBounds() {
+        new RangeView("", 1, 5, BtrpNumber.Base.base10, "").label(5);
+    }
+
+    public void testLazySet() {
+        RangeView r = new RangeView("", 1, 1000000, BtrpNumber.Base.base10, "");
+        BtrpSet s = new BtrpSet(1, BtrpOperand.Type.string, r);
+        Assert.assertEquals(s.size(), 1000000);
+        Assert.assertSame(s.getRange(), r);
+
+        BtrpSet parts = s.remainder(new BtrpNumber(300000, BtrpNumber.Base.base10));
+        Assert.assertEquals(parts.size(), 4);
+        Assert.assertEquals(((BtrpSet) parts.getValues().get(3)).size(), 100000);
+        Assert.assertEquals(((BtrpSet) parts.getValues().get(3)).getValues().get(0).toString(), "900001");
+
+        parts = s.div(new BtrpNumber(3, BtrpNumber.Base.base10));
+        Assert.assertEquals(parts.size(), 3);
+        Assert.assertEquals(((BtrpSet) parts.getValues().get(0)).size(), 333334);
+        Assert.assertEquals(((BtrpSet) parts.getValues().get(2)).size(), 333332);
+
+        //Copy on write
+        BtrpSet small = new BtrpSet(1, BtrpOperand.Type.string, r.subList(0, 2));
+        small.getValues().add(new BtrpString("foo"));
+        Assert.assertNull(small.getRange());
+        Assert.assertEquals(small.toString(), "{1, 2, foo}");
+        Assert.assertEquals(r.size(), 1000000);
+    }
+}
@@ -0,0 +1,522 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.generator;
+
+import btrplace.btrpsl.InMemoryNamingService;
+import btrplace.btrpsl.NamingServiceException;
+import btrplace.btrpsl.Script;
+import btrplace.model.DefaultModel;
+import btrplace.model.Model;
+import btrplace.model.Node;
+import btrplace.model.VM;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Generate the scripts describing a synthetic datacenter, and a model that matches them.
+ * <p/>
+ * The datacenter is made of clusters of racks of nodes. Each cluster is described
+ * by a script in the {@code datacenter} namespace that declares its nodes and exports
+ * them, along with its racks, to everyone. Each tenant is described by a script in the
+ * {@code clients} namespace that imports the cluster hosting it, then some other tenants.
+ * The VMs of a tenant are split into tiers. A constraint picked from a given mix is stated
+ * on each tier, and each import of a tenant is used by a {@code split} constraint.
+ * <p/>
+ * The generation is deterministic for a given seed.
+ *
+ * @author Fabien Hermenier
+ */
+public class DatacenterGenerator {
+
+    /**
+     * The namespace of the clusters.
+     */
+    public static final String DATACENTER = "datacenter";
+
+    /**
+     * The namespace of the tenants.
+     */
+    public static final String CLIENTS = "clients";
+
+    /**
+     * The template used to declare the nodes.
+     */
+    public static final String NODE_TEMPLATE = "defaultNode";
+
+    /**
+     * The template used to declare the VMs.
+     */
+    public static final String VM_TEMPLATE = "tiny";
+
+    /**
+     * The constraints that can be stated on the tiers.
+     */
+    public static final List<String> CONSTRAINTS = Collections.unmodifiableList(Arrays.asList(
+            "spread", "among", "splitAmong", "ban", "fence", "gather", "lonely", "root", "split"));
+
+    private int nbClusters = 2;
+
+    private int nbRacks = 4;
+
+    private int nbNodes = 10;
+
+    private int nbTenants = 10;
+
+    private int nbVMs = 30;
+
+    private int nbTiers = 3;
+
+    private int width = 100;
+
+    private int fanOut = 2;
+
+    private List<String> mix = CONSTRAINTS;
+
+    private long seed;
+
+    /**
+     * Make a new generator for a small datacenter.
+     */
+    public DatacenterGenerator() {
+    }
+
+    /**
+     * Get the number of clusters.
+     *
+     * @return a positive integer
+     */
+    public int getNbClusters() {
+        return nbClusters;
+    }
+
+    /**
+     * Set the number of clusters.
+     *
+     * @param nb a positive integer
+     */
+    public void setNbClusters(int nb) {
+        nbClusters = positive(nb, "clusters");
+    }
+
+    /**
+     * Get the number of racks per cluster.
+     *
+     * @return a positive integer
+     */
+    public int getNbRacks() {
+        return nbRacks;
+    }
+
+    /**
+     * Set the number of racks per cluster.
+     *
+     * @param nb a positive integer
+     */
+    public void setNbRacks(int nb) {
+        nbRacks = positive(nb, "racks");
+    }
+
+    /**
+     * Get the number of nodes per rack.
+     *
+     * @return a positive integer
+     */
+    public int getNbNodes() {
+        return nbNodes;
+    }
+
+    /**
+     * Set the number of nodes per rack.
+     *
+     * @param nb a positive integer
+     */
+    public void setNbNodes(int nb) {
+        nbNodes = positive(nb, "nodes");
+    }
+
+    /**
+     * Get the number of tenants.
+     *
+     * @return a positive integer
+     */
+    public int getNbTenants() {
+        return nbTenants;
+    }
+
+    /**
+     * Set the number of tenants.
+     *
+     * @param nb a positive integer
+     */
+    public void setNbTenants(int nb) {
+        nbTenants = positive(nb, "tenants");
+    }
+
+    /**
+     * Get the number of VMs per tenant.
+     *
+     * @return a positive integer
+     */
+    public int getNbVMs() {
+        return nbVMs;
+    }
+
+    /**
+     * Set the number of VMs per tenant.
+     * There must be at least one VM per tier.
+     *
+     * @param nb a positive integer
+     */
+    public void setNbVMs(int nb) {
+        nbVMs = positive(nb, "VMs");
+    }
+
+    /**
+     * Get the number of tiers per tenant.
+     *
+     * @return a positive integer
+     */
+    public int getNbTiers() {
+        return nbTiers;
+    }
+
+    /**
+     * Set the number of tiers per tenant.
+     *
+     * @param nb a positive integer
+     */
+    public void setNbTiers(int nb) {
+        nbTiers = positive(nb, "tiers");
+    }
+
+    /**
+     * Get the maximum number of elements declared by a single enumeration.
+     *
+     * @return a positive integer
+     */
+    public int getEnumerationWidth() {
+        return width;
+    }
+
+    /**
+     * Set the maximum number of elements declared by a single enumeration.
+     * Larger sets of elements are declared using several enumerations.
+     *
+     * @param w a positive integer
+     */
+    public void setEnumerationWidth(int w) {
+        width = positive(w, "elements per enumeration");
+    }
+
+    /**
+     * Get the number of tenants imported by each tenant.
+     *
+     * @return a positive integer or 0
+     */
+    public int getImportFanOut() {
+        return fanOut;
+    }
+
+    /**
+     * Set the number of tenants imported by each tenant.
+     * A tenant only imports the tenants declared before it, so there is no cyclic import.
+     *
+     * @param nb a positive integer or 0
+     */
+    public void setImportFanOut(int nb) {
+        if (nb < 0) {
+            throw new IllegalArgumentException("The import fan-out must be positive");
+        }
+        fanOut = nb;
+    }
+
+    /**
+     * Get the constraints that can be stated on the tiers.
+     *
+     * @return a list of constraint identifiers
+     */
+    public List<String> getConstraintMix() {
+        return mix;
+    }
+
+    /**
+     * Set the constraints that can be stated on the tiers.
+     * Each tier is constrained by a constraint uniformly chosen among the list,
+     * so a constraint can be repeated to be chosen more often.
+     *
+     * @param l a non-empty list of identifiers, among {@link #CONSTRAINTS}
+     */
+    public void setConstraintMix(List<String> l) {
+        if (l.isEmpty()) {
+            throw new IllegalArgumentException("The constraint mix cannot be empty");
+        }
+        for (String c : l) {
+            if (!CONSTRAINTS.contains(c)) {
+                throw new IllegalArgumentException("Unsupported constraint '" + c + "'. Expecting one of " + CONSTRAINTS);
+            }
+        }
+        mix = new ArrayList<>(l);
+    }
+
+    /**
+     * Get the seed of the random generator.
+     *
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Set the seed of the random generator.
+     *
+     * @param s the seed
+     */
+    public void setSeed(long s) {
+        seed = s;
+    }
+
+    /**
+     * Get the total number of nodes.
+     *
+     * @return a positive integer
+     */
+    public int getTotalNodes() {
+        return nbClusters * nbRacks * nbNodes;
+    }
+
+    /**
+     * Get the total number of VMs.
+     *
+     * @return a positive integer
+     */
+    public int getTotalVMs() {
+        return nbTenants * nbVMs;
+    }
+
+    /**
+     * Get the identifier of the script describing a cluster.
+     *
+     * @param c the cluster number, starting at 1
+     * @return the identifier
+     */
+    public static String cluster(int c) {
+        return DATACENTER + ".c" + c;
+    }
+
+    /**
+     * Get the identifier of the script describing a tenant.
+     *
+     * @param t the tenant number, starting at 1
+     * @return the identifier
+     */
+    public static String tenant(int t) {
+        return CLIENTS + ".t" + t;
+    }
+
+    /**
+     * Get the cluster that is hosting a tenant.
+     *
+     * @param t the tenant number, starting at 1
+     * @return the cluster number, starting at 1
+     */
+    public int clusterOf(int t) {
+        return (t - 1) % nbClusters + 1;
+    }
+
+    /**
+     * Generate the scripts.
+     *
+     * @return the source of each script, indexed by the script identifier.
+     * The clusters come first, then the tenants
+     */
+    public Map<String, String> generate() {
+        if (nbTiers > nbVMs) {
+            throw new IllegalArgumentException("Cannot split " + nbVMs + " VMs into " + nbTiers + " tiers");
+        }
+        Random rnd = new Random(seed);
+        Map<String, String> scripts = new LinkedHashMap<>();
+        for (int c = 1; c <= nbClusters; c++) {
+            scripts.put(cluster(c), makeCluster(c));
+        }
+        for (int t = 1; t <= nbTenants; t++) {
+            scripts.put(tenant(t), makeTenant(t, rnd));
+        }
+        return scripts;
+    }
+
+    /**
+     * Generate the scripts then write them in a directory.
+     * A script identified by {@code a.b} is written in {@code a/b.btrp}.
+     *
+     * @param root the directory to write the scripts into. Created if needed
+     * @return the written files, the clusters coming first
+     * @throws IOException if an error occurred while writing a script
+     */
+    public List<File> write(File root) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (Map.Entry<String, String> e : generate().entrySet()) {
+            File f = new File(root, e.getKey().replace('.', File.separatorChar) + Script.EXTENSION);
+            File dir = f.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create '" + dir + "'");
+            }
+            Files.write(f.toPath(), e.getValue().getBytes(StandardCharsets.UTF_8));
+            files.add(f);
+        }
+        return files;
+    }
+
+    /**
+     * Make a model that contains all the elements declared by the scripts.
+     * The nodes are online and the VMs are ready. The elements are registered
+     * in an {@link InMemoryNamingService} attached to the model, so the builder
+     * resolves the declared elements instead of creating new ones.
+     *
+     * @return the model
+     */
+    public Model makeModel() {
+        Model mo = new DefaultModel();
+        InMemoryNamingService ns = new InMemoryNamingService();
+        try {
+            int perCluster = nbRacks * nbNodes;
+            for (int c = 1; c <= nbClusters; c++) {
+                for (int n = 1; n <= perCluster; n++) {
+                    Node node = mo.newNode();
+                    mo.getMapping().addOnlineNode(node);
+                    ns.register(nodePrefix(c) + n, node);
+                }
+            }
+            for (int t = 1; t <= nbTenants; t++) {
+                String prefix = tenant(t) + ".VM";
+                for (int v = 1; v <= nbVMs; v++) {
+                    VM vm = mo.newVM();
+                    mo.getMapping().addReadyVM(vm);
+                    ns.register(prefix + v, vm);
+                }
+            }
+        } catch (NamingServiceException ex) {
+            //The generated names are unique
+            throw new IllegalStateException(ex);
+        }
+        mo.attach(ns);
+        return mo;
+    }
+
+    private static String nodePrefix(int c) {
+        return "@c" + c + "-";
+    }
+
+    private String makeCluster(int c) {
+        StringBuilder b = new StringBuilder();
+        int nb = nbRacks * nbNodes;
+        b.append("namespace ").append(cluster(c)).append(";\n\n");
+        declare(b, nodePrefix(c), nb, NODE_TEMPLATE);
+        b.append("\n$nodes = ").append(nodePrefix(c)).append("[1..").append(nb).append("];\n");
+        b.append("$R[1..").append(nbRacks).append("] = $nodes % ").append(nbNodes).append(";\n");
+        b.append("\nexport $nodes, $R[1..").append(nbRacks).append("] to *;\n");
+        return b.toString();
+    }
+
+    private String makeTenant(int t, Random rnd) {
+        StringBuilder b = new StringBuilder();
+        String dc = "$" + cluster(clusterOf(t));
+        b.append("namespace ").append(tenant(t)).append(";\n\n");
+        b.append("import ").append(cluster(clusterOf(t))).append(";\n");
+        List<Integer> imports = pickImports(t, rnd);
+        for (int i : imports) {
+            b.append("import ").append(tenant(i)).append(";\n");
+        }
+        b.append('\n');
+        declare(b, "VM", nbVMs, VM_TEMPLATE);
+        b.append("\n$T[1..").append(nbTiers).append("] = VM[1..").append(nbVMs).append("] / ").append(nbTiers).append(";\n");
+        for (int k = 1; k <= nbTiers; k++) {
+            constrain(b, k, dc, rnd);
+        }
+        for (int i : imports) {
+            b.append("split({$T1, $").append(tenant(i)).append(".T1});\n");
+        }
+        b.append("\nexport $T[1..").append(nbTiers).append("] to ").append(CLIENTS).append(".*;\n");
+        return b.toString();
+    }
+
+    private List<Integer> pickImports(int t, Random rnd) {
+        int nb = Math.min(fanOut, t - 1);
+        Set<Integer> picked = new LinkedHashSet<>();
+        while (picked.size() < nb) {
+            picked.add(rnd.nextInt(t - 1) + 1);
+        }
+        return new ArrayList<>(picked);
+    }
+
+    /**
+     * Declare elements by enumerations that are not wider than the expected width.
+     */
+    private void declare(StringBuilder b, String prefix, int nb, String tpl) {
+        for (int from = 1; from <= nb; from += width) {
+            int to = Math.min(nb, from + width - 1);
+            b.append(prefix).append('[').append(from).append("..").append(to).append("] : ").append(tpl).append(";\n");
+        }
+    }
+
+    private void constrain(StringBuilder b, int k, String dc, Random rnd) {
+        String c = mix.get(rnd.nextInt(mix.size()));
+        String tier = "$T" + k;
+        //The constraints that involve two tiers fall back to 'spread' when there is a single tier
+        String other = "$T" + (k % nbTiers + 1);
+        String rack = dc + ".R" + (rnd.nextInt(nbRacks) + 1);
+        switch (c) {
+            case "among":
+                b.append("among(").append(tier).append(", ").append(dc).append(".R[1..").append(nbRacks).append("]);\n");
+                break;
+            case "splitAmong":
+                if (nbTiers == 1) {
+                    b.append("spread(").append(tier).append(");\n");
+                } else {
+                    b.append("splitAmong({").append(tier).append(", ").append(other).append("}, ")
+                            .append(dc).append(".R[1..").append(nbRacks).append("]);\n");
+                }
+                break;
+            case "ban":
+            case "fence":
+                b.append(c).append('(').append(tier).append(", ").append(rack).append(");\n");
+                break;
+            case "split":
+                if (nbTiers == 1) {
+                    b.append("spread(").append(tier).append(");\n");
+                } else {
+                    b.append("split({").append(tier).append(", ").append(other).append("});\n");
+                }
+                break;
+            default:
+                //spread, gather, lonely, root
+                b.append(c).append('(').append(tier).append(");\n");
+        }
+    }
+
+    private static int positive(int nb, String what) {
+        if (nb <= 0) {
+            throw new IllegalArgumentException("The number of " + what + " must be strictly positive");
+        }
+        return nb;
+    }
+}
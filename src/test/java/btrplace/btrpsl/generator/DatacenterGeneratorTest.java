@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.generator;
+
+import btrplace.btrpsl.BuildResult;
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.includes.PathBasedIncludes;
+import btrplace.model.Model;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link DatacenterGenerator}.
+ * <p/>
+ * {@link #testStress()} builds a datacenter which size is a ratio, given by the
+ * {@code btrpsl.stress.scale} system property, of a datacenter having 100k nodes,
+ * 1M VMs, and 2000 tenants. By default, the ratio is {@code 0.005}. The test is in the
+ * {@code stress} group, that is only run with the {@code stress} profile.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class DatacenterGeneratorTest {
+
+    private static BuildResult build(DatacenterGenerator g, Model mo, File root) throws IOException {
+        List<File> files = g.write(root);
+        ScriptBuilder b = new ScriptBuilder(mo);
+        b.setIncludes(new PathBasedIncludes(b, root));
+        return b.buildAll(files);
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) {
+                delete(c);
+            }
+        }
+        Assert.assertTrue(f.delete());
+    }
+
+    public void testDeterminism() {
+        DatacenterGenerator g = new DatacenterGenerator();
+        g.setSeed(17);
+        Map<String, String> s1 = g.generate();
+        Assert.assertEquals(s1.size(), g.getNbClusters() + g.getNbTenants());
+        Assert.assertEquals(g.generate(), s1);
+        g.setSeed(18);
+        Assert.assertNotEquals(g.generate(), s1);
+    }
+
+    public void testEnumerationWidth() {
+        DatacenterGenerator g = new DatacenterGenerator();
+        g.setNbVMs(25);
+        g.setEnumerationWidth(10);
+        String src = g.generate().get(DatacenterGenerator.tenant(1));
+        Assert.assertTrue(src.contains("VM[1..10] : tiny;\nVM[11..20] : tiny;\nVM[21..25] : tiny;\n"), src);
+        Assert.assertFalse(src.contains("import clients."), src);
+        Assert.assertTrue(g.generate().get(DatacenterGenerator.tenant(3)).contains("import clients.t"));
+    }
+
+    @Test(expectedExceptions = {IllegalArgumentException.class})
+    public void testBadMix() {
+        new DatacenterGenerator().setConstraintMix(Arrays.asList("spread", "foo"));
+    }
+
+    @Test(expectedExceptions = {IllegalArgumentException.class})
+    public void testTooManyTiers() {
+        DatacenterGenerator g = new DatacenterGenerator();
+        g.setNbVMs(2);
+        g.generate();
+    }
+
+    public void testBuild() throws IOException {
+        DatacenterGenerator g = new DatacenterGenerator();
+        g.setNbTenants(12);
+        g.setImportFanOut(3);
+        g.setEnumerationWidth(7);
+        Model mo = g.makeModel();
+        Assert.assertEquals(mo.getMapping().getOnlineNodes().size(), g.getTotalNodes());
+        Assert.assertEquals(mo.getMapping().getReadyVMs().size(), g.getTotalVMs());
+
+        File root = Files.createTempDirectory("dc").toFile();
+        try {
+            BuildResult res = build(g, mo, root);
+            Assert.assertTrue(res.isSuccessful(), res.toString());
+            Assert.assertEquals(res.getScripts().size(), g.getNbClusters() + g.getNbTenants());
+            for (Script s : res.getScripts()) {
+                if (s.id().startsWith(DatacenterGenerator.CLIENTS)) {
+                    Assert.assertEquals(s.getVMs().size(), g.getNbVMs());
+                    Assert.assertFalse(s.getConstraints().isEmpty());
+                } else {
+                    Assert.assertEquals(s.getNodes().size(), g.getNbRacks() * g.getNbNodes());
+                }
+            }
+            //The elements are resolved, not created
+            Assert.assertEquals(mo.getMapping().getOnlineNodes().size(), g.getTotalNodes());
+            Assert.assertTrue(mo.getMapping().getOfflineNodes().isEmpty());
+            Assert.assertEquals(mo.getMapping().getReadyVMs().size(), g.getTotalVMs());
+        } finally {
+            delete(root);
+        }
+    }
+
+    @Test(groups = {"stress"})
+    public void testStress() throws IOException {
+        double scale = Double.parseDouble(System.getProperty("btrpsl.stress.scale", "0.005"));
+        DatacenterGenerator g = new DatacenterGenerator();
+        g.setNbClusters(Math.max(1, (int) (10 * scale)));
+        g.setNbRacks(50);
+        g.setNbNodes(Math.max(1, (int) (200 * scale * 10 / g.getNbClusters())));
+        g.setNbTenants(Math.max(1, (int) (2000 * scale)));
+        g.setNbVMs(500);
+        g.setNbTiers(5);
+        g.setImportFanOut(3);
+
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        long before = rt.totalMemory() - rt.freeMemory();
+        Model mo = g.makeModel();
+        File root = Files.createTempDirectory("dc").toFile();
+        try {
+            long st = System.currentTimeMillis();
+            BuildResult res = build(g, mo, root);
+            long duration = System.currentTimeMillis() - st;
+            Assert.assertTrue(res.isSuccessful(), res.toString());
+            System.gc();
+            long used = rt.totalMemory() - rt.freeMemory() - before;
+            int nbConstraints = 0;
+            for (Script s : res.getScripts()) {
+                nbConstraints += s.getConstraints().size();
+            }
+            System.out.println(g.getTotalNodes() + " node(s), " + g.getTotalVMs() + " VM(s), "
+                    + res.getScripts().size() + " script(s), " + nbConstraints + " constraint(s) built in "
+                    + duration + " ms (" + (res.getScripts().size() * 1000L / Math.max(1, duration)) + " scripts/s). Retained: "
+                    + (used / 1024 / 1024) + " MB");
+        } finally {
+            delete(root);
+        }
+    }
+}
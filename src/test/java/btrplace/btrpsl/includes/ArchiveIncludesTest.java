@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.includes;
+
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.ScriptBuilderException;
+import btrplace.model.DefaultModel;
+import btrplace.model.Model;
+import btrplace.model.VM;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Unit tests for {@link ArchiveIncludes}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class ArchiveIncludesTest {
+
+    private static final String RACK = "namespace std.rack;\n@N[1..4] : defaultNode;\n$nodes = @N[1..4];\nexport $nodes to *;\n";
+
+    private static final String HA = "namespace std.ha;\nimport std.rack;\nVM[1..2] : tiny;\n$vms = VM[1..2];\n"
+            + "spread($vms);\nban($vms, $std.rack.nodes);\nexport $vms to *;\n";
+
+    private static File makeJar(String prefix) throws IOException {
+        File f = File.createTempFile("btrpsl", ".jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(f))) {
+            out.putNextEntry(new ZipEntry(prefix + "std/"));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry(prefix + "std/rack.btrp"));
+            out.write(RACK.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry(prefix + "std/ha.btrp"));
+            out.write(HA.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry(prefix + "std/bad.btrp"));
+            out.write("namespace std.good;\n".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("Foo.class"));
+            out.closeEntry();
+        }
+        return f;
+    }
+
+    public void testArchive() throws Exception {
+        File jar = makeJar("");
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        try (ArchiveIncludes incs = new ArchiveIncludes(b)) {
+            Assert.assertEquals(incs.addArchive(jar, ""), 3);
+            b.setIncludes(incs);
+            Assert.assertEquals(incs.getIdentifiers().toString(), "[std.bad, std.ha, std.rack]");
+            List<Script> res = incs.getScripts("std.ha");
+            Assert.assertEquals(res.size(), 1);
+            Assert.assertEquals(res.get(0).getConstraints().size(), 3);
+            Assert.assertEquals(res.get(0).getDependencies().get(0).id(), "std.rack");
+            //Built once
+            Assert.assertSame(incs.getScripts("std.rack").get(0), res.get(0).getDependencies().get(0));
+            Assert.assertTrue(incs.getScripts("std.foo").isEmpty());
+            Assert.assertTrue(incs.getScripts("foo.*").isEmpty());
+            try {
+                incs.getScripts("std.*");
+                Assert.fail("'std.bad' is misnamed");
+            } catch (ScriptBuilderException e) {
+                Assert.assertTrue(e.getMessage().contains("std.good"), e.getMessage());
+            }
+            Script s = b.build("namespace foo;\nimport std.ha;\nVM1 : tiny;\ngather({VM1});\n");
+            Assert.assertEquals(s.getDependencies().size(), 1);
+        } finally {
+            Assert.assertTrue(jar.delete());
+        }
+    }
+
+    public void testClasspath() throws Exception {
+        File jar = makeJar("lib/");
+        File dir = Files.createTempDirectory("btrpsl").toFile();
+        File over = new File(dir, "lib" + File.separator + "std");
+        Assert.assertTrue(over.mkdirs());
+        //Hidden by the jar that comes first in the classpath
+        Files.write(new File(over, "rack.btrp").toPath(), "namespace std.rack;\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(over, "extra.btrp").toPath(), "namespace std.extra;\n".getBytes(StandardCharsets.UTF_8));
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        try (URLClassLoader cl = new URLClassLoader(new URL[]{jar.toURI().toURL(), dir.toURI().toURL()}, null);
+             ArchiveIncludes incs = new ArchiveIncludes(b)) {
+            Assert.assertEquals(incs.addClasspath(cl, "/lib"), 4);
+            b.setIncludes(incs);
+            Assert.assertEquals(incs.getIdentifiers().toString(), "[std.bad, std.extra, std.ha, std.rack]");
+            Assert.assertEquals(incs.getScripts("std.rack").get(0).getNodes().size(), 4);
+            Assert.assertEquals(incs.getScripts("std.extra").size(), 1);
+        } finally {
+            Assert.assertTrue(jar.delete());
+            Assert.assertTrue(new File(over, "rack.btrp").delete());
+            Assert.assertTrue(new File(over, "extra.btrp").delete());
+            Assert.assertTrue(over.delete());
+            Assert.assertTrue(over.getParentFile().delete());
+            Assert.assertTrue(dir.delete());
+        }
+    }
+
+    public void testWildcard() throws Exception {
+        File f = File.createTempFile("btrpsl", ".jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(f))) {
+            for (int i = 0; i < 100; i++) {
+                out.putNextEntry(new ZipEntry("clients/t" + i + ".btrp"));
+                out.write(("namespace clients.t" + i + ";\nVM[1..3] : tiny;\n").getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        try {
+            for (ExecutorService e : new ExecutorService[]{null, exec}) {
+                Model mo = new DefaultModel();
+                ScriptBuilder b = new ScriptBuilder(mo);
+                try (ArchiveIncludes incs = new ArchiveIncludes(b)) {
+                    Assert.assertEquals(incs.addArchive(f, ""), 100);
+                    incs.setExecutorService(e);
+                    Assert.assertSame(incs.getExecutorService(), e);
+                    b.setIncludes(incs);
+                    List<Script> res = incs.getScripts("clients.*");
+                    Assert.assertEquals(res.size(), 100);
+                    Set<VM> vms = new HashSet<>();
+                    for (Script s : res) {
+                        for (VM v : s.getVMs()) {
+                            Assert.assertTrue(vms.add(v), "Duplicated VM " + v);
+                            Assert.assertEquals(b.getNamingService().resolve(b.getNamingService().resolve(v)).getElement(), v);
+                        }
+                    }
+                    Assert.assertEquals(vms.size(), 300);
+                    Assert.assertEquals(mo.getMapping().getReadyVMs().size(), 300);
+                    //Built once
+                    Assert.assertSame(incs.getScripts("clients.t12").get(0), res.get(incs.getIdentifiers().headSet("clients.t12").size()));
+                }
+            }
+        } finally {
+            exec.shutdown();
+            Assert.assertTrue(f.delete());
+        }
+    }
+}
@@ -17,8 +17,25 @@
 
 package btrplace.btrpsl.includes;
 
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.ScriptBuilderException;
+import btrplace.model.DefaultModel;
+import btrplace.model.Model;
+import btrplace.model.VM;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * Unit tests for {@code PathBasedIncludes}.
  *
@@ -26,6 +43,154 @@ import org.testng.annotations.Test;
  */
 @Test
 public class PathBasedIncludesTest {
+
+    private static File makeTenants(int nb) throws IOException {
+        File root = Files.createTempDirectory("btrpsl").toFile();
+        File d = new File(root, "clients");
+        Assert.assertTrue(d.mkdir());
+        for (int i = 0; i < nb; i++) {
+            String n = "t" + i;
+            Files.write(new File(d, n + Script.EXTENSION).toPath(), ("namespace clients." + n
+                    + ";\nVM[1..3] : tiny;\n$all = VM[1..3];\nexport $all to *;\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return root;
+    }
+
+    private static void delete(File f) throws IOException {
+        if (f.isDirectory()) {
+            for (File c : f.listFiles()) {
+                delete(c);
+            }
+        }
+        Files.delete(f.toPath());
+    }
+
+    public void testConcurrentWildcard() throws Exception {
+        File root = makeTenants(200);
+        ExecutorService exec = Executors.newFixedThreadPool(8);
+        try {
+            for (ExecutorService e : new ExecutorService[]{null, exec}) {
+                Model mo = new DefaultModel();
+                ScriptBuilder b = new ScriptBuilder(mo);
+                PathBasedIncludes incs = new PathBasedIncludes(b, root);
+                incs.setExecutorService(e);
+                b.setIncludes(incs);
+                List<Script> res = incs.getScripts("clients.*");
+                Assert.assertEquals(res.size(), 200);
+                for (int i = 1; i < res.size(); i++) {
+                    Assert.assertTrue(res.get(i - 1).id().compareTo(res.get(i).id()) < 0);
+                }
+                //Every VM is made once, with its own identifier, and is consistently named
+                Set<VM> vms = new HashSet<>();
+                for (Script s : res) {
+                    Assert.assertEquals(s.getVMs().size(), 3);
+                    for (VM v : s.getVMs()) {
+                        Assert.assertTrue(vms.add(v), "Duplicated VM " + v);
+                        String n = b.getNamingService().resolve(v);
+                        Assert.assertTrue(n.startsWith(s.id() + ".VM"), n);
+                        Assert.assertEquals(b.getNamingService().resolve(n).getElement(), v);
+                    }
+                }
+                Assert.assertEquals(vms.size(), 600);
+                Assert.assertEquals(b.getNamingService().getRegisteredElements().size(), 600);
+                Assert.assertEquals(mo.getMapping().getReadyVMs().size(), 600);
+                Script s = b.build("namespace foo;\nimport clients.*;\nspread($clients.t7.all);\n");
+                Assert.assertEquals(s.getDependencies().size(), 200);
+            }
+        } finally {
+            exec.shutdown();
+            delete(root);
+        }
+    }
+
+    public void testNewScriptInListedFolder() throws Exception {
+        File root = makeTenants(3);
+        try {
+            ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+            PathBasedIncludes incs = new PathBasedIncludes(b, root);
+            b.setIncludes(incs);
+            Assert.assertEquals(incs.getScripts("clients.*").size(), 3);
+            //Likely within the same second than the listing
+            Files.write(new File(root, "clients" + File.separator + "t3.btrp").toPath(),
+                    "namespace clients.t3;\nVM1 : tiny;\n".getBytes(StandardCharsets.UTF_8));
+            Assert.assertEquals(incs.getScripts("clients.*").size(), 4);
+        } finally {
+            delete(root);
+        }
+    }
+
+    public void testWildcardWithInnerImport() throws Exception {
+        File root = makeTenants(3);
+        try {
+            //t0 imports t1, that is also covered by the wildcard
+            Files.write(new File(root, "clients" + File.separator + "t0.btrp").toPath(),
+                    ("namespace clients.t0;\nimport clients.t1;\nVM[1..3] : tiny;\n"
+                            + "$all = VM[1..3];\nexport $all to *;\nspread($clients.t1.all);\n").getBytes(StandardCharsets.UTF_8));
+            Model mo = new DefaultModel();
+            ScriptBuilder b = new ScriptBuilder(mo);
+            PathBasedIncludes incs = new PathBasedIncludes(b, root);
+            b.setIncludes(incs);
+            List<Script> res = incs.getScripts("clients.*");
+            Assert.assertEquals(res.size(), 3);
+            Script t1 = res.get(1);
+            Assert.assertEquals(t1.id(), "clients.t1");
+            //t1 is evaluated once
+            Assert.assertSame(res.get(0).getDependencies().get(0), t1);
+            Assert.assertEquals(t1.getVMs().size(), 3);
+            Assert.assertEquals(t1.getConstraints().size(), 0);
+            Assert.assertEquals(res.get(0).getConstraints().size(), 1);
+            Assert.assertEquals(mo.getMapping().getReadyVMs().size(), 9);
+            Assert.assertSame(incs.getScripts("clients.t1").get(0), t1);
+        } finally {
+            delete(root);
+        }
+    }
+
+    public void testWildcardErrors() throws Exception {
+        File root = makeTenants(10);
+        try {
+            File d = new File(root, "clients");
+            Files.write(new File(d, "t3.btrp").toPath(), "namespace clients.t3;\nfoo(;\n".getBytes(StandardCharsets.UTF_8));
+            //Not matching the file name
+            Files.write(new File(d, "t5.btrp").toPath(), "namespace clients.bar;\n".getBytes(StandardCharsets.UTF_8));
+            ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+            PathBasedIncludes incs = new PathBasedIncludes(b, root);
+            b.setIncludes(incs);
+            try {
+                incs.getScripts("clients.*");
+                Assert.fail("Errors expected");
+            } catch (ScriptBuilderException e) {
+                Assert.assertTrue(e.getErrorReporter().getErrors().size() >= 2, e.getMessage());
+                Assert.assertTrue(e.getMessage().contains("t5.btrp"), e.getMessage());
+            }
+            try {
+                b.build("namespace foo;\nimport clients.*;\n");
+                Assert.fail("Errors expected");
+            } catch (ScriptBuilderException e) {
+                Assert.assertTrue(e.getMessage().contains("error(s) imported through 'clients.*'"), e.getMessage());
+            }
+        } finally {
+            delete(root);
+        }
+    }
+
+    public void testListingCache() throws Exception {
+        File root = makeTenants(3);
+        try {
+            ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+            PathBasedIncludes incs = new PathBasedIncludes(b, root);
+            b.setIncludes(incs);
+            Assert.assertEquals(incs.getScripts("clients.*").size(), 3);
+            File d = new File(root, "clients");
+            Files.write(new File(d, "t9.btrp").toPath(), "namespace clients.t9;\n".getBytes(StandardCharsets.UTF_8));
+            //Force a distinct modification date
+            Assert.assertTrue(d.setLastModified(d.lastModified() + 2000));
+            Assert.assertEquals(incs.getScripts("clients.*").size(), 4);
+            Assert.assertTrue(incs.getScripts("nope.*").isEmpty());
+        } finally {
+            delete(root);
+        }
+    }
 /*
     private static ScriptBuilder makeVJobBuilder() {
         VJobElementBuilder e = new DefaultVJobElementBuilder(null);
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.includes;
+
+import btrplace.btrpsl.BuildResult;
+import btrplace.btrpsl.NamingService;
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.ScriptBuilderException;
+import btrplace.model.DefaultModel;
+import btrplace.model.Element;
+import btrplace.model.Model;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit tests for {@link WatchedIncludes}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class WatchedIncludesTest {
+
+    private static File write(File root, String id, String content) throws IOException {
+        File f = new File(root, id.replace('.', File.separatorChar) + Script.EXTENSION);
+        Assert.assertTrue(f.getParentFile().isDirectory() || f.getParentFile().mkdirs());
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return f.getAbsoluteFile();
+    }
+
+    private static void delete(File f) throws IOException {
+        if (f.isDirectory()) {
+            for (File c : f.listFiles()) {
+                delete(c);
+            }
+        }
+        Files.delete(f.toPath());
+    }
+
+    /**
+     * Make a base script 'a.base', 'a.mid' that imports it, 'top' that imports 'a.mid'
+     * and 'other' that is independent.
+     */
+    private static File makeTree() throws IOException {
+        File root = Files.createTempDirectory("btrpsl").toFile();
+        write(root, "a.base", "namespace a.base;\nVM[1..3] : tiny;\n$all = VM[1..3];\nexport $all to *;\n");
+        write(root, "a.mid", "namespace a.mid;\nimport a.base;\n$x = $a.base.all;\nexport $x to *;\n");
+        write(root, "top", "namespace top;\nimport a.mid;\nVM1 : tiny;\nspread($a.mid.x);\n");
+        write(root, "other", "namespace other;\nVM1 : tiny;\n");
+        return root;
+    }
+
+    public void testIndex() throws Exception {
+        File root = makeTree();
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        try (WatchedIncludes incs = new WatchedIncludes(b, root)) {
+            b.setIncludes(incs);
+            Assert.assertEquals(incs.getFile("a.mid"), new File(root, "a" + File.separator + "mid.btrp").getAbsoluteFile());
+            Assert.assertNull(incs.getFile("a"));
+            List<Script> res = incs.getScripts("a.*");
+            Assert.assertEquals(res.size(), 2);
+            Assert.assertEquals(res.get(0).id(), "a.base");
+            Assert.assertEquals(res.get(1).id(), "a.mid");
+            Assert.assertTrue(incs.getScripts("foo").isEmpty());
+            Assert.assertTrue(incs.getScripts("foo.*").isEmpty());
+            //Built once
+            Assert.assertSame(incs.getScripts("a.mid").get(0), res.get(1));
+        } finally {
+            delete(root);
+        }
+    }
+
+    public void testShadowing() throws Exception {
+        File r1 = makeTree();
+        File r2 = Files.createTempDirectory("btrpsl").toFile();
+        write(r2, "other", "namespace other;\nVM[1..2] : tiny;\n");
+        write(r2, "extra", "namespace extra;\nVM1 : tiny;\n");
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        try (WatchedIncludes incs = new WatchedIncludes(b, Arrays.asList(r1, r2))) {
+            b.setIncludes(incs);
+            Assert.assertEquals(incs.getScripts("other").get(0).getVMs().size(), 1);
+            Assert.assertEquals(incs.getScripts("extra").size(), 1);
+            Assert.assertEquals(incs.getPaths().size(), 2);
+        } finally {
+            delete(r1);
+            delete(r2);
+        }
+    }
+
+    public void testInvalidate() throws Exception {
+        File root = makeTree();
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        try (WatchedIncludes incs = new WatchedIncludes(b, root)) {
+            b.setIncludes(incs);
+            Script top = incs.getScripts("top").get(0);
+            Script other = incs.getScripts("other").get(0);
+            Set<File> stale = incs.invalidate(Arrays.asList(incs.getFile("a.base")));
+            Assert.assertEquals(stale.size(), 3);
+            Assert.assertTrue(stale.contains(incs.getFile("top")));
+            Assert.assertNotSame(incs.getScripts("top").get(0), top);
+            Assert.assertSame(incs.getScripts("other").get(0), other);
+        } finally {
+            delete(root);
+        }
+    }
+
+    public void testWatch() throws Exception {
+        File root = makeTree();
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        final BlockingQueue<BuildResult> results = new LinkedBlockingQueue<>();
+        try (WatchedIncludes incs = new WatchedIncludes(b, root)) {
+            b.setIncludes(incs);
+            incs.addListener(new WatchedIncludes.Listener() {
+                @Override
+                public void rebuilt(Set<File> invalidated, BuildResult res) {
+                    results.add(res);
+                }
+            });
+            incs.start();
+            Script top = incs.getScripts("top").get(0);
+            Assert.assertEquals(top.getDependencies().get(0).getDependencies().get(0).getVMs().size(), 3);
+
+            //Modify the base script, 'top' is rebuilt
+            write(root, "a.base", "namespace a.base;\nVM[1..5] : tiny;\n$all = VM[1..5];\nexport $all to *;\n");
+            BuildResult res = results.poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull(res, "No rebuild");
+            Assert.assertTrue(res.isSuccessful(), res.toString());
+            Assert.assertEquals(res.getScripts().size(), 3);
+            Script top2 = incs.getScripts("top").get(0);
+            Assert.assertNotSame(top2, top);
+            Assert.assertEquals(top2.getDependencies().get(0).getDependencies().get(0).getVMs().size(), 5);
+
+            //A new folder with a script
+            write(root, "b.c", "namespace b.c;\nVM1 : tiny;\n");
+            res = results.poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull(res, "No rebuild");
+            Assert.assertEquals(incs.getScripts("b.*").size(), 1);
+
+            //Delete the base script, its dependents can no longer be built
+            Path base = incs.getFile("a.base").toPath();
+            Files.delete(base);
+            //Skip the pending rebuilds of the previous step, if any
+            do {
+                res = results.poll(10, TimeUnit.SECONDS);
+                Assert.assertNotNull(res, "No rebuild");
+            } while (res.isSuccessful());
+            Assert.assertEquals(res.getErrors().size(), 2, res.toString());
+            Assert.assertNull(incs.getFile("a.base"));
+            try {
+                incs.getScripts("top");
+                Assert.fail("'top' should not be buildable");
+            } catch (ScriptBuilderException e) {
+                Assert.assertFalse(e.getErrorReporter().getErrors().isEmpty());
+            }
+        } finally {
+            delete(root);
+        }
+    }
+
+    public void testConcurrentRebuilds() throws Exception {
+        File root = makeTree();
+        final Model mo = new DefaultModel();
+        final ScriptBuilder b = new ScriptBuilder(mo);
+        try (final WatchedIncludes incs = new WatchedIncludes(b, root)) {
+            b.setIncludes(incs);
+            final File base = incs.getFile("a.base");
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread bg = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 50; i++) {
+                            Assert.assertTrue(incs.rebuild(Arrays.asList(base)).isSuccessful());
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            });
+            bg.start();
+            for (int i = 0; i < 50; i++) {
+                synchronized (b) {
+                    b.build("namespace fg" + i + ";\nimport a.*;\nVM[1..10] : tiny;\n");
+                }
+            }
+            bg.join();
+            Assert.assertNull(failure.get());
+            //Every VM is made once and is consistently named
+            NamingService ns = b.getNamingService();
+            Assert.assertEquals(ns.getRegisteredElements().size(), 503);
+            Assert.assertEquals(mo.getMapping().getReadyVMs().size(), 503);
+            for (Element e : ns.getRegisteredElements()) {
+                Assert.assertEquals(ns.resolve(ns.resolve(e)).getElement(), e);
+            }
+        } finally {
+            delete(root);
+        }
+    }
+}
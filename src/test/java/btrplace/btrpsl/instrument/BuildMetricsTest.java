@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.instrument;
+
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.ScriptBuilderException;
+import btrplace.btrpsl.cache.SyntaxTreeCache;
+import btrplace.model.DefaultModel;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link BuildMetrics} and {@link BuildReport}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class BuildMetricsTest {
+
+    private static final String SRC = "namespace foo;\nVM[1..10] : tiny;\n@N[1..3] : defaultNode;\n"
+            + "$x = VM[1..5];\nspread($x);\nban($x, @N[1..2]);\nfor $v in VM[6..10] {\n  root($v);\n}\n";
+
+    public void testReport() throws ScriptBuilderException {
+        ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+        Assert.assertNull(b.build(SRC).getBuildReport());
+
+        BuildMetrics m = new BuildMetrics();
+        b = new ScriptBuilder(new DefaultModel());
+        b.setBuildListener(m);
+        Script s = b.build(SRC);
+        BuildReport r = s.getBuildReport();
+        Assert.assertNotNull(r);
+        for (BuildListener.Phase p : new BuildListener.Phase[]{BuildListener.Phase.lexing, BuildListener.Phase.parsing,
+                BuildListener.Phase.evaluation, BuildListener.Phase.templates, BuildListener.Phase.constraints}) {
+            Assert.assertEquals(r.getPhase(p).getCount(), p == BuildListener.Phase.templates ? 2 : p == BuildListener.Phase.constraints ? 7 : 1, p.name());
+            Assert.assertTrue(r.getPhase(p).getTime() > 0, p.name());
+        }
+        Assert.assertNull(r.getPhase(BuildListener.Phase.imports));
+        Map<String, Metric> stmts = r.getStatements();
+        Assert.assertEquals(stmts.get("TemplateAssignment").getCount(), 2);
+        Assert.assertEquals(stmts.get("ConstraintStatement").getCount(), 2);
+        Assert.assertEquals(stmts.get("ForStatement").getCount(), 1);
+        Assert.assertEquals(r.getConstraints().get("root").getCount(), 5);
+        Assert.assertEquals(r.getConstraints().get("ban").getCount(), 1);
+
+        //Forwarded to the metrics
+        Assert.assertEquals(m.getConstraintCounts().get("root").longValue(), 5);
+        Assert.assertEquals(m.getPhaseCounts().get("evaluation").longValue(), 1);
+        Assert.assertEquals(m.getStatementTimes().size(), stmts.size());
+    }
+
+    public void testCacheCounters() throws ScriptBuilderException {
+        BuildMetrics m = new BuildMetrics();
+        SyntaxTreeCache trees = new SyntaxTreeCache(5);
+        for (int i = 0; i < 3; i++) {
+            ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+            b.setSyntaxTreeCache(trees);
+            b.setBuildListener(m);
+            BuildReport r = b.build(SRC).getBuildReport();
+            Assert.assertEquals(r.getHits(BuildListener.TREES), i == 0 ? 0 : 1);
+            Assert.assertEquals(r.getMisses(BuildListener.TREES), i == 0 ? 1 : 0);
+            //No parsing on a hit
+            Assert.assertEquals(r.getPhase(BuildListener.Phase.parsing) != null, i == 0);
+        }
+        Assert.assertEquals(m.getCacheHits().get(BuildListener.TREES).longValue(), 2);
+        Assert.assertEquals(m.getCacheMisses().get(BuildListener.TREES).longValue(), 1);
+        m.reset();
+        Assert.assertTrue(m.getCacheHits().isEmpty());
+        Assert.assertTrue(m.getPhaseTimes().isEmpty());
+    }
+
+    public void testJMX() throws ScriptBuilderException, JMException {
+        BuildMetrics m = new BuildMetrics();
+        ObjectName n = m.register("test");
+        try {
+            ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+            b.setBuildListener(m);
+            b.build(SRC);
+            MBeanServer srv = ManagementFactory.getPlatformMBeanServer();
+            Assert.assertTrue(srv.isRegistered(n));
+            TabularData d = (TabularData) srv.getAttribute(n, "ConstraintCounts");
+            Assert.assertEquals(d.size(), 3);
+            srv.invoke(n, "reset", new Object[0], new String[0]);
+            Assert.assertTrue(m.getConstraintCounts().isEmpty());
+        } finally {
+            Assert.assertTrue(m.unregister());
+        }
+        Assert.assertFalse(m.unregister());
+    }
+
+    public void testStopwatch() {
+        Stopwatch w = Stopwatch.start();
+        long[] garbage = new long[1024];
+        Assert.assertEquals(garbage.length, 1024);
+        Assert.assertTrue(w.elapsed() >= 0);
+        long a = w.allocated();
+        Assert.assertTrue(a == -1 || a >= 8 * 1024, Long.toString(a));
+    }
+}
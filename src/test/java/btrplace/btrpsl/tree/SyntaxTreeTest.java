@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2013 University of Nice Sophia-Antipolis
+ *
+ * This file is part of btrplace.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.btrpsl.tree;
+
+import btrplace.btrpsl.Script;
+import btrplace.btrpsl.ScriptBuilder;
+import btrplace.btrpsl.ScriptBuilderException;
+import btrplace.btrpsl.cache.ScriptCache;
+import btrplace.btrpsl.cache.SyntaxTreeCache;
+import btrplace.model.DefaultModel;
+import btrplace.model.constraint.SatConstraint;
+import org.antlr.runtime.ANTLRStringStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit tests for {@link SyntaxTree}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class SyntaxTreeTest {
+
+    private static final String SCRIPT = "namespace foo;\n"
+            + "VM[1..10] : tiny;\n@N[1..4] : defaultNode;\n"
+            + "for $n in @N[1..2] {\n  ban(VM[1..5], $n);\n}\n"
+            + "$x = VM[6..10];\nif (#$x > 3 && !(#$x == 4)) {\n  ban($x, @N1);\n} else {\n  fence($x, @N2);\n}\n"
+            + "$k = (2 + 3) * 4 - 10 / 2 % 3 - 2^3;\n"
+            + "if ($k >= 5) {\n  spread({VM1, VM2});\n} else {\n  lonely({VM1});\n}\n"
+            + "$parts = {VM[1..4], {VM5, VM6}} - {VM[1..4]};\n"
+            + "for $p in $parts {\n  gather($p);\n}\n"
+            + "$s = \"foo\";\nroot({VM7});\n>>fence(VM8, @N[1..3]);\n"
+            + "export $x, $k to *;\n";
+
+    /**
+     * Build a script from a tree that is walked, then from a tree that is compiled.
+     */
+    private static Script[] build(String src, int nb) throws ScriptBuilderException {
+        SyntaxTreeCache walked = new SyntaxTreeCache(1);
+        SyntaxTreeCache compiled = new SyntaxTreeCache(1);
+        String digest = ScriptCache.digest(src.getBytes(StandardCharsets.UTF_8));
+        try {
+            SyntaxTree t = SyntaxTree.parse(new ANTLRStringStream(src));
+            t.setCompiled(false);
+            Assert.assertFalse(t.isCompiled());
+            walked.put(digest, t);
+        } catch (Exception e) {
+            Assert.fail(e.getMessage(), e);
+        }
+        Script[] res = new Script[2 * nb];
+        for (int i = 0; i < nb; i++) {
+            ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+            b.setSyntaxTreeCache(walked);
+            res[2 * i] = b.build(src);
+            b = new ScriptBuilder(new DefaultModel());
+            b.setSyntaxTreeCache(compiled);
+            res[2 * i + 1] = b.build(src);
+        }
+        Assert.assertEquals(walked.getHits(), nb);
+        Assert.assertEquals(compiled.getHits(), nb - 1);
+        return res;
+    }
+
+    /**
+     * The constraints of a script, independently from the element identifiers that differ among models.
+     */
+    private static String signature(Script s) {
+        List<String> sig = new ArrayList<>();
+        for (SatConstraint c : s.getConstraints()) {
+            sig.add(c.getClass().getSimpleName() + c.getInvolvedVMs().size() + '/' + c.getInvolvedNodes().size()
+                    + (c.isContinuous() ? "c" : "d"));
+        }
+        Collections.sort(sig);
+        return sig.toString();
+    }
+
+    public void testSameEvaluation() throws ScriptBuilderException {
+        //Several evaluations of the same trees
+        Script[] res = build(SCRIPT, 3);
+        Script ref = res[0];
+        for (Script s : res) {
+            Assert.assertEquals(s.getVMs().size(), 10);
+            Assert.assertEquals(s.getNodes().size(), 4);
+            Assert.assertEquals(signature(s), signature(ref));
+            Assert.assertEquals(s.getExported().size(), 2);
+        }
+        Assert.assertEquals(ref.getConstraints().size(), 10 + 5 + 1 + 1 + 1 + 1);
+    }
+
+    public void testSameErrors() {
+        String src = "namespace foo;\nVM[1..3] : tiny;\n$x = $y + 1;\n$z = VM[1..3] * 2;\n"
+                + "for $v in $w {\n  spread($v);\n}\nfoo(VM1);\nspread(5);\n";
+        String[] errors = new String[2];
+        for (int i = 0; i < 2; i++) {
+            ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+            SyntaxTreeCache c = new SyntaxTreeCache(1);
+            b.setSyntaxTreeCache(c);
+            if (i == 0) {
+                try {
+                    SyntaxTree t = SyntaxTree.parse(new ANTLRStringStream(src));
+                    t.setCompiled(false);
+                    c.put(ScriptCache.digest(src.getBytes(StandardCharsets.UTF_8)), t);
+                } catch (Exception e) {
+                    Assert.fail(e.getMessage(), e);
+                }
+            }
+            try {
+                b.build(src);
+                Assert.fail("Errors expected");
+            } catch (ScriptBuilderException e) {
+                errors[i] = e.getErrorReporter().getErrors().toString();
+            }
+        }
+        Assert.assertEquals(errors[1], errors[0]);
+    }
+
+    public void testFolding() throws ScriptBuilderException {
+        String src = "namespace foo;\nVM[1..6] : tiny;\n@N[1..4] : defaultNode;\n"
+                + "$n = (2 + 3) * 4 - 2^3;\n$m = $n;\n$m += 1;\n"
+                + "$s = \"a\" + 1;\n$p = {1, 2, 3} % 2;\n"
+                + "for $i in VM[1..3] {\n  fence($i, @N[1..2]);\n}\n"
+                + "export $n, $m, $s, $p to *;\n";
+        SyntaxTreeCache c = new SyntaxTreeCache(1);
+        for (int i = 0; i < 3; i++) {
+            ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+            b.setSyntaxTreeCache(c);
+            Script s = b.build(src);
+            //The folded constants are not altered by the evaluations
+            Assert.assertEquals(s.getImportable("$n").toString(), "12");
+            Assert.assertEquals(s.getImportable("$n").label(), "$n");
+            Assert.assertEquals(s.getImportable("$m").toString(), "13");
+            Assert.assertEquals(s.getImportable("$s").toString(), "a1");
+            Assert.assertEquals(s.getImportable("$p").toString(), "{{1, 2}, {3}}");
+            Assert.assertEquals(s.getConstraints().size(), 3);
+            for (SatConstraint cstr : s.getConstraints()) {
+                Assert.assertEquals(cstr.getInvolvedNodes().size(), 2);
+            }
+        }
+        Assert.assertEquals(c.getHits(), 2);
+    }
+
+    public void testNoFoldingOnErrors() {
+        String src = "namespace foo;\nVM1 : tiny;\n$a = {1, 1};\n$b = \"a\" - 1;\n$c = -{2};\n";
+        SyntaxTreeCache c = new SyntaxTreeCache(1);
+        for (int i = 0; i < 2; i++) {
+            ScriptBuilder b = new ScriptBuilder(new DefaultModel());
+            b.setSyntaxTreeCache(c);
+            try {
+                b.build(src);
+                Assert.fail("Errors expected");
+            } catch (ScriptBuilderException e) {
+                //The errors are reported at each evaluation, once
+                Assert.assertEquals(e.getErrorReporter().getErrors().size(), 3, e.getErrorReporter().toString());
+            }
+        }
+    }
+}